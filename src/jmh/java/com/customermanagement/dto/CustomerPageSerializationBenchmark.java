@@ -0,0 +1,42 @@
+package com.customermanagement.dto;
+
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.model.CustomerFixtures;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a page of customers to JSON, as the list and set endpoints answer. The mapper is configured the way
+ * Spring Boot configures the one of the message converters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CustomerPageSerializationBenchmark {
+
+    // The default and the maximum page size
+    @Param({"25", "500"})
+    private int pageSize;
+
+    private ObjectMapper objectMapper;
+    private CustomerPage page;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        page = CustomerPage.builder()
+                .customers(CustomerFixtures.customers(pageSize, 42))
+                .nextCursor("NWYwYzJhOWUtOGQxYi00YzhlLTlhNTEtMGI2ZjdlMmQ5YzEz")
+                .matchMode(MatchMode.PREFIX)
+                .build();
+    }
+
+    @Benchmark
+    public byte[] writeValueAsBytes() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
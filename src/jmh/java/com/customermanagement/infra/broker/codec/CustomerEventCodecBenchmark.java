@@ -0,0 +1,59 @@
+package com.customermanagement.infra.broker.codec;
+
+import com.customermanagement.enums.EventFormat;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerEvent;
+import com.customermanagement.model.CustomerFixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding a customer created event, in both formats and against the customer string that was
+ * published before the codec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CustomerEventCodecBenchmark {
+
+    private Customer customer;
+    private CustomerEvent event;
+    private byte[] binary;
+    private byte[] json;
+
+    @Setup
+    public void setUp() {
+        customer = CustomerFixtures.customer(new Random(42));
+        event = CustomerEvent.created(customer);
+        binary = CustomerEventCodec.encode(event, EventFormat.BINARY);
+        json = CustomerEventCodec.encode(event, EventFormat.JSON);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return CustomerEventCodec.encode(event, EventFormat.BINARY);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() {
+        return CustomerEventCodec.encode(event, EventFormat.JSON);
+    }
+
+    @Benchmark
+    public byte[] encodeCustomerString() {
+        return customer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public CustomerEvent decodeBinary() {
+        return CustomerEventCodec.decode(binary);
+    }
+
+    @Benchmark
+    public CustomerEvent decodeJson() {
+        return CustomerEventCodec.decode(json);
+    }
+}
@@ -0,0 +1,64 @@
+package com.customermanagement.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generated customers and ids for the benchmarks. Seeded, so every run measures the same data.
+ */
+public final class CustomerFixtures {
+
+    private static final String[] FIRST_NAMES = {"Alice", "Bob", "Carla", "Deepak", "Elena", "Farid", "Grace", "Hiro"};
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Kumar", "Garcia", "Mueller", "Nakamura", "Okafor", "Rossi"};
+    private static final String[] CITIES = {"Springfield", "Riverside", "Franklin", "Greenville", "Bristol", "Clinton"};
+    private static final String[] STATES = {"CA", "NY", "TX", "WA", "IL", "MA"};
+
+    private CustomerFixtures() {
+    }
+
+    public static Customer customer(Random random) {
+        return Customer.builder()
+                .customerId(new UUID(random.nextLong(), random.nextLong()).toString())
+                .firstName(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)])
+                .lastName(LAST_NAMES[random.nextInt(LAST_NAMES.length)])
+                .age(18 + random.nextInt(80))
+                .spendingLimit(random.nextInt(100_000) / 10.0)
+                .mobileNumber("+1" + (2_000_000_000L + random.nextInt(1_000_000_000)))
+                .addresses(List.of(Address.builder()
+                        .type(random.nextBoolean() ? "HOME" : "OFFICE")
+                        .street(random.nextInt(9999) + " Main Street")
+                        .city(CITIES[random.nextInt(CITIES.length)])
+                        .state(STATES[random.nextInt(STATES.length)])
+                        .zipCode(String.valueOf(10_000 + random.nextInt(89_999)))
+                        .build()))
+                .build();
+    }
+
+    public static List<Customer> customers(int count, long seed) {
+        Random random = new Random(seed);
+        List<Customer> customers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            customers.add(customer(random));
+        }
+        return customers;
+    }
+
+    /**
+     * Two id lists of the given size that have about the given fraction of their ids in common, in random order.
+     */
+    public static List<List<String>> overlappingIdLists(int size, double overlap, long seed) {
+        Random random = new Random(seed);
+        List<String> listA = new ArrayList<>(size);
+        List<String> listB = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String id = new UUID(random.nextLong(), random.nextLong()).toString();
+            listA.add(id);
+            listB.add(random.nextDouble() < overlap ? id : new UUID(random.nextLong(), random.nextLong()).toString());
+        }
+        Collections.shuffle(listB, random);
+        return List.of(listA, listB);
+    }
+}
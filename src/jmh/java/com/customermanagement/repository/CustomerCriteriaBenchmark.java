@@ -0,0 +1,52 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.enums.MatchMode;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the Mongo query of the list endpoint, as findCustomersWithFilters does for every request that
+ * isn't served by the name index. Measured up to the rendered query document, which is what the driver sends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CustomerCriteriaBenchmark {
+
+    @Param({"AND", "OR"})
+    private String operation;
+
+    @Param({"EXACT", "PREFIX", "CONTAINS"})
+    private MatchMode matchMode;
+
+    @Param({"1", "3"})
+    private int filterCount;
+
+    private Map<String, String> filters;
+    private CustomerQueryOptions options;
+
+    @Setup
+    public void setUp() {
+        Map<String, String> all = new LinkedHashMap<>();
+        all.put("name", "Alice Smith");
+        all.put("city", "Springfield");
+        all.put("state", "CA");
+        filters = new LinkedHashMap<>();
+        all.entrySet().stream().limit(filterCount).forEach(entry -> filters.put(entry.getKey(), entry.getValue()));
+        options = CustomerQueryOptions.builder()
+                .afterCustomerId("5f0c2a9e-8d1b-4c8e-9a51-0b6f7e2d9c13")
+                .limit(26)
+                .matchMode(matchMode)
+                .build();
+    }
+
+    @Benchmark
+    public Document buildFilterQuery() {
+        return CustomerCriteria.withKeysetPage(CustomerCriteria.buildFilterQuery(filters, operation, matchMode), options)
+                .getQueryObject();
+    }
+}
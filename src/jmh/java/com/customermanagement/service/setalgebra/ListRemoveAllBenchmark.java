@@ -0,0 +1,40 @@
+package com.customermanagement.service.setalgebra;
+
+import com.customermanagement.model.CustomerFixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The difference as findCustomersInOneListButNotOther first did it, HashSet.removeAll with the other list as a List.
+ * When the set isn't larger than the list, removeAll walks the set and calls List.contains for every id, so it is
+ * quadratic. Kept apart from SetDifferenceBenchmark because it doesn't finish at the larger sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListRemoveAllBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int size;
+
+    private List<String> listA;
+    private List<String> listB;
+
+    @Setup
+    public void setUp() {
+        List<List<String>> lists = CustomerFixtures.overlappingIdLists(size, 0.5, 42);
+        listA = lists.get(0);
+        listB = lists.get(1);
+    }
+
+    @Benchmark
+    public Set<String> hashSetRemoveAllList() {
+        Set<String> onlyInA = new HashSet<>(listA);
+        onlyInA.removeAll(listB);
+        return onlyInA;
+    }
+}
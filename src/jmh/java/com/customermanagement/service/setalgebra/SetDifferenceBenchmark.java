@@ -0,0 +1,54 @@
+package com.customermanagement.service.setalgebra;
+
+import com.customermanagement.model.CustomerFixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The difference of two id lists behind only-in-a and only-in-b, with half of the ids in common.
+ * hashSet is a HashSet of one list with the other one's HashSet removed from it, uuidSet is what the service does now,
+ * once including the parsing of the request's strings and once on already parsed sets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SetDifferenceBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    private int size;
+
+    private List<String> listA;
+    private List<String> listB;
+    private UuidSet setA;
+    private UuidSet setB;
+
+    @Setup
+    public void setUp() {
+        List<List<String>> lists = CustomerFixtures.overlappingIdLists(size, 0.5, 42);
+        listA = lists.get(0);
+        listB = lists.get(1);
+        setA = UuidSet.parse(listA);
+        setB = UuidSet.parse(listB);
+    }
+
+    @Benchmark
+    public Set<String> hashSet() {
+        Set<String> onlyInA = new HashSet<>(listA);
+        onlyInA.removeAll(new HashSet<>(listB));
+        return onlyInA;
+    }
+
+    @Benchmark
+    public UuidSet uuidSet() {
+        return UuidSet.parse(listA).difference(UuidSet.parse(listB));
+    }
+
+    @Benchmark
+    public UuidSet uuidSetParsed() {
+        return setA.difference(setB);
+    }
+}
@@ -0,0 +1,66 @@
+package com.customermanagement.validation;
+
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerFixtures;
+import org.openjdk.jmh.annotations.*;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorFactory;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bean validation of a customer as done for the create and bulk endpoints, with and without violations,
+ * and the address type check on its own. An invalid type costs an exception in valueOf.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CustomerValidationBenchmark {
+
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private ValidAddressTypeValidator addressTypeValidator;
+    private Customer validCustomer;
+    private Customer invalidCustomer;
+
+    @Setup
+    public void setUp() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        addressTypeValidator = new ValidAddressTypeValidator();
+        validCustomer = CustomerFixtures.customer(new Random(42));
+        invalidCustomer = CustomerFixtures.customer(new Random(42));
+        invalidCustomer.setAge(12);
+        invalidCustomer.setMobileNumber("not a number");
+        invalidCustomer.getAddresses().get(0).setType("CASTLE");
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<Customer>> validateValidCustomer() {
+        return validator.validate(validCustomer);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<Customer>> validateInvalidCustomer() {
+        return validator.validate(invalidCustomer);
+    }
+
+    @Benchmark
+    public boolean validAddressType() {
+        return addressTypeValidator.isValid("office", null);
+    }
+
+    @Benchmark
+    public boolean invalidAddressType() {
+        return addressTypeValidator.isValid("castle", null);
+    }
+}
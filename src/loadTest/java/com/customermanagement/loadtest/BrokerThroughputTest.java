@@ -0,0 +1,180 @@
+package com.customermanagement.loadtest;
+
+import com.customermanagement.config.ExecutorConfig;
+import com.customermanagement.config.KafkaConfig;
+import com.customermanagement.enums.EventDelivery;
+import com.customermanagement.enums.EventFormat;
+import com.customermanagement.infra.broker.BrokerStrategy;
+import com.customermanagement.infra.broker.codec.CustomerEventCodec;
+import com.customermanagement.infra.broker.kafka.KafkaBrokerStrategyImpl;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Events per second through the customer event pipeline, run with ./gradlew brokerThroughput.
+ * Starts an embedded Kafka broker and only the Kafka part of the application (KafkaConfig, the publishing pool and
+ * KafkaBrokerStrategyImpl, with the settings of application.yml), then publishes customer created events keyed by
+ * customerId like the outbox relay does and consumes them with the batch listener. Reports how fast the broker
+ * acknowledged them and how fast they reached the consumer, in broker-throughput.json next to the load test report.
+ * Settings are the loadtest.broker.* system properties, anything else is passed on to the application.
+ */
+public class BrokerThroughputTest {
+
+    private static final String TOPIC = "customer-created";
+
+    public static void main(String[] args) throws Exception {
+        int events = Integer.getInteger("loadtest.broker.events", 200_000);
+        int partitions = Integer.getInteger("loadtest.broker.partitions", 6);
+        // Sends waiting for an acknowledgement at any time, like a full relay batch per publishing thread
+        int maxInFlight = Integer.getInteger("loadtest.broker.max-in-flight", 800);
+        String label = System.getProperty("loadtest.label", "local");
+        File reportDir = new File(System.getProperty("loadtest.report-dir", "build/reports/loadtest"));
+
+        // Logging is configured when the application starts, until then the embedded broker logs every request at DEBUG
+        LoggingSystem.get(BrokerThroughputTest.class.getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.WARN);
+        EmbeddedKafkaBroker kafka = new EmbeddedKafkaBroker(1, false, partitions, TOPIC);
+        kafka.afterPropertiesSet();
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(KafkaConfig.class, ExecutorConfig.class,
+                TaskExecutionAutoConfiguration.class, KafkaBrokerStrategyImpl.class, MetricsStandIn.class)
+                .web(WebApplicationType.NONE)
+                .run(LoadTest.withArguments(args,
+                        "--spring.kafka.bootstrap-servers=" + kafka.getBrokersAsString(),
+                        "--customer.broker.topic.partitions=" + partitions,
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.customermanagement=WARN"))) {
+            BrokerStrategy broker = app.getBean(BrokerStrategy.class);
+            AtomicLong received = new AtomicLong();
+            AtomicLong batches = new AtomicLong();
+            broker.consume(TOPIC, EventDelivery.BROADCAST, batch -> {
+                received.addAndGet(batch.size());
+                batches.incrementAndGet();
+            });
+
+            List<CustomerEvent> fixtures = fixtures(1_000);
+            // The consumer starts at the latest offset, so nothing counts until it has been assigned its partitions
+            System.out.println("Waiting for the consumer");
+            long deadline = System.currentTimeMillis() + 60_000;
+            while (received.get() == 0) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("The consumer got nothing within 60s");
+                }
+                broker.produce(TOPIC, fixtures.get(0).getCustomerId(), fixtures.get(0)).get(10, TimeUnit.SECONDS);
+                Thread.sleep(200);
+            }
+            System.out.println("Warming up with " + events / 10 + " events");
+            long receivedBeforeWarmup = received.get();
+            publish(broker, fixtures, events / 10, maxInFlight);
+            awaitReceived(received, receivedBeforeWarmup + events / 10);
+
+            System.out.println("Measuring " + events + " events over " + partitions + " partitions");
+            long receivedBefore = received.get();
+            long batchesBefore = batches.get();
+            long start = System.nanoTime();
+            publish(broker, fixtures, events, maxInFlight);
+            long acknowledgedNanos = System.nanoTime() - start;
+            awaitReceived(received, receivedBefore + events);
+            long consumedNanos = System.nanoTime() - start;
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("label", label);
+            summary.put("timestamp", Instant.now().toString());
+            summary.put("events", events);
+            summary.put("partitions", partitions);
+            summary.put("maxInFlight", maxInFlight);
+            summary.put("eventBytes", CustomerEventCodec.encode(fixtures.get(0), EventFormat.BINARY).length);
+            summary.put("producedPerSecond", Math.round(events / (acknowledgedNanos / 1e9)));
+            summary.put("consumedPerSecond", Math.round(events / (consumedNanos / 1e9)));
+            summary.put("averageConsumerBatch", Math.round((double) (received.get() - receivedBefore) / (batches.get() - batchesBefore)));
+            summary.put("producerSettings", Map.of(
+                    "compressionType", app.getEnvironment().getProperty("customer.broker.compression-type", "lz4"),
+                    "lingerMs", app.getEnvironment().getProperty("customer.broker.producer.linger-ms", "10"),
+                    "batchSize", app.getEnvironment().getProperty("customer.broker.producer.batch-size", "65536")));
+
+            reportDir.mkdirs();
+            ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+            objectMapper.writeValue(new File(reportDir, "broker-throughput.json"), summary);
+            System.out.println(objectMapper.writeValueAsString(summary));
+        } finally {
+            kafka.destroy();
+        }
+        // The Kafka client threads would otherwise keep the JVM running
+        System.exit(0);
+    }
+
+    private static void publish(BrokerStrategy broker, List<CustomerEvent> fixtures, int count, int maxInFlight) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicLong failed = new AtomicLong();
+        AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        for (int i = 0; i < count; i++) {
+            inFlight.acquire();
+            CustomerEvent event = fixtures.get(i % fixtures.size());
+            broker.produce(TOPIC, event.getCustomerId(), event).whenComplete((result, ex) -> {
+                inFlight.release();
+                if (ex != null) {
+                    failed.incrementAndGet();
+                    firstFailure.compareAndSet(null, ex);
+                }
+            });
+        }
+        inFlight.acquire(maxInFlight);
+        if (failed.get() > 0) {
+            throw new IllegalStateException(failed.get() + " sends failed", firstFailure.get());
+        }
+    }
+
+    private static void awaitReceived(AtomicLong received, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 120_000;
+        while (received.get() < expected) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Only " + received.get() + " of " + expected + " events were consumed within 120s");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static List<CustomerEvent> fixtures(int count) {
+        Random random = new Random(7);
+        List<CustomerEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Customer customer = LoadTestRequests.newCustomer(random);
+            customer.setCustomerId(new UUID(random.nextLong(), random.nextLong()).toString());
+            events.add(CustomerEvent.created(customer));
+        }
+        return events;
+    }
+
+    // The application gets its registry from Spring Boot, which isn't started here
+    @Configuration
+    static class MetricsStandIn {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
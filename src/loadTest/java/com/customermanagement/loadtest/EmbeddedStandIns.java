@@ -0,0 +1,81 @@
+package com.customermanagement.loadtest;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfig;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.config.Storage;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+import org.bson.Document;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A throwaway MongoDB process and Kafka broker for the application under test. MongoDB runs as a single node
+ * replica set like in docker-compose, so customers are written with their outbox event in one transaction as in production.
+ * The MongoDB binary is downloaded on the first run and cached in ~/.embedmongo.
+ */
+public class EmbeddedStandIns implements AutoCloseable {
+
+    private static final String REPLICA_SET = "rs0";
+
+    private final MongodExecutable mongod;
+    private final int mongoPort;
+    private final EmbeddedKafkaBroker kafka;
+
+    private EmbeddedStandIns(MongodExecutable mongod, int mongoPort, EmbeddedKafkaBroker kafka) {
+        this.mongod = mongod;
+        this.mongoPort = mongoPort;
+        this.kafka = kafka;
+    }
+
+    public static EmbeddedStandIns start(String mongoVersion) throws IOException, InterruptedException {
+        int mongoPort = Network.freeServerPort(Network.getLocalHost());
+        MongodConfig config = MongodConfig.builder()
+                .version(Version.Main.valueOf("V" + mongoVersion.replace('.', '_')))
+                .net(new Net(mongoPort, Network.localhostIsIPv6()))
+                .replication(new Storage(null, REPLICA_SET, 0))
+                .build();
+        MongodExecutable mongod = MongodStarter.getDefaultInstance().prepare(config);
+        mongod.start();
+        initiateReplicaSet(mongoPort);
+
+        EmbeddedKafkaBroker kafka = new EmbeddedKafkaBroker(1);
+        kafka.afterPropertiesSet();
+        return new EmbeddedStandIns(mongod, mongoPort, kafka);
+    }
+
+    private static void initiateReplicaSet(int port) throws InterruptedException {
+        try (MongoClient client = MongoClients.create("mongodb://localhost:" + port + "/?directConnection=true")) {
+            client.getDatabase("admin").runCommand(new Document("replSetInitiate", new Document("_id", REPLICA_SET)
+                    .append("members", List.of(new Document("_id", 0).append("host", "localhost:" + port)))));
+            // Writes fail until the node has elected itself
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (!Boolean.TRUE.equals(client.getDatabase("admin").runCommand(new Document("hello", 1)).getBoolean("isWritablePrimary"))) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("The embedded MongoDB didn't become primary within 30s");
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    public String mongoUri() {
+        return "mongodb://localhost:" + mongoPort + "/customerdb?directConnection=true";
+    }
+
+    public String kafkaBootstrapServers() {
+        return kafka.getBrokersAsString();
+    }
+
+    @Override
+    public void close() {
+        kafka.destroy();
+        mongod.stop();
+    }
+}
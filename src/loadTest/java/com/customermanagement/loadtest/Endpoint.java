@@ -0,0 +1,31 @@
+package com.customermanagement.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * The requests of the load test, by the name used in the mix setting and in the report.
+ */
+public enum Endpoint {
+    CREATE("create"),
+    FILTER("filter"),
+    ONLY_IN_A("only-in-a"),
+    IN_BOTH("in-both"),
+    SET_QUERY("set-query");
+
+    private final String key;
+
+    Endpoint(String key) {
+        this.key = key;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public static Endpoint ofKey(String key) {
+        return Arrays.stream(values())
+                .filter(endpoint -> endpoint.key.equals(key))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown endpoint in loadtest.mix: " + key));
+    }
+}
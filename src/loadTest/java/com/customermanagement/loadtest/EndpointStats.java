@@ -0,0 +1,40 @@
+package com.customermanagement.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latencies in microseconds of the answered requests of one endpoint, and counts of the ones that failed or were dropped.
+ */
+public class EndpointStats {
+
+    private final Histogram latencies = new ConcurrentHistogram(3);
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    void recordSuccess(long latencyMicros) {
+        latencies.recordValue(latencyMicros);
+    }
+
+    void recordError() {
+        errors.incrementAndGet();
+    }
+
+    void recordDropped() {
+        dropped.incrementAndGet();
+    }
+
+    public Histogram getLatencies() {
+        return latencies;
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+}
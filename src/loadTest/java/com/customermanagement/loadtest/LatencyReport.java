@@ -0,0 +1,100 @@
+package com.customermanagement.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes the results of a run to the report directory: the full HdrHistogram percentile distribution of every
+ * endpoint (&lt;endpoint&gt;.hgrm, in milliseconds, can be plotted with the HdrHistogram plotter) and summary.json with
+ * throughput and the main percentiles, laid out the same on every run so two summaries can be diffed.
+ */
+public class LatencyReport {
+
+    private final LoadTestSettings settings;
+    private final Map<Endpoint, EndpointStats> stats;
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public LatencyReport(LoadTestSettings settings, Map<Endpoint, EndpointStats> stats) {
+        this.settings = settings;
+        this.stats = stats;
+    }
+
+    public void write() throws IOException {
+        File dir = settings.getReportDir();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create the report directory " + dir);
+        }
+        for (Map.Entry<Endpoint, EndpointStats> entry : stats.entrySet()) {
+            try (PrintStream out = new PrintStream(new File(dir, entry.getKey().key() + ".hgrm"))) {
+                entry.getValue().getLatencies().outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        objectMapper.writeValue(new File(dir, "summary.json"), summary());
+    }
+
+    public void print(PrintStream out) {
+        out.printf("%-10s %9s %7s %8s %9s %9s %9s %9s %9s%n", "endpoint", "requests", "errors", "dropped", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        stats.forEach((endpoint, endpointStats) -> {
+            Histogram latencies = endpointStats.getLatencies();
+            out.printf("%-10s %9d %7d %8d %9.1f %9.2f %9.2f %9.2f %9.2f%n", endpoint.key(), latencies.getTotalCount(),
+                    endpointStats.getErrors(), endpointStats.getDropped(), throughput(latencies),
+                    millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(99)),
+                    millis(latencies.getValueAtPercentile(99.9)), millis(latencies.getMaxValue()));
+        });
+    }
+
+    private Map<String, Object> summary() {
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("label", settings.getLabel());
+        run.put("seedCustomers", settings.getSeedCustomers());
+        run.put("targetRps", settings.getRps());
+        run.put("durationSeconds", settings.getDurationSeconds());
+        run.put("setListSize", settings.getSetListSize());
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        settings.getMix().forEach((endpoint, weight) -> mix.put(endpoint.key(), weight));
+        run.put("mix", mix);
+
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        stats.forEach((endpoint, endpointStats) -> {
+            Histogram latencies = endpointStats.getLatencies();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("requests", latencies.getTotalCount());
+            result.put("errors", endpointStats.getErrors());
+            result.put("dropped", endpointStats.getDropped());
+            result.put("throughputPerSecond", round(throughput(latencies)));
+            Map<String, Object> latencyMillis = new LinkedHashMap<>();
+            latencyMillis.put("mean", round(latencies.getMean() / 1000.0));
+            latencyMillis.put("p50", round(millis(latencies.getValueAtPercentile(50))));
+            latencyMillis.put("p90", round(millis(latencies.getValueAtPercentile(90))));
+            latencyMillis.put("p99", round(millis(latencies.getValueAtPercentile(99))));
+            latencyMillis.put("p999", round(millis(latencies.getValueAtPercentile(99.9))));
+            latencyMillis.put("max", round(millis(latencies.getMaxValue())));
+            result.put("latencyMillis", latencyMillis);
+            endpoints.put(endpoint.key(), result);
+        });
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("run", run);
+        summary.put("endpoints", endpoints);
+        return summary;
+    }
+
+    private double throughput(Histogram latencies) {
+        return (double) latencies.getTotalCount() / settings.getDurationSeconds();
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
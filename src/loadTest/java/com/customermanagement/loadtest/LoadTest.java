@@ -0,0 +1,101 @@
+package com.customermanagement.loadtest;
+
+import com.customermanagement.CustomerManagementApplication;
+import com.customermanagement.enums.BulkRecordStatus;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * End to end load test of the customer API, run with ./gradlew loadTest.
+ * Boots the application in the loadtest profile against an embedded MongoDB and Kafka, seeds customers through the
+ * bulk endpoint, warms up, then drives the configured mix of requests at the target rate and writes the latency
+ * report (see LatencyReport). All settings are in LoadTestSettings.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        System.out.println("Starting embedded MongoDB " + settings.getMongoVersion() + " and Kafka");
+        try (EmbeddedStandIns standIns = EmbeddedStandIns.start(settings.getMongoVersion());
+             ConfigurableApplicationContext app = new SpringApplicationBuilder(CustomerManagementApplication.class)
+                     .profiles("loadtest")
+                     .run(withArguments(args,
+                             "--spring.data.mongodb.uri=" + standIns.mongoUri(),
+                             "--spring.kafka.bootstrap-servers=" + standIns.kafkaBootstrapServers(),
+                             "--logging.file.name=" + settings.getReportDir() + "/application.log"))) {
+            int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+            URI baseUri = URI.create("http://localhost:" + port);
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+
+            List<String> customerIds = seed(httpClient, baseUri, objectMapper, settings);
+            LoadTestRequests requests = new LoadTestRequests(baseUri, objectMapper, customerIds, settings.getSetListSize());
+            OpenModelLoadGenerator generator = new OpenModelLoadGenerator(httpClient, requests, settings);
+
+            System.out.println("Warming up for " + settings.getWarmupSeconds() + "s at " + settings.getRps() + " req/s");
+            generator.run(settings.getWarmupSeconds());
+            System.out.println("Measuring for " + settings.getDurationSeconds() + "s at " + settings.getRps() + " req/s");
+            Map<Endpoint, EndpointStats> stats = generator.run(settings.getDurationSeconds());
+            if (generator.inFlight() > 0) {
+                System.out.println("WARNING: " + generator.inFlight() + " requests were still unanswered after 30s and are not in the report");
+            }
+
+            LatencyReport report = new LatencyReport(settings, stats);
+            report.write();
+            report.print(System.out);
+            System.out.println("Report written to " + settings.getReportDir().getAbsolutePath());
+        }
+        // The Kafka and HTTP client threads would otherwise keep the JVM running
+        System.exit(0);
+    }
+
+    // Passed as arguments, which take precedence over application.yml. Those given on the command line come last and win.
+    static String[] withArguments(String[] args, String... arguments) {
+        return Stream.concat(Arrays.stream(arguments), Arrays.stream(args)).toArray(String[]::new);
+    }
+
+    private static List<String> seed(HttpClient httpClient, URI baseUri, ObjectMapper objectMapper, LoadTestSettings settings) throws Exception {
+        System.out.println("Seeding " + settings.getSeedCustomers() + " customers");
+        Random random = new Random(7);
+        List<String> customerIds = new ArrayList<>(settings.getSeedCustomers());
+        for (int seeded = 0; seeded < settings.getSeedCustomers(); seeded += settings.getSeedBatchSize()) {
+            int count = Math.min(settings.getSeedBatchSize(), settings.getSeedCustomers() - seeded);
+            HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/api/customers/bulk"))
+                    .header("Content-Type", "application/x-ndjson")
+                    .POST(HttpRequest.BodyPublishers.ofString(LoadTestRequests.bulkBody(objectMapper, count, random)))
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Seeding failed with " + response.statusCode() + ": " + response.body());
+            }
+            for (JsonNode result : objectMapper.readTree(response.body()).path("results")) {
+                if (BulkRecordStatus.CREATED.name().equals(result.path("status").asText())) {
+                    customerIds.add(result.path("customerId").asText());
+                }
+            }
+        }
+        if (customerIds.isEmpty()) {
+            throw new IllegalStateException("No customers were seeded, the set operation requests need some");
+        }
+        return customerIds;
+    }
+}
@@ -0,0 +1,127 @@
+package com.customermanagement.loadtest;
+
+import com.customermanagement.model.Address;
+import com.customermanagement.model.Customer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Builds the requests of the load test. Bodies are generated up front, so building a request costs the harness
+ * next to nothing while it is keeping up the request rate.
+ */
+public class LoadTestRequests {
+
+    static final String[] FIRST_NAMES = {"Alice", "Bob", "Carla", "Deepak", "Elena", "Farid", "Grace", "Hiro", "Ines", "Jonas"};
+    static final String[] LAST_NAMES = {"Smith", "Johnson", "Kumar", "Garcia", "Mueller", "Nakamura", "Okafor", "Rossi", "Silva", "Novak"};
+    static final String[] CITIES = {"Springfield", "Riverside", "Franklin", "Greenville", "Bristol", "Clinton", "Fairview", "Salem"};
+    static final String[] STATES = {"CA", "NY", "TX", "WA", "IL", "MA"};
+
+    // Distinct bodies per endpoint, used round robin
+    private static final int BODY_VARIANTS = 64;
+
+    private final URI baseUri;
+    private final Map<Endpoint, List<String>> bodies = new EnumMap<>(Endpoint.class);
+
+    public LoadTestRequests(URI baseUri, ObjectMapper objectMapper, List<String> customerIds, int setListSize) throws JsonProcessingException {
+        this.baseUri = baseUri;
+        Random random = new Random(42);
+        List<String> createBodies = new ArrayList<>();
+        List<String> onlyInABodies = new ArrayList<>();
+        List<String> inBothBodies = new ArrayList<>();
+        List<String> setQueryBodies = new ArrayList<>();
+        for (int i = 0; i < BODY_VARIANTS; i++) {
+            createBodies.add(objectMapper.writeValueAsString(newCustomer(random)));
+            onlyInABodies.add(objectMapper.writeValueAsString(List.of(sample(customerIds, setListSize, random), sample(customerIds, setListSize, random))));
+            inBothBodies.add(objectMapper.writeValueAsString(List.of(sample(customerIds, setListSize, random), sample(customerIds, setListSize, random))));
+            Map<String, Object> setQuery = new LinkedHashMap<>();
+            setQuery.put("expression", "(A | B) - C");
+            setQuery.put("lists", Map.of(
+                    "A", sample(customerIds, setListSize, random),
+                    "B", sample(customerIds, setListSize, random),
+                    "C", sample(customerIds, setListSize, random)));
+            setQueryBodies.add(objectMapper.writeValueAsString(setQuery));
+        }
+        bodies.put(Endpoint.CREATE, createBodies);
+        bodies.put(Endpoint.ONLY_IN_A, onlyInABodies);
+        bodies.put(Endpoint.IN_BOTH, inBothBodies);
+        bodies.put(Endpoint.SET_QUERY, setQueryBodies);
+    }
+
+    public HttpRequest build(Endpoint endpoint) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (endpoint) {
+            case CREATE:
+                return post("/api/customers", endpoint, random);
+            case FILTER:
+                // A prefix of a last name within a city, the common shape of a list request
+                String name = LAST_NAMES[random.nextInt(LAST_NAMES.length)].substring(0, 3);
+                String city = CITIES[random.nextInt(CITIES.length)];
+                return HttpRequest.newBuilder(baseUri.resolve("/api/customers?name=" + encode(name) + "&city=" + encode(city) + "&size=25"))
+                        .GET()
+                        .build();
+            case ONLY_IN_A:
+                return post("/api/customers/only-in-a", endpoint, random);
+            case IN_BOTH:
+                return post("/api/customers/in-both", endpoint, random);
+            case SET_QUERY:
+                return post("/api/customers/set-query", endpoint, random);
+            default:
+                throw new IllegalArgumentException("No request for " + endpoint);
+        }
+    }
+
+    /**
+     * NDJSON body with the given number of new customers, for seeding through the bulk endpoint.
+     */
+    public static String bulkBody(ObjectMapper objectMapper, int count, Random random) throws JsonProcessingException {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            body.append(objectMapper.writeValueAsString(newCustomer(random))).append('\n');
+        }
+        return body.toString();
+    }
+
+    private HttpRequest post(String path, Endpoint endpoint, ThreadLocalRandom random) {
+        List<String> variants = bodies.get(endpoint);
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(variants.get(random.nextInt(variants.size()))))
+                .build();
+    }
+
+    static Customer newCustomer(Random random) {
+        return Customer.builder()
+                .firstName(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)])
+                .lastName(LAST_NAMES[random.nextInt(LAST_NAMES.length)])
+                .age(18 + random.nextInt(80))
+                .spendingLimit(random.nextInt(100_000) / 10.0)
+                .mobileNumber("+1" + (2_000_000_000L + random.nextInt(1_000_000_000)))
+                .addresses(List.of(Address.builder()
+                        .type(random.nextBoolean() ? "HOME" : "OFFICE")
+                        .street(random.nextInt(9999) + " Main Street")
+                        .city(CITIES[random.nextInt(CITIES.length)])
+                        .state(STATES[random.nextInt(STATES.length)])
+                        .zipCode(String.valueOf(10_000 + random.nextInt(89_999)))
+                        .build()))
+                .build();
+    }
+
+    private static List<String> sample(List<String> ids, int size, Random random) {
+        List<String> sample = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            sample.add(ids.get(random.nextInt(ids.size())));
+        }
+        return sample;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
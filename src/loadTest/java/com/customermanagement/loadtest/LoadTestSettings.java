@@ -0,0 +1,66 @@
+package com.customermanagement.loadtest;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings of a load test run, read from the loadtest.* system properties (passed on by ./gradlew loadTest -Ploadtest.rps=500).
+ */
+@Getter
+@Builder
+public class LoadTestSettings {
+    // Written into the summary so runs can be told apart, e.g. the commit
+    private final String label;
+    private final int seedCustomers;
+    private final int seedBatchSize;
+    // Requests started per second, whether or not the earlier ones have been answered
+    private final int rps;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    // Above this many unanswered requests new ones are dropped and counted, instead of piling up in the harness
+    private final int maxInFlight;
+    // Ids per list in the set operation requests, picked from the seeded customers
+    private final int setListSize;
+    private final Map<Endpoint, Integer> mix;
+    private final String mongoVersion;
+    private final File reportDir;
+
+    public static LoadTestSettings fromSystemProperties() {
+        return LoadTestSettings.builder()
+                .label(System.getProperty("loadtest.label", "local"))
+                .seedCustomers(Integer.getInteger("loadtest.seed-customers", 10_000))
+                .seedBatchSize(Integer.getInteger("loadtest.seed-batch-size", 1_000))
+                .rps(Integer.getInteger("loadtest.rps", 200))
+                .warmupSeconds(Integer.getInteger("loadtest.warmup-seconds", 15))
+                .durationSeconds(Integer.getInteger("loadtest.duration-seconds", 60))
+                .maxInFlight(Integer.getInteger("loadtest.max-in-flight", 2_000))
+                .setListSize(Integer.getInteger("loadtest.set-list-size", 1_000))
+                .mix(parseMix(System.getProperty("loadtest.mix", "create:20,filter:50,only-in-a:10,in-both:10,set-query:10")))
+                .mongoVersion(System.getProperty("loadtest.mongo-version", "5.0"))
+                .reportDir(new File(System.getProperty("loadtest.report-dir", "build/reports/loadtest")))
+                .build();
+    }
+
+    // endpoint:weight pairs, e.g. create:20,filter:80
+    static Map<Endpoint, Integer> parseMix(String mix) {
+        Map<Endpoint, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid loadtest.mix entry: " + entry + ", expected endpoint:weight");
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(Endpoint.ofKey(parts[0].trim()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("loadtest.mix has no endpoint with a positive weight");
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,87 @@
+package com.customermanagement.loadtest;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Starts requests at a fixed rate, however long the earlier ones take (an open model, like real clients).
+ * A request's latency is counted from when it was due to start rather than from when it was sent, so a harness
+ * that falls behind shows up in the numbers instead of hiding the stall (coordinated omission).
+ */
+public class OpenModelLoadGenerator {
+
+    private final HttpClient httpClient;
+    private final LoadTestRequests requests;
+    private final int rps;
+    private final int maxInFlight;
+    private final NavigableMap<Integer, Endpoint> mix = new TreeMap<>();
+    private final int totalWeight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public OpenModelLoadGenerator(HttpClient httpClient, LoadTestRequests requests, LoadTestSettings settings) {
+        this.httpClient = httpClient;
+        this.requests = requests;
+        this.rps = settings.getRps();
+        this.maxInFlight = settings.getMaxInFlight();
+        int weight = 0;
+        for (Map.Entry<Endpoint, Integer> entry : settings.getMix().entrySet()) {
+            weight += entry.getValue();
+            mix.put(weight, entry.getKey());
+        }
+        this.totalWeight = weight;
+    }
+
+    /**
+     * Run for the given number of seconds and wait for the requests still in flight.
+     */
+    public Map<Endpoint, EndpointStats> run(int seconds) throws InterruptedException {
+        Map<Endpoint, EndpointStats> stats = new EnumMap<>(Endpoint.class);
+        mix.values().forEach(endpoint -> stats.put(endpoint, new EndpointStats()));
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rps;
+        long total = (long) rps * seconds;
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long intendedStart = start + i * intervalNanos;
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Endpoint endpoint = mix.higherEntry(ThreadLocalRandom.current().nextInt(totalWeight)).getValue();
+            EndpointStats endpointStats = stats.get(endpoint);
+            if (inFlight.get() >= maxInFlight) {
+                endpointStats.recordDropped();
+                continue;
+            }
+            inFlight.incrementAndGet();
+            httpClient.sendAsync(requests.build(endpoint), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, ex) -> {
+                        inFlight.decrementAndGet();
+                        if (ex == null && response.statusCode() < 400) {
+                            endpointStats.recordSuccess(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart));
+                        } else {
+                            endpointStats.recordError();
+                        }
+                    });
+        }
+
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        return stats;
+    }
+
+    // Requests that were still unanswered when run gave up waiting for them
+    public int inFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,46 @@
+package com.customermanagement.config;
+
+import com.customermanagement.model.CustomerIds;
+import org.bson.types.Binary;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+
+import java.util.List;
+
+/**
+ * Converters between the string customer ids of the API and the binary UUIDs they are stored as, see CustomerIds.
+ * The mapping layer uses them for the customerId of a Customer (@MongoId with target type BINARY) when it writes the
+ * document and when it maps query criteria on customerId, and to read the binary _id back into the string.
+ */
+final class CustomerIdConverters {
+
+    private CustomerIdConverters() {
+    }
+
+    static List<Converter<?, ?>> all() {
+        return List.of(StringToBinaryConverter.INSTANCE, BinaryToStringConverter.INSTANCE);
+    }
+
+    // Registered as a reading converter on purpose: a writing converter from String would turn every string written
+    // to MongoDB into binary. As a reading converter it only serves the id conversion, which goes through the
+    // conversion service, and the read of a Binary property, of which there is none.
+    @ReadingConverter
+    enum StringToBinaryConverter implements Converter<String, Binary> {
+        INSTANCE;
+
+        @Override
+        public Binary convert(String source) {
+            return CustomerIds.toBinary(source);
+        }
+    }
+
+    @ReadingConverter
+    enum BinaryToStringConverter implements Converter<Binary, String> {
+        INSTANCE;
+
+        @Override
+        public String convert(Binary source) {
+            return CustomerIds.fromBinary(source);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.customermanagement.config;
+
+import com.customermanagement.enums.RejectionPolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * The bounded thread pools of the service, each one a bulkhead of its own so that a slow dependency only uses up
+ * the threads of the work that depends on it. None of them is used to serve requests.
+ * Spring Boot publishes pool size, active threads and queue length of every pool as the executor.* metrics,
+ * tagged with the bean name. Tasks that didn't fit are counted in customer.executor.rejected.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class ExecutorConfig {
+
+    private final MeterRegistry meterRegistry;
+
+    // Any executor bean switches off the one Spring Boot configures for @Async and async MVC requests (the export),
+    // so that one is declared again here, built from the spring.task.execution properties like Boot would.
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+    @Primary
+    public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder builder,
+                                                          @Value("${customer.executors.async.rejection-policy:SHED}") RejectionPolicy rejectionPolicy) {
+        ThreadPoolTaskExecutor executor = builder.build();
+        executor.setRejectedExecutionHandler(rejectionHandler(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, rejectionPolicy));
+        return executor;
+    }
+
+    // Hands the sends of the outbox relay to the broker. A broker that is down or slow blocks these threads
+    // for up to max.block.ms per send, and once the queue is full the relay stops for the tick.
+    @Bean
+    public ThreadPoolTaskExecutor brokerPublishExecutor(@Value("${customer.executors.broker-publish.threads:4}") int threads,
+                                                        @Value("${customer.executors.broker-publish.queue-capacity:1000}") int queueCapacity,
+                                                        @Value("${customer.executors.broker-publish.rejection-policy:SPILL}") RejectionPolicy rejectionPolicy) {
+        return boundedExecutor("brokerPublishExecutor", "broker-publish-", threads, queueCapacity, rejectionPolicy);
+    }
+
+    // Runs the chunks of large id lookups against MongoDB in parallel. When it is saturated the request thread
+    // runs the chunk itself, which slows that request down instead of failing it.
+    @Bean
+    public ThreadPoolTaskExecutor customerFetchExecutor(@Value("${customer.set-query.fetch-parallelism:4}") int parallelism,
+                                                        @Value("${customer.executors.customer-fetch.queue-capacity:64}") int queueCapacity,
+                                                        @Value("${customer.executors.customer-fetch.rejection-policy:CALLER_RUNS}") RejectionPolicy rejectionPolicy) {
+        return boundedExecutor("customerFetchExecutor", "customer-fetch-", parallelism, queueCapacity, rejectionPolicy);
+    }
+
+    private ThreadPoolTaskExecutor boundedExecutor(String name, String threadNamePrefix, int threads, int queueCapacity, RejectionPolicy rejectionPolicy) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setRejectedExecutionHandler(rejectionHandler(name, rejectionPolicy));
+        return executor;
+    }
+
+    private RejectedExecutionHandler rejectionHandler(String name, RejectionPolicy rejectionPolicy) {
+        Counter rejected = Counter.builder("customer.executor.rejected")
+                .description("Tasks that found the pool and its queue full")
+                .tag("name", name)
+                .tag("policy", rejectionPolicy.name())
+                .register(meterRegistry);
+        // SPILL rejects like SHED here, what is left behind for a retry is up to the submitter
+        RejectedExecutionHandler policy = rejectionPolicy == RejectionPolicy.CALLER_RUNS
+                ? new ThreadPoolExecutor.CallerRunsPolicy()
+                : new ThreadPoolExecutor.AbortPolicy();
+        return (task, executor) -> {
+            rejected.increment();
+            policy.rejectedExecution(task, executor);
+        };
+    }
+}
@@ -1,5 +1,9 @@
 package com.customermanagement.config;
 
+import com.customermanagement.enums.EventFormat;
+import com.customermanagement.infra.broker.codec.CustomerEventDeserializer;
+import com.customermanagement.infra.broker.codec.CustomerEventSerializer;
+import com.customermanagement.model.CustomerEvent;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
@@ -8,9 +12,13 @@ import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.*;
 import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import reactor.kafka.sender.KafkaSender;
+import reactor.kafka.sender.SenderOptions;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -24,43 +32,101 @@ public class KafkaConfig {
     @Value("${spring.kafka.producer.properties.max.block.ms}")
     private String producerTimeOut;
 
+    // BINARY, or JSON to read the events with the Kafka console tools. Consumers read both.
+    @Value("${customer.broker.event-format:BINARY}")
+    private EventFormat eventFormat;
+
+    @Value("${spring.kafka.producer.properties.customer.creation.topic}")
+    private String customerEventsTopic;
+
+    // Events are keyed by customerId, so the events of a customer stay in one partition and in order.
+    // Raising the count later moves keys to other partitions, the order only holds again for events published after.
+    @Value("${customer.broker.topic.partitions:6}")
+    private int topicPartitions;
+
+    @Value("${customer.broker.topic.replicas:1}")
+    private int topicReplicas;
+
+    // Compression of the record batches: none, gzip, snappy, lz4 or zstd
+    @Value("${customer.broker.compression-type:lz4}")
+    private String compressionType;
+
+    // How long the producer waits for more events to fill a batch, and how large a batch per partition can get
+    @Value("${customer.broker.producer.linger-ms:10}")
+    private int lingerMillis;
+
+    @Value("${customer.broker.producer.batch-size:65536}")
+    private int batchSize;
+
+    // Consumer threads per instance, each one takes a share of the partitions
+    @Value("${customer.broker.consumer.concurrency:3}")
+    private int consumerConcurrency;
+
+    @Value("${customer.broker.consumer.max-poll-records:500}")
+    private int maxPollRecords;
+
+    @Bean
+    public ProducerFactory<String, CustomerEvent> producerFactory() {
+        return new DefaultKafkaProducerFactory<>(producerProperties(), new StringSerializer(), new CustomerEventSerializer(eventFormat));
+    }
+
+    // Sends without blocking a thread on the acknowledgement, used by the reactive profile
     @Bean
-    public ProducerFactory<String, String> producerFactory() {
+    @Profile("reactive")
+    public KafkaSender<String, CustomerEvent> kafkaSender() {
+        return KafkaSender.create(SenderOptions.<String, CustomerEvent>create(producerProperties())
+                .withKeySerializer(new StringSerializer())
+                .withValueSerializer(new CustomerEventSerializer(eventFormat)));
+    }
+
+    private Map<String, Object> producerProperties() {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         configProps.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, producerTimeOut);
-        return new DefaultKafkaProducerFactory<>(configProps);
+        configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, lingerMillis);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        // Retries neither duplicate nor reorder events, with up to 5 batches in flight per partition
+        configProps.put(ProducerConfig.ACKS_CONFIG, "all");
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        configProps.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+        return configProps;
     }
 
     @Bean
-    public KafkaTemplate<String, String> kafkaTemplate() {
+    public KafkaTemplate<String, CustomerEvent> kafkaTemplate() {
         return new KafkaTemplate<>(producerFactory());
     }
 
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    public ConsumerFactory<String, CustomerEvent> consumerFactory() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, "customer-group");
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        return new DefaultKafkaConsumerFactory<>(props);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), customerEventDeserializer());
+    }
+
+    // An event that can't be read arrives as a null value and is handed on with its key only, instead of failing every poll
+    public static ErrorHandlingDeserializer<CustomerEvent> customerEventDeserializer() {
+        return new ErrorHandlingDeserializer<>(new CustomerEventDeserializer());
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+    public ConcurrentKafkaListenerContainerFactory<String, CustomerEvent> kafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, CustomerEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
+        // Handlers get all records of a poll at once
+        factory.setBatchListener(true);
+        factory.setConcurrency(consumerConcurrency);
         return factory;
     }
 
     @Bean
     public NewTopic customerCreatedTopic() {
-        return TopicBuilder.name("customer-created")
-                .partitions(1)
-                .replicas(1)
+        return TopicBuilder.name(customerEventsTopic)
+                .partitions(topicPartitions)
+                .replicas(topicReplicas)
                 .build();
     }
 }
\ No newline at end of file
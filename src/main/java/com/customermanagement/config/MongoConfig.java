@@ -1,9 +1,92 @@
 package com.customermanagement.config;
 
+import com.mongodb.ReadPreference;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.ReactiveMongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
+import org.springframework.data.mongodb.repository.config.EnableReactiveMongoRepositories;
+
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @EnableMongoRepositories(basePackages = "com.customermanagement.repository")
 public class MongoConfig {
-}
\ No newline at end of file
+
+    // Used to write a customer and its outbox event atomically. Spring Boot builds the TransactionTemplate on top of it.
+    @Bean
+    public MongoTransactionManager transactionManager(MongoDatabaseFactory mongoDatabaseFactory) {
+        return new MongoTransactionManager(mongoDatabaseFactory);
+    }
+
+    // Customer ids are strings in the API and binary UUIDs in MongoDB. Spring Boot hands these to the blocking and
+    // the reactive template alike.
+    @Bean
+    public MongoCustomConversions mongoCustomConversions() {
+        return new MongoCustomConversions(CustomerIdConverters.all());
+    }
+
+    // Every write and every read that has to see it goes to the primary. Declared here, as Spring Boot backs off
+    // from its own template once there is a second one.
+    @Bean
+    @Primary
+    public MongoTemplate mongoTemplate(MongoDatabaseFactory mongoDatabaseFactory, MongoConverter mongoConverter) {
+        return new MongoTemplate(mongoDatabaseFactory, mongoConverter);
+    }
+
+    /**
+     * For the list, set and export queries with EVENTUAL consistency, see ReadConsistency. Same connection pool
+     * as the primary template, only the read preference differs. Without secondaries it reads the primary.
+     */
+    @Bean
+    public MongoTemplate secondaryPreferredMongoTemplate(MongoDatabaseFactory mongoDatabaseFactory, MongoConverter mongoConverter,
+                                                         @Value("${customer.read.max-staleness-seconds:90}") long maxStalenessSeconds) {
+        MongoTemplate template = new MongoTemplate(mongoDatabaseFactory, mongoConverter);
+        template.setReadPreference(secondaryPreferred(maxStalenessSeconds));
+        return template;
+    }
+
+    static ReadPreference secondaryPreferred(long maxStalenessSeconds) {
+        return ReadPreference.secondaryPreferred(maxStalenessSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The reactive repositories and transactions, only set up for the reactive variant of the API.
+     * The blocking repositories stay available there for the background jobs (outbox relay, indexes, caches).
+     */
+    @Configuration
+    @Profile("reactive")
+    @EnableReactiveMongoRepositories(basePackages = "com.customermanagement.repository")
+    public static class ReactiveMongoConfig {
+
+        // Spring Boot builds the TransactionalOperator on top of it
+        @Bean
+        public ReactiveMongoTransactionManager reactiveTransactionManager(ReactiveMongoDatabaseFactory reactiveMongoDatabaseFactory) {
+            return new ReactiveMongoTransactionManager(reactiveMongoDatabaseFactory);
+        }
+
+        @Bean
+        @Primary
+        public ReactiveMongoTemplate reactiveMongoTemplate(ReactiveMongoDatabaseFactory reactiveMongoDatabaseFactory, MongoConverter mongoConverter) {
+            return new ReactiveMongoTemplate(reactiveMongoDatabaseFactory, mongoConverter);
+        }
+
+        @Bean
+        public ReactiveMongoTemplate secondaryPreferredReactiveMongoTemplate(ReactiveMongoDatabaseFactory reactiveMongoDatabaseFactory, MongoConverter mongoConverter,
+                                                                             @Value("${customer.read.max-staleness-seconds:90}") long maxStalenessSeconds) {
+            ReactiveMongoTemplate template = new ReactiveMongoTemplate(reactiveMongoDatabaseFactory, mongoConverter);
+            template.setReadPreference(secondaryPreferred(maxStalenessSeconds));
+            return template;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.customermanagement.controller;
+
+import com.customermanagement.dto.CustomerAnalytics;
+import com.customermanagement.dto.SummaryBucket;
+import com.customermanagement.service.analytics.CustomerAnalyticsService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.enums.ParameterIn;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/customers/analytics")
+@Profile("!reactive")
+@RequiredArgsConstructor
+@Slf4j
+public class CustomerAnalyticsController {
+
+    private final CustomerAnalyticsService customerAnalyticsService;
+
+    @GetMapping
+    @Operation(
+            summary = "Customer counts per state, city, age band and spending limit band, from the pre-aggregated summary",
+            parameters = @Parameter(
+                    name = "top",
+                    description = "How many states and cities to list, most customers first. Capped at customer.analytics.max-top",
+                    in = ParameterIn.QUERY,
+                    example = "20"
+            )
+    )
+    public ResponseEntity<CustomerAnalytics> getAnalytics(@RequestParam(required = false) Integer top) {
+        log.info("Received request for customer analytics: top={}", top);
+        return ResponseEntity.ok(customerAnalyticsService.getAnalytics(top));
+    }
+
+    @GetMapping("/{dimension}")
+    @Operation(
+            summary = "Customer counts of one dimension: state, city, age-band or spending-limit",
+            parameters = @Parameter(
+                    name = "top",
+                    description = "How many states or cities to list, most customers first. All bands are always listed",
+                    in = ParameterIn.QUERY,
+                    example = "20"
+            )
+    )
+    public ResponseEntity<List<SummaryBucket>> getBreakdown(@PathVariable String dimension,
+                                                            @RequestParam(required = false) Integer top) {
+        log.info("Received request for customer analytics: dimension={}, top={}", dimension, top);
+        return ResponseEntity.ok(customerAnalyticsService.getBreakdown(dimension, top));
+    }
+}
@@ -1,5 +1,14 @@
 package com.customermanagement.controller;
 
+import com.customermanagement.dto.BulkCreateResponse;
+import com.customermanagement.dto.BulkUpsertResponse;
+import com.customermanagement.dto.CustomerPage;
+import com.customermanagement.dto.CustomerPatch;
+import com.customermanagement.dto.MultiGetRequest;
+import com.customermanagement.dto.MultiGetResponse;
+import com.customermanagement.dto.SetQueryRequest;
+import com.customermanagement.enums.ReadConsistency;
+import com.customermanagement.infra.cache.CustomerCollectionVersion;
 import com.customermanagement.model.Customer;
 import com.customermanagement.service.impl.CustomerServiceImpl;
 import com.customermanagement.validation.ListOfTwoLists;
@@ -11,22 +20,32 @@ import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/customers")
+@Profile("!reactive")
 @RequiredArgsConstructor
 @Slf4j
 @Validated
 public class CustomerController {
 
     private final CustomerServiceImpl customerService;
+    private final CustomerCollectionVersion collectionVersion;
 
     @PostMapping
     @Operation(summary = "Create a new customer")
@@ -61,6 +80,65 @@ public class CustomerController {
         return new ResponseEntity<>(createdCustomer, HttpStatus.CREATED);
     }
 
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @Operation(summary = "Create customers in bulk from a JSON array or NDJSON, with a per record report")
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(
+            content = @Content(
+                    mediaType = "application/x-ndjson",
+                    examples = @ExampleObject(
+                            value = "{\"firstName\": \"John\", \"lastName\": \"Doe\", \"age\": 30, \"addresses\": [{\"type\": \"Home\", \"street\": \"123 Main St\", \"city\": \"Anytown\", \"state\": \"CA\", \"zipCode\": \"12345\"}]}\n" +
+                                    "{\"firstName\": \"Jane\", \"lastName\": \"Doe\", \"age\": 17, \"addresses\": []}"
+                    )
+            )
+    )
+    public ResponseEntity<BulkCreateResponse> createCustomersInBulk(HttpServletRequest request) throws IOException {
+        // The body is read as a stream by the service, so the payload is never fully deserialized into memory here
+        log.info("Received request to create customers in bulk: contentType={}", request.getContentType());
+        BulkCreateResponse response = customerService.createCustomersInBulk(request.getInputStream());
+        log.info("Bulk create finished: total={}, created={}, failed={}", response.getTotal(), response.getCreated(), response.getFailed());
+        return ResponseEntity.ok(response);
+    }
+
+    @PutMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @Operation(summary = "Create or update customers in bulk from a JSON array or NDJSON. Records with the customerId of a stored customer " +
+            "update it, and only at their version if they have one")
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(
+            content = @Content(
+                    mediaType = "application/x-ndjson",
+                    examples = @ExampleObject(
+                            value = "{\"customerId\": \"0190a5f2-6c1e-7d43-9b1a-2f4c8e7d1a35\", \"version\": 2, \"firstName\": \"John\", \"lastName\": \"Doe\", \"age\": 31, \"addresses\": [{\"type\": \"Home\", \"street\": \"123 Main St\", \"city\": \"Anytown\", \"state\": \"CA\", \"zipCode\": \"12345\"}]}\n" +
+                                    "{\"firstName\": \"Jane\", \"lastName\": \"Doe\", \"age\": 28, \"addresses\": [{\"type\": \"Work\", \"street\": \"1 Market St\", \"city\": \"Othertown\", \"state\": \"NY\", \"zipCode\": \"10001\"}]}"
+                    )
+            )
+    )
+    public ResponseEntity<BulkUpsertResponse> upsertCustomersInBulk(HttpServletRequest request) throws IOException {
+        log.info("Received request to upsert customers in bulk: contentType={}", request.getContentType());
+        BulkUpsertResponse response = customerService.upsertCustomersInBulk(request.getInputStream());
+        log.info("Bulk upsert finished: total={}, created={}, updated={}, conflicts={}, failed={}",
+                response.getTotal(), response.getCreated(), response.getUpdated(), response.getConflicts(), response.getFailed());
+        return ResponseEntity.ok(response);
+    }
+
+    @PatchMapping("/{customerId}")
+    @Operation(summary = "Change some fields of a customer. With a version the change is only made at that version, a 409 tells it was changed meanwhile")
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = CustomerPatch.class),
+                    examples = @ExampleObject(
+                            value = "{\n" +
+                                    "  \"version\": 2,\n" +
+                                    "  \"mobileNumber\": \"+1987654321\",\n" +
+                                    "  \"removeAddressTypes\": [\"Work\"]\n" +
+                                    "}"
+                    )
+            )
+    )
+    public ResponseEntity<Customer> updateCustomer(@PathVariable String customerId, @Valid @RequestBody CustomerPatch patch) {
+        log.info("Received request to update customer: id={}", customerId);
+        return ResponseEntity.ok(customerService.updateCustomer(customerId, patch));
+    }
+
     @GetMapping
     @Operation(
             summary = "Get customers based on dynamic filters",
@@ -82,16 +160,137 @@ public class CustomerController {
                             description = "State of the customer",
                             in = ParameterIn.QUERY,
                             example = "la"
+                    ),
+                    @Parameter(
+                            name = "match",
+                            description = "How filter values are matched: EXACT, PREFIX or CONTAINS. Case and accents are ignored. Defaults to customer.query.default-match-mode. A CONTAINS search on name alone is ranked by match quality instead of ordered by id",
+                            in = ParameterIn.QUERY,
+                            example = "PREFIX"
+                    ),
+                    @Parameter(
+                            name = "cursor",
+                            description = "nextCursor of the previous page, leave out for the first page",
+                            in = ParameterIn.QUERY
+                    ),
+                    @Parameter(
+                            name = "size",
+                            description = "Page size, capped at customer.query.max-page-size",
+                            in = ParameterIn.QUERY,
+                            example = "25"
+                    ),
+                    @Parameter(
+                            name = "fields",
+                            description = "Comma separated fields to return, e.g. firstName,lastName,addresses.city. The customerId is always returned. Leave out for all fields",
+                            in = ParameterIn.QUERY,
+                            example = "firstName,lastName"
+                    ),
+                    @Parameter(
+                            name = "view",
+                            description = "Named set of fields instead of fields: ID, SUMMARY, CONTACT or FULL. Also taken by the set endpoints, where ID is answered from the _id index alone",
+                            in = ParameterIn.QUERY,
+                            example = "SUMMARY"
+                    ),
+                    @Parameter(
+                            name = "consistency",
+                            description = "STRONG reads the MongoDB primary and skips the in-memory replica, the query cache and the 304 shortcut. EVENTUAL prefers a secondary at most customer.read.max-staleness-seconds behind and may be served by those. Defaults to customer.read.default-consistency, STRONG unless configured otherwise. Also taken by the export and set endpoints",
+                            in = ParameterIn.QUERY,
+                            example = "STRONG"
                     )
             }
     )
-    public ResponseEntity<List<Customer>> getCustomers(
+    public ResponseEntity<CustomerPage> getCustomers(
             @RequestParam Map<String, String> params,
-            @RequestParam(defaultValue = "AND") String operation) {
+            @RequestParam(defaultValue = "AND") String operation,
+            @RequestParam(required = false) String match,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String view,
+            @RequestParam(required = false) String consistency,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         log.info("Received request to get customers with filters: params={}, operation={}", params, operation);
-        List<Customer> customers = customerService.getCustomers(params, operation);
-        log.info("Retrieved {} customers matching the criteria", customers.size());
-        return ResponseEntity.ok(customers);
+        // A poll whose page hasn't changed gets a 304 without a query, the ETag comes from the collection version
+        // Not for strong reads, asked for or by default: the version doesn't know about writes on other instances that haven't reached this one yet
+        boolean eventual = customerService.resolveConsistency(consistency) == ReadConsistency.EVENTUAL;
+        String etag = collectionVersion.isEnabled() && eventual ? collectionVersion.etag(params, acceptEncoding) : null;
+        if (etag != null && CustomerCollectionVersion.matches(ifNoneMatch, etag)) {
+            log.debug("Customers unchanged since ETag {}", etag);
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        CustomerPage page = customerService.getCustomers(params, operation, match, cursor, size, fields, view, consistency);
+        log.info("Retrieved {} customers matching the criteria", page.getCustomers().size());
+        // Clients are asked to revalidate with the ETag before reusing a page
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().cacheControl(CacheControl.noCache());
+        return (etag == null ? response : response.eTag(etag)).body(page);
+    }
+
+    @GetMapping("/{customerId}")
+    @Operation(summary = "Get a customer by id")
+    public ResponseEntity<Customer> getCustomerById(@PathVariable String customerId) {
+        log.info("Received request to get customer: id={}", customerId);
+        return ResponseEntity.ok(customerService.getCustomerById(customerId));
+    }
+
+    @PostMapping("/_mget")
+    @Operation(summary = "Get several customers by id at once, ids without a customer are listed in notFound")
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = MultiGetRequest.class),
+                    examples = @ExampleObject(
+                            value = "{\"ids\": [\"d6f8202d-5dd0-4887-a5ce-da30325689f5\", \"84365e2c-41fe-40b0-b26a-e85cd48ecf99\"]}"
+                    )
+            )
+    )
+    public ResponseEntity<MultiGetResponse> getCustomersByIds(@Valid @RequestBody MultiGetRequest request) {
+        log.info("Received request to get customers by id: ids={}", request.getIds().size());
+        return ResponseEntity.ok(customerService.getCustomersByIds(request.getIds()));
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Stream all customers matching the filters as NDJSON, takes the same filters as the list endpoint")
+    public ResponseEntity<StreamingResponseBody> exportCustomers(
+            @RequestParam Map<String, String> params,
+            @RequestParam(defaultValue = "AND") String operation,
+            @RequestParam(required = false) String match,
+            @RequestParam(required = false) String consistency) {
+        log.info("Received request to export customers with filters: params={}, operation={}", params, operation);
+        // Written on an async thread once this method returns, the request thread isn't held for the whole export
+        StreamingResponseBody body = outputStream -> customerService.exportCustomers(params, operation, match, consistency, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @PostMapping("/set-query")
+    @Operation(summary = "Get customers selected by a set expression over named id lists, using ∩ (or &), ∪ (or |), \\ (or -) and parentheses")
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(
+            content = @Content(
+                    mediaType = "application/json",
+                    schema = @Schema(implementation = SetQueryRequest.class),
+                    examples = @ExampleObject(
+                            value = "{\n" +
+                                    "  \"expression\": \"(A ∩ B) \\\\ C\",\n" +
+                                    "  \"lists\": {\n" +
+                                    "    \"A\": [\"d6f8202d-5dd0-4887-a5ce-da30325689f5\", \"84365e2c-41fe-40b0-b26a-e85cd48ecf99\"],\n" +
+                                    "    \"B\": [\"84365e2c-41fe-40b0-b26a-e85cd48ecf99\", \"d6f8202d-5dd0-4887-a5ce-da30325689f5\"],\n" +
+                                    "    \"C\": [\"de326f2e-b2fa-42a9-a9fe-300a62516bb6\"]\n" +
+                                    "  }\n" +
+                                    "}"
+                    )
+            )
+    )
+    public ResponseEntity<CustomerPage> getCustomersBySetExpression(@Valid @RequestBody SetQueryRequest request,
+                                                                    @RequestParam(required = false) String cursor,
+                                                                    @RequestParam(required = false) Integer size,
+                                                                    @RequestParam(required = false) String fields,
+                                                                    @RequestParam(required = false) String view,
+                                                                    @RequestParam(required = false) String consistency) {
+        log.info("Received set query: expression={}, lists={}", request.getExpression(), request.getLists().keySet());
+        CustomerPage page = customerService.getCustomersBySetExpression(request.getExpression(), request.getLists(), cursor, size, fields, view, consistency);
+        log.info("Retrieved {} customers for the set query", page.getCustomers().size());
+        return ResponseEntity.ok(page);
     }
 
     @PostMapping("/only-in-a")
@@ -108,11 +307,16 @@ public class CustomerController {
                     )
             )
     )
-    public ResponseEntity<List<Customer>> getCustomersOnlyInA(@Valid @ListOfTwoLists @RequestBody List<List<String>> lists) {
+    public ResponseEntity<CustomerPage> getCustomersOnlyInA(@Valid @ListOfTwoLists @RequestBody List<List<String>> lists,
+                                                            @RequestParam(required = false) String cursor,
+                                                            @RequestParam(required = false) Integer size,
+                                                            @RequestParam(required = false) String fields,
+                                                            @RequestParam(required = false) String view,
+                                                            @RequestParam(required = false) String consistency) {
         log.info("Received request to get customers only in list A: listA size={}, listB size={}", lists.get(0).size(), lists.get(1).size());
-        List<Customer> customers = customerService.getCustomersOnlyInA(lists.get(0), lists.get(1));
-        log.info("Retrieved {} customers only in list A", customers.size());
-        return ResponseEntity.ok(customers);
+        CustomerPage page = customerService.getCustomersOnlyInA(lists.get(0), lists.get(1), cursor, size, fields, view, consistency);
+        log.info("Retrieved {} customers only in list A", page.getCustomers().size());
+        return ResponseEntity.ok(page);
     }
 
     @PostMapping("/only-in-b")
@@ -129,11 +333,16 @@ public class CustomerController {
                     )
             )
     )
-    public ResponseEntity<List<Customer>> getCustomersOnlyInB(@Valid @ListOfTwoLists @RequestBody List<List<String>> lists) {
+    public ResponseEntity<CustomerPage> getCustomersOnlyInB(@Valid @ListOfTwoLists @RequestBody List<List<String>> lists,
+                                                            @RequestParam(required = false) String cursor,
+                                                            @RequestParam(required = false) Integer size,
+                                                            @RequestParam(required = false) String fields,
+                                                            @RequestParam(required = false) String view,
+                                                            @RequestParam(required = false) String consistency) {
         log.info("Received request to get customers only in list B: listA size={}, listB size={}", lists.get(0).size(), lists.get(1).size());
-        List<Customer> customers = customerService.getCustomersOnlyInB(lists.get(0), lists.get(1));
-        log.info("Retrieved {} customers only in list B", customers.size());
-        return ResponseEntity.ok(customers);
+        CustomerPage page = customerService.getCustomersOnlyInB(lists.get(0), lists.get(1), cursor, size, fields, view, consistency);
+        log.info("Retrieved {} customers only in list B", page.getCustomers().size());
+        return ResponseEntity.ok(page);
     }
 
     @PostMapping("/in-both")
@@ -150,10 +359,15 @@ public class CustomerController {
                     )
             )
     )
-    public ResponseEntity<List<Customer>> getCustomersInBoth(@Valid  @ListOfTwoLists @RequestBody List<List<String>> lists) {
+    public ResponseEntity<CustomerPage> getCustomersInBoth(@Valid  @ListOfTwoLists @RequestBody List<List<String>> lists,
+                                                           @RequestParam(required = false) String cursor,
+                                                           @RequestParam(required = false) Integer size,
+                                                           @RequestParam(required = false) String fields,
+                                                           @RequestParam(required = false) String view,
+                                                           @RequestParam(required = false) String consistency) {
         log.info("Received request to get customers in both lists: listA size={}, listB size={}", lists.get(0).size(), lists.get(1).size());
-        List<Customer> customers = customerService.getCustomersInBoth(lists.get(0), lists.get(1));
-        log.info("Retrieved {} customers in both lists", customers.size());
-        return ResponseEntity.ok(customers);
+        CustomerPage page = customerService.getCustomersInBoth(lists.get(0), lists.get(1), cursor, size, fields, view, consistency);
+        log.info("Retrieved {} customers in both lists", page.getCustomers().size());
+        return ResponseEntity.ok(page);
     }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package com.customermanagement.controller;
+
+import com.customermanagement.dto.BulkCreateResponse;
+import com.customermanagement.dto.CustomerPage;
+import com.customermanagement.dto.MultiGetRequest;
+import com.customermanagement.dto.MultiGetResponse;
+import com.customermanagement.dto.SetQueryRequest;
+import com.customermanagement.enums.ReadConsistency;
+import com.customermanagement.infra.cache.CustomerCollectionVersion;
+import com.customermanagement.model.Customer;
+import com.customermanagement.service.impl.ReactiveCustomerServiceImpl;
+import com.customermanagement.validation.ListOfTwoLists;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The customer API on WebFlux, enabled by the reactive profile instead of CustomerController.
+ * Same URLs, parameters, validation and responses, so the two can be run side by side and compared.
+ * The request examples are documented on CustomerController.
+ */
+@RestController
+@RequestMapping("/api/customers")
+@Profile("reactive")
+@RequiredArgsConstructor
+@Slf4j
+@Validated
+public class ReactiveCustomerController {
+
+    private final ReactiveCustomerServiceImpl customerService;
+    private final CustomerCollectionVersion collectionVersion;
+
+    @PostMapping
+    @Operation(summary = "Create a new customer")
+    public Mono<ResponseEntity<Customer>> createCustomer(@Valid @RequestBody Customer customerInput) {
+        log.info("Received request to create customer: firstName={}, lastName={}", customerInput.getFirstName(), customerInput.getLastName());
+        return customerService.createCustomer(customerInput)
+                .doOnNext(createdCustomer -> log.info("Customer created successfully: id={}", createdCustomer.getCustomerId()))
+                .map(createdCustomer -> new ResponseEntity<>(createdCustomer, HttpStatus.CREATED));
+    }
+
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @Operation(summary = "Create customers in bulk from a JSON array or NDJSON, with a per record report")
+    public Mono<ResponseEntity<BulkCreateResponse>> createCustomersInBulk(@RequestBody Flux<JsonNode> records) {
+        // Decoded one record at a time as the body arrives, a JSON array is split into its elements as well
+        log.info("Received request to create customers in bulk");
+        return customerService.createCustomersInBulk(records)
+                .doOnNext(response -> log.info("Bulk create finished: total={}, created={}, failed={}", response.getTotal(), response.getCreated(), response.getFailed()))
+                .map(ResponseEntity::ok);
+    }
+
+    @GetMapping
+    @Operation(summary = "Get customers based on dynamic filters")
+    public Mono<ResponseEntity<CustomerPage>> getCustomers(
+            @RequestParam Map<String, String> params,
+            @RequestParam(defaultValue = "AND") String operation,
+            @RequestParam(required = false) String match,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String fields,
+            @RequestParam(required = false) String view,
+            @RequestParam(required = false) String consistency,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        log.info("Received request to get customers with filters: params={}, operation={}", params, operation);
+        // Same conditional GET as CustomerController, none for strong reads
+        String etag = collectionVersion.isEnabled() && !ReadConsistency.STRONG.name().equalsIgnoreCase(consistency) ? collectionVersion.etag(params, acceptEncoding) : null;
+        if (etag != null && CustomerCollectionVersion.matches(ifNoneMatch, etag)) {
+            return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build());
+        }
+        return customerService.getCustomers(params, operation, match, cursor, size, fields, view, consistency)
+                .doOnNext(page -> log.info("Retrieved {} customers matching the criteria", page.getCustomers().size()))
+                .map(page -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok().cacheControl(CacheControl.noCache());
+                    return (etag == null ? response : response.eTag(etag)).body(page);
+                });
+    }
+
+    @GetMapping("/{customerId}")
+    @Operation(summary = "Get a customer by id")
+    public Mono<ResponseEntity<Customer>> getCustomerById(@PathVariable String customerId) {
+        log.info("Received request to get customer: id={}", customerId);
+        return customerService.getCustomerById(customerId).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/_mget")
+    @Operation(summary = "Get several customers by id at once, ids without a customer are listed in notFound")
+    public Mono<ResponseEntity<MultiGetResponse>> getCustomersByIds(@Valid @RequestBody MultiGetRequest request) {
+        log.info("Received request to get customers by id: ids={}", request.getIds().size());
+        return customerService.getCustomersByIds(request.getIds()).map(ResponseEntity::ok);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Stream all customers matching the filters as NDJSON, takes the same filters as the list endpoint")
+    public Flux<Customer> exportCustomers(
+            @RequestParam Map<String, String> params,
+            @RequestParam(defaultValue = "AND") String operation,
+            @RequestParam(required = false) String match,
+            @RequestParam(required = false) String consistency) {
+        log.info("Received request to export customers with filters: params={}, operation={}", params, operation);
+        // Written one line per customer, at the pace the client reads
+        return customerService.exportCustomers(params, operation, match, consistency);
+    }
+
+    @PostMapping("/set-query")
+    @Operation(summary = "Get customers selected by a set expression over named id lists, using ∩ (or &), ∪ (or |), \\ (or -) and parentheses")
+    public Mono<ResponseEntity<CustomerPage>> getCustomersBySetExpression(@Valid @RequestBody SetQueryRequest request,
+                                                                          @RequestParam(required = false) String cursor,
+                                                                          @RequestParam(required = false) Integer size,
+                                                                          @RequestParam(required = false) String fields,
+                                                                          @RequestParam(required = false) String view,
+                                                                          @RequestParam(required = false) String consistency) {
+        log.info("Received set query: expression={}, lists={}", request.getExpression(), request.getLists().keySet());
+        return customerService.getCustomersBySetExpression(request.getExpression(), request.getLists(), cursor, size, fields, view, consistency)
+                .doOnNext(page -> log.info("Retrieved {} customers for the set query", page.getCustomers().size()))
+                .map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/only-in-a")
+    @Operation(summary = "Get customers only in list A")
+    public Mono<ResponseEntity<CustomerPage>> getCustomersOnlyInA(@Valid @ListOfTwoLists @RequestBody List<List<String>> lists,
+                                                                  @RequestParam(required = false) String cursor,
+                                                                  @RequestParam(required = false) Integer size,
+                                                                  @RequestParam(required = false) String fields,
+                                                                  @RequestParam(required = false) String view,
+                                                                  @RequestParam(required = false) String consistency) {
+        log.info("Received request to get customers only in list A: listA size={}, listB size={}", lists.get(0).size(), lists.get(1).size());
+        return customerService.getCustomersOnlyInA(lists.get(0), lists.get(1), cursor, size, fields, view, consistency).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/only-in-b")
+    @Operation(summary = "Get customers only in list B")
+    public Mono<ResponseEntity<CustomerPage>> getCustomersOnlyInB(@Valid @ListOfTwoLists @RequestBody List<List<String>> lists,
+                                                                  @RequestParam(required = false) String cursor,
+                                                                  @RequestParam(required = false) Integer size,
+                                                                  @RequestParam(required = false) String fields,
+                                                                  @RequestParam(required = false) String view,
+                                                                  @RequestParam(required = false) String consistency) {
+        log.info("Received request to get customers only in list B: listA size={}, listB size={}", lists.get(0).size(), lists.get(1).size());
+        return customerService.getCustomersOnlyInB(lists.get(0), lists.get(1), cursor, size, fields, view, consistency).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/in-both")
+    @Operation(summary = "Get customers in both lists")
+    public Mono<ResponseEntity<CustomerPage>> getCustomersInBoth(@Valid @ListOfTwoLists @RequestBody List<List<String>> lists,
+                                                                 @RequestParam(required = false) String cursor,
+                                                                 @RequestParam(required = false) Integer size,
+                                                                 @RequestParam(required = false) String fields,
+                                                                 @RequestParam(required = false) String view,
+                                                                 @RequestParam(required = false) String consistency) {
+        log.info("Received request to get customers in both lists: listA size={}, listB size={}", lists.get(0).size(), lists.get(1).size());
+        return customerService.getCustomersInBoth(lists.get(0), lists.get(1), cursor, size, fields, view, consistency).map(ResponseEntity::ok);
+    }
+}
@@ -0,0 +1,17 @@
+package com.customermanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@Builder
+public class BulkCreateResponse {
+    private int total;
+    private int created;
+    private int failed;
+    private List<BulkRecordResult> results;
+}
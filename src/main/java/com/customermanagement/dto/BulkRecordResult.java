@@ -0,0 +1,37 @@
+package com.customermanagement.dto;
+
+import com.customermanagement.enums.BulkRecordStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+@Builder
+public class BulkRecordResult {
+    // Position of the record in the submitted array / NDJSON stream, starting at 0
+    private int index;
+    private BulkRecordStatus status;
+    private String customerId;
+    private String error;
+
+    public static BulkRecordResult created(int index, String customerId) {
+        return BulkRecordResult.builder().index(index).status(BulkRecordStatus.CREATED).customerId(customerId).build();
+    }
+
+    public static BulkRecordResult updated(int index, String customerId) {
+        return BulkRecordResult.builder().index(index).status(BulkRecordStatus.UPDATED).customerId(customerId).build();
+    }
+
+    public static BulkRecordResult unchanged(int index, String customerId) {
+        return BulkRecordResult.builder().index(index).status(BulkRecordStatus.UNCHANGED).customerId(customerId).build();
+    }
+
+    public static BulkRecordResult conflict(int index, String customerId, String error) {
+        return BulkRecordResult.builder().index(index).status(BulkRecordStatus.CONFLICT).customerId(customerId).error(error).build();
+    }
+
+    public static BulkRecordResult failed(int index, String error) {
+        return BulkRecordResult.builder().index(index).status(BulkRecordStatus.FAILED).error(error).build();
+    }
+}
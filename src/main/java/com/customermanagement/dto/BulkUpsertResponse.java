@@ -0,0 +1,20 @@
+package com.customermanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@Builder
+public class BulkUpsertResponse {
+    private int total;
+    private int created;
+    private int updated;
+    private int unchanged;
+    private int conflicts;
+    private int failed;
+    private List<BulkRecordResult> results;
+}
@@ -0,0 +1,28 @@
+package com.customermanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@Builder
+public class CustomerAnalytics {
+    private long total;
+
+    // When the counts were last recomputed from the customers, they are kept up to date by increments in between
+    private Instant rebuiltAt;
+
+    // The states and cities with the most customers, most first
+    private List<SummaryBucket> states;
+
+    private List<SummaryBucket> cities;
+
+    // Every band in order, unknown last
+    private List<SummaryBucket> ageBands;
+
+    private List<SummaryBucket> spendingLimits;
+}
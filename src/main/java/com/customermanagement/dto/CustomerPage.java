@@ -0,0 +1,22 @@
+package com.customermanagement.dto;
+
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.model.Customer;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@Builder
+public class CustomerPage {
+    private List<Customer> customers;
+
+    // Pass back as the cursor parameter to get the next page, null on the last page
+    private String nextCursor;
+
+    // How the filter values were matched, null for the set endpoints which have no filters
+    private MatchMode matchMode;
+}
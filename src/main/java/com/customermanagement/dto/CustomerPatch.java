@@ -0,0 +1,48 @@
+package com.customermanagement.dto;
+
+import com.customermanagement.model.Address;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.*;
+import java.util.List;
+
+/**
+ * A partial update of a customer. Fields left out stay as they are.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerPatch {
+    // The version of the customer the client read. If it was changed since, the patch is rejected with a 409.
+    // Without it the patch applies to whatever is stored.
+    @PositiveOrZero(message = "Version must be positive or zero")
+    private Long version;
+
+    @Pattern(regexp = ".*\\S.*", message = "First name must not be blank")
+    private String firstName;
+
+    @Pattern(regexp = ".*\\S.*", message = "Last name must not be blank")
+    private String lastName;
+
+    @Min(value = 18, message = "Age must be at least 18")
+    @Max(value = 150, message = "Age must be less than 150")
+    private Integer age;
+
+    @PositiveOrZero(message = "Spending limit must be positive or zero")
+    private Double spendingLimit;
+
+    @Pattern(regexp = "^\\+?[1-9]\\d{1,14}$", message = "Mobile number must be a valid phone number")
+    private String mobileNumber;
+
+    // Added after the existing addresses
+    @Valid
+    private List<Address> addAddresses;
+
+    // Every address of these types is removed, before addAddresses are added
+    private List<String> removeAddressTypes;
+}
@@ -0,0 +1,16 @@
+package com.customermanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MultiGetRequest {
+    @NotEmpty(message = "At least one id is required")
+    private List<String> ids;
+}
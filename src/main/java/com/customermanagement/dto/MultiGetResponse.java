@@ -0,0 +1,18 @@
+package com.customermanagement.dto;
+
+import com.customermanagement.model.Customer;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@Builder
+public class MultiGetResponse {
+    // In the order of the requested ids, each customer once
+    private List<Customer> customers;
+
+    private List<String> notFound;
+}
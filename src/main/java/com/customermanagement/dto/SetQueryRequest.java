@@ -0,0 +1,26 @@
+package com.customermanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SetQueryRequest {
+    // e.g. "(A ∩ B) \ C", see SetExpression for the syntax
+    @NotBlank(message = "Expression is mandatory")
+    @Size(max = 1000, message = "Expression must be at most 1000 characters")
+    private String expression;
+
+    // Customer id lists by the names used in the expression
+    @NotEmpty(message = "At least one list is required")
+    private Map<String, @NotNull List<String>> lists;
+}
@@ -0,0 +1,15 @@
+package com.customermanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+@Builder
+public class SummaryBucket {
+    // Normalized state, "city, state", or the label of an age or spending limit band
+    private String key;
+
+    private long count;
+}
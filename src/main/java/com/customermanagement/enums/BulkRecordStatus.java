@@ -0,0 +1,10 @@
+package com.customermanagement.enums;
+
+public enum BulkRecordStatus {
+    CREATED,
+    // Only by bulk upserts
+    UPDATED,
+    UNCHANGED,
+    CONFLICT,
+    FAILED
+}
@@ -0,0 +1,25 @@
+package com.customermanagement.enums;
+
+import java.util.Arrays;
+
+public enum CustomerEventType {
+    CREATED(1),
+    // Carries only the fields that changed, and the version they make
+    UPDATED(2);
+
+    // Written to the binary events instead of the name, never change the code of an existing type
+    private final int code;
+
+    CustomerEventType(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    // Null for a type added by a newer producer, so consumers can skip events they don't know
+    public static CustomerEventType fromCode(int code) {
+        return Arrays.stream(values()).filter(type -> type.code == code).findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,28 @@
+package com.customermanagement.enums;
+
+import java.util.List;
+
+/**
+ * Named response shapes of the list and set endpoints, shortcuts for the fields parameter.
+ */
+public enum CustomerView {
+    // Only the customerId, answered from the _id index alone by the set endpoints
+    ID(List.of("customerId")),
+    // Enough to show a customer in a list
+    SUMMARY(List.of("customerId", "firstName", "lastName")),
+    // Names and where to reach the customer, without the rest of the addresses
+    CONTACT(List.of("customerId", "firstName", "lastName", "mobileNumber", "addresses.city", "addresses.state")),
+    // The whole customer, the default
+    FULL(null);
+
+    // Null for all fields
+    private final List<String> fields;
+
+    CustomerView(List<String> fields) {
+        this.fields = fields;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+}
@@ -0,0 +1,13 @@
+package com.customermanagement.enums;
+
+/**
+ * Which instances of the service a consumed customer event is handed to.
+ */
+public enum EventDelivery {
+    // One of them: the instances consume in one stable consumer group and split the partitions between them.
+    // A new group starts at the beginning of the topic, so nothing published before the first start is missed.
+    SHARED,
+    // Every one of them, for state each instance keeps in memory (caches, the replica). Each instance consumes in
+    // a group of its own named after the instance, starting at the latest offset the first time.
+    BROADCAST
+}
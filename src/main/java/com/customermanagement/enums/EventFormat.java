@@ -0,0 +1,11 @@
+package com.customermanagement.enums;
+
+/**
+ * How customer events are written to the broker. Consumers read both, so the format can be switched at any time.
+ */
+public enum EventFormat {
+    // Compact, schema-versioned binary encoding, see CustomerEventCodec
+    BINARY,
+    // Readable with any Kafka tool, for debugging
+    JSON
+}
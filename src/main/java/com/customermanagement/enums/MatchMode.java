@@ -0,0 +1,10 @@
+package com.customermanagement.enums;
+
+public enum MatchMode {
+    // Whole value equals the filter, served by an index seek
+    EXACT,
+    // Value starts with the filter, served by an index range scan
+    PREFIX,
+    // Value contains the filter anywhere. Mongo has to scan the whole index for this one
+    CONTAINS
+}
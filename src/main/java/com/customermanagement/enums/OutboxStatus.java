@@ -0,0 +1,7 @@
+package com.customermanagement.enums;
+
+public enum OutboxStatus {
+    PENDING,
+    // Gave up after the configured number of attempts, kept in the outbox for inspection and manual replay
+    DEAD
+}
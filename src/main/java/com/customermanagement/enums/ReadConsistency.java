@@ -0,0 +1,12 @@
+package com.customermanagement.enums;
+
+/**
+ * Where the list, set and export queries read from, customer.read.default-consistency or consistency= on a request.
+ */
+public enum ReadConsistency {
+    // The primary, sees every acknowledged write. Asked for on a request, it skips the in-memory replica and the query cache too
+    STRONG,
+    // A secondary when there is one within customer.read.max-staleness-seconds of the primary (secondaryPreferred),
+    // so queries don't compete with the writes on the primary
+    EVENTUAL
+}
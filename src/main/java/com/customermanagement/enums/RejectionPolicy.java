@@ -0,0 +1,14 @@
+package com.customermanagement.enums;
+
+/**
+ * What a bounded executor does with a task once its threads are busy and its queue is full.
+ */
+public enum RejectionPolicy {
+    // The submitting thread runs the task itself, which slows the submitter down to the pace of the pool
+    CALLER_RUNS,
+    // The task is rejected and the submitter fails fast, requests get a 503
+    SHED,
+    // The task is rejected like SHED, and the work is left where it came from to be retried later.
+    // Only the broker publishing pool supports it, its work are outbox events that stay in MongoDB.
+    SPILL
+}
@@ -0,0 +1,25 @@
+package com.customermanagement.enums;
+
+public enum SummaryDimension {
+    // A single bucket counting every customer
+    TOTAL(false),
+    // Customers per normalized state of their addresses, a customer counts once per state
+    STATE(true),
+    // Customers per normalized city and state of their addresses
+    CITY(true),
+    // Fixed age bands, see SummaryBuckets
+    AGE_BAND(false),
+    // Fixed spending limit ranges, see SummaryBuckets
+    SPENDING_LIMIT(false);
+
+    // Ranked dimensions have open ended keys and are listed by count, the others by their bands
+    private final boolean ranked;
+
+    SummaryDimension(boolean ranked) {
+        this.ranked = ranked;
+    }
+
+    public boolean isRanked() {
+        return ranked;
+    }
+}
@@ -0,0 +1,7 @@
+package com.customermanagement.exceptions;
+
+public class CustomerVersionConflictException extends RuntimeException {
+    public CustomerVersionConflictException(String message) {
+        super(message);
+    }
+}
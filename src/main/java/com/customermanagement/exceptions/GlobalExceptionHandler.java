@@ -4,13 +4,14 @@ import com.customermanagement.dto.ErrorResponse;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.common.errors.TimeoutException;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.bind.support.WebExchangeBindException;
 
 import javax.validation.ConstraintViolationException;
 import java.time.LocalDateTime;
@@ -25,19 +26,26 @@ public class GlobalExceptionHandler {
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @ExceptionHandler(CustomerNotFoundException.class)
-    public ResponseEntity<ErrorResponse> handleCustomerNotFoundException(CustomerNotFoundException ex, WebRequest request) {
+    public ResponseEntity<ErrorResponse> handleCustomerNotFoundException(CustomerNotFoundException ex) {
         log.error("GLOBAL_ERROR_HANDLER_CUSTOMER_NOT_FOUND {}", ex.getMessage(), ex);
         return createErrorResponse(HttpStatus.NOT_FOUND, "Not Found", ex.getMessage());
     }
 
+    // The customer was changed since the client read it, it has to read it again and redo its change
+    @ExceptionHandler(CustomerVersionConflictException.class)
+    public ResponseEntity<ErrorResponse> handleCustomerVersionConflictException(CustomerVersionConflictException ex) {
+        log.warn("GLOBAL_ERROR_HANDLER_VERSION_CONFLICT {}", ex.getMessage());
+        return createErrorResponse(HttpStatus.CONFLICT, "Conflict", ex.getMessage());
+    }
+
     @ExceptionHandler(InvalidInputException.class)
-    public ResponseEntity<ErrorResponse> handleInvalidInputException(InvalidInputException ex, WebRequest request) {
+    public ResponseEntity<ErrorResponse> handleInvalidInputException(InvalidInputException ex) {
         log.error("GLOBAL_ERROR_HANDLER_BAD_REQ {}", ex.getMessage(), ex);
         return createErrorResponse(HttpStatus.BAD_REQUEST, "Bad Request", ex.getMessage());
     }
 
     @ExceptionHandler(DatabaseOperationException.class)
-    public ResponseEntity<ErrorResponse> handleDatabaseOperationException(DatabaseOperationException ex, WebRequest request) {
+    public ResponseEntity<ErrorResponse> handleDatabaseOperationException(DatabaseOperationException ex) {
         log.error("GLOBAL_ERROR_HANDLER_DATABASE_ERROR {}", ex.getMessage(), ex);
         return createErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR, "Database error", ex.getMessage());
     }
@@ -54,12 +62,28 @@ public class GlobalExceptionHandler {
         return createErrorResponse(HttpStatus.BAD_REQUEST, "Validation Error", objectMapper.valueToTree(errors).toString());
     }
 
+    // The WebFlux counterpart of the above, thrown by the reactive profile
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<ErrorResponse> handleWebExchangeBind(WebExchangeBindException ex) {
+        log.error("GLOBAL_ERROR_HANDLER_METHOD_ARGS_MISMATCH {}", ex.getMessage(), ex);
+        Map<String, String> errors = new HashMap<>();
+        ex.getFieldErrors().forEach(error -> errors.put(error.getField(), error.getDefaultMessage()));
+        return createErrorResponse(HttpStatus.BAD_REQUEST, "Validation Error", objectMapper.valueToTree(errors).toString());
+    }
+
     @ExceptionHandler({KafkaPublishException.class, TimeoutException.class})
     public ResponseEntity<ErrorResponse> handleKafkaPublishException(Exception ex) {
         log.error("Kafka publish error: {}", ex.getMessage(), ex);
         return createErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR, "Messaging Service Error", ex.getMessage());
     }
 
+    // A bounded pool shed the work, the client can come back later
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<ErrorResponse> handleTaskRejectedException(TaskRejectedException ex) {
+        log.warn("GLOBAL_ERROR_HANDLER_OVERLOADED {}", ex.getMessage());
+        return createErrorResponse(HttpStatus.SERVICE_UNAVAILABLE, "Service Unavailable", "The service is overloaded, try again later");
+    }
+
     @ExceptionHandler(ConstraintViolationException.class)
     public ResponseEntity<ErrorResponse> handleConstraintViolationException(ConstraintViolationException ex) {
         log.error("CONSTRAINT_VIOLATION_ERROR_HANDLER {}", ex.getMessage(), ex);
@@ -71,7 +95,7 @@ public class GlobalExceptionHandler {
     }
 
     @ExceptionHandler(Exception.class)
-    public ResponseEntity<ErrorResponse> handleGlobalException(Exception ex, WebRequest request) {
+    public ResponseEntity<ErrorResponse> handleGlobalException(Exception ex) {
         log.error("GLOBAL_ERROR_HANDLER_GENERAL_ERROR {}", ex.getMessage(), ex);
         return createErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR, "Internal Server Error", ex.getMessage());
     }
@@ -0,0 +1,8 @@
+package com.customermanagement.exceptions;
+
+// The broker publishing pool had no room for the send, nothing was handed to the broker
+public class PublishRejectedException extends RuntimeException {
+    public PublishRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,6 +1,13 @@
 package com.customermanagement.infra.broker;
 
+import com.customermanagement.enums.EventDelivery;
+import com.customermanagement.model.CustomerEvent;
+
+import java.util.concurrent.CompletableFuture;
+
 public interface BrokerStrategy {
-    void produce(String topic, String message);
-    void consume(String topic);
+    // Completes once the broker acknowledged the message, the key decides the partition and so the ordering
+    CompletableFuture<Void> produce(String topic, String key, CustomerEvent event);
+    // Messages are handed over in batches as they are polled, to one instance of the service or to all of them
+    void consume(String topic, EventDelivery delivery, CustomerEventHandler handler);
 }
@@ -0,0 +1,23 @@
+package com.customermanagement.infra.broker;
+
+import com.customermanagement.enums.EventDelivery;
+import com.customermanagement.model.CustomerEvent;
+
+import java.util.List;
+
+/**
+ * Receives the customer events consumed from the broker, a poll at a time. Every bean implementing it is subscribed
+ * by CustomerEventSubscriber, so a new consumer of the events only has to be declared.
+ * Called from several consumer threads at once when the consumer concurrency is above 1, one per partition.
+ */
+@FunctionalInterface
+public interface CustomerEventHandler {
+    // The events of one customer come in the order they were published, those of different customers in any order
+    void handle(List<CustomerEvent> events);
+
+    // Work that only has to be done once shares the events with the other instances. Handlers keeping state of
+    // their own instance need every event and are BROADCAST.
+    default EventDelivery delivery() {
+        return EventDelivery.SHARED;
+    }
+}
@@ -0,0 +1,61 @@
+package com.customermanagement.infra.broker;
+
+import com.customermanagement.enums.EventDelivery;
+import com.customermanagement.infra.cache.CustomerCollectionVersion;
+import com.customermanagement.model.CustomerEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Consumes the customer topic and hands every batch to the CustomerEventHandler beans, instead of each of them reading
+ * the whole topic on its own. The handlers are split by their delivery: SHARED ones get their batches in the consumer
+ * group all instances share, BROADCAST ones in the group of this instance.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CustomerEventSubscriber {
+
+    private final BrokerFactory brokerFactory;
+    private final List<CustomerEventHandler> handlers;
+    private final CustomerCollectionVersion collectionVersion;
+
+    @Value("${spring.kafka.producer.properties.customer.creation.topic}")
+    private String customerEventsTopic;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        Map<EventDelivery, List<CustomerEventHandler>> byDelivery = handlers.stream()
+                .collect(Collectors.groupingBy(CustomerEventHandler::delivery, () -> new EnumMap<>(EventDelivery.class), Collectors.toList()));
+        byDelivery.forEach((delivery, deliveryHandlers) -> {
+            brokerFactory.getBroker().consume(customerEventsTopic, delivery, events -> {
+                handOver(deliveryHandlers, events);
+                if (delivery == EventDelivery.BROADCAST) {
+                    // Only once the caches and the replica have the batch, an ETag taken earlier would otherwise stand for stale data
+                    collectionVersion.changed();
+                }
+            });
+            log.info("Customer events from {} are handed to {} {} handlers", customerEventsTopic, deliveryHandlers.size(), delivery);
+        });
+    }
+
+    private void handOver(List<CustomerEventHandler> deliveryHandlers, List<CustomerEvent> events) {
+        deliveryHandlers.forEach(handler -> {
+            // One failing handler doesn't keep the batch from the others
+            try {
+                handler.handle(events);
+            } catch (RuntimeException e) {
+                log.error("CUSTOMER_EVENT_HANDLER_FAILED handler={}, events={}", handler.getClass().getSimpleName(), events.size(), e);
+            }
+        });
+    }
+}
@@ -0,0 +1,467 @@
+package com.customermanagement.infra.broker.codec;
+
+import com.customermanagement.enums.CustomerEventType;
+import com.customermanagement.enums.EventFormat;
+import com.customermanagement.model.Address;
+import com.customermanagement.model.CustomerEvent;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Encodes customer events for the broker, in the compact binary format or as JSON for debugging.
+ * <p>
+ * A binary event is the magic byte 0xCE, the schema version, then the fields that are set, each one a tag
+ * (field number and wire type, like protobuf) followed by its value. Readers skip fields they don't know, so
+ * fields can be added without a new schema version. The version only goes up for changes old readers can't
+ * handle, and such events are rejected by them. The JSON format carries the version in schemaVersion.
+ */
+public final class CustomerEventCodec {
+
+    public static final int SCHEMA_VERSION = 1;
+
+    // Can't start a JSON document, so the format of an event is told by its first byte
+    static final byte MAGIC = (byte) 0xCE;
+
+    // Enough to skip a field of any type without knowing it
+    private static final int VARINT = 0;
+    private static final int FIXED64 = 1;
+    private static final int LENGTH_DELIMITED = 2;
+
+    // Field numbers of the event. Never renumber or reuse one, a new field takes a new number.
+    private static final int EVENT_TYPE = 1;
+    // The id as 16 bytes when it is a UUID, which all ids created by the service are, as text otherwise
+    private static final int CUSTOMER_UUID = 2;
+    private static final int CUSTOMER_ID = 3;
+    private static final int OCCURRED_AT = 4;
+    private static final int FIRST_NAME = 5;
+    private static final int LAST_NAME = 6;
+    private static final int AGE = 7;
+    private static final int SPENDING_LIMIT = 8;
+    private static final int MOBILE_NUMBER = 9;
+    private static final int ADDRESS = 10;
+    private static final int VERSION = 11;
+    // The changed fields of an UPDATED event, one bit each in the order of CHANGED_FIELD_BITS
+    private static final int CHANGED_FIELDS = 12;
+
+    // Bit i stands for the field at i. Never reorder, a new field is appended.
+    private static final List<String> CHANGED_FIELD_BITS = List.of("firstName", "lastName", "age", "spendingLimit", "mobileNumber", "addresses");
+
+    // Field numbers within an address
+    private static final int ADDRESS_TYPE = 1;
+    private static final int STREET = 2;
+    private static final int ADDRESS2 = 3;
+    private static final int CITY = 4;
+    private static final int STATE = 5;
+    private static final int ZIP_CODE = 6;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private CustomerEventCodec() {
+    }
+
+    public static byte[] encode(CustomerEvent event, EventFormat format) {
+        return format == EventFormat.JSON ? encodeJson(event) : encodeBinary(event);
+    }
+
+    /**
+     * Decodes an event in either format. Throws IllegalArgumentException when the bytes are not a customer event
+     * or were written with a schema version newer than this one.
+     */
+    public static CustomerEvent decode(byte[] bytes) {
+        if (bytes.length == 0) {
+            throw new IllegalArgumentException("Empty customer event");
+        }
+        return bytes[0] == MAGIC ? decodeBinary(bytes) : decodeJson(bytes);
+    }
+
+    static byte[] encodeBinary(CustomerEvent event) {
+        Output out = new Output(128);
+        out.writeByte(MAGIC);
+        out.writeByte(SCHEMA_VERSION);
+        if (event.getEventType() != null) {
+            out.writeVarintField(EVENT_TYPE, event.getEventType().getCode());
+        }
+        writeCustomerId(out, event.getCustomerId());
+        if (event.getOccurredAt() != null) {
+            out.writeVarintField(OCCURRED_AT, event.getOccurredAt().toEpochMilli());
+        }
+        if (event.getVersion() != null) {
+            out.writeVarintField(VERSION, event.getVersion());
+        }
+        if (event.getChangedFields() != null) {
+            out.writeVarintField(CHANGED_FIELDS, changedFieldBits(event.getChangedFields()));
+        }
+        out.writeStringField(FIRST_NAME, event.getFirstName());
+        out.writeStringField(LAST_NAME, event.getLastName());
+        if (event.getAge() != null) {
+            out.writeVarintField(AGE, event.getAge());
+        }
+        if (event.getSpendingLimit() != null) {
+            out.writeTag(SPENDING_LIMIT, FIXED64);
+            out.writeFixed64(Double.doubleToLongBits(event.getSpendingLimit()));
+        }
+        out.writeStringField(MOBILE_NUMBER, event.getMobileNumber());
+        if (event.getAddresses() != null) {
+            Output addressOut = new Output(64);
+            for (Address address : event.getAddresses()) {
+                addressOut.reset();
+                addressOut.writeStringField(ADDRESS_TYPE, address.getType());
+                addressOut.writeStringField(STREET, address.getStreet());
+                addressOut.writeStringField(ADDRESS2, address.getAddress2());
+                addressOut.writeStringField(CITY, address.getCity());
+                addressOut.writeStringField(STATE, address.getState());
+                addressOut.writeStringField(ZIP_CODE, address.getZipCode());
+                out.writeBytesField(ADDRESS, addressOut.buffer, addressOut.position);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static long changedFieldBits(Set<String> changedFields) {
+        long bits = 0;
+        for (String field : changedFields) {
+            int bit = CHANGED_FIELD_BITS.indexOf(field);
+            if (bit < 0) {
+                throw new IllegalArgumentException("Customer event field " + field + " can't be encoded as changed");
+            }
+            bits |= 1L << bit;
+        }
+        return bits;
+    }
+
+    private static Set<String> changedFields(long bits) {
+        Set<String> changedFields = new LinkedHashSet<>();
+        for (int bit = 0; bit < CHANGED_FIELD_BITS.size(); bit++) {
+            if ((bits & (1L << bit)) != 0) {
+                changedFields.add(CHANGED_FIELD_BITS.get(bit));
+            }
+        }
+        return changedFields;
+    }
+
+    private static void writeCustomerId(Output out, String customerId) {
+        if (customerId == null) {
+            return;
+        }
+        UUID uuid = parseUuid(customerId);
+        if (uuid != null && uuid.toString().equals(customerId)) {
+            out.writeTag(CUSTOMER_UUID, LENGTH_DELIMITED);
+            out.writeVarint(16);
+            out.writeFixed64(uuid.getMostSignificantBits());
+            out.writeFixed64(uuid.getLeastSignificantBits());
+        } else {
+            // Also taken by ids that only parse to a UUID in another spelling, so they come back unchanged
+            out.writeStringField(CUSTOMER_ID, customerId);
+        }
+    }
+
+    private static UUID parseUuid(String id) {
+        if (id.length() != 36) {
+            return null;
+        }
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static CustomerEvent decodeBinary(byte[] bytes) {
+        Input in = new Input(bytes, 0, bytes.length);
+        in.readByte();
+        int version = in.readByte() & 0xFF;
+        if (version > SCHEMA_VERSION) {
+            throw new IllegalArgumentException("Customer event of schema version " + version + ", this reader supports up to " + SCHEMA_VERSION);
+        }
+        CustomerEvent event = new CustomerEvent();
+        while (in.hasRemaining()) {
+            long tag = in.readVarint();
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 0x7);
+            switch (field) {
+                case EVENT_TYPE:
+                    event.setEventType(CustomerEventType.fromCode((int) in.readVarint()));
+                    break;
+                case CUSTOMER_UUID:
+                    if (in.readLength(wireType) != 16) {
+                        throw new IllegalArgumentException("Malformed customer event: customer UUID is not 16 bytes");
+                    }
+                    event.setCustomerId(new UUID(in.readFixed64(), in.readFixed64()).toString());
+                    break;
+                case CUSTOMER_ID:
+                    event.setCustomerId(in.readString(wireType));
+                    break;
+                case OCCURRED_AT:
+                    event.setOccurredAt(Instant.ofEpochMilli(in.readVarint()));
+                    break;
+                case VERSION:
+                    event.setVersion(in.readVarint());
+                    break;
+                case CHANGED_FIELDS:
+                    // Bits of fields added after this reader are dropped, like the fields themselves
+                    event.setChangedFields(changedFields(in.readVarint()));
+                    break;
+                case FIRST_NAME:
+                    event.setFirstName(in.readString(wireType));
+                    break;
+                case LAST_NAME:
+                    event.setLastName(in.readString(wireType));
+                    break;
+                case AGE:
+                    event.setAge((int) in.readVarint());
+                    break;
+                case SPENDING_LIMIT:
+                    event.setSpendingLimit(Double.longBitsToDouble(in.readFixed64()));
+                    break;
+                case MOBILE_NUMBER:
+                    event.setMobileNumber(in.readString(wireType));
+                    break;
+                case ADDRESS:
+                    if (event.getAddresses() == null) {
+                        event.setAddresses(new ArrayList<>(1));
+                    }
+                    event.getAddresses().add(decodeAddress(in.readNested(wireType)));
+                    break;
+                default:
+                    in.skip(wireType);
+            }
+        }
+        return event;
+    }
+
+    private static Address decodeAddress(Input in) {
+        Address address = new Address();
+        while (in.hasRemaining()) {
+            long tag = in.readVarint();
+            int wireType = (int) (tag & 0x7);
+            switch ((int) (tag >>> 3)) {
+                case ADDRESS_TYPE:
+                    address.setType(in.readString(wireType));
+                    break;
+                case STREET:
+                    address.setStreet(in.readString(wireType));
+                    break;
+                case ADDRESS2:
+                    address.setAddress2(in.readString(wireType));
+                    break;
+                case CITY:
+                    address.setCity(in.readString(wireType));
+                    break;
+                case STATE:
+                    address.setState(in.readString(wireType));
+                    break;
+                case ZIP_CODE:
+                    address.setZipCode(in.readString(wireType));
+                    break;
+                default:
+                    in.skip(wireType);
+            }
+        }
+        return address;
+    }
+
+    static byte[] encodeJson(CustomerEvent event) {
+        ObjectNode node = OBJECT_MAPPER.createObjectNode();
+        node.put("schemaVersion", SCHEMA_VERSION);
+        node.setAll((ObjectNode) OBJECT_MAPPER.valueToTree(event));
+        try {
+            return OBJECT_MAPPER.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new IllegalStateException("Customer event could not be written as JSON", e);
+        }
+    }
+
+    static CustomerEvent decodeJson(byte[] bytes) {
+        try {
+            JsonNode node = OBJECT_MAPPER.readTree(bytes);
+            if (node == null || !node.isObject()) {
+                throw new IllegalArgumentException("Not a customer event");
+            }
+            int version = node.path("schemaVersion").asInt(SCHEMA_VERSION);
+            if (version > SCHEMA_VERSION) {
+                throw new IllegalArgumentException("Customer event of schema version " + version + ", this reader supports up to " + SCHEMA_VERSION);
+            }
+            return OBJECT_MAPPER.treeToValue(node, CustomerEvent.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed customer event: " + e.getMessage(), e);
+        }
+    }
+
+    private static final class Output {
+        private byte[] buffer;
+        private int position;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void reset() {
+            position = 0;
+        }
+
+        void writeTag(int field, int wireType) {
+            writeVarint(((long) field << 3) | wireType);
+        }
+
+        void writeVarintField(int field, long value) {
+            writeTag(field, VARINT);
+            writeVarint(value);
+        }
+
+        void writeStringField(int field, String value) {
+            if (value != null) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeBytesField(field, bytes, bytes.length);
+            }
+        }
+
+        void writeBytesField(int field, byte[] bytes, int length) {
+            writeTag(field, LENGTH_DELIMITED);
+            writeVarint(length);
+            ensureCapacity(length);
+            System.arraycopy(bytes, 0, buffer, position, length);
+            position += length;
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeFixed64(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            }
+        }
+    }
+
+    private static final class Input {
+        private final byte[] buffer;
+        private int position;
+        private final int limit;
+
+        Input(byte[] buffer, int offset, int limit) {
+            this.buffer = buffer;
+            this.position = offset;
+            this.limit = limit;
+        }
+
+        boolean hasRemaining() {
+            return position < limit;
+        }
+
+        byte readByte() {
+            require(1);
+            return buffer[position++];
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed customer event: varint too long");
+        }
+
+        long readFixed64() {
+            require(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        int readLength(int wireType) {
+            if (wireType != LENGTH_DELIMITED) {
+                throw new IllegalArgumentException("Malformed customer event: unexpected wire type " + wireType);
+            }
+            long length = readVarint();
+            if (length < 0 || length > limit - position) {
+                throw new IllegalArgumentException("Malformed customer event: field longer than the event");
+            }
+            return (int) length;
+        }
+
+        String readString(int wireType) {
+            int length = readLength(wireType);
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        Input readNested(int wireType) {
+            int length = readLength(wireType);
+            Input nested = new Input(buffer, position, position + length);
+            position += length;
+            return nested;
+        }
+
+        void skip(int wireType) {
+            switch (wireType) {
+                case VARINT:
+                    readVarint();
+                    break;
+                case FIXED64:
+                    require(8);
+                    position += 8;
+                    break;
+                case LENGTH_DELIMITED:
+                    int length = readLength(wireType);
+                    position += length;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Malformed customer event: unknown wire type " + wireType);
+            }
+        }
+
+        private void require(int length) {
+            if (limit - position < length) {
+                throw new IllegalArgumentException("Malformed customer event: truncated");
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.customermanagement.infra.broker.codec;
+
+import com.customermanagement.model.CustomerEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Kafka value deserializer of customer events, reads both the binary and the JSON format.
+ * Wrapped in an ErrorHandlingDeserializer by KafkaConfig, so an event it can't read is skipped and logged
+ * instead of stopping the consumer on it.
+ */
+public class CustomerEventDeserializer implements Deserializer<CustomerEvent> {
+
+    @Override
+    public CustomerEvent deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return CustomerEventCodec.decode(data);
+        } catch (IllegalArgumentException e) {
+            throw new SerializationException("Unreadable customer event on topic " + topic + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.customermanagement.infra.broker.codec;
+
+import com.customermanagement.enums.EventFormat;
+import com.customermanagement.model.CustomerEvent;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.Map;
+
+/**
+ * Kafka value serializer of customer events. Writes the binary format unless JSON is asked for, either in the
+ * constructor or with the customer.event.format property when the serializer is configured by class name.
+ */
+public class CustomerEventSerializer implements Serializer<CustomerEvent> {
+
+    public static final String FORMAT_CONFIG = "customer.event.format";
+
+    private EventFormat format;
+
+    public CustomerEventSerializer() {
+        this(EventFormat.BINARY);
+    }
+
+    public CustomerEventSerializer(EventFormat format) {
+        this.format = format;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object configured = configs.get(FORMAT_CONFIG);
+        if (configured != null) {
+            format = EventFormat.valueOf(configured.toString().toUpperCase());
+        }
+    }
+
+    @Override
+    public byte[] serialize(String topic, CustomerEvent event) {
+        return event == null ? null : CustomerEventCodec.encode(event, format);
+    }
+}
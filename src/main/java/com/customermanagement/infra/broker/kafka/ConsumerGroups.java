@@ -0,0 +1,52 @@
+package com.customermanagement.infra.broker.kafka;
+
+import com.customermanagement.enums.EventDelivery;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Consumer groups of the customer event consumers, for both Kafka brokers.
+ * SHARED handlers consume in "{consumer-group}-{topic}", which is the same on every instance, so the partitions are
+ * split between the instances and a new instance takes over part of the work. They resume from the committed offsets.
+ * BROADCAST handlers consume in "{consumer-group}-{topic}-{instance-name}", so every instance sees every event. Their
+ * state is loaded from MongoDB once the instance is up, so the first time a partition is assigned after a start it is
+ * sought to the events published shortly before the start instead of the committed offsets: nothing published while the
+ * snapshot is read is missed, and a long downtime isn't replayed on top of a snapshot that already has it. The instance
+ * name outlives restarts, so a restarted instance reuses its group instead of leaving one more behind on the broker.
+ */
+final class ConsumerGroups {
+
+    // Where a group without committed offsets starts, or one whose offset is no longer on the broker
+    static final String OFFSET_RESET = "earliest";
+
+    // Record timestamps come from the clock of the producing instance, which may be ahead of ours
+    private static final Duration CLOCK_SKEW = Duration.ofSeconds(30);
+
+    private ConsumerGroups() {
+    }
+
+    static String groupId(String consumerGroup, String instanceName, String topic, EventDelivery delivery) {
+        String shared = consumerGroup + "-" + topic;
+        return delivery == EventDelivery.SHARED ? shared : shared + "-" + instanceName(instanceName);
+    }
+
+    // The record timestamp BROADCAST consumers start from, for an instance started at startedAt, which is before any
+    // snapshot is loaded. Events the snapshot already has are taken again like any redelivered batch.
+    static long replayFrom(Instant startedAt) {
+        return startedAt.minus(CLOCK_SKEW).toEpochMilli();
+    }
+
+    private static String instanceName(String configured) {
+        if (configured != null && !configured.isBlank()) {
+            return configured;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "local";
+        }
+    }
+}
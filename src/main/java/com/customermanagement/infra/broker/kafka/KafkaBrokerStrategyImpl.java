@@ -1,40 +1,161 @@
 package com.customermanagement.infra.broker.kafka;
 
+import com.customermanagement.enums.EventDelivery;
+import com.customermanagement.exceptions.PublishRejectedException;
 import com.customermanagement.infra.broker.BrokerStrategy;
+import com.customermanagement.infra.broker.CustomerEventHandler;
+import com.customermanagement.model.CustomerEvent;
 import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.listener.BatchMessageListener;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.stereotype.Component;
-import org.springframework.util.concurrent.ListenableFutureCallback;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
 
 @Component
-@RequiredArgsConstructor
+@Profile("!reactive")
 @Slf4j
 public class KafkaBrokerStrategyImpl implements BrokerStrategy {
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, CustomerEvent> kafkaTemplate;
+    private final ConcurrentKafkaListenerContainerFactory<String, CustomerEvent> listenerContainerFactory;
+    private final ThreadPoolTaskExecutor brokerPublishExecutor;
+    private final MeterRegistry meterRegistry;
+
+    private final List<ConcurrentMessageListenerContainer<String, CustomerEvent>> containers = new CopyOnWriteArrayList<>();
+    // Before the snapshots of the BROADCAST handlers are loaded, which only starts once the application is up
+    private final Instant startedAt = Instant.now();
 
+    @Value("${customer.broker.consumer-group:customer-management}")
+    private String consumerGroup;
+
+    @Value("${customer.broker.instance-name:}")
+    private String instanceName;
+
+    public KafkaBrokerStrategyImpl(KafkaTemplate<String, CustomerEvent> kafkaTemplate,
+                                   ConcurrentKafkaListenerContainerFactory<String, CustomerEvent> listenerContainerFactory,
+                                   @Qualifier("brokerPublishExecutor") ThreadPoolTaskExecutor brokerPublishExecutor,
+                                   MeterRegistry meterRegistry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.listenerContainerFactory = listenerContainerFactory;
+        this.brokerPublishExecutor = brokerPublishExecutor;
+        this.meterRegistry = meterRegistry;
+    }
 
     @Override
-    public void produce(String topic, String message) {
-        kafkaTemplate.send(topic, message)
-                .addCallback(new ListenableFutureCallback<>() {
-                    @Override
-                    public void onSuccess(SendResult<String, String> result) {
-                        log.info("Message sent to topic " + topic);
-                    }
+    public CompletableFuture<Void> produce(String topic, String key, CustomerEvent event) {
+        // send() blocks for up to max.block.ms while the broker is unreachable, so it runs on the publishing pool
+        // and never on the thread that asked for it
+        Timer.Sample sample = Timer.start(meterRegistry);
+        CompletableFuture<Void> send;
+        try {
+            send = CompletableFuture.supplyAsync(() -> send(topic, key, event), brokerPublishExecutor)
+                    .thenCompose(sent -> sent);
+        } catch (TaskRejectedException e) {
+            log.warn("BROKER_PUBLISH_REJECTED topic={}, the publishing pool is full", topic);
+            send = CompletableFuture.failedFuture(new PublishRejectedException("No room to publish to topic " + topic, e));
+        }
+        return KafkaSendMetrics.timed(meterRegistry, topic, send, sample);
+    }
 
-                    @Override
-                    public void onFailure(Throwable ex) {
-                        log.error("Error sending message to topic " + topic, ex);
+    private CompletableFuture<Void> send(String topic, String key, CustomerEvent event) {
+        try {
+            return kafkaTemplate.send(topic, key, event)
+                    .completable()
+                    .whenComplete((result, ex) -> {
+                        if (ex == null) {
+                            log.debug("Message sent to topic " + topic);
+                        } else {
+                            log.error("Error sending message to topic " + topic, ex);
+                        }
+                    })
+                    .thenApply(result -> null);
+        } catch (RuntimeException e) {
+            // send() itself throws when the producer can't get metadata or buffer space within max.block.ms
+            log.error("Error sending message to topic " + topic, e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public void consume(String topic, EventDelivery delivery, CustomerEventHandler handler) {
+        // The group decides whether the instances share the partitions or each sees every message, see ConsumerGroups.
+        // Within the instance its partitions are split between the consumer threads of the container (customer.broker.consumer.concurrency).
+        ConcurrentMessageListenerContainer<String, CustomerEvent> container = listenerContainerFactory.createContainer(topic);
+        ContainerProperties containerProperties = container.getContainerProperties();
+        containerProperties.setGroupId(ConsumerGroups.groupId(consumerGroup, instanceName, topic, delivery));
+        Properties consumerProperties = new Properties();
+        consumerProperties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, ConsumerGroups.OFFSET_RESET);
+        containerProperties.setKafkaConsumerProperties(consumerProperties);
+        if (delivery == EventDelivery.BROADCAST) {
+            containerProperties.setConsumerRebalanceListener(seekToReplayStart());
+        }
+        container.setupMessageListener((BatchMessageListener<String, CustomerEvent>) records -> {
+            try {
+                handler.handle(KafkaRecords.events(topic, records));
+            } catch (RuntimeException e) {
+                // Not rethrown, the batch would be redelivered to the handlers that already took it
+                log.error("Error handling " + records.size() + " messages from topic " + topic, e);
+            }
+        });
+
+        container.start();
+        containers.add(container);
+        log.info("Consumption from " + topic + " set up successfully in group " + containerProperties.getGroupId());
+    }
+
+    // Seeks each partition to the start of the replay once, later assignments after a rebalance between the consumer
+    // threads go on from the committed offsets
+    private ConsumerAwareRebalanceListener seekToReplayStart() {
+        long replayFrom = ConsumerGroups.replayFrom(startedAt);
+        Set<TopicPartition> positioned = ConcurrentHashMap.newKeySet();
+        return new ConsumerAwareRebalanceListener() {
+            @Override
+            public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                Map<TopicPartition, Long> timestamps = partitions.stream()
+                        .filter(positioned::add)
+                        .collect(Collectors.toMap(partition -> partition, partition -> replayFrom));
+                if (timestamps.isEmpty()) {
+                    return;
+                }
+                consumer.offsetsForTimes(timestamps).forEach((partition, offset) -> {
+                    // No record that recent yet, only what is published from now on is new
+                    if (offset == null) {
+                        consumer.seekToEnd(List.of(partition));
+                    } else {
+                        consumer.seek(partition, offset.offset());
                     }
                 });
+            }
+        };
     }
 
-    @Override
-    public void consume(String topic) {
-        // Implement Kafka consumer logic here
-        // This is a placeholder as consumption is typically set up differently
-        log.info("Consumption from " + topic + " set up successfully");
+    @PreDestroy
+    public void stopConsumers() {
+        containers.forEach(ConcurrentMessageListenerContainer::stop);
     }
 }
@@ -0,0 +1,33 @@
+package com.customermanagement.infra.broker.kafka;
+
+import com.customermanagement.model.CustomerEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns a polled batch into the events handed to a CustomerEventHandler, for both Kafka brokers.
+ */
+@Slf4j
+final class KafkaRecords {
+
+    private KafkaRecords() {
+    }
+
+    static List<CustomerEvent> events(String topic, List<ConsumerRecord<String, CustomerEvent>> records) {
+        List<CustomerEvent> events = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, CustomerEvent> record : records) {
+            if (record.value() != null) {
+                events.add(record.value());
+            } else {
+                // The ErrorHandlingDeserializer leaves the value empty when it couldn't be read. The key is still
+                // the customerId, which is all the caches need to evict.
+                log.warn("BROKER_EVENT_UNREADABLE topic={}, partition={}, offset={}, key={}", topic, record.partition(), record.offset(), record.key());
+                events.add(CustomerEvent.builder().customerId(record.key()).build());
+            }
+        }
+        return events;
+    }
+}
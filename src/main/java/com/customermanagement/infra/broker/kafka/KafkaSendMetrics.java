@@ -0,0 +1,36 @@
+package com.customermanagement.infra.broker.kafka;
+
+import com.customermanagement.exceptions.PublishRejectedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The customer.broker.send timer of both Kafka brokers: time from produce until the broker acknowledged the message,
+ * including any wait for a publishing thread, tagged with the topic and the outcome (success, failure or rejected).
+ */
+final class KafkaSendMetrics {
+
+    private KafkaSendMetrics() {
+    }
+
+    static CompletableFuture<Void> timed(MeterRegistry meterRegistry, String topic, CompletableFuture<Void> send, Timer.Sample sample) {
+        // Recorded on the side, the caller keeps the send itself and sees its exception unwrapped
+        send.whenComplete((result, ex) -> sample.stop(Timer.builder("customer.broker.send")
+                .description("Time until the broker acknowledged a message")
+                .tag("topic", topic)
+                .tag("outcome", outcome(ex))
+                .register(meterRegistry)));
+        return send;
+    }
+
+    private static String outcome(Throwable ex) {
+        if (ex == null) {
+            return "success";
+        }
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return cause instanceof PublishRejectedException ? "rejected" : "failure";
+    }
+}
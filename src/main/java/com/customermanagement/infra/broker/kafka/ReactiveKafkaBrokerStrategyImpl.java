@@ -0,0 +1,123 @@
+package com.customermanagement.infra.broker.kafka;
+
+import com.customermanagement.config.KafkaConfig;
+import com.customermanagement.enums.EventDelivery;
+import com.customermanagement.infra.broker.BrokerStrategy;
+import com.customermanagement.infra.broker.CustomerEventHandler;
+import com.customermanagement.model.CustomerEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.KafkaReceiver;
+import reactor.kafka.receiver.ReceiverOptions;
+import reactor.kafka.sender.KafkaSender;
+import reactor.kafka.sender.SenderRecord;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Kafka broker of the reactive profile, on reactor-kafka. Sends and consumption work like in KafkaBrokerStrategyImpl,
+ * but no thread waits on the broker: acknowledgements and records are delivered as signals.
+ */
+@Component
+@Profile("reactive")
+@RequiredArgsConstructor
+@Slf4j
+public class ReactiveKafkaBrokerStrategyImpl implements BrokerStrategy {
+    private final KafkaSender<String, CustomerEvent> kafkaSender;
+    private final ConsumerFactory<String, CustomerEvent> consumerFactory;
+    private final MeterRegistry meterRegistry;
+
+    private final List<Disposable> subscriptions = new CopyOnWriteArrayList<>();
+    // Before the snapshots of the BROADCAST handlers are loaded, which only starts once the application is up
+    private final Instant startedAt = Instant.now();
+
+    @Value("${customer.broker.consumer-group:customer-management}")
+    private String consumerGroup;
+
+    @Value("${customer.broker.instance-name:}")
+    private String instanceName;
+
+    @Value("${customer.broker.consumer.concurrency:3}")
+    private int consumerConcurrency;
+
+    @Override
+    public CompletableFuture<Void> produce(String topic, String key, CustomerEvent event) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        CompletableFuture<Void> send = kafkaSender.send(Mono.just(SenderRecord.create(new ProducerRecord<>(topic, key, event), key)))
+                .doOnNext(result -> log.debug("Message sent to topic " + topic))
+                .doOnError(ex -> log.error("Error sending message to topic " + topic, ex))
+                .then()
+                .toFuture();
+        return KafkaSendMetrics.timed(meterRegistry, topic, send, sample);
+    }
+
+    @Override
+    public void consume(String topic, EventDelivery delivery, CustomerEventHandler handler) {
+        // Same as the blocking broker: the consumer group of the delivery, and as many receivers in it as the
+        // blocking container has consumer threads
+        Map<String, Object> properties = new HashMap<>(consumerFactory.getConfigurationProperties());
+        properties.put(ConsumerConfig.GROUP_ID_CONFIG, ConsumerGroups.groupId(consumerGroup, instanceName, topic, delivery));
+        properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, ConsumerGroups.OFFSET_RESET);
+        ReceiverOptions<String, CustomerEvent> options = ReceiverOptions.<String, CustomerEvent>create(properties)
+                .withKeyDeserializer(new StringDeserializer())
+                .withValueDeserializer(KafkaConfig.customerEventDeserializer())
+                .subscription(List.of(topic));
+        if (delivery == EventDelivery.BROADCAST) {
+            // Like the blocking broker, each partition is sought to the start of the replay on its first assignment
+            // to any of the receivers, seekToTimestamp goes to the end when there is no record that recent yet
+            long replayFrom = ConsumerGroups.replayFrom(startedAt);
+            Set<TopicPartition> positioned = ConcurrentHashMap.newKeySet();
+            options = options.addAssignListener(partitions -> partitions.stream()
+                    .filter(partition -> positioned.add(partition.topicPartition()))
+                    .forEach(partition -> partition.seekToTimestamp(replayFrom)));
+        }
+
+        for (int i = 0; i < consumerConcurrency; i++) {
+            // Each inner flux is the batch of one poll, acknowledged once it has been handled
+            Disposable subscription = KafkaReceiver.create(options)
+                    .receiveAutoAck()
+                    .concatMap(Flux::collectList)
+                    .doOnNext(records -> {
+                        try {
+                            handler.handle(KafkaRecords.events(topic, records));
+                        } catch (RuntimeException e) {
+                            log.error("Error handling " + records.size() + " messages from topic " + topic, e);
+                        }
+                    })
+                    // A lost connection ends the flux, so it is subscribed to again instead of silently stopping consumption
+                    .doOnError(e -> log.error("Error consuming from topic " + topic + ", resubscribing", e))
+                    .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofMinutes(1)))
+                    .subscribe();
+            subscriptions.add(subscription);
+        }
+        log.info("Consumption from " + topic + " set up successfully");
+    }
+
+    @PreDestroy
+    public void stopConsumers() {
+        subscriptions.forEach(Disposable::dispose);
+    }
+}
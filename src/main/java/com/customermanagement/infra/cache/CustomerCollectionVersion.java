@@ -0,0 +1,75 @@
+package com.customermanagement.infra.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory version of the customer collection as this instance serves it, the basis of the ETags of the list endpoint.
+ * It changes after every create through this instance, after every batch of customer events from the topic has been
+ * applied by all handlers, and whenever the query cache evicts, so a page can't be served from a stale source under
+ * a new version. An ETag therefore answers an unchanged query with a 304 without going to MongoDB.
+ * <p>
+ * Writes straight into MongoDB aren't seen, like by the caches. The epoch changes with every start of the instance,
+ * and ETags of different instances never match.
+ */
+@Component
+public class CustomerCollectionVersion {
+
+    private final String epoch = UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicLong version = new AtomicLong();
+
+    @Value("${customer.etag.enabled:true}")
+    private boolean enabled;
+
+    public void changed() {
+        version.incrementAndGet();
+    }
+
+    public long get() {
+        return version.get();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The ETag of a list query with the request parameters, at the current version. It has to be taken before the
+     * query runs, a customer created meanwhile then changes the version rather than hiding behind it.
+     * <p>
+     * Strong, unless the client accepts gzip: Tomcat leaves responses with a strong ETag uncompressed, as the
+     * compressed bytes would carry the tag of the uncompressed ones. If-None-Match compares weakly, so both give a 304.
+     */
+    public String etag(Map<String, String> params, String acceptEncoding) {
+        // Parameter order doesn't make a different query
+        String query = new TreeMap<>(params).toString();
+        String tag = "\"" + epoch + "-" + version.get() + "-" + DigestUtils.md5DigestAsHex(query.getBytes(StandardCharsets.UTF_8)) + "\"";
+        return acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip") ? "W/" + tag : tag;
+    }
+
+    /**
+     * Whether an If-None-Match header names the ETag, compared weakly as RFC 7232 asks for If-None-Match.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaqueTag = stripWeak(etag);
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .anyMatch(candidate -> candidate.equals("*") || stripWeak(candidate).equals(opaqueTag));
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
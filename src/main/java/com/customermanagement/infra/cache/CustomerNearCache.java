@@ -0,0 +1,91 @@
+package com.customermanagement.infra.cache;
+
+import com.customermanagement.enums.EventDelivery;
+import com.customermanagement.infra.broker.CustomerEventHandler;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerEvent;
+import com.customermanagement.repository.CustomerBatchLoader;
+import com.customermanagement.repository.CustomerRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded in-process cache of customers by id, in front of CustomerRepository.
+ * Every event published for a customer evicts it on every instance, and the TTL bounds how stale an entry can get
+ * if an event is missed, e.g. while the broker is unreachable. Customers that don't exist are not cached.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CustomerNearCache implements CustomerEventHandler {
+
+    private final CustomerRepository customerRepository;
+    private final CustomerBatchLoader customerBatchLoader;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${customer.cache.max-size:100000}")
+    private long maxSize;
+
+    @Value("${customer.cache.ttl-ms:60000}")
+    private long ttlMillis;
+
+    private Cache<String, Customer> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMillis))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "customer.near");
+    }
+
+    @Override
+    public EventDelivery delivery() {
+        return EventDelivery.BROADCAST;
+    }
+
+    @Override
+    public void handle(List<CustomerEvent> events) {
+        // Events carry the customerId, which is all that is needed to evict
+        cache.invalidateAll(events.stream().map(CustomerEvent::getCustomerId).filter(Objects::nonNull).collect(Collectors.toList()));
+    }
+
+    public Optional<Customer> get(String customerId) {
+        // Loaded atomically per key, so an eviction that comes in while loading isn't overwritten by the loaded value.
+        // Misses of concurrent requests are looked up together by the batch loader.
+        return Optional.ofNullable(cache.get(customerId, id -> customerBatchLoader.load(id).orElse(null)));
+    }
+
+    /**
+     * The customers found for the ids, by id. Ids that aren't cached are loaded together in one lookup.
+     */
+    public Map<String, Customer> getAll(Collection<String> customerIds) {
+        return cache.getAll(customerIds, missing -> {
+            List<String> missingIds = new ArrayList<>();
+            missing.forEach(missingIds::add);
+            return customerRepository.findCustomersByIds(missingIds)
+                    .stream()
+                    .collect(Collectors.toMap(Customer::getCustomerId, Function.identity()));
+        });
+    }
+
+    public void invalidate(String customerId) {
+        if (customerId != null) {
+            cache.invalidate(customerId);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.customermanagement.infra.cache;
+
+import com.customermanagement.enums.EventDelivery;
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.exceptions.DatabaseOperationException;
+import com.customermanagement.infra.broker.CustomerEventHandler;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerEvent;
+import com.customermanagement.repository.CustomerRepository;
+import com.customermanagement.repository.filter.CustomerFilterPredicate;
+import com.customermanagement.repository.filter.SearchText;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache of list endpoint results, holding the customer ids of a page per query. The customers themselves come from
+ * the CustomerNearCache, so an entry is small and a customer is cached once however many queries return it.
+ *
+ * A new or updated customer evicts only the entries it could change: those it is on, which an update may take it off,
+ * and those whose filters it matches and whose page covers its id. Customers created or updated on other instances are
+ * learned from the customer topic and checked the same way.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CustomerQueryCache implements CustomerEventHandler {
+
+    private final CustomerRepository customerRepository;
+    private final CustomerCollectionVersion collectionVersion;
+    private final MeterRegistry meterRegistry;
+
+    // Bumped on every eviction check, a query that ran across one may have missed the new customer and isn't cached
+    private final AtomicLong generation = new AtomicLong();
+    private final Queue<String> remoteCustomerIds = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger remoteBacklog = new AtomicInteger();
+
+    @Value("${customer.query-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${customer.query-cache.ttl-ms:30000}")
+    private long ttlMillis;
+
+    // Weight is the number of ids held
+    @Value("${customer.query-cache.max-weight:1000000}")
+    private long maxWeight;
+
+    @Value("${customer.query-cache.max-remote-backlog:10000}")
+    private int maxRemoteBacklog;
+
+    // Checking more customers than this against every entry costs more than reloading the pages
+    @Value("${customer.query-cache.max-invalidation-batch:100}")
+    private int maxInvalidationBatch;
+
+    private Cache<QueryKey, CachedPage> cache;
+    private Timer loadTimer;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((QueryKey key, CachedPage page) -> page.ids.size() + 1)
+                .expireAfterWrite(Duration.ofMillis(ttlMillis))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "customer.query");
+        Gauge.builder("customer.query.cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .description("Share of list queries answered from the query cache")
+                .register(meterRegistry);
+        loadTimer = Timer.builder("customer.query.cache.load")
+                .description("Time to run a list query against MongoDB on a cache miss")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public EventDelivery delivery() {
+        return EventDelivery.BROADCAST;
+    }
+
+    @Override
+    public void handle(List<CustomerEvent> events) {
+        if (!enabled) {
+            return;
+        }
+        for (CustomerEvent event : events) {
+            String customerId = event.getCustomerId();
+            if (customerId != null && cache.estimatedSize() > 0 && remoteBacklog.incrementAndGet() <= maxRemoteBacklog) {
+                remoteCustomerIds.add(customerId);
+            }
+        }
+    }
+
+    /**
+     * The ids for the query, from the cache or else from the loader. A result is only cached if no customer
+     * was created while it was loading.
+     */
+    public List<String> get(QueryKey key, Supplier<List<String>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        CachedPage cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached.ids;
+        }
+        long loadGeneration = generation.get();
+        List<String> ids = loadTimer.record(loader);
+        if (generation.get() == loadGeneration) {
+            cache.put(key, new CachedPage(ids));
+        }
+        return ids;
+    }
+
+    /**
+     * Evict the entries the new or updated customers could show up in or drop out of. Runs on the write path, so
+     * the entries are gone through once, and above max-invalidation-batch customers the cache is simply cleared.
+     */
+    public void invalidateMatching(Collection<Customer> customers) {
+        if (!enabled || customers.isEmpty()) {
+            return;
+        }
+        if (customers.size() > maxInvalidationBatch) {
+            clear("QUERY_CACHE_CLEARED customers=" + customers.size());
+            return;
+        }
+        generation.incrementAndGet();
+        cache.asMap().entrySet().removeIf(entry -> affectsAny(entry.getKey(), entry.getValue(), customers));
+        collectionVersion.changed();
+    }
+
+    private void clear(String reason) {
+        log.info(reason);
+        generation.incrementAndGet();
+        cache.invalidateAll();
+        collectionVersion.changed();
+    }
+
+    /**
+     * Check the customers created or updated on other instances, looked up together once per interval.
+     */
+    @Scheduled(fixedDelayString = "${customer.query-cache.remote-check-interval-ms:1000}")
+    public void checkRemoteCustomers() {
+        if (remoteBacklog.get() > maxRemoteBacklog) {
+            // Too many to look up one by one, dropping everything is cheaper and just as safe
+            clear("QUERY_CACHE_CLEARED remoteBacklog=" + remoteBacklog.get());
+            remoteCustomerIds.clear();
+            remoteBacklog.set(0);
+            return;
+        }
+        List<String> customerIds = new ArrayList<>();
+        for (String customerId = remoteCustomerIds.poll(); customerId != null; customerId = remoteCustomerIds.poll()) {
+            customerIds.add(customerId);
+        }
+        remoteBacklog.addAndGet(-customerIds.size());
+        if (customerIds.isEmpty()) {
+            return;
+        }
+        if (customerIds.size() > maxInvalidationBatch) {
+            // Would be cleared once looked up anyway
+            clear("QUERY_CACHE_CLEARED remoteCustomers=" + customerIds.size());
+            return;
+        }
+        try {
+            invalidateMatching(customerRepository.findCustomersByIds(customerIds));
+        } catch (DataAccessException | DatabaseOperationException e) {
+            log.error("QUERY_CACHE_REMOTE_CHECK_FAILED, clearing the cache: {}", e.getMessage(), e);
+            cache.invalidateAll();
+            collectionVersion.changed();
+        }
+    }
+
+    private boolean affectsAny(QueryKey key, CachedPage page, Collection<Customer> customers) {
+        // The cheap check first, a customer on the page always evicts it
+        for (Customer customer : customers) {
+            if (page.idSet.contains(customer.getCustomerId())) {
+                return true;
+            }
+        }
+        for (Customer customer : customers) {
+            if (couldJoin(key, page.ids, customer)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean couldJoin(QueryKey key, List<String> ids, Customer customer) {
+        if (!CustomerFilterPredicate.matches(customer, key.getFilters(), key.getOperation(), key.getMatchMode())) {
+            return false;
+        }
+        if (key.isRanked()) {
+            return true;
+        }
+        // Pages are in id order, a customer outside the id range a page covers leaves it unchanged.
+        // A short page is the last one and covers every id after its cursor.
+        String customerId = customer.getCustomerId();
+        boolean afterCursor = key.getAfterCustomerId() == null || customerId.compareTo(key.getAfterCustomerId()) > 0;
+        boolean beforePageEnd = ids.size() < key.getLimit() || customerId.compareTo(ids.get(ids.size() - 1)) < 0;
+        return afterCursor && beforePageEnd;
+    }
+
+    // The ids of a page, also as a set for the eviction checks
+    private static final class CachedPage {
+        private final List<String> ids;
+        private final Set<String> idSet;
+
+        private CachedPage(List<String> ids) {
+            this.ids = ids;
+            this.idSet = new HashSet<>(ids);
+        }
+    }
+
+    /**
+     * A list query in normalized form, so parameter order, case and spacing of values don't make different entries.
+     */
+    @lombok.Value
+    public static class QueryKey {
+        SortedMap<String, String> filters;
+        String operation;
+        MatchMode matchMode;
+        String afterCustomerId;
+        int limit;
+        // Ranked pages are ordered by match quality instead of id
+        boolean ranked;
+
+        public static QueryKey of(Map<String, String> filters, String operation, MatchMode matchMode, String afterCustomerId, int limit) {
+            SortedMap<String, String> normalized = new TreeMap<>();
+            filters.forEach((field, value) -> normalized.put(field, SearchText.normalize(value)));
+            // With a single filter AND and OR are the same query
+            String normalizedOperation = "OR".equalsIgnoreCase(operation) && normalized.size() > 1 ? "OR" : "AND";
+            boolean ranked = matchMode == MatchMode.CONTAINS && normalized.size() == 1 && normalized.containsKey("name");
+            return new QueryKey(Collections.unmodifiableSortedMap(normalized), normalizedOperation, matchMode, afterCustomerId, limit, ranked);
+        }
+    }
+}
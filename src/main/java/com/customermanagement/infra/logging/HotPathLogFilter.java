@@ -0,0 +1,81 @@
+package com.customermanagement.infra.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Rate limit and sample the INFO and DEBUG lines of the request path, configured in logback-spring.xml.
+ * Each logger under one of the configured prefixes is a category: its first maxPerSecond lines of a second are
+ * written, after that only every sampleEvery-th (none with 0). WARN and ERROR are always written.
+ * <p>
+ * As a turbo filter it decides before the message is formatted or an event is created, so a dropped line costs
+ * a counter increment. The lines dropped are counted in getDropped().
+ */
+public class HotPathLogFilter extends TurboFilter {
+
+    private List<String> loggerPrefixes = List.of();
+    private int maxPerSecond = 50;
+    private int sampleEvery = 100;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // format is null for the isInfoEnabled() style checks, which mustn't use up the budget
+        if (!isStarted() || format == null || level.isGreaterOrEqual(Level.WARN) || !level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+        String name = logger.getName();
+        if (loggerPrefixes.stream().noneMatch(name::startsWith)) {
+            return FilterReply.NEUTRAL;
+        }
+        long beyondLimit = windows.computeIfAbsent(name, n -> new Window()).next(System.currentTimeMillis() / 1000) - maxPerSecond;
+        if (beyondLimit <= 0 || (sampleEvery > 0 && beyondLimit % sampleEvery == 0)) {
+            return FilterReply.NEUTRAL;
+        }
+        dropped.incrementAndGet();
+        return FilterReply.DENY;
+    }
+
+    public void setLoggers(String loggers) {
+        this.loggerPrefixes = Arrays.stream(loggers.split(",")).map(String::trim).filter(prefix -> !prefix.isEmpty()).collect(Collectors.toList());
+    }
+
+    public void setMaxPerSecond(int maxPerSecond) {
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    public void setSampleEvery(int sampleEvery) {
+        this.sampleEvery = sampleEvery;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    // Lines of one category in the current second. A line racing the change of second may count in either, which
+    // only shifts a line or two between seconds.
+    private static final class Window {
+        private volatile long second;
+        private final AtomicLong count = new AtomicLong();
+
+        long next(long now) {
+            if (now != second) {
+                second = now;
+                count.set(0);
+            }
+            return count.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.customermanagement.infra.logging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Metrics of the logging set up in logback-spring.xml: the lines dropped by the HotPathLogFilter, and how full the
+ * queue of the async appender is (it drops INFO and below once it is 80% full).
+ */
+@Component
+@RequiredArgsConstructor
+public class LogMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void init() {
+        if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext)) {
+            return;
+        }
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.getTurboFilterList().stream()
+                .filter(HotPathLogFilter.class::isInstance)
+                .map(HotPathLogFilter.class::cast)
+                .forEach(filter -> FunctionCounter.builder("customer.log.dropped", filter, HotPathLogFilter::getDropped)
+                        .description("Log lines of the request path dropped by rate limiting and sampling")
+                        .register(meterRegistry));
+        Appender<ILoggingEvent> appender = context.getLogger(Logger.ROOT_LOGGER_NAME).getAppender("Async");
+        if (appender instanceof AsyncAppender) {
+            Gauge.builder("customer.log.queue.size", (AsyncAppender) appender, AsyncAppender::getNumberOfElementsInQueue)
+                    .description("Log events waiting for the console writer")
+                    .register(meterRegistry);
+        }
+    }
+}
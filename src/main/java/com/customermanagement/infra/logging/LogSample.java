@@ -0,0 +1,39 @@
+package com.customermanagement.infra.logging;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * A collection as a log argument: its size and its first few elements instead of all of them, so logging a list of
+ * 100k ids costs the same as logging a list of ten. Formatted only if the line is actually written.
+ */
+public final class LogSample {
+
+    static final int MAX_ELEMENTS = 5;
+
+    private final Collection<?> values;
+
+    private LogSample(Collection<?> values) {
+        this.values = values;
+    }
+
+    public static LogSample of(Collection<?> values) {
+        return new LogSample(values);
+    }
+
+    @Override
+    public String toString() {
+        if (values == null) {
+            return "null";
+        }
+        StringBuilder text = new StringBuilder("[");
+        Iterator<?> elements = values.iterator();
+        for (int i = 0; i < MAX_ELEMENTS && elements.hasNext(); i++) {
+            text.append(i == 0 ? "" : ", ").append(elements.next());
+        }
+        if (elements.hasNext()) {
+            text.append(", ...");
+        }
+        return text.append("] (").append(values.size()).append(" total)").toString();
+    }
+}
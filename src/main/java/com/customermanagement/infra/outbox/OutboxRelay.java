@@ -0,0 +1,263 @@
+package com.customermanagement.infra.outbox;
+
+import com.customermanagement.enums.RejectionPolicy;
+import com.customermanagement.exceptions.PublishRejectedException;
+import com.customermanagement.infra.broker.BrokerFactory;
+import com.customermanagement.infra.broker.BrokerStrategy;
+import com.customermanagement.enums.CustomerEventType;
+import com.customermanagement.model.CustomerEvent;
+import com.customermanagement.model.OutboxEvent;
+import com.customermanagement.repository.OutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the customer outbox in batches through the current broker.
+ * An event is removed from the outbox only after the broker acknowledged it, failed sends are retried with
+ * exponential backoff, and the events of one customer are always published in the order they were written.
+ * When the broker publishing pool is full the events are spilled: they stay in the outbox as they are and the
+ * relay stops until the next tick, without spending one of their attempts.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxRelay {
+
+    private final OutboxRepository outboxRepository;
+    private final BrokerFactory brokerFactory;
+    private final MeterRegistry meterRegistry;
+
+    // Identifies this instance when taking the relay lease
+    private final String relayId = UUID.randomUUID().toString();
+
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private volatile Instant publishedUpTo;
+    private Counter publishedCounter;
+    private Counter retriedCounter;
+    private Counter deadCounter;
+    private Counter spilledCounter;
+
+    @Value("${customer.outbox.relay.batch-size:200}")
+    private int batchSize;
+
+    @Value("${customer.outbox.relay.lease-ms:30000}")
+    private long leaseMillis;
+
+    @Value("${customer.outbox.relay.send-timeout-ms:10000}")
+    private long sendTimeoutMillis;
+
+    @Value("${customer.outbox.relay.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${customer.outbox.relay.initial-backoff-ms:1000}")
+    private long initialBackoffMillis;
+
+    @Value("${customer.outbox.relay.max-backoff-ms:300000}")
+    private long maxBackoffMillis;
+
+    // With SHED a send the publishing pool had no room for is a failed attempt like any other
+    @Value("${customer.executors.broker-publish.rejection-policy:SPILL}")
+    private RejectionPolicy publishRejectionPolicy;
+
+    @PostConstruct
+    public void init() {
+        outboxRepository.ensureIndexes();
+        Gauge.builder("customer.outbox.lag", lagMillis, AtomicLong::get)
+                .description("Age of the oldest customer event still waiting in the outbox")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("customer.outbox.pending", pendingEvents, AtomicLong::get)
+                .description("Customer events waiting in the outbox")
+                .register(meterRegistry);
+        publishedCounter = Counter.builder("customer.outbox.relay.events").tag("result", "published").register(meterRegistry);
+        retriedCounter = Counter.builder("customer.outbox.relay.events").tag("result", "retry").register(meterRegistry);
+        deadCounter = Counter.builder("customer.outbox.relay.events").tag("result", "dead").register(meterRegistry);
+        spilledCounter = Counter.builder("customer.outbox.relay.events").tag("result", "spilled").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${customer.outbox.relay.poll-interval-ms:500}")
+    public void relay() {
+        try {
+            if (outboxRepository.tryAcquireRelayLease(relayId, Duration.ofMillis(leaseMillis))) {
+                // Keep draining while batches come back full, so a backlog doesn't wait for the next tick. Every wave
+                // renews the lease before its results are written and stops the draining when it was lost.
+                boolean full = relayBatch();
+                while (full) {
+                    full = relayBatch();
+                }
+            }
+            refreshLag();
+        } catch (DataAccessException e) {
+            // Nothing is lost, the events stay in the outbox until MongoDB is reachable again
+            log.error("OUTBOX_RELAY_DB_ERROR {}", e.getMessage(), e);
+        }
+    }
+
+    // True when there may be more to relay right away
+    private boolean relayBatch() {
+        List<OutboxEvent> batch = outboxRepository.findReadyToPublish(batchSize);
+        if (batch.isEmpty()) {
+            return false;
+        }
+
+        // The batch is sent in waves with at most one event per customer, and the next event of a customer only
+        // goes out once the previous one was acknowledged. Almost every customer has a single event in a batch,
+        // so this is normally one wave where all sends are in flight together.
+        Map<String, Deque<OutboxEvent>> eventsByCustomer = new LinkedHashMap<>();
+        batch.forEach(event -> eventsByCustomer.computeIfAbsent(event.getAggregateId(), id -> new ArrayDeque<>()).add(event));
+
+        BrokerStrategy broker = brokerFactory.getBroker();
+        int spilled = 0;
+        while (!eventsByCustomer.isEmpty() && spilled == 0) {
+            Map<OutboxEvent, CompletableFuture<Void>> wave = new LinkedHashMap<>();
+            eventsByCustomer.values().forEach(events -> {
+                OutboxEvent event = events.peekFirst();
+                wave.put(event, broker.produce(event.getTopic(), event.getAggregateId(), customerEvent(event)));
+            });
+
+            // One deadline for the whole wave, well inside the lease, so a slow broker can't outlast it
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waveTimeoutMillis());
+            List<String> published = new ArrayList<>(wave.size());
+            Instant waveUpTo = null;
+            Map<OutboxEvent, String> failed = new LinkedHashMap<>();
+            for (Map.Entry<OutboxEvent, CompletableFuture<Void>> entry : wave.entrySet()) {
+                OutboxEvent event = entry.getKey();
+                CompletableFuture<Void> send = entry.getValue();
+                if (publishRejectionPolicy == RejectionPolicy.SPILL && isRejected(send)) {
+                    // Left untouched in the outbox, and so are the events after it
+                    eventsByCustomer.remove(event.getAggregateId());
+                    spilled++;
+                    continue;
+                }
+                Optional<String> error = awaitSend(send, deadline);
+                if (error.isEmpty()) {
+                    published.add(event.getId());
+                    waveUpTo = newest(waveUpTo, customerEvent(event).getOccurredAt());
+                    Deque<OutboxEvent> remaining = eventsByCustomer.get(event.getAggregateId());
+                    remaining.pollFirst();
+                    if (remaining.isEmpty()) {
+                        eventsByCustomer.remove(event.getAggregateId());
+                    }
+                } else {
+                    failed.put(event, error.get());
+                    // The rest of this customer's events wait for the failed one to be retried
+                    eventsByCustomer.remove(event.getAggregateId());
+                }
+            }
+
+            // Another relay may own the outbox by now and be sending these same events, they are left to it as they are
+            if (!outboxRepository.tryAcquireRelayLease(relayId, Duration.ofMillis(leaseMillis))) {
+                log.warn("OUTBOX_RELAY_LEASE_LOST relay={}, another instance took over the outbox", relayId);
+                return false;
+            }
+            outboxRepository.removePublished(published);
+            publishedCounter.increment(published.size());
+            if (waveUpTo != null) {
+                outboxRepository.recordPublishedUpTo(waveUpTo);
+            }
+            failed.forEach(this::handleFailure);
+        }
+        if (spilled > 0) {
+            log.warn("OUTBOX_RELAY_SPILLED events={}, the broker publishing pool is full, retrying on the next tick", spilled);
+            spilledCounter.increment(spilled);
+            return false;
+        }
+        log.debug("Relayed outbox batch of {} events", batch.size());
+        return batch.size() == batchSize;
+    }
+
+    // Events written before they had a CustomerEvent only carry the debug string of the customer,
+    // they go out with what is known for sure
+    private CustomerEvent customerEvent(OutboxEvent event) {
+        if (event.getEvent() != null) {
+            return event.getEvent();
+        }
+        return CustomerEvent.builder()
+                .eventType(CustomerEventType.CREATED)
+                .customerId(event.getAggregateId())
+                .occurredAt(event.getCreatedAt())
+                .build();
+    }
+
+    private static Instant newest(Instant current, Instant candidate) {
+        return current == null || (candidate != null && candidate.isAfter(current)) ? candidate : current;
+    }
+
+    // A rejected send fails before it is handed back, so this doesn't wait
+    private boolean isRejected(CompletableFuture<Void> send) {
+        return send.isCompletedExceptionally() && send.handle((result, ex) -> ex instanceof PublishRejectedException).join();
+    }
+
+    private long waveTimeoutMillis() {
+        return Math.min(sendTimeoutMillis, leaseMillis / 3);
+    }
+
+    private Optional<String> awaitSend(CompletableFuture<Void> send, long deadline) {
+        try {
+            send.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.of("Interrupted while waiting for the broker");
+        } catch (ExecutionException e) {
+            return Optional.of(String.valueOf(e.getCause()));
+        } catch (TimeoutException e) {
+            return Optional.of("No acknowledgement from the broker within " + waveTimeoutMillis() + " ms");
+        }
+    }
+
+    private void handleFailure(OutboxEvent event, String error) {
+        int attempt = event.getAttempts() + 1;
+        if (attempt >= maxAttempts) {
+            log.error("OUTBOX_EVENT_DEAD id={}, customerId={}, attempts={}, error={}", event.getId(), event.getAggregateId(), attempt, error);
+            outboxRepository.markDead(event, error);
+            deadCounter.increment();
+            return;
+        }
+        long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 30));
+        log.warn("OUTBOX_EVENT_RETRY id={}, customerId={}, attempt={}, retryInMs={}, error={}", event.getId(), event.getAggregateId(), attempt, backoff, error);
+        outboxRepository.rescheduleAfterFailure(event, error, Instant.now().plusMillis(backoff));
+        retriedCounter.increment();
+    }
+
+    /**
+     * Age of the oldest customer event still waiting in the outbox as of the last tick, 0 when there is none.
+     */
+    public long getLagMillis() {
+        return lagMillis.get();
+    }
+
+    /**
+     * When the newest customer event the relay has published so far occurred, by any instance and as of the last tick,
+     * null when there is none. A consumer that has seen this event is not behind the outbox.
+     */
+    public Instant getPublishedUpTo() {
+        return publishedUpTo;
+    }
+
+    private void refreshLag() {
+        lagMillis.set(outboxRepository.findOldestPendingCreatedAt()
+                .map(createdAt -> Math.max(0, Duration.between(createdAt, Instant.now()).toMillis()))
+                .orElse(0L));
+        pendingEvents.set(outboxRepository.countPending());
+        publishedUpTo = outboxRepository.findPublishedUpTo().orElse(null);
+    }
+}
@@ -0,0 +1,372 @@
+package com.customermanagement.infra.replica;
+
+import com.customermanagement.enums.CustomerEventType;
+import com.customermanagement.enums.EventDelivery;
+import com.customermanagement.enums.EventFormat;
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.infra.broker.CustomerEventHandler;
+import com.customermanagement.infra.broker.codec.CustomerEventCodec;
+import com.customermanagement.infra.outbox.OutboxRelay;
+import com.customermanagement.model.Address;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerEvent;
+import com.customermanagement.repository.CustomerProjection;
+import com.customermanagement.repository.CustomerQueryOptions;
+import com.customermanagement.repository.filter.SearchText;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Optional in-memory copy of all customers on this instance, serving the list and set endpoints without MongoDB.
+ * It is loaded from a Mongo snapshot once the application is up and kept current by the events on the customer topic.
+ * Customers are held as binary CustomerEvents, a fraction of the size of Customer objects, by id and in id order
+ * for keyset pages, with the ids indexed by normalized name, city and state.
+ * <p>
+ * An update is applied on top of the version of the customer held here, a customer is never replaced by an older
+ * version of it. Events published while the snapshot is read, or that couldn't be read off the topic, are picked up by
+ * the periodic resync, which also replaces customers held at an older version than the one stored. The replica only serves while it is loaded and its lag is within customer.replica.max-lag-ms, callers go to
+ * MongoDB otherwise.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CustomerReplica implements CustomerEventHandler {
+
+    private final MongoTemplate mongoTemplate;
+    private final OutboxRelay outboxRelay;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentSkipListMap<String, byte[]> customers = new ConcurrentSkipListMap<>();
+    // Same fields as the filters of the list endpoint, see CustomerFilterPredicate
+    private final Map<String, FieldIndex> indexes = Map.of(
+            "name", new FieldIndex(event -> Stream.of(event.getFirstName(), event.getLastName())),
+            "city", new FieldIndex(event -> addresses(event).map(Address::getCity)),
+            "state", new FieldIndex(event -> addresses(event).map(Address::getState)));
+
+    private volatile boolean loaded;
+    // When the newest event this replica has seen occurred, and the published event it is currently waiting for
+    private volatile Instant consumedUpTo;
+    private Instant catchUpTarget;
+
+    @Value("${customer.replica.enabled:false}")
+    private boolean enabled;
+
+    @Value("${customer.replica.max-lag-ms:5000}")
+    private long maxLagMillis;
+
+    @Value("${customer.replica.load-batch-size:5000}")
+    private int loadBatchSize;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        Gauge.builder("customer.replica.size", customers, Map::size)
+                .description("Customers in the in-memory read replica")
+                .register(meterRegistry);
+        Gauge.builder("customer.replica.lag", this, CustomerReplica::lagMillis)
+                .description("How far the in-memory read replica may be behind MongoDB")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        if (loadSnapshot()) {
+            loaded = true;
+            log.info("REPLICA_READY customers={}, tookMs={}", customers.size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Add the customers of MongoDB this replica doesn't have yet, or has an older version of. Also retries a failed initial load.
+     */
+    @Scheduled(fixedDelayString = "${customer.replica.resync-interval-ms:600000}", initialDelayString = "${customer.replica.resync-interval-ms:600000}")
+    public void resync() {
+        if (!enabled) {
+            return;
+        }
+        int before = customers.size();
+        if (loadSnapshot()) {
+            loaded = true;
+            log.info("REPLICA_RESYNCED customers={}, added={}", customers.size(), customers.size() - before);
+        }
+    }
+
+    private boolean loadSnapshot() {
+        // Whatever was published before the snapshot is read is in it
+        consumed(outboxRelay.getPublishedUpTo());
+        try (CloseableIterator<Customer> snapshot = mongoTemplate.stream(new Query().cursorBatchSize(loadBatchSize), Customer.class)) {
+            // A customer already here at the same version came from an event, which is at least as recent as the snapshot
+            snapshot.forEachRemaining(customer -> applyIfNewer(CustomerEvent.created(customer)));
+            return true;
+        } catch (DataAccessException e) {
+            log.error("REPLICA_LOAD_FAILED, queries keep going to MongoDB: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public EventDelivery delivery() {
+        return EventDelivery.BROADCAST;
+    }
+
+    @Override
+    public void handle(List<CustomerEvent> events) {
+        if (!enabled) {
+            return;
+        }
+        for (CustomerEvent event : events) {
+            consumed(event.getOccurredAt());
+            if (event.getEventType() == CustomerEventType.CREATED) {
+                applyIfNewer(event);
+            } else if (event.getEventType() != CustomerEventType.UPDATED || !applyUpdate(event)) {
+                // Unreadable, of a newer type or an update after one that was missed, the resync brings the customer in
+                log.warn("REPLICA_EVENT_SKIPPED customerId={}, eventType={}, version={}", event.getCustomerId(), event.getEventType(), event.getVersion());
+            }
+        }
+    }
+
+    /**
+     * Add a customer created or updated through this instance, so it is found here right away instead of once its
+     * event is back.
+     */
+    public void add(Customer customer) {
+        if (enabled) {
+            applyIfNewer(CustomerEvent.created(customer));
+        }
+    }
+
+    private synchronized void applyIfNewer(CustomerEvent event) {
+        byte[] held = customers.get(event.getCustomerId());
+        if (held == null || CustomerEventCodec.decode(held).versionOrZero() < event.versionOrZero()) {
+            apply(event);
+        }
+    }
+
+    // False when the customer isn't here or an update before this one is missing. An update of a version held already,
+    // like one made through this instance, is nothing to apply.
+    private synchronized boolean applyUpdate(CustomerEvent update) {
+        byte[] held = customers.get(update.getCustomerId());
+        if (held == null) {
+            return false;
+        }
+        CustomerEvent current = CustomerEventCodec.decode(held);
+        if (update.versionOrZero() <= current.versionOrZero()) {
+            return true;
+        }
+        if (update.versionOrZero() != current.versionOrZero() + 1) {
+            return false;
+        }
+        apply(update.appliedTo(current));
+        return true;
+    }
+
+    // Writes are serialized so the indexes of a customer never mix two versions, reads don't take the lock
+    private synchronized void apply(CustomerEvent event) {
+        String customerId = event.getCustomerId();
+        byte[] previous = customers.put(customerId, CustomerEventCodec.encode(event, EventFormat.BINARY));
+        if (previous != null) {
+            CustomerEvent replaced = CustomerEventCodec.decode(previous);
+            indexes.values().forEach(index -> index.remove(replaced, customerId));
+        }
+        indexes.values().forEach(index -> index.add(event, customerId));
+    }
+
+    private synchronized void consumed(Instant occurredAt) {
+        if (occurredAt != null && (consumedUpTo == null || occurredAt.isAfter(consumedUpTo))) {
+            consumedUpTo = occurredAt;
+        }
+    }
+
+    /**
+     * How far behind MongoDB this replica may be: the age of the oldest event not yet published from the outbox,
+     * or the age of a published event the consumer hasn't reached yet. A stalled consumer keeps growing the lag
+     * instead of reporting none once no more events arrive.
+     */
+    public long lagMillis() {
+        return Math.max(outboxRelay.getLagMillis(), consumerLagMillis());
+    }
+
+    // The event waited for stays the same until it is reached. Measuring against the newest published event instead
+    // would keep the lag small for a stalled consumer as long as new events are being published.
+    private synchronized long consumerLagMillis() {
+        if (catchUpTarget != null && !isBehind(catchUpTarget)) {
+            catchUpTarget = null;
+        }
+        if (catchUpTarget == null) {
+            Instant published = outboxRelay.getPublishedUpTo();
+            if (published == null || !isBehind(published)) {
+                return 0;
+            }
+            catchUpTarget = published;
+        }
+        return Math.max(0, Duration.between(catchUpTarget, Instant.now()).toMillis());
+    }
+
+    private boolean isBehind(Instant published) {
+        return consumedUpTo == null || consumedUpTo.isBefore(published);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    public int size() {
+        return customers.size();
+    }
+
+    /**
+     * Whether queries can be answered from this replica, false until it is loaded or while it is too far behind.
+     */
+    public boolean isServing() {
+        return enabled && loaded && lagMillis() <= maxLagMillis;
+    }
+
+    /**
+     * The replica counterpart of CustomCustomerRepository.findCustomersWithFilters, a keyset page of the customers matching
+     * the filters in customerId order, with the fields of the projection.
+     */
+    public List<Customer> findCustomersWithFilters(Map<String, String> filters, String operation, CustomerQueryOptions options) {
+        List<NavigableSet<String>> matches = new ArrayList<>();
+        filters.forEach((field, value) -> {
+            FieldIndex index = indexes.get(field);
+            // Not a filter field, the Mongo query ignores it as well
+            if (index != null && value != null) {
+                matches.add(index.matching(SearchText.normalize(value), options.getMatchMode()));
+            }
+        });
+        String after = options.getAfterCustomerId();
+        Iterator<String> ids;
+        if (matches.isEmpty()) {
+            ids = tail(customers.navigableKeySet(), after).iterator();
+        } else if ("OR".equalsIgnoreCase(operation)) {
+            ids = union(matches.stream().map(match -> tail(match, after))).iterator();
+        } else {
+            // Walk the smallest match and keep the ids that are in all the others
+            matches.sort(Comparator.comparingInt(Set::size));
+            List<NavigableSet<String>> others = matches.subList(1, matches.size());
+            ids = tail(matches.get(0), after).stream()
+                    .filter(id -> others.stream().allMatch(match -> match.contains(id)))
+                    .iterator();
+        }
+
+        List<String> pageIds = new ArrayList<>(options.getLimit());
+        while (pageIds.size() < options.getLimit() && ids.hasNext()) {
+            pageIds.add(ids.next());
+        }
+        return findCustomersByIds(pageIds, options.getProjection());
+    }
+
+    /**
+     * The customers of the ids that are in the replica, in the order of the ids.
+     */
+    public List<Customer> findCustomersByIds(List<String> customerIds) {
+        return findCustomersByIds(customerIds, CustomerProjection.FULL);
+    }
+
+    public List<Customer> findCustomersByIds(List<String> customerIds, CustomerProjection projection) {
+        List<Customer> found = new ArrayList<>(customerIds.size());
+        for (String customerId : customerIds) {
+            byte[] customer = customers.get(customerId);
+            if (customer == null) {
+                continue;
+            }
+            // Nothing to decode when only the id is asked for
+            found.add(projection.isIdOnly()
+                    ? Customer.builder().customerId(customerId).build()
+                    : projection.applyTo(CustomerEventCodec.decode(customer).toCustomer()));
+        }
+        return found;
+    }
+
+    private static Stream<Address> addresses(CustomerEvent event) {
+        return event.getAddresses() == null ? Stream.empty() : event.getAddresses().stream();
+    }
+
+    private static NavigableSet<String> tail(NavigableSet<String> ids, String after) {
+        return after == null ? ids : ids.tailSet(after, false);
+    }
+
+    private static NavigableSet<String> union(Stream<NavigableSet<String>> sets) {
+        NavigableSet<String> union = new TreeSet<>();
+        sets.forEach(union::addAll);
+        return union;
+    }
+
+    /**
+     * Ids of the customers by the normalized values of one field, sorted so a prefix is a range of values.
+     */
+    private static final class FieldIndex {
+        private final Function<CustomerEvent, Stream<String>> values;
+        private final ConcurrentSkipListMap<String, NavigableSet<String>> idsByValue = new ConcurrentSkipListMap<>();
+
+        FieldIndex(Function<CustomerEvent, Stream<String>> values) {
+            this.values = values;
+        }
+
+        void add(CustomerEvent event, String customerId) {
+            normalizedValues(event).forEach(value -> idsByValue.computeIfAbsent(value, v -> new ConcurrentSkipListSet<>()).add(customerId));
+        }
+
+        void remove(CustomerEvent event, String customerId) {
+            normalizedValues(event).forEach(value -> idsByValue.computeIfPresent(value, (v, ids) -> {
+                ids.remove(customerId);
+                return ids.isEmpty() ? null : ids;
+            }));
+        }
+
+        NavigableSet<String> matching(String value, MatchMode matchMode) {
+            switch (matchMode) {
+                case EXACT:
+                    return idsByValue.getOrDefault(value, Collections.emptyNavigableSet());
+                case CONTAINS:
+                    return union(idsByValue.entrySet().stream().filter(entry -> entry.getKey().contains(value)).map(Map.Entry::getValue));
+                case PREFIX:
+                default:
+                    Collection<NavigableSet<String>> prefixed = idsByValue.subMap(value, true, value + Character.MAX_VALUE, true).values();
+                    return prefixed.size() == 1 ? prefixed.iterator().next() : union(prefixed.stream());
+            }
+        }
+
+        private Set<String> normalizedValues(CustomerEvent event) {
+            return values.apply(event).map(SearchText::normalize).filter(Objects::nonNull).collect(Collectors.toSet());
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.customermanagement.infra.replica;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Part of the readiness group (management.endpoint.health.group.readiness), so an instance serving from the replica
+ * only gets traffic once the replica is loaded. A replica behind by more than the bound is reported but keeps the
+ * instance ready, its queries go to MongoDB until it has caught up.
+ */
+@Component
+@RequiredArgsConstructor
+public class CustomerReplicaHealthIndicator implements HealthIndicator {
+
+    private final CustomerReplica customerReplica;
+
+    @Override
+    public Health health() {
+        if (!customerReplica.isEnabled()) {
+            return Health.up().withDetail("enabled", false).build();
+        }
+        Health.Builder health = customerReplica.isLoaded() ? Health.up() : Health.outOfService();
+        return health
+                .withDetail("enabled", true)
+                .withDetail("loaded", customerReplica.isLoaded())
+                .withDetail("customers", customerReplica.size())
+                .withDetail("lagMs", customerReplica.lagMillis())
+                .withDetail("maxLagMs", customerReplica.getMaxLagMillis())
+                .withDetail("serving", customerReplica.isServing())
+                .build();
+    }
+}
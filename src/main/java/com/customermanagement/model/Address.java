@@ -1,14 +1,21 @@
 package com.customermanagement.model;
 
 import com.customermanagement.validation.ValidAddressType;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class Address {
     @NotNull(message = "Address type is mandatory")
     @ValidAddressType
@@ -27,4 +34,11 @@ public class Address {
 
     @NotBlank(message = "Zip code is mandatory")
     private String zipCode;
+
+    // Normalized copies for indexed filtering, filled on write. Not part of the API.
+    @JsonIgnore
+    private String cityNormalized;
+
+    @JsonIgnore
+    private String stateNormalized;
 }
\ No newline at end of file
@@ -1,23 +1,30 @@
 package com.customermanagement.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+import org.springframework.data.mongodb.core.mapping.MongoId;
 
 import javax.validation.Valid;
 import javax.validation.constraints.*;
 import java.util.List;
 
+// Fields left out by a projection are left out of the JSON too, instead of coming back as nulls
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "customers")
 public class Customer {
-    @Id
+    // A string in the API, stored as a binary UUID, see CustomerIds
+    @MongoId(targetType = FieldType.BINARY)
     private String customerId;
 
     @NotBlank(message = "First name is mandatory")
@@ -39,4 +46,20 @@ public class Customer {
     @NotEmpty(message = "At least one address is required")
     @Valid
     private List<Address> addresses;
-}
\ No newline at end of file
+
+    // Goes up by one with every update, an update naming another version than the stored one is rejected.
+    // Customers stored before it existed have none, which counts as version 0.
+    @Version
+    private Long version;
+
+    // Normalized copies of the names for indexed filtering, filled on write. Not part of the API.
+    @JsonIgnore
+    private String firstNameNormalized;
+
+    @JsonIgnore
+    private String lastNameNormalized;
+
+    public long versionOrZero() {
+        return version == null ? 0 : version;
+    }
+}
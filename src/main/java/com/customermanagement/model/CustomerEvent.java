@@ -0,0 +1,139 @@
+package com.customermanagement.model;
+
+import com.customermanagement.enums.CustomerEventType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A customer event as it is kept in the outbox and published to the broker, encoded by CustomerEventCodec.
+ * Holds the customer fields of the API, so consumers don't have to look the customer up. An UPDATED event only has
+ * the fields that changed, named in changedFields, the others are null.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerEvent {
+    private CustomerEventType eventType;
+
+    private String customerId;
+
+    private Instant occurredAt;
+
+    // Version of the customer after the event, null from producers that didn't have versions yet
+    private Long version;
+
+    private String firstName;
+
+    private String lastName;
+
+    private Integer age;
+
+    private Double spendingLimit;
+
+    private String mobileNumber;
+
+    private List<Address> addresses;
+
+    // The fields an UPDATED event changes, so a field cleared by the update can be told from one it left alone
+    private Set<String> changedFields;
+
+    public static CustomerEvent created(Customer customer) {
+        return CustomerEvent.builder()
+                .eventType(CustomerEventType.CREATED)
+                .customerId(customer.getCustomerId())
+                .occurredAt(Instant.now())
+                .version(customer.getVersion())
+                .firstName(customer.getFirstName())
+                .lastName(customer.getLastName())
+                .age(customer.getAge())
+                .spendingLimit(customer.getSpendingLimit())
+                .mobileNumber(customer.getMobileNumber())
+                .addresses(apiAddresses(customer.getAddresses()))
+                .build();
+    }
+
+    /**
+     * The update of a customer to the given state, with only the changed fields of the API set.
+     */
+    public static CustomerEvent updated(Customer customer, Set<String> changedFields) {
+        return CustomerEvent.builder()
+                .eventType(CustomerEventType.UPDATED)
+                .customerId(customer.getCustomerId())
+                .occurredAt(Instant.now())
+                .version(customer.getVersion())
+                .firstName(changedFields.contains("firstName") ? customer.getFirstName() : null)
+                .lastName(changedFields.contains("lastName") ? customer.getLastName() : null)
+                .age(changedFields.contains("age") ? customer.getAge() : null)
+                .spendingLimit(changedFields.contains("spendingLimit") ? customer.getSpendingLimit() : null)
+                .mobileNumber(changedFields.contains("mobileNumber") ? customer.getMobileNumber() : null)
+                .addresses(changedFields.contains("addresses") ? apiAddresses(customer.getAddresses()) : null)
+                .changedFields(Set.copyOf(changedFields))
+                .build();
+    }
+
+    private static List<Address> apiAddresses(List<Address> addresses) {
+        return addresses == null ? null : addresses.stream()
+                // Copied without the normalized search fields, which are not part of the event
+                .map(address -> Address.builder()
+                        .type(address.getType())
+                        .street(address.getStreet())
+                        .address2(address.getAddress2())
+                        .city(address.getCity())
+                        .state(address.getState())
+                        .zipCode(address.getZipCode())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The customer this UPDATED event makes of the one described by the given event, as a CREATED event.
+     */
+    public CustomerEvent appliedTo(CustomerEvent current) {
+        return CustomerEvent.builder()
+                .eventType(CustomerEventType.CREATED)
+                .customerId(current.getCustomerId())
+                .occurredAt(occurredAt)
+                .version(version)
+                .firstName(changed("firstName", firstName, current.getFirstName()))
+                .lastName(changed("lastName", lastName, current.getLastName()))
+                .age(changed("age", age, current.getAge()))
+                .spendingLimit(changed("spendingLimit", spendingLimit, current.getSpendingLimit()))
+                .mobileNumber(changed("mobileNumber", mobileNumber, current.getMobileNumber()))
+                .addresses(changed("addresses", addresses, current.getAddresses()))
+                .build();
+    }
+
+    // Without the field names, as a producer could have left them out, only the fields that are set count as changed
+    private <T> T changed(String field, T value, T currentValue) {
+        boolean isChanged = changedFields != null ? changedFields.contains(field) : value != null;
+        return isChanged ? value : currentValue;
+    }
+
+    public long versionOrZero() {
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * The customer as the event describes it, without the normalized search fields.
+     */
+    public Customer toCustomer() {
+        return Customer.builder()
+                .customerId(customerId)
+                .version(version)
+                .firstName(firstName)
+                .lastName(lastName)
+                .age(age)
+                .spendingLimit(spendingLimit)
+                .mobileNumber(mobileNumber)
+                .addresses(addresses)
+                .build();
+    }
+}
@@ -0,0 +1,64 @@
+package com.customermanagement.model;
+
+import org.bson.BsonBinarySubType;
+import org.bson.types.Binary;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Customer ids: time ordered UUIDs (version 7) in the API, stored in MongoDB as 16 byte binary UUIDs.
+ * New ids land at the right end of the _id index instead of at random points, so inserts touch the same few
+ * index pages and the index stays dense. Binary UUIDs compare byte by byte, the same order as the lowercase strings.
+ */
+public final class CustomerIds {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // Millisecond timestamp shifted left by 12, plus a counter in the low 12 bits (rand_a of the version 7 layout),
+    // so the ids of one instance keep increasing within a millisecond as well
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private CustomerIds() {
+    }
+
+    public static String newId() {
+        long now = System.currentTimeMillis() << 12;
+        long state = LAST.updateAndGet(last -> Math.max(last + 1, now));
+        long msb = (state >>> 12) << 16 | 0x7000L | (state & 0xFFFL);
+        // IETF variant bits, 62 random bits
+        long lsb = RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+        return new UUID(msb, lsb).toString();
+    }
+
+    /**
+     * The stored form of an id. Anything that isn't a UUID (no customer has such an id) is kept as generic binary,
+     * so it reads back unchanged and matches nothing.
+     */
+    public static Binary toBinary(String customerId) {
+        UUID uuid;
+        try {
+            uuid = customerId.length() == 36 ? UUID.fromString(customerId) : null;
+        } catch (IllegalArgumentException e) {
+            uuid = null;
+        }
+        if (uuid == null) {
+            return new Binary(customerId.getBytes(StandardCharsets.UTF_8));
+        }
+        return new Binary(BsonBinarySubType.UUID_STANDARD, ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array());
+    }
+
+    public static String fromBinary(Binary binary) {
+        byte[] data = binary.getData();
+        if (binary.getType() == BsonBinarySubType.UUID_STANDARD.getValue() && data.length == 16) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            return new UUID(buffer.getLong(), buffer.getLong()).toString();
+        }
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,44 @@
+package com.customermanagement.model;
+
+import com.customermanagement.enums.SummaryDimension;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * One bucket of the customer analytics, e.g. the number of customers in state "ca".
+ * Incremented as customers are created and recomputed from the customers collection by the periodic rebuild.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "customer_summary")
+public class CustomerSummary {
+    // Dimension and key, e.g. "STATE:ca", so an increment is an upsert on _id
+    @Id
+    private String id;
+
+    private SummaryDimension dimension;
+
+    private String key;
+
+    private long count;
+
+    // Set by the rebuild that last computed the count, null for a bucket only incremented since
+    private Instant rebuiltAt;
+
+    public static CustomerSummary of(SummaryDimension dimension, String key, long count) {
+        return CustomerSummary.builder()
+                .id(dimension.name() + ":" + key)
+                .dimension(dimension)
+                .key(key)
+                .count(count)
+                .build();
+    }
+}
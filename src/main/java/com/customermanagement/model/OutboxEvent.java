@@ -0,0 +1,51 @@
+package com.customermanagement.model;
+
+import com.customermanagement.enums.OutboxStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "customer_outbox")
+public class OutboxEvent {
+    // Left empty so Mongo assigns an ObjectId, which keeps _id in insertion order
+    @Id
+    private String id;
+
+    // The customerId, used as the broker key and to keep the events of one customer in order
+    private String aggregateId;
+
+    private String topic;
+
+    private CustomerEvent event;
+
+    private OutboxStatus status;
+
+    private int attempts;
+
+    private Instant createdAt;
+
+    private Instant nextAttemptAt;
+
+    private String lastError;
+
+    public static OutboxEvent pending(String topic, String aggregateId, CustomerEvent event) {
+        Instant now = Instant.now();
+        return OutboxEvent.builder()
+                .aggregateId(aggregateId)
+                .topic(topic)
+                .event(event)
+                .status(OutboxStatus.PENDING)
+                .createdAt(now)
+                .nextAttemptAt(now)
+                .build();
+    }
+}
@@ -1,12 +1,25 @@
 package com.customermanagement.repository;
 
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.enums.ReadConsistency;
 import com.customermanagement.model.Customer;
+import org.springframework.data.util.CloseableIterator;
+
 import java.util.List;
 import java.util.Map;
 
 public interface CustomCustomerRepository {
-    List<Customer> findCustomersWithFilters(Map<String, String> filters, String operation);
-    List<Customer> findCustomersOnlyInA(List<String> listA, List<String> listB);
-    List<Customer> findCustomersOnlyInB(List<String> listA, List<String> listB);
-    List<Customer> findCustomersInBoth(List<String> listA, List<String> listB);
+    // The failure of a bulk upsert record whose customer was changed or created by another write meanwhile
+    String VERSION_CONFLICT = "Version conflict, the customer was changed by another request";
+
+    List<Customer> findCustomersWithFilters(Map<String, String> filters, String operation, CustomerQueryOptions options);
+    CloseableIterator<Customer> streamCustomersWithFilters(Map<String, String> filters, String operation, MatchMode matchMode, ReadConsistency consistency);
+    List<Customer> findCustomersByIds(List<String> customerIds);
+    List<Customer> findCustomersByIds(List<String> customerIds, CustomerProjection projection, ReadConsistency consistency);
+    Map<Integer, String> insertCustomersInBulk(List<Customer> customers);
+    boolean updateCustomer(CustomerChange change);
+    Map<Integer, String> upsertCustomersInBulk(List<CustomerChange> changes);
+    void ensureIndexes();
+    long backfillSearchFields();
+    long migrateStringIds();
 }
\ No newline at end of file
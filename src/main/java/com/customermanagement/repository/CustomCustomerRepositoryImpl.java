@@ -1,116 +1,292 @@
 package com.customermanagement.repository;
 
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.enums.ReadConsistency;
+import com.customermanagement.exceptions.DatabaseOperationException;
 import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerIds;
+import com.customermanagement.repository.filter.NameSearchIndex;
+import com.customermanagement.repository.filter.SearchText;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
 import java.util.*;
-import java.util.function.Function;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 @Slf4j
 public class CustomCustomerRepositoryImpl implements CustomCustomerRepository {
 
+    private static final int DUPLICATE_KEY = 11000;
+
     private final MongoTemplate mongoTemplate;
+    private final MongoTemplate secondaryPreferredMongoTemplate;
+    private final NameSearchIndex nameSearchIndex;
+    private final ThreadPoolTaskExecutor customerFetchExecutor;
+
+    @Value("${customer.export.cursor-batch-size:1000}")
+    private int exportCursorBatchSize;
 
-    @Value("${customer.query.default-page-size:20}")
-    private int defaultPageSize;
+    @Value("${customer.query.backfill-batch-size:1000}")
+    private int backfillBatchSize;
 
-    private final Map<String, Function<String, Criteria>> queryFunctions = Map.of(
-            "name", this::getNameCriteria,
-            "city", this::getCityCriteria,
-            "state", this::getStateCriteria
-            // Add more parameters here as needed
-    );
+    // Above this many name matches, an $in on the ids costs more than letting Mongo evaluate the name filter itself
+    @Value("${customer.search.max-candidates:5000}")
+    private int maxNameCandidates;
 
-    public CustomCustomerRepositoryImpl(MongoTemplate mongoTemplate) {
+    @Value("${customer.set-query.fetch-chunk-size:250}")
+    private int fetchChunkSize;
+
+    public CustomCustomerRepositoryImpl(MongoTemplate mongoTemplate,
+                                        @Qualifier("secondaryPreferredMongoTemplate") MongoTemplate secondaryPreferredMongoTemplate,
+                                        NameSearchIndex nameSearchIndex,
+                                        @Qualifier("customerFetchExecutor") ThreadPoolTaskExecutor customerFetchExecutor) {
         this.mongoTemplate = mongoTemplate;
+        this.secondaryPreferredMongoTemplate = secondaryPreferredMongoTemplate;
+        this.nameSearchIndex = nameSearchIndex;
+        this.customerFetchExecutor = customerFetchExecutor;
     }
 
     @Override
-    public List<Customer> findCustomersWithFilters(Map<String, String> filters, String operation) {
-        // There is no tight coupling between the filter fields, as we have kept it dynamic in a Map,
-        // so if new field is to be added for filtering, just add a new field in the Map, without changing anything in Service layer
-        Query query = new Query();
-        List<Criteria> criteriaList = new ArrayList<>();
-
-        filters.forEach((key, value) -> {
-            if (queryFunctions.containsKey(key)) {
-                criteriaList.add(queryFunctions.get(key).apply(value));
+    public List<Customer> findCustomersWithFilters(Map<String, String> filters, String operation, CustomerQueryOptions options) {
+        // Substring name searches are answered by the in-memory trigram index when it can, Mongo would scan for them
+        if (options.getMatchMode() == MatchMode.CONTAINS && filters.containsKey("name")) {
+            Optional<List<String>> nameMatches = nameSearchIndex.search(filters.get("name"));
+            if (nameMatches.isPresent()) {
+                if (filters.size() == 1) {
+                    return findRankedPage(nameMatches.get(), options);
+                }
+                if (nameMatches.get().size() <= maxNameCandidates) {
+                    Map<String, Criteria> resolved = Map.of("name", Criteria.where("customerId").in(nameMatches.get()));
+                    return readsFor(options.getConsistency()).find(CustomerCriteria.withKeysetPage(CustomerCriteria.buildFilterQuery(filters, operation, options.getMatchMode(), resolved), options), Customer.class);
+                }
             }
-        });
+        }
+        return readsFor(options.getConsistency()).find(CustomerCriteria.withKeysetPage(CustomerCriteria.buildFilterQuery(filters, operation, options.getMatchMode()), options), Customer.class);
+    }
 
-        if (!criteriaList.isEmpty()) {
-            Criteria combinedCriteria;
-            if ("OR".equalsIgnoreCase(operation)) {
-                combinedCriteria = new Criteria().orOperator(criteriaList.toArray(new Criteria[0]));
-            } else {
-                combinedCriteria = new Criteria().andOperator(criteriaList.toArray(new Criteria[0]));
-            }
-            query.addCriteria(combinedCriteria);
+    // Writes and everything but the query endpoints always use the primary template
+    private MongoTemplate readsFor(ReadConsistency consistency) {
+        return consistency == ReadConsistency.EVENTUAL ? secondaryPreferredMongoTemplate : mongoTemplate;
+    }
+
+    private List<Customer> findRankedPage(List<String> rankedIds, CustomerQueryOptions options) {
+        List<String> pageIds = CustomerCriteria.rankedPageIds(rankedIds, options);
+        if (pageIds.isEmpty()) {
+            return new ArrayList<>();
         }
-        query.limit(defaultPageSize);
-        return mongoTemplate.find(query, Customer.class);
+        Map<String, Customer> customersById = readsFor(options.getConsistency()).find(CustomerCriteria.byIds(pageIds, options.getProjection()), Customer.class)
+                .stream()
+                .collect(Collectors.toMap(Customer::getCustomerId, customer -> customer));
+        return pageIds.stream()
+                .map(customersById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     @Override
-    public List<Customer> findCustomersOnlyInA(List<String> listA, List<String> listB) {
-        return findCustomersInOneListButNotOther(listA, listB, "A");
+    public CloseableIterator<Customer> streamCustomersWithFilters(Map<String, String> filters, String operation, MatchMode matchMode, ReadConsistency consistency) {
+        // Backed by a server side cursor, only one batch of documents is held in memory at any time
+        // and the next one is fetched when the caller has consumed it.
+        Query query = CustomerCriteria.buildFilterQuery(filters, operation, matchMode)
+                .with(Sort.by(Sort.Direction.ASC, "customerId"))
+                .cursorBatchSize(exportCursorBatchSize);
+        return readsFor(consistency).stream(query, Customer.class);
     }
 
     @Override
-    public List<Customer> findCustomersOnlyInB(List<String> listA, List<String> listB) {
-        return findCustomersInOneListButNotOther(listB, listA, "B");
+    public List<Customer> findCustomersByIds(List<String> customerIds) {
+        return findCustomersByIds(customerIds, CustomerProjection.FULL, ReadConsistency.STRONG);
     }
 
-    private List<Customer> findCustomersInOneListButNotOther(List<String> includeList, List<String> excludeList, String listName) {
-        log.info("Finding customers only in {}. Include list size: {}, Exclude list size: {}",
-                listName, includeList.size(), excludeList.size());
-        log.info("Include List: {}", includeList);
-        log.info("Exclude List: {}", excludeList);
-
-        Set<String> onlyInList = new HashSet<>(includeList);
-        onlyInList.removeAll(excludeList);
+    @Override
+    public List<Customer> findCustomersByIds(List<String> customerIds, CustomerProjection projection, ReadConsistency consistency) {
+        // Large lookups are split into chunks that run in parallel, each one a small $in that Mongo answers from the _id index
+        List<CompletableFuture<List<Customer>>> chunks = new ArrayList<>();
+        for (int from = 0; from < customerIds.size(); from += fetchChunkSize) {
+            List<String> chunk = customerIds.subList(from, Math.min(from + fetchChunkSize, customerIds.size()));
+            Query query = CustomerCriteria.byIds(chunk, projection);
+            chunks.add(CompletableFuture.supplyAsync(() -> readsFor(consistency).find(query, Customer.class), customerFetchExecutor));
+        }
+        List<Customer> customers = new ArrayList<>(customerIds.size());
+        try {
+            for (CompletableFuture<List<Customer>> chunk : chunks) {
+                customers.addAll(chunk.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof DataAccessException) {
+                throw new DatabaseOperationException("Fetching " + customerIds.size() + " customers by id failed", e.getCause());
+            }
+            throw e;
+        }
+        customers.sort(Comparator.comparing(Customer::getCustomerId));
+        return customers;
+    }
 
-        Query query = new Query(Criteria.where("customerId").in(onlyInList));
-        query.limit(defaultPageSize);
-        List<Customer> result = mongoTemplate.find(query, Customer.class);
+    @Override
+    public Map<Integer, String> insertCustomersInBulk(List<Customer> customers) {
+        // UNORDERED lets Mongo carry on past a failing document, and the exception then tells us
+        // exactly which positions in the chunk failed, so the rest of the chunk is still persisted.
+        // Bulk inserts don't set the version like save does.
+        customers.forEach(customer -> customer.setVersion(0L));
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Customer.class)
+                    .insert(customers)
+                    .execute();
+            return Map.of();
+        } catch (BulkOperationException e) {
+            Map<Integer, String> failures = new HashMap<>();
+            e.getErrors().forEach(error -> failures.put(error.getIndex(), error.getMessage()));
+            log.warn("DB_BULK_INSERT_PARTIAL_FAILURE chunkSize={}, failed={}", customers.size(), failures.size());
+            return failures;
+        } catch (DataAccessException e) {
+            throw new DatabaseOperationException("Bulk insert of " + customers.size() + " customers failed", e);
+        }
+    }
 
-        log.info("Found {} customers only in {}", result.size(), listName);
-        log.info("Customers found only in {}: {}", listName,
-                result.stream().map(Customer::getCustomerId).collect(Collectors.toList()));
+    @Override
+    public boolean updateCustomer(CustomerChange change) {
+        // Matches nothing if the customer was changed since the change was worked out, then nothing is written
+        try {
+            return mongoTemplate.updateFirst(change.toQuery(), change.toUpdate(), Customer.class).getMatchedCount() > 0;
+        } catch (DataAccessException e) {
+            throw new DatabaseOperationException("Update of customer " + change.getCustomerId() + " failed", e);
+        }
+    }
 
-        return result;
+    @Override
+    public Map<Integer, String> upsertCustomersInBulk(List<CustomerChange> changes) {
+        if (changes.isEmpty()) {
+            return Map.of();
+        }
+        // New customers are inserted, the others upserted on their id and version. One changed meanwhile isn't matched,
+        // so the upsert inserts its id again and fails on the duplicate key, which tells the conflict of each record.
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Customer.class);
+        for (CustomerChange change : changes) {
+            if (change.isNew()) {
+                bulkOps.insert(change.getResult());
+            } else {
+                bulkOps.upsert(change.toQuery(), change.toUpsert());
+            }
+        }
+        try {
+            bulkOps.execute();
+            return Map.of();
+        } catch (BulkOperationException e) {
+            Map<Integer, String> failures = new HashMap<>();
+            e.getErrors().forEach(error -> failures.put(error.getIndex(), error.getCode() == DUPLICATE_KEY ? VERSION_CONFLICT : error.getMessage()));
+            log.warn("DB_BULK_UPSERT_PARTIAL_FAILURE chunkSize={}, failed={}", changes.size(), failures.size());
+            return failures;
+        } catch (DataAccessException e) {
+            throw new DatabaseOperationException("Bulk upsert of " + changes.size() + " customers failed", e);
+        }
     }
 
+    @Override
+    public void ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(Customer.class);
+        // The trailing _id lets an EXACT match walk the index already in keyset order, so no sort is needed.
+        // The address ones are multikey indexes, one entry per address of the customer.
+        for (String field : List.of("firstNameNormalized", "lastNameNormalized", "addresses.cityNormalized", "addresses.stateNormalized")) {
+            indexOps.ensureIndex(new Index().on(field, Sort.Direction.ASC).on("_id", Sort.Direction.ASC));
+        }
+    }
 
     @Override
-    public List<Customer> findCustomersInBoth(List<String> listA, List<String> listB) {
-        // This can be made extensible by taking List<List<String>> to make it dynamic and not restrict to just 2 Lists.
-        log.info("DB_INTERSECTION_FIND_ListA {}", listA);
-        log.info("DB_INTERSECTION_FIND_ListB {}", listB);
-        Query query = new Query(new Criteria().andOperator(
-                Criteria.where("customerId").in(listA),
-                Criteria.where("customerId").in(listB)
-        ));
-        query.limit(defaultPageSize);
-        return mongoTemplate.find(query, Customer.class);
+    public long backfillSearchFields() {
+        // Documents written before the shadow fields existed can't be found by the filters until they get them
+        Query query = new Query(Criteria.where("firstNameNormalized").exists(false)).cursorBatchSize(backfillBatchSize);
+        long updated = 0;
+        List<Customer> batch = new ArrayList<>(backfillBatchSize);
+        try (CloseableIterator<Customer> customers = mongoTemplate.stream(query, Customer.class)) {
+            while (customers.hasNext()) {
+                batch.add(customers.next());
+                if (batch.size() >= backfillBatchSize) {
+                    updated += replaceWithSearchFields(batch);
+                }
+            }
+        }
+        return updated + replaceWithSearchFields(batch);
     }
 
-    private Criteria getNameCriteria(String name) {
-        return new Criteria().orOperator(
-                Criteria.where("firstName").regex(name, "i"),
-                Criteria.where("lastName").regex(name, "i")
-        );
+    @Override
+    public long migrateStringIds() {
+        // Customers stored before the ids became binary UUIDs. The mapping looks them up by the binary form, so each is
+        // copied under its binary id and the string one is removed. Copies already there, from a run that stopped
+        // in between, are only removed.
+        Long migrated = mongoTemplate.execute(Customer.class, collection -> {
+            long count = 0;
+            List<Document> batch = new ArrayList<>(backfillBatchSize);
+            try (MongoCursor<Document> customers = collection.find(Filters.type("_id", BsonType.STRING)).batchSize(backfillBatchSize).iterator()) {
+                while (customers.hasNext()) {
+                    batch.add(customers.next());
+                    if (batch.size() >= backfillBatchSize) {
+                        count += moveToBinaryIds(collection, batch);
+                    }
+                }
+            }
+            return count + moveToBinaryIds(collection, batch);
+        });
+        return migrated == null ? 0 : migrated;
     }
 
-    private Criteria getCityCriteria(String city) {
-        return Criteria.where("addresses.city").regex(city, "i");
+    private static int moveToBinaryIds(MongoCollection<Document> collection, List<Document> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        List<String> stringIds = new ArrayList<>(batch.size());
+        List<Document> copies = new ArrayList<>(batch.size());
+        for (Document customer : batch) {
+            String customerId = customer.getString("_id");
+            stringIds.add(customerId);
+            Document copy = new Document(customer);
+            copy.put("_id", CustomerIds.toBinary(customerId));
+            copies.add(copy);
+        }
+        try {
+            collection.insertMany(copies, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            if (e.getWriteErrors().stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY)) {
+                throw e;
+            }
+        }
+        collection.deleteMany(Filters.in("_id", stringIds));
+        batch.clear();
+        return copies.size();
     }
 
-    private Criteria getStateCriteria(String state) {
-        return Criteria.where("addresses.state").regex(state, "i");
+    private int replaceWithSearchFields(List<Customer> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Customer.class);
+        for (Customer customer : batch) {
+            SearchText.populateSearchFields(customer);
+            // Left alone if it was updated since it was read
+            bulkOps.replaceOne(CustomerCriteria.byIdAndVersion(customer.getCustomerId(), customer.versionOrZero()), customer);
+        }
+        int replaced = bulkOps.execute().getModifiedCount();
+        batch.clear();
+        return replaced;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,14 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.model.CustomerSummary;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface CustomCustomerSummaryRepository {
+    void ensureIndexes();
+    void increment(Collection<CustomerSummary> increments);
+    List<CustomerSummary> aggregateFromCustomers();
+    void replaceAll(List<CustomerSummary> summaries, Instant rebuiltAt);
+}
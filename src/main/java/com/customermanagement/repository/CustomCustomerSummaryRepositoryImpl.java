@@ -0,0 +1,122 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.enums.SummaryDimension;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerSummary;
+import com.customermanagement.repository.analytics.SummaryBuckets;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.Fields;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class CustomCustomerSummaryRepositoryImpl implements CustomCustomerSummaryRepository {
+
+    private final MongoTemplate mongoTemplate;
+
+    public CustomCustomerSummaryRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void ensureIndexes() {
+        // Serves the top buckets of a dimension
+        mongoTemplate.indexOps(CustomerSummary.class)
+                .ensureIndex(new Index().on("dimension", Sort.Direction.ASC).on("count", Sort.Direction.DESC));
+    }
+
+    @Override
+    public void increment(Collection<CustomerSummary> increments) {
+        if (increments.isEmpty()) {
+            return;
+        }
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CustomerSummary.class);
+        for (CustomerSummary increment : increments) {
+            bulkOps.upsert(new Query(Criteria.where("_id").is(increment.getId())),
+                    new Update().inc("count", increment.getCount())
+                            .setOnInsert("dimension", increment.getDimension())
+                            .setOnInsert("key", increment.getKey()));
+        }
+        bulkOps.execute();
+    }
+
+    @Override
+    public List<CustomerSummary> aggregateFromCustomers() {
+        // One pass over the customers with a facet per dimension. The address ones group by customer first,
+        // so a customer counts once per state and city however many of its addresses are there.
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.facet(Aggregation.count().as("count")).as("total")
+                        .and(Aggregation.unwind("addresses"),
+                                Aggregation.group(Fields.from(Fields.field("customer", "customerId"), Fields.field("state", "addresses.stateNormalized"))),
+                                Aggregation.group("state").count().as("count")).as("state")
+                        .and(Aggregation.unwind("addresses"),
+                                Aggregation.group(Fields.from(Fields.field("customer", "customerId"), Fields.field("city", "addresses.cityNormalized"),
+                                        Fields.field("state", "addresses.stateNormalized"))),
+                                Aggregation.group("city", "state").count().as("count")).as("city")
+                        .and(Aggregation.bucket("age").withBoundaries(SummaryBuckets.AGE_BOUNDARIES.toArray())
+                                .withDefaultBucket(SummaryBuckets.UNKNOWN).andOutputCount().as("count")).as("ageBand")
+                        .and(Aggregation.bucket("spendingLimit").withBoundaries(SummaryBuckets.SPENDING_LIMIT_BOUNDARIES.toArray())
+                                .withDefaultBucket(SummaryBuckets.UNKNOWN).andOutputCount().as("count")).as("spendingLimit"))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        Document result = mongoTemplate.aggregate(aggregation, Customer.class, Document.class).getUniqueMappedResult();
+        return result == null ? List.of(CustomerSummary.of(SummaryDimension.TOTAL, SummaryBuckets.TOTAL_KEY, 0)) : toSummaries(result);
+    }
+
+    static List<CustomerSummary> toSummaries(Document result) {
+        List<CustomerSummary> summaries = new ArrayList<>();
+        // An empty collection has no total row at all, the total is written anyway to mark the rebuild
+        long total = result.getList("total", Document.class).stream().mapToLong(CustomCustomerSummaryRepositoryImpl::count).sum();
+        summaries.add(CustomerSummary.of(SummaryDimension.TOTAL, SummaryBuckets.TOTAL_KEY, total));
+        for (Document state : result.getList("state", Document.class)) {
+            if (state.getString("_id") != null) {
+                summaries.add(CustomerSummary.of(SummaryDimension.STATE, state.getString("_id"), count(state)));
+            }
+        }
+        for (Document city : result.getList("city", Document.class)) {
+            Document key = city.get("_id", Document.class);
+            if (key.getString("city") != null) {
+                summaries.add(CustomerSummary.of(SummaryDimension.CITY, SummaryBuckets.cityKey(key.getString("city"), key.getString("state")), count(city)));
+            }
+        }
+        // $bucket names a band by its lower bound, or by the default for values outside all bands
+        for (Document band : result.getList("ageBand", Document.class)) {
+            Object lowerBound = band.get("_id");
+            String key = lowerBound instanceof Number ? SummaryBuckets.ageBand((Number) lowerBound) : SummaryBuckets.UNKNOWN;
+            summaries.add(CustomerSummary.of(SummaryDimension.AGE_BAND, key, count(band)));
+        }
+        for (Document band : result.getList("spendingLimit", Document.class)) {
+            Object lowerBound = band.get("_id");
+            String key = lowerBound instanceof Number ? SummaryBuckets.spendingLimitBand((Number) lowerBound) : SummaryBuckets.UNKNOWN;
+            summaries.add(CustomerSummary.of(SummaryDimension.SPENDING_LIMIT, key, count(band)));
+        }
+        return summaries;
+    }
+
+    private static long count(Document row) {
+        return ((Number) row.get("count")).longValue();
+    }
+
+    @Override
+    public void replaceAll(List<CustomerSummary> summaries, Instant rebuiltAt) {
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CustomerSummary.class);
+        for (CustomerSummary summary : summaries) {
+            summary.setRebuiltAt(rebuiltAt);
+            bulkOps.replaceOne(new Query(Criteria.where("_id").is(summary.getId())), summary, FindAndReplaceOptions.options().upsert());
+        }
+        bulkOps.execute();
+        // Buckets that no customer falls in anymore. Those first incremented after the rebuild started have no rebuiltAt.
+        mongoTemplate.remove(new Query(Criteria.where("rebuiltAt").lt(rebuiltAt)), CustomerSummary.class);
+    }
+}
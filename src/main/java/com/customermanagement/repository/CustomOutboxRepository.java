@@ -0,0 +1,22 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.model.OutboxEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface CustomOutboxRepository {
+    void ensureIndexes();
+    boolean tryAcquireRelayLease(String owner, Duration leaseDuration);
+    void recordPublishedUpTo(Instant occurredAt);
+    Optional<Instant> findPublishedUpTo();
+    List<OutboxEvent> findReadyToPublish(int limit);
+    void removePublished(Collection<String> ids);
+    void rescheduleAfterFailure(OutboxEvent event, String error, Instant nextAttemptAt);
+    void markDead(OutboxEvent event, String error);
+    Optional<Instant> findOldestPendingCreatedAt();
+    long countPending();
+}
@@ -0,0 +1,126 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.enums.OutboxStatus;
+import com.customermanagement.model.OutboxEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+@Slf4j
+public class CustomOutboxRepositoryImpl implements CustomOutboxRepository {
+
+    private static final String RELAY_LEASE_COLLECTION = "customer_outbox_lease";
+    private static final String RELAY_LEASE_ID = "relay";
+
+    private final MongoTemplate mongoTemplate;
+
+    public CustomOutboxRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(OutboxEvent.class);
+        // Serves the relay poll: pending events that are due, oldest first
+        indexOps.ensureIndex(new Index().on("status", Sort.Direction.ASC).on("nextAttemptAt", Sort.Direction.ASC).on("_id", Sort.Direction.ASC));
+        // Serves pushing back the later events of a customer when one of its events fails
+        indexOps.ensureIndex(new Index().on("aggregateId", Sort.Direction.ASC).on("_id", Sort.Direction.ASC));
+        indexOps.ensureIndex(new Index().on("status", Sort.Direction.ASC).on("createdAt", Sort.Direction.ASC));
+    }
+
+    @Override
+    public boolean tryAcquireRelayLease(String owner, Duration leaseDuration) {
+        // Only one instance drains the outbox at a time, which is what keeps the per customer ordering across nodes.
+        // The upsert matches when we already hold the lease or it has expired, otherwise it tries to insert
+        // a second lease document with the same _id and fails with a duplicate key.
+        Instant now = Instant.now();
+        Query query = new Query(Criteria.where("_id").is(RELAY_LEASE_ID).orOperator(
+                Criteria.where("owner").is(owner),
+                Criteria.where("leaseUntil").lt(now)
+        ));
+        Update update = new Update().set("owner", owner).set("leaseUntil", now.plus(leaseDuration));
+        try {
+            mongoTemplate.upsert(query, update, RELAY_LEASE_COLLECTION);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void recordPublishedUpTo(Instant occurredAt) {
+        // Kept on the lease document, where every instance can read how far the relay got
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(RELAY_LEASE_ID)),
+                new Update().max("publishedUpTo", occurredAt), RELAY_LEASE_COLLECTION);
+    }
+
+    @Override
+    public Optional<Instant> findPublishedUpTo() {
+        Document lease = mongoTemplate.findById(RELAY_LEASE_ID, Document.class, RELAY_LEASE_COLLECTION);
+        return Optional.ofNullable(lease).map(found -> found.getDate("publishedUpTo")).map(Date::toInstant);
+    }
+
+    @Override
+    public List<OutboxEvent> findReadyToPublish(int limit) {
+        Query query = new Query(Criteria.where("status").is(OutboxStatus.PENDING).and("nextAttemptAt").lte(Instant.now()))
+                .with(Sort.by(Sort.Direction.ASC, "nextAttemptAt", "_id"))
+                .limit(limit);
+        return mongoTemplate.find(query, OutboxEvent.class);
+    }
+
+    @Override
+    public void removePublished(Collection<String> ids) {
+        if (!ids.isEmpty()) {
+            mongoTemplate.remove(new Query(Criteria.where("_id").in(ids)), OutboxEvent.class);
+        }
+    }
+
+    @Override
+    public void rescheduleAfterFailure(OutboxEvent event, String error, Instant nextAttemptAt) {
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(event.getId())),
+                new Update().inc("attempts", 1).set("nextAttemptAt", nextAttemptAt).set("lastError", error),
+                OutboxEvent.class);
+        // Later events of the same customer must not overtake the failed one, so they wait at least as long
+        mongoTemplate.updateMulti(new Query(Criteria.where("aggregateId").is(event.getAggregateId())
+                        .and("_id").gt(event.getId())
+                        .and("status").is(OutboxStatus.PENDING)
+                        .and("nextAttemptAt").lt(nextAttemptAt)),
+                new Update().set("nextAttemptAt", nextAttemptAt),
+                OutboxEvent.class);
+    }
+
+    @Override
+    public void markDead(OutboxEvent event, String error) {
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(event.getId())),
+                new Update().inc("attempts", 1).set("status", OutboxStatus.DEAD).set("lastError", error),
+                OutboxEvent.class);
+    }
+
+    @Override
+    public Optional<Instant> findOldestPendingCreatedAt() {
+        Query query = new Query(Criteria.where("status").is(OutboxStatus.PENDING))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"))
+                .limit(1);
+        query.fields().include("createdAt");
+        return Optional.ofNullable(mongoTemplate.findOne(query, OutboxEvent.class)).map(OutboxEvent::getCreatedAt);
+    }
+
+    @Override
+    public long countPending() {
+        return mongoTemplate.count(new Query(Criteria.where("status").is(OutboxStatus.PENDING)), OutboxEvent.class);
+    }
+}
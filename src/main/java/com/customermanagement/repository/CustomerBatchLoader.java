@@ -0,0 +1,124 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.model.Customer;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Coalesces concurrent lookups of single customers by id into one $in query, DataLoader style.
+ * The first lookup opens a batch and waits up to the window for others to join it, or until the batch is full,
+ * then looks up all of its ids at once and hands every caller its customer. An id asked for twice in the same
+ * batch is looked up once. Callers wait at most the window longer than they would on their own, the
+ * customer.batch.loader.wait timer shows how much that is in practice.
+ */
+@Component
+@Slf4j
+public class CustomerBatchLoader {
+
+    private final MongoTemplate mongoTemplate;
+    private final DistributionSummary batchSize;
+    private final Timer addedWait;
+
+    // A window of 0 turns coalescing off, every lookup is a query of its own
+    @Value("${customer.batch-loader.window-ms:2}")
+    private long windowMillis;
+
+    @Value("${customer.batch-loader.max-batch-size:100}")
+    private int maxBatchSize;
+
+    // The batch taking new ids, null until the next lookup opens one
+    private Batch open;
+
+    public CustomerBatchLoader(MongoTemplate mongoTemplate, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.batchSize = DistributionSummary.builder("customer.batch.loader.size")
+                .description("Distinct ids looked up per coalesced query")
+                .register(meterRegistry);
+        this.addedWait = Timer.builder("customer.batch.loader.wait")
+                .description("Time a lookup waited for its batch to be sent")
+                .register(meterRegistry);
+    }
+
+    public Optional<Customer> load(String customerId) {
+        if (windowMillis <= 0) {
+            return Optional.ofNullable(mongoTemplate.findOne(CustomerCriteria.byIds(List.of(customerId)), Customer.class));
+        }
+        long enqueuedAt = System.nanoTime();
+        Batch batch;
+        CompletableFuture<Optional<Customer>> result;
+        boolean leader = false;
+        synchronized (this) {
+            if (open == null) {
+                open = new Batch();
+                leader = true;
+            }
+            batch = open;
+            result = batch.pending.computeIfAbsent(customerId, id -> new CompletableFuture<>());
+            if (batch.pending.size() >= maxBatchSize) {
+                // Full, the leader sends it right away and the next lookup opens a new one
+                open = null;
+                batch.full.countDown();
+            }
+        }
+        if (leader) {
+            awaitWindow(batch);
+            dispatch(batch);
+        }
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        } finally {
+            addedWait.record(Math.max(0, batch.dispatchedAt - enqueuedAt), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void awaitWindow(Batch batch) {
+        try {
+            batch.full.await(windowMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // Sent early, the callers that joined still get their customers
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (open == batch) {
+                open = null;
+            }
+        }
+    }
+
+    private void dispatch(Batch batch) {
+        // Closed by now, no lookup adds to pending any more
+        batch.dispatchedAt = System.nanoTime();
+        List<String> ids = new ArrayList<>(batch.pending.keySet());
+        batchSize.record(ids.size());
+        try {
+            Map<String, Customer> found = mongoTemplate.find(CustomerCriteria.byIds(ids), Customer.class)
+                    .stream()
+                    .collect(Collectors.toMap(Customer::getCustomerId, Function.identity()));
+            batch.pending.forEach((id, future) -> future.complete(Optional.ofNullable(found.get(id))));
+        } catch (RuntimeException e) {
+            log.warn("Batched lookup of {} customers failed", ids.size(), e);
+            batch.pending.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private static class Batch {
+        private final Map<String, CompletableFuture<Optional<Customer>>> pending = new LinkedHashMap<>();
+        private final CountDownLatch full = new CountDownLatch(1);
+        private volatile long dispatchedAt;
+    }
+}
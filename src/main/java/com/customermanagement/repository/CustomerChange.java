@@ -0,0 +1,152 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.model.Address;
+import com.customermanagement.model.Customer;
+import com.customermanagement.repository.filter.SearchText;
+import lombok.Getter;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A targeted write of one customer, worked out by comparing the stored customer with what it should become.
+ * Only the fields that differ are written, with $set, or with $push/$pull when addresses are only added or only
+ * removed, and only if the customer is still at the version it was compared at. A customer that doesn't exist yet
+ * is inserted whole.
+ */
+@Getter
+public class CustomerChange {
+
+    // The fields of the API, which are the ones a change can write
+    private static final Map<String, Function<Customer, Object>> FIELDS = new LinkedHashMap<>();
+    // Written along with the field they are the normalized copy of
+    private static final Map<String, Function<Customer, Object>> SEARCH_FIELDS = Map.of(
+            "firstName", Customer::getFirstNameNormalized,
+            "lastName", Customer::getLastNameNormalized);
+
+    static {
+        FIELDS.put("firstName", Customer::getFirstName);
+        FIELDS.put("lastName", Customer::getLastName);
+        FIELDS.put("age", Customer::getAge);
+        FIELDS.put("spendingLimit", Customer::getSpendingLimit);
+        FIELDS.put("mobileNumber", Customer::getMobileNumber);
+        FIELDS.put("addresses", Customer::getAddresses);
+    }
+
+    private final String customerId;
+    // The version compared at, null for a new customer
+    private final Long expectedVersion;
+    // The customer as the change leaves it, with its new version
+    private final Customer result;
+    private final Set<String> changedFields;
+    // Set instead of the addresses when they are only added to or only removed from
+    private final List<Address> addedAddresses;
+    private final Set<String> removedAddressTypes;
+
+    private CustomerChange(String customerId, Long expectedVersion, Customer result, Set<String> changedFields,
+                           List<Address> addedAddresses, Set<String> removedAddressTypes) {
+        this.customerId = customerId;
+        this.expectedVersion = expectedVersion;
+        this.result = result;
+        this.changedFields = changedFields;
+        this.addedAddresses = addedAddresses;
+        this.removedAddressTypes = removedAddressTypes;
+    }
+
+    /**
+     * The change turning the stored customer into the target, which has the same id. The target gets the next version.
+     */
+    public static CustomerChange of(Customer current, Customer target) {
+        SearchText.populateSearchFields(target);
+        Set<String> changedFields = FIELDS.entrySet().stream()
+                .filter(field -> !Objects.equals(field.getValue().apply(current), field.getValue().apply(target)))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        target.setVersion(current.versionOrZero() + 1);
+
+        List<Address> added = List.of();
+        Set<String> removedTypes = Set.of();
+        if (changedFields.contains("addresses") && current.getAddresses() != null && target.getAddresses() != null) {
+            List<Address> before = current.getAddresses();
+            List<Address> after = target.getAddresses();
+            Set<String> typesGone = before.stream().filter(address -> !after.contains(address)).map(Address::getType).collect(Collectors.toSet());
+            if (after.size() > before.size() && after.subList(0, before.size()).equals(before)) {
+                added = after.subList(before.size(), after.size());
+            } else if (before.stream().filter(address -> !typesGone.contains(address.getType())).collect(Collectors.toList()).equals(after)) {
+                // $pull takes every address of a type, so this only works when all of them went
+                removedTypes = typesGone;
+            }
+        }
+        return new CustomerChange(current.getCustomerId(), current.versionOrZero(), target, changedFields, added, removedTypes);
+    }
+
+    /**
+     * A customer that isn't stored yet, at version 0.
+     */
+    public static CustomerChange created(Customer customer) {
+        SearchText.populateSearchFields(customer);
+        customer.setVersion(0L);
+        return new CustomerChange(customer.getCustomerId(), null, customer, FIELDS.keySet(), List.of(), Set.of());
+    }
+
+    public boolean isNew() {
+        return expectedVersion == null;
+    }
+
+    public boolean isEmpty() {
+        return !isNew() && changedFields.isEmpty();
+    }
+
+    Query toQuery() {
+        return CustomerCriteria.byIdAndVersion(customerId, expectedVersion);
+    }
+
+    Update toUpdate() {
+        Update update = new Update();
+        for (String field : changedFields) {
+            if (field.equals("addresses") && !addedAddresses.isEmpty()) {
+                update.push("addresses").each(addedAddresses.toArray());
+            } else if (field.equals("addresses") && !removedAddressTypes.isEmpty()) {
+                update.pull("addresses", new Document("type", new Document("$in", new ArrayList<>(removedAddressTypes))));
+            } else {
+                set(update, field, false);
+            }
+        }
+        return withVersion(update);
+    }
+
+    /**
+     * Like toUpdate, and if the customer isn't there anymore the other fields are written too, so an upsert that
+     * inserts stores a whole customer. Changed addresses are always written whole here, a $push or $pull that
+     * inserts would leave only the added addresses, or none.
+     */
+    Update toUpsert() {
+        Update update = new Update();
+        FIELDS.keySet().forEach(field -> set(update, field, !changedFields.contains(field)));
+        return withVersion(update);
+    }
+
+    // Named explicitly, so the template doesn't add an $inc of its own
+    private Update withVersion(Update update) {
+        return update.set("version", result.getVersion());
+    }
+
+    private void set(Update update, String field, boolean onInsertOnly) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put(field, FIELDS.get(field).apply(result));
+        if (SEARCH_FIELDS.containsKey(field)) {
+            values.put(field + "Normalized", SEARCH_FIELDS.get(field).apply(result));
+        }
+        values.forEach((key, value) -> {
+            if (onInsertOnly) {
+                update.setOnInsert(key, value);
+            } else {
+                update.set(key, value);
+            }
+        });
+    }
+}
@@ -0,0 +1,146 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.exceptions.InvalidInputException;
+import com.customermanagement.model.CustomerIds;
+import com.customermanagement.repository.filter.SearchText;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * The Mongo queries of the list and export endpoints, shared by the blocking and the reactive repository
+ * so both variants of the API filter and page in exactly the same way.
+ */
+final class CustomerCriteria {
+
+    // Every filter matches on a normalized shadow field, which is indexed, instead of a case insensitive regex on the raw value
+    private static final Map<String, BiFunction<String, MatchMode, Criteria>> QUERY_FUNCTIONS = Map.of(
+            "name", CustomerCriteria::getNameCriteria,
+            "city", CustomerCriteria::getCityCriteria,
+            "state", CustomerCriteria::getStateCriteria
+            // Add more parameters here as needed
+    );
+
+    private CustomerCriteria() {
+    }
+
+    static Query buildFilterQuery(Map<String, String> filters, String operation, MatchMode matchMode) {
+        return buildFilterQuery(filters, operation, matchMode, Map.of());
+    }
+
+    /**
+     * Like above, but the filters in resolved come with their criteria already worked out.
+     */
+    static Query buildFilterQuery(Map<String, String> filters, String operation, MatchMode matchMode, Map<String, Criteria> resolved) {
+        // There is no tight coupling between the filter fields, as we have kept it dynamic in a Map,
+        // so if new field is to be added for filtering, just add a new field in the Map, without changing anything in Service layer
+        Query query = new Query();
+        List<Criteria> criteriaList = new ArrayList<>();
+
+        filters.forEach((key, value) -> {
+            if (resolved.containsKey(key)) {
+                criteriaList.add(resolved.get(key));
+            } else if (QUERY_FUNCTIONS.containsKey(key)) {
+                criteriaList.add(QUERY_FUNCTIONS.get(key).apply(value, matchMode));
+            }
+        });
+
+        if (!criteriaList.isEmpty()) {
+            Criteria combinedCriteria;
+            if ("OR".equalsIgnoreCase(operation)) {
+                combinedCriteria = new Criteria().orOperator(criteriaList.toArray(new Criteria[0]));
+            } else {
+                combinedCriteria = new Criteria().andOperator(criteriaList.toArray(new Criteria[0]));
+            }
+            query.addCriteria(combinedCriteria);
+        }
+        return query;
+    }
+
+    /**
+     * Keyset pagination on customerId (the _id index): seek past the cursor, sort on the id and cut at the limit.
+     * Unlike skip, the cost of a page doesn't grow with how far the client has paged. Only the projected fields are read.
+     */
+    static Query withKeysetPage(Query query, CustomerQueryOptions options) {
+        if (options.getAfterCustomerId() != null) {
+            // The mapping converts ids for equality and $in only, a range has to be given the stored form.
+            // Binary UUIDs sort like their strings, so the cursors stay the same.
+            query.addCriteria(Criteria.where("customerId").gt(CustomerIds.toBinary(options.getAfterCustomerId())));
+        }
+        options.getProjection().applyTo(query);
+        return query.with(Sort.by(Sort.Direction.ASC, "customerId")).limit(options.getLimit());
+    }
+
+    /**
+     * The ids of a page of a name only search, in the ranked order of the index rather than by id. The cursor is
+     * still the id of the last customer served, and the page continues right after its position in the ranking.
+     * A cursor that isn't in the ranking anymore, because the customer was renamed since, is rejected: starting over
+     * would hand the client the first page again, and a client paging until the end would never get there.
+     */
+    static List<String> rankedPageIds(List<String> rankedIds, CustomerQueryOptions options) {
+        int from = 0;
+        if (options.getAfterCustomerId() != null) {
+            int cursor = rankedIds.indexOf(options.getAfterCustomerId());
+            if (cursor < 0) {
+                throw new InvalidInputException("The cursor no longer matches the search, the customer it points at was changed. Start again from the first page");
+            }
+            from = cursor + 1;
+        }
+        return rankedIds.subList(Math.min(from, rankedIds.size()), Math.min(from + options.getLimit(), rankedIds.size()));
+    }
+
+    /**
+     * The customer, if it is still at the version. Customers stored before there were versions have none, they are at 0.
+     */
+    static Query byIdAndVersion(String customerId, long version) {
+        Criteria byId = Criteria.where("customerId").is(customerId);
+        return new Query(version == 0 ? byId.and("version").in(0L, null) : byId.and("version").is(version));
+    }
+
+    static Query byIds(List<String> customerIds) {
+        return new Query(Criteria.where("customerId").in(customerIds));
+    }
+
+    /**
+     * Like above, reading only the projected fields. With the id alone the query is covered by the _id index,
+     * Mongo answers it without fetching a single document.
+     */
+    static Query byIds(List<String> customerIds, CustomerProjection projection) {
+        return projection.applyTo(byIds(customerIds));
+    }
+
+    private static Criteria getNameCriteria(String name, MatchMode matchMode) {
+        return new Criteria().orOperator(
+                getMatchCriteria("firstNameNormalized", name, matchMode),
+                getMatchCriteria("lastNameNormalized", name, matchMode)
+        );
+    }
+
+    private static Criteria getCityCriteria(String city, MatchMode matchMode) {
+        return getMatchCriteria("addresses.cityNormalized", city, matchMode);
+    }
+
+    private static Criteria getStateCriteria(String state, MatchMode matchMode) {
+        return getMatchCriteria("addresses.stateNormalized", state, matchMode);
+    }
+
+    private static Criteria getMatchCriteria(String normalizedField, String value, MatchMode matchMode) {
+        // The field is already lowercase, so the regex doesn't need the "i" flag, which would rule out index bounds
+        String normalized = SearchText.normalize(value);
+        switch (matchMode) {
+            case EXACT:
+                return Criteria.where(normalizedField).is(normalized);
+            case CONTAINS:
+                return Criteria.where(normalizedField).regex(SearchText.escapeRegex(normalized));
+            case PREFIX:
+            default:
+                return Criteria.where(normalizedField).regex("^" + SearchText.escapeRegex(normalized));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.customermanagement.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Creates the indexes behind the customer filters on startup, moves customers stored with string ids to binary ones,
+ * and optionally fills the search fields of customers that were stored before those fields existed.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CustomerIndexInitializer {
+
+    private final CustomerRepository customerRepository;
+
+    @Value("${customer.query.backfill-on-startup:false}")
+    private boolean backfillOnStartup;
+
+    @Value("${customer.ids.migrate-on-startup:true}")
+    private boolean migrateIdsOnStartup;
+
+    @PostConstruct
+    public void init() {
+        customerRepository.ensureIndexes();
+        log.info("Customer filter indexes are in place");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        // The ids first, the backfill writes the customers back by their binary id
+        if (migrateIdsOnStartup) {
+            migrateStringIds();
+        }
+        if (backfillOnStartup) {
+            long updated = customerRepository.backfillSearchFields();
+            log.info("DB_SEARCH_FIELDS_BACKFILL updated={}", updated);
+        }
+    }
+
+    private void migrateStringIds() {
+        try {
+            long migrated = customerRepository.migrateStringIds();
+            log.info("DB_ID_MIGRATION migrated={}", migrated);
+        } catch (DataAccessException e) {
+            // Customers with a string id can't be found until they are migrated, the next start tries again
+            log.error("DB_ID_MIGRATION_FAILED: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.exceptions.InvalidInputException;
+import com.customermanagement.model.Address;
+import com.customermanagement.model.Customer;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.springframework.data.mongodb.core.query.Field;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * The customer fields a list or set endpoint responds with. Becomes the Query.fields() of the Mongo query, so only those
+ * are read and decoded, and is applied in memory to customers that come from a cache or the replica instead.
+ * The customerId is always included, it is what keyset pages and cursors are made of.
+ */
+@EqualsAndHashCode
+@ToString
+public final class CustomerProjection {
+
+    public static final CustomerProjection FULL = new CustomerProjection(null);
+
+    private static final String ADDRESS_PREFIX = "addresses.";
+    private static final List<String> FIELDS = List.of("customerId", "firstName", "lastName", "age", "spendingLimit", "mobileNumber", "addresses");
+    private static final List<String> ADDRESS_FIELDS = List.of("type", "street", "address2", "city", "state", "zipCode");
+
+    // Null for the whole customer
+    private final Set<String> fields;
+
+    private CustomerProjection(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * A projection on the fields, e.g. "firstName" or "addresses.city". Throws InvalidInputException for a field the API doesn't have.
+     */
+    public static CustomerProjection of(Collection<String> requested) {
+        Set<String> fields = new LinkedHashSet<>();
+        fields.add("customerId");
+        for (String field : requested) {
+            String trimmed = field.trim();
+            boolean known = trimmed.startsWith(ADDRESS_PREFIX)
+                    ? ADDRESS_FIELDS.contains(trimmed.substring(ADDRESS_PREFIX.length()))
+                    : FIELDS.contains(trimmed);
+            if (!known) {
+                throw new InvalidInputException("Unknown field: " + trimmed + ", expected any of " + FIELDS + " or addresses." + ADDRESS_FIELDS);
+            }
+            fields.add(trimmed);
+        }
+        // Mongo rejects a projection on both a document and one of its fields
+        if (fields.contains("addresses")) {
+            fields.removeIf(field -> field.startsWith(ADDRESS_PREFIX));
+        }
+        return fields.containsAll(FIELDS) ? FULL : new CustomerProjection(fields);
+    }
+
+    public boolean isFull() {
+        return fields == null;
+    }
+
+    // Nothing but the customerId
+    public boolean isIdOnly() {
+        return fields != null && fields.size() == 1;
+    }
+
+    /**
+     * Include only the projected fields in the query results.
+     */
+    public Query applyTo(Query query) {
+        if (fields != null) {
+            Field projection = query.fields();
+            fields.forEach(projection::include);
+        }
+        return query;
+    }
+
+    /**
+     * A copy of the customer with only the projected fields, or the customer itself without a projection.
+     */
+    public Customer applyTo(Customer customer) {
+        if (fields == null) {
+            return customer;
+        }
+        Customer projected = Customer.builder().customerId(customer.getCustomerId()).build();
+        if (fields.contains("firstName")) {
+            projected.setFirstName(customer.getFirstName());
+        }
+        if (fields.contains("lastName")) {
+            projected.setLastName(customer.getLastName());
+        }
+        if (fields.contains("age")) {
+            projected.setAge(customer.getAge());
+        }
+        if (fields.contains("spendingLimit")) {
+            projected.setSpendingLimit(customer.getSpendingLimit());
+        }
+        if (fields.contains("mobileNumber")) {
+            projected.setMobileNumber(customer.getMobileNumber());
+        }
+        if (fields.contains("addresses")) {
+            projected.setAddresses(customer.getAddresses());
+        } else if (customer.getAddresses() != null && fields.stream().anyMatch(field -> field.startsWith(ADDRESS_PREFIX))) {
+            projected.setAddresses(customer.getAddresses().stream().map(this::applyTo).collect(Collectors.toList()));
+        }
+        return projected;
+    }
+
+    private Address applyTo(Address address) {
+        return Address.builder()
+                .type(fields.contains("addresses.type") ? address.getType() : null)
+                .street(fields.contains("addresses.street") ? address.getStreet() : null)
+                .address2(fields.contains("addresses.address2") ? address.getAddress2() : null)
+                .city(fields.contains("addresses.city") ? address.getCity() : null)
+                .state(fields.contains("addresses.state") ? address.getState() : null)
+                .zipCode(fields.contains("addresses.zipCode") ? address.getZipCode() : null)
+                .build();
+    }
+}
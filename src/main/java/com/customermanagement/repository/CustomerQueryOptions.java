@@ -0,0 +1,26 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.enums.ReadConsistency;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class CustomerQueryOptions {
+    // Keyset position, only customers with a greater customerId are returned. Null starts from the beginning.
+    private String afterCustomerId;
+
+    private int limit;
+
+    @Builder.Default
+    private MatchMode matchMode = MatchMode.PREFIX;
+
+    // The fields to read, all of them by default
+    @Builder.Default
+    private CustomerProjection projection = CustomerProjection.FULL;
+
+    // Primary or secondary preferred reads
+    @Builder.Default
+    private ReadConsistency consistency = ReadConsistency.STRONG;
+}
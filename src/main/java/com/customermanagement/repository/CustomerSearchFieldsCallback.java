@@ -0,0 +1,36 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.model.Customer;
+import com.customermanagement.repository.filter.SearchText;
+import org.reactivestreams.Publisher;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.data.mongodb.core.mapping.event.ReactiveBeforeConvertCallback;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keeps the normalized search fields in sync on every save and insert, including bulk inserts,
+ * so the service code never has to remember to fill them.
+ */
+@Component
+public class CustomerSearchFieldsCallback implements BeforeConvertCallback<Customer> {
+
+    @Override
+    public Customer onBeforeConvert(Customer customer, String collection) {
+        SearchText.populateSearchFields(customer);
+        return customer;
+    }
+
+    /**
+     * The same for saves through the reactive template. Both can't be one class, the two methods only differ in return type.
+     */
+    @Component
+    public static class Reactive implements ReactiveBeforeConvertCallback<Customer> {
+
+        @Override
+        public Publisher<Customer> onBeforeConvert(Customer customer, String collection) {
+            SearchText.populateSearchFields(customer);
+            return Mono.just(customer);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.enums.SummaryDimension;
+import com.customermanagement.model.CustomerSummary;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface CustomerSummaryRepository extends MongoRepository<CustomerSummary, String>, CustomCustomerSummaryRepository {
+    List<CustomerSummary> findByDimension(SummaryDimension dimension, Pageable pageable);
+}
@@ -0,0 +1,7 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.model.OutboxEvent;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface OutboxRepository extends MongoRepository<OutboxEvent, String>, CustomOutboxRepository {
+}
@@ -0,0 +1,18 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.enums.ReadConsistency;
+import com.customermanagement.model.Customer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+public interface ReactiveCustomCustomerRepository {
+    Flux<Customer> findCustomersWithFilters(Map<String, String> filters, String operation, CustomerQueryOptions options);
+    Flux<Customer> streamCustomersWithFilters(Map<String, String> filters, String operation, MatchMode matchMode, ReadConsistency consistency);
+    Flux<Customer> findCustomersByIds(List<String> customerIds);
+    Flux<Customer> findCustomersByIds(List<String> customerIds, CustomerProjection projection, ReadConsistency consistency);
+    Mono<Map<Integer, String>> insertCustomersInBulk(List<Customer> customers);
+}
@@ -0,0 +1,152 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.enums.ReadConsistency;
+import com.customermanagement.exceptions.DatabaseOperationException;
+import com.customermanagement.model.Customer;
+import com.customermanagement.repository.filter.NameSearchIndex;
+import com.customermanagement.repository.filter.SearchText;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.model.InsertManyOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Non-blocking counterpart of CustomCustomerRepositoryImpl, used by the reactive profile. Queries are the same,
+ * built by CustomerCriteria, and results are streamed as they come off the Mongo cursor.
+ */
+@Slf4j
+public class ReactiveCustomCustomerRepositoryImpl implements ReactiveCustomCustomerRepository {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final ReactiveMongoTemplate secondaryPreferredReactiveMongoTemplate;
+    private final NameSearchIndex nameSearchIndex;
+
+    @Value("${customer.export.cursor-batch-size:1000}")
+    private int exportCursorBatchSize;
+
+    @Value("${customer.search.max-candidates:5000}")
+    private int maxNameCandidates;
+
+    @Value("${customer.set-query.fetch-chunk-size:250}")
+    private int fetchChunkSize;
+
+    @Value("${customer.set-query.fetch-parallelism:4}")
+    private int fetchParallelism;
+
+    public ReactiveCustomCustomerRepositoryImpl(ReactiveMongoTemplate reactiveMongoTemplate,
+                                                @Qualifier("secondaryPreferredReactiveMongoTemplate") ReactiveMongoTemplate secondaryPreferredReactiveMongoTemplate,
+                                                NameSearchIndex nameSearchIndex) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.secondaryPreferredReactiveMongoTemplate = secondaryPreferredReactiveMongoTemplate;
+        this.nameSearchIndex = nameSearchIndex;
+    }
+
+    @Override
+    public Flux<Customer> findCustomersWithFilters(Map<String, String> filters, String operation, CustomerQueryOptions options) {
+        // Same use of the trigram index as the blocking repository, the index lives in memory so it doesn't block
+        if (options.getMatchMode() == MatchMode.CONTAINS && filters.containsKey("name")) {
+            Optional<List<String>> nameMatches = nameSearchIndex.search(filters.get("name"));
+            if (nameMatches.isPresent()) {
+                if (filters.size() == 1) {
+                    return findRankedPage(nameMatches.get(), options);
+                }
+                if (nameMatches.get().size() <= maxNameCandidates) {
+                    Map<String, Criteria> resolved = Map.of("name", Criteria.where("customerId").in(nameMatches.get()));
+                    return readsFor(options.getConsistency()).find(CustomerCriteria.withKeysetPage(CustomerCriteria.buildFilterQuery(filters, operation, options.getMatchMode(), resolved), options), Customer.class);
+                }
+            }
+        }
+        return readsFor(options.getConsistency()).find(CustomerCriteria.withKeysetPage(CustomerCriteria.buildFilterQuery(filters, operation, options.getMatchMode()), options), Customer.class);
+    }
+
+    private ReactiveMongoTemplate readsFor(ReadConsistency consistency) {
+        return consistency == ReadConsistency.EVENTUAL ? secondaryPreferredReactiveMongoTemplate : reactiveMongoTemplate;
+    }
+
+    private Flux<Customer> findRankedPage(List<String> rankedIds, CustomerQueryOptions options) {
+        List<String> pageIds = CustomerCriteria.rankedPageIds(rankedIds, options);
+        if (pageIds.isEmpty()) {
+            return Flux.empty();
+        }
+        return readsFor(options.getConsistency()).find(CustomerCriteria.byIds(pageIds, options.getProjection()), Customer.class)
+                .collectMap(Customer::getCustomerId, Function.identity())
+                .flatMapIterable(customersById -> pageIds.stream()
+                        .map(customersById::get)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Flux<Customer> streamCustomersWithFilters(Map<String, String> filters, String operation, MatchMode matchMode, ReadConsistency consistency) {
+        // The cursor is read as the subscriber requests more, so a slow client holds back the next batch from Mongo
+        Query query = CustomerCriteria.buildFilterQuery(filters, operation, matchMode)
+                .with(Sort.by(Sort.Direction.ASC, "customerId"))
+                .cursorBatchSize(exportCursorBatchSize);
+        return readsFor(consistency).find(query, Customer.class);
+    }
+
+    @Override
+    public Flux<Customer> findCustomersByIds(List<String> customerIds) {
+        return findCustomersByIds(customerIds, CustomerProjection.FULL, ReadConsistency.STRONG);
+    }
+
+    @Override
+    public Flux<Customer> findCustomersByIds(List<String> customerIds, CustomerProjection projection, ReadConsistency consistency) {
+        // Chunks are queried concurrently without a thread each, and merged back into id order
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < customerIds.size(); from += fetchChunkSize) {
+            chunks.add(customerIds.subList(from, Math.min(from + fetchChunkSize, customerIds.size())));
+        }
+        return Flux.fromIterable(chunks)
+                .flatMap(chunk -> readsFor(consistency).find(CustomerCriteria.byIds(chunk, projection), Customer.class), fetchParallelism)
+                .onErrorMap(DataAccessException.class, e -> new DatabaseOperationException("Fetching " + customerIds.size() + " customers by id failed", e))
+                .sort(Comparator.comparing(Customer::getCustomerId));
+    }
+
+    @Override
+    public Mono<Map<Integer, String>> insertCustomersInBulk(List<Customer> customers) {
+        // The reactive template has no bulk operations, so this is an unordered insertMany on the collection itself,
+        // which reports the failed positions the same way. Entity callbacks don't run here, so the search fields are filled
+        // first, and the version isn't set like by insert.
+        List<Document> documents = customers.stream()
+                .map(customer -> {
+                    SearchText.populateSearchFields(customer);
+                    customer.setVersion(0L);
+                    Document document = new Document();
+                    reactiveMongoTemplate.getConverter().write(customer, document);
+                    return document;
+                })
+                .collect(Collectors.toList());
+        return reactiveMongoTemplate.execute(Customer.class, collection -> collection.insertMany(documents, new InsertManyOptions().ordered(false)))
+                .then(Mono.just(Map.<Integer, String>of()))
+                .onErrorResume(e -> bulkWriteFailure(e) != null, e -> {
+                    Map<Integer, String> failures = new HashMap<>();
+                    bulkWriteFailure(e).getWriteErrors().forEach(error -> failures.put(error.getIndex(), error.getMessage()));
+                    log.warn("DB_BULK_INSERT_PARTIAL_FAILURE chunkSize={}, failed={}", customers.size(), failures.size());
+                    return Mono.just(failures);
+                })
+                .onErrorMap(DataAccessException.class, e -> new DatabaseOperationException("Bulk insert of " + customers.size() + " customers failed", e));
+    }
+
+    // The template translates the driver exception, the per document errors stay on the cause
+    private MongoBulkWriteException bulkWriteFailure(Throwable e) {
+        if (e instanceof MongoBulkWriteException) {
+            return (MongoBulkWriteException) e;
+        }
+        return e.getCause() instanceof MongoBulkWriteException ? (MongoBulkWriteException) e.getCause() : null;
+    }
+}
@@ -0,0 +1,7 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.model.Customer;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+public interface ReactiveCustomerRepository extends ReactiveMongoRepository<Customer, String>, ReactiveCustomCustomerRepository {
+}
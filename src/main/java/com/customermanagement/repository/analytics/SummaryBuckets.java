@@ -0,0 +1,90 @@
+package com.customermanagement.repository.analytics;
+
+import com.customermanagement.enums.SummaryDimension;
+import com.customermanagement.model.Address;
+import com.customermanagement.model.Customer;
+import com.customermanagement.repository.filter.SearchText;
+
+import java.util.*;
+
+/**
+ * The summary buckets a customer falls in, shared by the increments on create and the rebuild aggregation
+ * so both count a customer under the same keys.
+ */
+public final class SummaryBuckets {
+
+    public static final String TOTAL_KEY = "all";
+    public static final String UNKNOWN = "unknown";
+
+    // Lower bounds of the bands followed by the exclusive upper bound of the last one, as $bucket takes them
+    public static final List<Integer> AGE_BOUNDARIES = List.of(18, 25, 35, 45, 55, 65, 151);
+    public static final List<Double> SPENDING_LIMIT_BOUNDARIES = List.of(0d, 1000d, 2500d, 5000d, 10000d, 25000d, 50000d, Double.MAX_VALUE);
+
+    private static final List<String> AGE_BANDS = List.of("18-24", "25-34", "35-44", "45-54", "55-64", "65+");
+    private static final List<String> SPENDING_LIMIT_BANDS = List.of("0-1000", "1000-2500", "2500-5000", "5000-10000", "10000-25000", "25000-50000", "50000+");
+
+    private SummaryBuckets() {
+    }
+
+    /**
+     * The keys of every dimension the customer counts under. A customer counts once per state and city,
+     * however many of its addresses are there.
+     */
+    public static Map<SummaryDimension, Set<String>> keysOf(Customer customer) {
+        Set<String> states = new HashSet<>();
+        Set<String> cities = new HashSet<>();
+        if (customer.getAddresses() != null) {
+            for (Address address : customer.getAddresses()) {
+                String state = SearchText.normalize(address.getState());
+                String city = SearchText.normalize(address.getCity());
+                if (state != null) {
+                    states.add(state);
+                }
+                if (city != null) {
+                    cities.add(cityKey(city, state));
+                }
+            }
+        }
+        Map<SummaryDimension, Set<String>> keys = new EnumMap<>(SummaryDimension.class);
+        keys.put(SummaryDimension.TOTAL, Set.of(TOTAL_KEY));
+        keys.put(SummaryDimension.STATE, states);
+        keys.put(SummaryDimension.CITY, cities);
+        keys.put(SummaryDimension.AGE_BAND, Set.of(ageBand(customer.getAge())));
+        keys.put(SummaryDimension.SPENDING_LIMIT, Set.of(spendingLimitBand(customer.getSpendingLimit())));
+        return keys;
+    }
+
+    // City names repeat across states, so a city is counted together with its state
+    public static String cityKey(String normalizedCity, String normalizedState) {
+        return normalizedState == null ? normalizedCity : normalizedCity + ", " + normalizedState;
+    }
+
+    public static String ageBand(Number age) {
+        return band(age, AGE_BOUNDARIES, AGE_BANDS);
+    }
+
+    public static String spendingLimitBand(Number spendingLimit) {
+        return band(spendingLimit, SPENDING_LIMIT_BOUNDARIES, SPENDING_LIMIT_BANDS);
+    }
+
+    /**
+     * Lists the bands of a dimension in their natural order, with unknown last.
+     */
+    public static Comparator<String> bandOrder(SummaryDimension dimension) {
+        List<String> bands = dimension == SummaryDimension.AGE_BAND ? AGE_BANDS : SPENDING_LIMIT_BANDS;
+        return Comparator.comparingInt(band -> bands.contains(band) ? bands.indexOf(band) : bands.size());
+    }
+
+    private static String band(Number value, List<? extends Number> boundaries, List<String> bands) {
+        if (value == null) {
+            return UNKNOWN;
+        }
+        double v = value.doubleValue();
+        for (int i = 0; i < bands.size(); i++) {
+            if (v >= boundaries.get(i).doubleValue() && v < boundaries.get(i + 1).doubleValue()) {
+                return bands.get(i);
+            }
+        }
+        return UNKNOWN;
+    }
+}
@@ -0,0 +1,74 @@
+package com.customermanagement.repository.filter;
+
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.model.Address;
+import com.customermanagement.model.Customer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * In-memory counterpart of the Mongo criteria built in CustomCustomerRepositoryImpl, telling whether a customer
+ * matches the list endpoint filters. Used to find the cached query results a new customer could belong to,
+ * so it must match at least everything the Mongo query matches.
+ */
+public final class CustomerFilterPredicate {
+
+    private CustomerFilterPredicate() {
+    }
+
+    public static boolean matches(Customer customer, Map<String, String> filters, String operation, MatchMode matchMode) {
+        boolean or = "OR".equalsIgnoreCase(operation);
+        boolean anyFilter = false;
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            Boolean matched = matchesFilter(customer, filter.getKey(), SearchText.normalize(filter.getValue()), matchMode);
+            if (matched == null) {
+                // Not a filter field, the Mongo query ignores it as well
+                continue;
+            }
+            anyFilter = true;
+            if (or && matched) {
+                return true;
+            }
+            if (!or && !matched) {
+                return false;
+            }
+        }
+        return !or || !anyFilter;
+    }
+
+    private static Boolean matchesFilter(Customer customer, String field, String value, MatchMode matchMode) {
+        switch (field) {
+            case "name":
+                return matches(customer.getFirstName(), value, matchMode) || matches(customer.getLastName(), value, matchMode);
+            case "city":
+                return anyAddress(customer, address -> matches(address.getCity(), value, matchMode));
+            case "state":
+                return anyAddress(customer, address -> matches(address.getState(), value, matchMode));
+            default:
+                return null;
+        }
+    }
+
+    private static boolean anyAddress(Customer customer, Predicate<Address> predicate) {
+        List<Address> addresses = customer.getAddresses();
+        return addresses != null && addresses.stream().anyMatch(predicate);
+    }
+
+    private static boolean matches(String fieldValue, String value, MatchMode matchMode) {
+        String normalized = SearchText.normalize(fieldValue);
+        if (normalized == null) {
+            return false;
+        }
+        switch (matchMode) {
+            case EXACT:
+                return normalized.equals(value);
+            case CONTAINS:
+                return normalized.contains(value);
+            case PREFIX:
+            default:
+                return normalized.startsWith(value);
+        }
+    }
+}
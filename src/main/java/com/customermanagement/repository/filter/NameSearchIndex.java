@@ -0,0 +1,127 @@
+package com.customermanagement.repository.filter;
+
+import com.customermanagement.enums.CustomerEventType;
+import com.customermanagement.enums.EventDelivery;
+import com.customermanagement.infra.broker.CustomerEventHandler;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * In-process trigram index over customer names, serving substring (CONTAINS) name searches that no Mongo index helps with.
+ * It is loaded from Mongo in the background once the application is up, and customers created or renamed through this
+ * instance are added as they are stored. Those written through another instance, or the reactive variant, are added
+ * from their events on the customer topic, so they can be found here as soon as the other caches know of them.
+ * Until loading finished, searches return empty and the caller falls back to Mongo.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NameSearchIndex implements CustomerEventHandler {
+
+    private final MongoTemplate mongoTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private final TrigramIndex index = new TrigramIndex();
+    private volatile boolean ready;
+
+    @Value("${customer.search.enabled:true}")
+    private boolean enabled;
+
+    @Value("${customer.search.load-batch-size:5000}")
+    private int loadBatchSize;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("customer.search.index.size", index, TrigramIndex::size)
+                .description("Customers in the in-memory name search index")
+                .register(meterRegistry);
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        // Only the names are needed, so the addresses aren't read at all
+        Query query = new Query().cursorBatchSize(loadBatchSize);
+        query.fields().include("firstName", "lastName");
+        try (CloseableIterator<Customer> customers = mongoTemplate.stream(query, Customer.class)) {
+            customers.forEachRemaining(this::add);
+            ready = true;
+            log.info("SEARCH_INDEX_READY customers={}, tookMs={}", index.size(), System.currentTimeMillis() - start);
+        } catch (DataAccessException e) {
+            log.error("SEARCH_INDEX_LOAD_FAILED, name searches keep going to MongoDB: {}", e.getMessage(), e);
+        }
+    }
+
+    public void add(Customer customer) {
+        if (enabled) {
+            index.add(customer.getCustomerId(), customer.getFirstName(), customer.getLastName());
+        }
+    }
+
+    /**
+     * A customer renamed through this instance.
+     */
+    public void update(Customer customer) {
+        if (enabled) {
+            index.rename(customer.getCustomerId(), customer.getFirstName(), customer.getLastName());
+        }
+    }
+
+    @Override
+    public EventDelivery delivery() {
+        return EventDelivery.BROADCAST;
+    }
+
+    // Writes of this instance come back here too, indexing them again changes nothing
+    @Override
+    public void handle(List<CustomerEvent> events) {
+        if (!enabled) {
+            return;
+        }
+        for (CustomerEvent event : events) {
+            if (event.getEventType() == CustomerEventType.CREATED) {
+                index.add(event.getCustomerId(), event.getFirstName(), event.getLastName());
+            } else if (event.getEventType() == CustomerEventType.UPDATED) {
+                // Null for a name the update left alone, which keeps the indexed one
+                String firstName = changedName(event, "firstName", event.getFirstName());
+                String lastName = changedName(event, "lastName", event.getLastName());
+                if (firstName != null || lastName != null) {
+                    index.rename(event.getCustomerId(), firstName, lastName);
+                }
+            }
+        }
+    }
+
+    private static String changedName(CustomerEvent event, String field, String name) {
+        return event.getChangedFields() == null || event.getChangedFields().contains(field) ? name : null;
+    }
+
+    /**
+     * Ids of the customers whose first or last name contains the term, best matches first.
+     * Empty when the index can't answer, either because it is still loading or because the term is too short.
+     */
+    public Optional<List<String>> search(String term) {
+        return ready ? index.search(term) : Optional.empty();
+    }
+}
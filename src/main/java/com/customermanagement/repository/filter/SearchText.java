@@ -0,0 +1,62 @@
+package com.customermanagement.repository.filter;
+
+import com.customermanagement.model.Address;
+import com.customermanagement.model.Customer;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalization of searchable text, shared by the write side (shadow fields stored on the document)
+ * and the read side (filter values), so both always agree on the form being compared.
+ */
+public final class SearchText {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private SearchText() {
+    }
+
+    /**
+     * Lowercase, without accents and with single spaces, e.g. " José  Núñez " becomes "jose nunez".
+     */
+    public static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String withoutDiacritics = DIACRITICS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("");
+        return WHITESPACE.matcher(withoutDiacritics.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Escape user input so it is matched literally inside a Mongo regex. Plain backslash escapes (rather than \Q..\E)
+     * keep a "^prefix" regex recognisable as a simple prefix, which is what lets Mongo turn it into index bounds.
+     */
+    public static String escapeRegex(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (char c : value.toCharArray()) {
+            if (REGEX_METACHARACTERS.indexOf(c) >= 0) {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Fill the normalized shadow fields of the customer and its addresses from the user facing fields.
+     */
+    public static void populateSearchFields(Customer customer) {
+        customer.setFirstNameNormalized(normalize(customer.getFirstName()));
+        customer.setLastNameNormalized(normalize(customer.getLastName()));
+        if (customer.getAddresses() != null) {
+            for (Address address : customer.getAddresses()) {
+                address.setCityNormalized(normalize(address.getCity()));
+                address.setStateNormalized(normalize(address.getState()));
+            }
+        }
+    }
+}
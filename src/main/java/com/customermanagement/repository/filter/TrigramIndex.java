@@ -0,0 +1,246 @@
+package com.customermanagement.repository.filter;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted trigram index over the first and last names of customers, answering substring searches.
+ * Every customer gets a dense int ordinal, and each trigram maps to the sorted ordinals of the customers having it,
+ * kept in a plain int array. A search intersects the lists of the trigrams of the term, smallest first, and then
+ * checks the few remaining candidates against the names, since sharing all trigrams doesn't guarantee a match.
+ * Names are stored and searched in their normalized form, see {@link SearchText#normalize(String)}.
+ */
+public class TrigramIndex {
+
+    private static final int GRAM = 3;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> ordinalById = new HashMap<>();
+    private final Map<Long, PostingList> postings = new HashMap<>();
+    private String[] customerIds = new String[1024];
+    private String[] firstNames = new String[1024];
+    private String[] lastNames = new String[1024];
+    private int size;
+
+    /**
+     * Index a customer. A customer that is already indexed is left as it is, so loading and live writes can overlap.
+     */
+    public void add(String customerId, String firstName, String lastName) {
+        String first = SearchText.normalize(firstName);
+        String last = SearchText.normalize(lastName);
+        Set<Long> grams = new HashSet<>();
+        addTrigrams(first, grams);
+        addTrigrams(last, grams);
+
+        lock.writeLock().lock();
+        try {
+            if (ordinalById.containsKey(customerId)) {
+                return;
+            }
+            int ordinal = size++;
+            ensureCapacity(size);
+            customerIds[ordinal] = customerId;
+            firstNames[ordinal] = first;
+            lastNames[ordinal] = last;
+            ordinalById.put(customerId, ordinal);
+            // Ordinals only grow, so appending keeps every posting list sorted
+            grams.forEach(gram -> postings.computeIfAbsent(gram, key -> new PostingList()).add(ordinal));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Index a customer under new names, or add it if it isn't indexed yet. A null name keeps the indexed one, for
+     * updates that only changed the other. The customer keeps its ordinal, which is added to the lists of its new
+     * trigrams. It stays in the lists of trigrams only the old names had, which costs a candidate check now and then
+     * but never a wrong match, as the candidates are checked against the current names.
+     */
+    public void rename(String customerId, String firstName, String lastName) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinalById.get(customerId);
+            if (ordinal == null) {
+                add(customerId, firstName, lastName);
+                return;
+            }
+            String first = firstName != null ? SearchText.normalize(firstName) : firstNames[ordinal];
+            String last = lastName != null ? SearchText.normalize(lastName) : lastNames[ordinal];
+            Set<Long> grams = new HashSet<>();
+            addTrigrams(first, grams);
+            addTrigrams(last, grams);
+            firstNames[ordinal] = first;
+            lastNames[ordinal] = last;
+            grams.forEach(gram -> postings.computeIfAbsent(gram, key -> new PostingList()).insert(ordinal));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the customers whose first or last name contains the term, best matches first.
+     * Empty when the term is shorter than a trigram, which the index can't answer.
+     */
+    public Optional<List<String>> search(String term) {
+        String query = SearchText.normalize(term);
+        if (query == null || query.length() < GRAM) {
+            return Optional.empty();
+        }
+        Set<Long> grams = new HashSet<>();
+        addTrigrams(query, grams);
+
+        lock.readLock().lock();
+        try {
+            List<PostingList> lists = new ArrayList<>(grams.size());
+            for (Long gram : grams) {
+                PostingList list = postings.get(gram);
+                if (list == null) {
+                    return Optional.of(List.of());
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+
+            int[] candidates = Arrays.copyOf(lists.get(0).ordinals, lists.get(0).size);
+            int count = candidates.length;
+            for (int i = 1; i < lists.size() && count > 0; i++) {
+                count = intersect(candidates, count, lists.get(i));
+            }
+
+            List<Match> matches = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int ordinal = candidates[i];
+                Match match = Match.of(customerIds[ordinal], firstNames[ordinal], lastNames[ordinal], query);
+                if (match != null) {
+                    matches.add(match);
+                }
+            }
+            matches.sort(Match.BEST_FIRST);
+            List<String> ids = new ArrayList<>(matches.size());
+            matches.forEach(match -> ids.add(match.customerId));
+            return Optional.of(ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Keep the first count candidates that are also in the list, in place. Both sides are sorted.
+     */
+    private static int intersect(int[] candidates, int count, PostingList list) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < list.size; i++) {
+            int candidate = candidates[i];
+            while (j < list.size && list.ordinals[j] < candidate) {
+                j++;
+            }
+            if (j < list.size && list.ordinals[j] == candidate) {
+                candidates[kept++] = candidate;
+            }
+        }
+        return kept;
+    }
+
+    private static void addTrigrams(String value, Set<Long> grams) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i + GRAM <= value.length(); i++) {
+            // Three UTF-16 chars packed into one long, which avoids a String per trigram
+            grams.add(((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2));
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > customerIds.length) {
+            int grown = Math.max(capacity, customerIds.length * 2);
+            customerIds = Arrays.copyOf(customerIds, grown);
+            firstNames = Arrays.copyOf(firstNames, grown);
+            lastNames = Arrays.copyOf(lastNames, grown);
+        }
+    }
+
+    private static final class PostingList {
+        private int[] ordinals = new int[4];
+        private int size;
+
+        private void add(int ordinal) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            ordinals[size++] = ordinal;
+        }
+
+        // Keeps the list sorted, for an ordinal that isn't the largest one
+        private void insert(int ordinal) {
+            int position = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            System.arraycopy(ordinals, position, ordinals, position + 1, size - position);
+            ordinals[position] = ordinal;
+            size++;
+        }
+    }
+
+    /**
+     * How well a name matches: the whole name, then the start of the name, then the start of a word in it,
+     * then anywhere. Ties go to the shorter name, as the term covers more of it, and then to the customer id.
+     */
+    private static final class Match {
+        private static final Comparator<Match> BEST_FIRST = Comparator.<Match>comparingInt(match -> match.quality)
+                .thenComparingInt(match -> match.nameLength)
+                .thenComparing(match -> match.customerId);
+
+        private final String customerId;
+        private final int quality;
+        private final int nameLength;
+
+        private Match(String customerId, int quality, int nameLength) {
+            this.customerId = customerId;
+            this.quality = quality;
+            this.nameLength = nameLength;
+        }
+
+        private static Match of(String customerId, String firstName, String lastName, String query) {
+            int first = quality(firstName, query);
+            int last = quality(lastName, query);
+            if (first < 0 && last < 0) {
+                return null;
+            }
+            boolean firstIsBetter = last < 0 || (first >= 0 && first <= last);
+            return firstIsBetter
+                    ? new Match(customerId, first, firstName.length())
+                    : new Match(customerId, last, lastName.length());
+        }
+
+        private static int quality(String name, String query) {
+            if (name == null) {
+                return -1;
+            }
+            int position = name.indexOf(query);
+            if (position < 0) {
+                return -1;
+            }
+            if (position == 0) {
+                return name.length() == query.length() ? 0 : 1;
+            }
+            return name.contains(" " + query) || name.contains("-" + query) ? 2 : 3;
+        }
+    }
+}
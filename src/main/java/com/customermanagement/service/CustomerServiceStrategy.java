@@ -1,18 +1,40 @@
 package com.customermanagement.service;
 
+import com.customermanagement.dto.BulkCreateResponse;
+import com.customermanagement.dto.BulkUpsertResponse;
+import com.customermanagement.dto.CustomerPage;
+import com.customermanagement.dto.CustomerPatch;
+import com.customermanagement.dto.MultiGetResponse;
 import com.customermanagement.model.Customer;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
 public interface CustomerServiceStrategy {
     Customer createCustomer(Customer customerInput);
 
-    List<Customer> getCustomers(Map<String, String> params, String operation);
+    BulkCreateResponse createCustomersInBulk(InputStream records);
 
-    List<Customer> getCustomersOnlyInA(List<String> listA, List<String> listB);
+    Customer updateCustomer(String customerId, CustomerPatch patch);
 
-    List<Customer> getCustomersOnlyInB(List<String> listA, List<String> listB);
+    BulkUpsertResponse upsertCustomersInBulk(InputStream records);
 
-    List<Customer> getCustomersInBoth(List<String> listA, List<String> listB);
+    Customer getCustomerById(String customerId);
+
+    MultiGetResponse getCustomersByIds(List<String> customerIds);
+
+    CustomerPage getCustomers(Map<String, String> params, String operation, String match, String cursor, Integer size, String fields, String view, String consistency);
+
+    long exportCustomers(Map<String, String> params, String operation, String match, String consistency, OutputStream outputStream) throws IOException;
+
+    CustomerPage getCustomersBySetExpression(String expression, Map<String, List<String>> lists, String cursor, Integer size, String fields, String view, String consistency);
+
+    CustomerPage getCustomersOnlyInA(List<String> listA, List<String> listB, String cursor, Integer size, String fields, String view, String consistency);
+
+    CustomerPage getCustomersOnlyInB(List<String> listA, List<String> listB, String cursor, Integer size, String fields, String view, String consistency);
+
+    CustomerPage getCustomersInBoth(List<String> listA, List<String> listB, String cursor, Integer size, String fields, String view, String consistency);
 }
@@ -0,0 +1,34 @@
+package com.customermanagement.service;
+
+import com.customermanagement.dto.BulkCreateResponse;
+import com.customermanagement.dto.CustomerPage;
+import com.customermanagement.dto.MultiGetResponse;
+import com.customermanagement.model.Customer;
+import com.fasterxml.jackson.databind.JsonNode;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+public interface ReactiveCustomerServiceStrategy {
+    Mono<Customer> createCustomer(Customer customerInput);
+
+    Mono<BulkCreateResponse> createCustomersInBulk(Flux<JsonNode> records);
+
+    Mono<Customer> getCustomerById(String customerId);
+
+    Mono<MultiGetResponse> getCustomersByIds(List<String> customerIds);
+
+    Mono<CustomerPage> getCustomers(Map<String, String> params, String operation, String match, String cursor, Integer size, String fields, String view, String consistency);
+
+    Flux<Customer> exportCustomers(Map<String, String> params, String operation, String match, String consistency);
+
+    Mono<CustomerPage> getCustomersBySetExpression(String expression, Map<String, List<String>> lists, String cursor, Integer size, String fields, String view, String consistency);
+
+    Mono<CustomerPage> getCustomersOnlyInA(List<String> listA, List<String> listB, String cursor, Integer size, String fields, String view, String consistency);
+
+    Mono<CustomerPage> getCustomersOnlyInB(List<String> listA, List<String> listB, String cursor, Integer size, String fields, String view, String consistency);
+
+    Mono<CustomerPage> getCustomersInBoth(List<String> listA, List<String> listB, String cursor, Integer size, String fields, String view, String consistency);
+}
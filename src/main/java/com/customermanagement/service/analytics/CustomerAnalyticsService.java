@@ -0,0 +1,188 @@
+package com.customermanagement.service.analytics;
+
+import com.customermanagement.dto.CustomerAnalytics;
+import com.customermanagement.dto.SummaryBucket;
+import com.customermanagement.enums.SummaryDimension;
+import com.customermanagement.exceptions.InvalidInputException;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerSummary;
+import com.customermanagement.repository.CustomerSummaryRepository;
+import com.customermanagement.repository.analytics.SummaryBuckets;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Customer counts per state, city, age band and spending limit band, read from the customer_summary collection
+ * instead of the customers. Customers created through the API are counted in as they are stored, and a periodic
+ * rebuild recomputes everything from the customers with one $facet aggregation, which also corrects any increment
+ * that was lost. Dashboards read a few small documents per request.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CustomerAnalyticsService {
+
+    private static final String TOTAL_ID = CustomerSummary.of(SummaryDimension.TOTAL, SummaryBuckets.TOTAL_KEY, 0).getId();
+
+    private final CustomerSummaryRepository customerSummaryRepository;
+
+    @Value("${customer.analytics.rebuild-interval-ms:3600000}")
+    private long rebuildIntervalMillis;
+
+    @Value("${customer.analytics.default-top:20}")
+    private int defaultTop;
+
+    @Value("${customer.analytics.max-top:1000}")
+    private int maxTop;
+
+    @PostConstruct
+    public void init() {
+        customerSummaryRepository.ensureIndexes();
+    }
+
+    /**
+     * Count stored customers in the summary, one upsert per bucket for the whole list. A failure is only logged,
+     * the customers are stored already and the next rebuild counts them.
+     */
+    public void recordCreated(List<Customer> customers) {
+        recordChanges(List.of(), customers);
+    }
+
+    /**
+     * Move updated customers from the buckets of their old state to those of the new one, the same way.
+     */
+    public void recordUpdated(List<Customer> before, List<Customer> after) {
+        recordChanges(before, after);
+    }
+
+    private void recordChanges(List<Customer> removed, List<Customer> added) {
+        if (removed.isEmpty() && added.isEmpty()) {
+            return;
+        }
+        Map<String, CustomerSummary> increments = new HashMap<>();
+        removed.forEach(customer -> countIn(increments, customer, -1));
+        added.forEach(customer -> countIn(increments, customer, 1));
+        // An update that stays in a bucket leaves it as it is
+        increments.values().removeIf(increment -> increment.getCount() == 0);
+        try {
+            customerSummaryRepository.increment(increments.values());
+        } catch (DataAccessException e) {
+            log.warn("ANALYTICS_SUMMARY_INCREMENT_FAILED customers={}, counted by the next rebuild: {}", added.size(), e.getMessage());
+        }
+    }
+
+    private static void countIn(Map<String, CustomerSummary> increments, Customer customer, long count) {
+        SummaryBuckets.keysOf(customer).forEach((dimension, keys) -> keys.forEach(key -> {
+            CustomerSummary increment = CustomerSummary.of(dimension, key, count);
+            increments.merge(increment.getId(), increment, (counted, more) -> {
+                counted.setCount(counted.getCount() + count);
+                return counted;
+            });
+        }));
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        rebuildIfDue();
+    }
+
+    @Scheduled(fixedDelayString = "${customer.analytics.rebuild-interval-ms:3600000}", initialDelayString = "${customer.analytics.rebuild-interval-ms:3600000}")
+    public void scheduledRebuild() {
+        rebuildIfDue();
+    }
+
+    // Every instance runs the schedule, the first to get to it rebuilds and the others find the summary fresh
+    private void rebuildIfDue() {
+        try {
+            Instant lastRebuild = customerSummaryRepository.findById(TOTAL_ID).map(CustomerSummary::getRebuiltAt).orElse(null);
+            if (lastRebuild != null && lastRebuild.isAfter(Instant.now().minusMillis(rebuildIntervalMillis / 2))) {
+                return;
+            }
+            rebuild();
+        } catch (DataAccessException e) {
+            log.error("ANALYTICS_SUMMARY_REBUILD_FAILED {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Recompute the summary from the customers. Customers created while the aggregation runs may be counted
+     * twice or not at all, until the next rebuild.
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        Instant rebuiltAt = Instant.now();
+        List<CustomerSummary> summaries = customerSummaryRepository.aggregateFromCustomers();
+        customerSummaryRepository.replaceAll(summaries, rebuiltAt);
+        log.info("ANALYTICS_SUMMARY_REBUILT buckets={}, tookMs={}", summaries.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * All dimensions at once, with the top states and cities.
+     */
+    public CustomerAnalytics getAnalytics(Integer top) {
+        int limit = resolveTop(top);
+        Optional<CustomerSummary> total = customerSummaryRepository.findById(TOTAL_ID);
+        return CustomerAnalytics.builder()
+                .total(total.map(CustomerSummary::getCount).orElse(0L))
+                .rebuiltAt(total.map(CustomerSummary::getRebuiltAt).orElse(null))
+                .states(breakdown(SummaryDimension.STATE, limit))
+                .cities(breakdown(SummaryDimension.CITY, limit))
+                .ageBands(breakdown(SummaryDimension.AGE_BAND, limit))
+                .spendingLimits(breakdown(SummaryDimension.SPENDING_LIMIT, limit))
+                .build();
+    }
+
+    /**
+     * One dimension by name, e.g. "state" or "age-band".
+     */
+    public List<SummaryBucket> getBreakdown(String dimension, Integer top) {
+        SummaryDimension summaryDimension;
+        try {
+            summaryDimension = SummaryDimension.valueOf(dimension.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException("Invalid dimension: " + dimension + ", expected one of state, city, age-band, spending-limit");
+        }
+        return breakdown(summaryDimension, resolveTop(top));
+    }
+
+    private List<SummaryBucket> breakdown(SummaryDimension dimension, int limit) {
+        if (dimension.isRanked()) {
+            Pageable topBuckets = PageRequest.of(0, limit, Sort.by(Sort.Direction.DESC, "count").and(Sort.by("key")));
+            return customerSummaryRepository.findByDimension(dimension, topBuckets).stream()
+                    .map(summary -> new SummaryBucket(summary.getKey(), summary.getCount()))
+                    .collect(Collectors.toList());
+        }
+        // A handful of fixed bands, all of them are returned
+        Comparator<String> order = dimension == SummaryDimension.TOTAL ? Comparator.naturalOrder() : SummaryBuckets.bandOrder(dimension);
+        return customerSummaryRepository.findByDimension(dimension, Pageable.unpaged()).stream()
+                .map(summary -> new SummaryBucket(summary.getKey(), summary.getCount()))
+                .sorted(Comparator.comparing(SummaryBucket::getKey, order))
+                .collect(Collectors.toList());
+    }
+
+    private int resolveTop(Integer top) {
+        if (top == null) {
+            return defaultTop;
+        }
+        if (top < 1) {
+            throw new InvalidInputException("top must be at least 1");
+        }
+        return Math.min(top, maxTop);
+    }
+}
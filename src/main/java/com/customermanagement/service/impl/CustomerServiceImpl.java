@@ -1,21 +1,61 @@
 package com.customermanagement.service.impl;
 
-import com.customermanagement.infra.broker.BrokerFactory;
-import com.customermanagement.infra.broker.BrokerStrategy;
+import com.customermanagement.dto.BulkCreateResponse;
+import com.customermanagement.dto.BulkRecordResult;
+import com.customermanagement.dto.BulkUpsertResponse;
+import com.customermanagement.dto.CustomerPage;
+import com.customermanagement.dto.CustomerPatch;
+import com.customermanagement.dto.MultiGetResponse;
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.enums.ReadConsistency;
+import com.customermanagement.exceptions.CustomerNotFoundException;
+import com.customermanagement.exceptions.CustomerVersionConflictException;
+import com.customermanagement.exceptions.DatabaseOperationException;
+import com.customermanagement.exceptions.InvalidInputException;
+import com.customermanagement.infra.cache.CustomerCollectionVersion;
+import com.customermanagement.infra.cache.CustomerNearCache;
+import com.customermanagement.infra.cache.CustomerQueryCache;
+import com.customermanagement.infra.logging.LogSample;
+import com.customermanagement.infra.replica.CustomerReplica;
 import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerEvent;
+import com.customermanagement.model.OutboxEvent;
+import com.customermanagement.repository.CustomCustomerRepository;
+import com.customermanagement.repository.CustomerChange;
+import com.customermanagement.repository.CustomerProjection;
+import com.customermanagement.repository.CustomerQueryOptions;
 import com.customermanagement.repository.CustomerRepository;
+import com.customermanagement.repository.OutboxRepository;
+import com.customermanagement.repository.filter.NameSearchIndex;
 import com.customermanagement.service.CustomerServiceStrategy;
+import com.customermanagement.service.analytics.CustomerAnalyticsService;
+import com.customermanagement.service.pagination.PageCursor;
+import com.customermanagement.service.setalgebra.UuidSet;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
 import javax.validation.Valid;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 
 @Service
@@ -23,9 +63,20 @@ import java.util.UUID;
 @Slf4j
 public class CustomerServiceImpl implements CustomerServiceStrategy {
     // Error handling for all service module is taken by Global Exception Handler, using ControllerAdvise
+
     // These final dependencies will be injected by spring boot as we are using @RequiredArgsConstructor
-    private final BrokerFactory brokerFactory;
     private final CustomerRepository customerRepository;
+    private final OutboxRepository outboxRepository;
+    private final NameSearchIndex nameSearchIndex;
+    private final CustomerNearCache customerNearCache;
+    private final CustomerQueryCache customerQueryCache;
+    private final CustomerCollectionVersion collectionVersion;
+    private final CustomerReplica customerReplica;
+    private final CustomerAnalyticsService customerAnalyticsService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final MeterRegistry meterRegistry;
 
     @Value("${spring.kafka.producer.properties.customer.creation.topic}")
     private String customerCreationBrokerTopic;
@@ -33,91 +84,563 @@ public class CustomerServiceImpl implements CustomerServiceStrategy {
     @Value("${customer.query.default-page-size:20}")
     private int defaultPageSize;
 
-    @Value("${customer.query.default-page-start:0}")
-    private int defaultPageStart;
+    @Value("${customer.query.max-page-size:500}")
+    private int maxPageSize;
+
+    @Value("${customer.query.default-match-mode:PREFIX}")
+    private MatchMode defaultMatchMode;
+
+    @Value("${customer.cache.mget-max-ids:1000}")
+    private int multiGetMaxIds;
+
+    @Value("${customer.read.default-consistency:STRONG}")
+    private ReadConsistency defaultConsistency;
+
+    @Value("${customer.export.flush-every:1000}")
+    private int exportFlushEvery;
+
+    @Value("${customer.bulk.chunk-size:500}")
+    private int bulkChunkSize;
+
+    // Needs MongoDB running as a replica set, see docker-compose.yml. Only meant to be switched off for a standalone dev instance.
+    @Value("${customer.outbox.transactional:true}")
+    private boolean outboxTransactional;
 
     /**
-     * Create a new customer, save it in MongoDB, and produce the event to Kafka.
+     * Create a new customer, and save it in MongoDB together with its customer-created event in the outbox.
+     * The event is published to the broker by the OutboxRelay, so creation doesn't wait on the broker.
      */
     public Customer createCustomer(@Valid Customer customerInput) {
-        log.info("Starting customer creation process for customer with firstName: {}, lastName: {}", customerInput.getFirstName(), customerInput.getLastName());
-        Customer customer = Customer.builder()
-                .customerId(UUID.randomUUID().toString())
-                .firstName(customerInput.getFirstName())
-                .lastName(customerInput.getLastName())
-                .age(customerInput.getAge())
-                .spendingLimit(customerInput.getSpendingLimit())
-                .mobileNumber(customerInput.getMobileNumber())
-                .addresses(customerInput.getAddresses())
-                .build();
+        log.debug("Starting customer creation process for customer with firstName: {}, lastName: {}", customerInput.getFirstName(), customerInput.getLastName());
+        Customer customer = CustomerServiceSupport.buildNewCustomer(customerInput);
         log.debug("Generated new customer with ID: {}", customer.getCustomerId());
 
-        Customer savedCustomer = customerRepository.save(customer);
-        log.info("Customer saved to MongoDB with ID: {}", savedCustomer.getCustomerId());
-        produceToBrokerAsync(savedCustomer);
-        log.info("PUBLISHING_TO_BROKER_IN_PROGRESS");
+        // The customer and its event are committed together, so an event can neither be lost nor sent for a customer
+        // that was never stored. If the broker is down the event just waits in the outbox.
+        Customer savedCustomer = inOutboxTransaction(() -> {
+            Customer saved = customerRepository.save(customer);
+            outboxRepository.save(customerCreatedEvent(saved));
+            return saved;
+        });
+        log.debug("Customer saved to MongoDB with ID: {}", savedCustomer.getCustomerId());
+        // Only after the commit, a rolled back customer must not become searchable
+        nameSearchIndex.add(savedCustomer);
+        customerReplica.add(savedCustomer);
+        customerQueryCache.invalidateMatching(List.of(savedCustomer));
+        customerAnalyticsService.recordCreated(List.of(savedCustomer));
+        // Last, the list ETags handed out from now on must stand for pages that have the new customer
+        collectionVersion.changed();
         return savedCustomer;
     }
 
-    @Async
-    private void produceToBrokerAsync(Customer customer) {
-        // Assumption is that if producing to kafka is failing, we wont rollback the MongoDB Insertion,
-        // coz it is not End User's/ Client's headache if there is issue from our infra's end
-        // Ideal way is to have some mechanism to have a retry of New User Detail production onto kafka, for the failed ones
-        // But in case of failure the Creation in Database shouldn't rollback.
-        BrokerStrategy broker = brokerFactory.getBroker();
-        broker.produce(customerCreationBrokerTopic, customer.toString());
+    /**
+     * Create customers in bulk from a JSON array or an NDJSON stream.
+     * Records are validated one by one as they are read, and written to MongoDB in chunks.
+     * A record that fails validation or insertion is reported in the response and doesn't fail the rest of the batch.
+     */
+    @Override
+    public BulkCreateResponse createCustomersInBulk(InputStream records) {
+        List<BulkRecordResult> results = new ArrayList<>();
+        List<Customer> chunk = new ArrayList<>(bulkChunkSize);
+        List<Integer> chunkIndexes = new ArrayList<>(bulkChunkSize);
+        int index = 0;
+        String malformedError = null;
+
+        // readValues() unwraps a top level JSON array and also reads whitespace separated values, so it covers both
+        // formats, and only one record is held as a tree at a time instead of the whole payload.
+        try (MappingIterator<JsonNode> iterator = objectMapper.readerFor(JsonNode.class).readValues(records)) {
+            while (iterator.hasNextValue()) {
+                Customer customer = CustomerServiceSupport.readBulkRecord(objectMapper, validator, iterator.nextValue(), index, results);
+                if (customer != null) {
+                    chunk.add(customer);
+                    chunkIndexes.add(index);
+                    if (chunk.size() >= bulkChunkSize) {
+                        flushBulkChunk(chunk, chunkIndexes, results);
+                    }
+                }
+                index++;
+            }
+        } catch (IOException e) {
+            // A syntax error can't be skipped over, so whatever was read so far is kept and the rest is reported as one failure
+            log.warn("BULK_CREATE_MALFORMED_PAYLOAD at record {}: {}", index, e.getMessage());
+            malformedError = "Malformed payload, records from this index onwards were not processed: " + e.getMessage();
+        }
+        flushBulkChunk(chunk, chunkIndexes, results);
+        if (malformedError != null) {
+            // The unreadable rest counts as one record, so created and failed still add up to the total
+            results.add(BulkRecordResult.failed(index++, malformedError));
+        }
+
+        BulkCreateResponse response = CustomerServiceSupport.bulkResponse(index, results);
+        log.info("Bulk customer creation finished. Records: {}, created: {}, failed: {}", index, response.getCreated(), response.getFailed());
+        return response;
+    }
+
+    private void flushBulkChunk(List<Customer> chunk, List<Integer> chunkIndexes, List<BulkRecordResult> results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Map<Integer, String> failures;
+        try {
+            failures = persistBulkChunk(List.copyOf(chunk), this::insertChunkWithOutbox);
+        } catch (DatabaseOperationException e) {
+            // The whole chunk is lost in this case, but we still report it per record and carry on with the next one
+            log.error("BULK_CREATE_CHUNK_FAILED size={}", chunk.size(), e);
+            failures = new HashMap<>();
+            for (int i = 0; i < chunk.size(); i++) {
+                failures.put(i, e.getMessage());
+            }
+        }
+
+        List<Customer> created = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            String error = failures.get(i);
+            if (error == null) {
+                nameSearchIndex.add(chunk.get(i));
+                customerReplica.add(chunk.get(i));
+                created.add(chunk.get(i));
+                results.add(BulkRecordResult.created(chunkIndexes.get(i), chunk.get(i).getCustomerId()));
+            } else {
+                results.add(BulkRecordResult.failed(chunkIndexes.get(i), error));
+            }
+        }
+        customerQueryCache.invalidateMatching(created);
+        customerAnalyticsService.recordCreated(created);
+        if (!created.isEmpty()) {
+            collectionVersion.changed();
+        }
+        chunk.clear();
+        chunkIndexes.clear();
     }
 
     /**
-     * Get customers with optional filters. Defaults to 25 records with pagination.
+     * Write a chunk and the outbox events of its written records. Returns the failed positions of the chunk.
      */
-    public List<Customer> getCustomers(Map<String, String> params, String operation) {
-        // This Get API is not paginated as of now, but it will return maximum 25 records, which is configurable
-        // Pagination can be easily added going forward
-        log.info("Fetching customers with operation: {}", operation);
+    private <T> Map<Integer, String> persistBulkChunk(List<T> chunk, BiFunction<List<T>, TransactionStatus, Map<Integer, String>> write) {
+        Map<Integer, String> failures = new HashMap<>();
+        List<Integer> remaining = IntStream.range(0, chunk.size()).boxed().collect(Collectors.toList());
+        // In a transaction one failed write aborts the whole chunk, so the failed records are dropped and the rest is
+        // written again. Every round removes at least one record, so this ends after a few rounds at most.
+        while (!remaining.isEmpty()) {
+            List<T> records = remaining.stream().map(chunk::get).collect(Collectors.toList());
+            Map<Integer, String> roundFailures = outboxTransactional
+                    ? transactionTemplate.execute(status -> write.apply(records, status))
+                    : write.apply(records, null);
+            if (roundFailures == null || roundFailures.isEmpty()) {
+                break;
+            }
+            List<Integer> retry = new ArrayList<>();
+            for (int i = 0; i < remaining.size(); i++) {
+                if (roundFailures.containsKey(i)) {
+                    failures.put(remaining.get(i), roundFailures.get(i));
+                } else {
+                    retry.add(remaining.get(i));
+                }
+            }
+            // Without a transaction the records that didn't fail are already stored with their events
+            remaining = outboxTransactional ? retry : List.of();
+        }
+        return failures;
+    }
 
-        if (params.isEmpty()) {
-            log.debug("No filters provided. Fetching customers with default pagination. Page size: {}", defaultPageSize);
-            Pageable pageable = PageRequest.of(defaultPageStart, defaultPageSize);
-            return customerRepository.findAll(pageable).getContent();
+    private Map<Integer, String> insertChunkWithOutbox(List<Customer> customers, TransactionStatus status) {
+        Map<Integer, String> failures = customerRepository.insertCustomersInBulk(customers);
+        if (!failures.isEmpty() && status != null) {
+            status.setRollbackOnly();
+            return failures;
+        }
+        List<OutboxEvent> events = new ArrayList<>(customers.size());
+        for (int i = 0; i < customers.size(); i++) {
+            if (!failures.containsKey(i)) {
+                events.add(customerCreatedEvent(customers.get(i)));
+            }
         }
-        // If filters are provided, apply them
-        log.debug("Filters provided. Fetching customers with default pagination. Page size: {}", defaultPageSize);
-        return customerRepository.findCustomersWithFilters(params, operation);
+        outboxRepository.insert(events);
+        return failures;
     }
 
+    /**
+     * Change some fields of a customer. Only the fields that change are written, with $set, or $push/$pull for added
+     * or removed addresses, and its UPDATED event only carries those. Rejected with a 409 when the customer isn't
+     * at the version of the patch, or is changed by another request in between.
+     */
+    @Override
+    public Customer updateCustomer(String customerId, CustomerPatch patch) {
+        Customer current = customerRepository.findById(customerId)
+                .orElseThrow(() -> new CustomerNotFoundException("Customer not found with id: " + customerId));
+        if (patch.getVersion() != null && patch.getVersion() != current.versionOrZero()) {
+            throw new CustomerVersionConflictException("Customer " + customerId + " is at version " + current.versionOrZero() + ", not " + patch.getVersion());
+        }
+        CustomerChange change = CustomerChange.of(current, CustomerServiceSupport.applyPatch(current, patch));
+        if (change.isEmpty()) {
+            return current;
+        }
+        inOutboxTransaction(() -> {
+            // Matches only at the version compared with, so a change made meanwhile is neither lost nor overwritten
+            if (!customerRepository.updateCustomer(change)) {
+                throw new CustomerVersionConflictException("Customer " + customerId + " was changed by another request, read it again and retry");
+            }
+            return outboxRepository.save(customerUpdatedEvent(change));
+        });
+        log.debug("Customer {} updated to version {}, fields: {}", customerId, change.getResult().getVersion(), change.getChangedFields());
+        afterUpdates(List.of(change), List.of(current));
+        return change.getResult();
+    }
+
+    /**
+     * Create or update customers in bulk from a JSON array or an NDJSON stream. A record with the customerId of a stored
+     * customer updates it, with only the fields that differ written, the others are created. A record with a version
+     * only updates the customer at that version. Each record is reported as created, updated, unchanged, in conflict
+     * with another write or failed, and doesn't fail the rest of the batch.
+     */
+    @Override
+    public BulkUpsertResponse upsertCustomersInBulk(InputStream records) {
+        List<BulkRecordResult> results = new ArrayList<>();
+        List<Customer> chunk = new ArrayList<>(bulkChunkSize);
+        List<Integer> chunkIndexes = new ArrayList<>(bulkChunkSize);
+        int index = 0;
+        String malformedError = null;
+
+        try (MappingIterator<JsonNode> iterator = objectMapper.readerFor(JsonNode.class).readValues(records)) {
+            while (iterator.hasNextValue()) {
+                Customer customer = CustomerServiceSupport.readUpsertRecord(objectMapper, validator, iterator.nextValue(), index, results);
+                if (customer != null) {
+                    chunk.add(customer);
+                    chunkIndexes.add(index);
+                    if (chunk.size() >= bulkChunkSize) {
+                        flushUpsertChunk(chunk, chunkIndexes, results);
+                    }
+                }
+                index++;
+            }
+        } catch (IOException e) {
+            log.warn("BULK_UPSERT_MALFORMED_PAYLOAD at record {}: {}", index, e.getMessage());
+            malformedError = "Malformed payload, records from this index onwards were not processed: " + e.getMessage();
+        }
+        flushUpsertChunk(chunk, chunkIndexes, results);
+        if (malformedError != null) {
+            // Counted as one record, like in createCustomersInBulk
+            results.add(BulkRecordResult.failed(index++, malformedError));
+        }
+
+        BulkUpsertResponse response = CustomerServiceSupport.upsertResponse(index, results);
+        log.info("Bulk customer upsert finished. Records: {}, created: {}, updated: {}, conflicts: {}, failed: {}",
+                index, response.getCreated(), response.getUpdated(), response.getConflicts(), response.getFailed());
+        return response;
+    }
+
+    private void flushUpsertChunk(List<Customer> chunk, List<Integer> chunkIndexes, List<BulkRecordResult> results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        // The stored customers of the chunk in one lookup, the changes are worked out against them
+        Map<String, Customer> stored = customerRepository.findCustomersByIds(chunk.stream().map(Customer::getCustomerId).distinct().collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(Customer::getCustomerId, Function.identity()));
+        List<CustomerChange> changes = new ArrayList<>(chunk.size());
+        List<Integer> changeIndexes = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Customer record = chunk.get(i);
+            Customer current = stored.get(record.getCustomerId());
+            int index = chunkIndexes.get(i);
+            if (record.getVersion() != null && (current == null || record.getVersion() != current.versionOrZero())) {
+                results.add(BulkRecordResult.conflict(index, record.getCustomerId(), current == null
+                        ? "Customer not found, it can't be at version " + record.getVersion()
+                        : "Customer is at version " + current.versionOrZero() + ", not " + record.getVersion()));
+                continue;
+            }
+            CustomerChange change = current == null ? CustomerChange.created(record) : CustomerChange.of(current, record);
+            if (change.isEmpty()) {
+                results.add(BulkRecordResult.unchanged(index, record.getCustomerId()));
+                continue;
+            }
+            changes.add(change);
+            changeIndexes.add(index);
+        }
+
+        Map<Integer, String> failures;
+        try {
+            failures = persistBulkChunk(changes, this::upsertChunkWithOutbox);
+        } catch (DatabaseOperationException e) {
+            log.error("BULK_UPSERT_CHUNK_FAILED size={}", changes.size(), e);
+            failures = new HashMap<>();
+            for (int i = 0; i < changes.size(); i++) {
+                failures.put(i, e.getMessage());
+            }
+        }
+
+        List<Customer> created = new ArrayList<>();
+        List<CustomerChange> updated = new ArrayList<>();
+        for (int i = 0; i < changes.size(); i++) {
+            CustomerChange change = changes.get(i);
+            String error = failures.get(i);
+            if (CustomCustomerRepository.VERSION_CONFLICT.equals(error)) {
+                results.add(BulkRecordResult.conflict(changeIndexes.get(i), change.getCustomerId(), error));
+            } else if (error != null) {
+                results.add(BulkRecordResult.failed(changeIndexes.get(i), error));
+            } else if (change.isNew()) {
+                created.add(change.getResult());
+                results.add(BulkRecordResult.created(changeIndexes.get(i), change.getCustomerId()));
+            } else {
+                updated.add(change);
+                results.add(BulkRecordResult.updated(changeIndexes.get(i), change.getCustomerId()));
+            }
+        }
+        created.forEach(customer -> {
+            nameSearchIndex.add(customer);
+            customerReplica.add(customer);
+        });
+        customerQueryCache.invalidateMatching(created);
+        customerAnalyticsService.recordCreated(created);
+        afterUpdates(updated, updated.stream().map(change -> stored.get(change.getCustomerId())).collect(Collectors.toList()));
+        if (!created.isEmpty()) {
+            collectionVersion.changed();
+        }
+        chunk.clear();
+        chunkIndexes.clear();
+    }
+
+    private Map<Integer, String> upsertChunkWithOutbox(List<CustomerChange> changes, TransactionStatus status) {
+        Map<Integer, String> failures = customerRepository.upsertCustomersInBulk(changes);
+        if (!failures.isEmpty() && status != null) {
+            status.setRollbackOnly();
+            return failures;
+        }
+        List<OutboxEvent> events = new ArrayList<>(changes.size());
+        for (int i = 0; i < changes.size(); i++) {
+            if (!failures.containsKey(i)) {
+                CustomerChange change = changes.get(i);
+                events.add(change.isNew() ? customerCreatedEvent(change.getResult()) : customerUpdatedEvent(change));
+            }
+        }
+        if (!events.isEmpty()) {
+            outboxRepository.insert(events);
+        }
+        return failures;
+    }
+
+    // After the commit, like for creates. before holds the stored customers the changes were worked out against.
+    private void afterUpdates(List<CustomerChange> changes, List<Customer> before) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        List<Customer> updated = new ArrayList<>(changes.size());
+        for (CustomerChange change : changes) {
+            if (change.getChangedFields().contains("firstName") || change.getChangedFields().contains("lastName")) {
+                nameSearchIndex.update(change.getResult());
+            }
+            customerNearCache.invalidate(change.getCustomerId());
+            customerReplica.add(change.getResult());
+            updated.add(change.getResult());
+        }
+        customerQueryCache.invalidateMatching(updated);
+        customerAnalyticsService.recordUpdated(before, updated);
+        collectionVersion.changed();
+    }
+
+    private <T> T inOutboxTransaction(Supplier<T> work) {
+        return outboxTransactional ? transactionTemplate.execute(status -> work.get()) : work.get();
+    }
+
+    private OutboxEvent customerCreatedEvent(Customer customer) {
+        return OutboxEvent.pending(customerCreationBrokerTopic, customer.getCustomerId(), CustomerEvent.created(customer));
+    }
+
+    // Published to the same topic as the creates, keyed by the customer, so consumers get the events of a customer in order
+    private OutboxEvent customerUpdatedEvent(CustomerChange change) {
+        return OutboxEvent.pending(customerCreationBrokerTopic, change.getCustomerId(), CustomerEvent.updated(change.getResult(), change.getChangedFields()));
+    }
+
+    /**
+     * Get a customer by id, served from the near cache when it holds the customer.
+     */
+    @Override
+    public Customer getCustomerById(String customerId) {
+        return customerNearCache.get(customerId)
+                .orElseThrow(() -> new CustomerNotFoundException("Customer not found with id: " + customerId));
+    }
+
+    /**
+     * Get several customers by id at once. Ids that are neither cached nor stored are reported as not found.
+     */
+    @Override
+    public MultiGetResponse getCustomersByIds(List<String> customerIds) {
+        Set<String> uniqueIds = new LinkedHashSet<>(customerIds);
+        if (uniqueIds.size() > multiGetMaxIds) {
+            throw new InvalidInputException("At most " + multiGetMaxIds + " ids can be fetched at once, got " + uniqueIds.size());
+        }
+        MultiGetResponse response = CustomerServiceSupport.multiGetResponse(uniqueIds, customerNearCache.getAll(uniqueIds));
+        log.info("Multi get of {} ids, found: {}", uniqueIds.size(), response.getCustomers().size());
+        return response;
+    }
+
+    /**
+     * Get customers with optional filters, one keyset page at a time, with all their fields or only the requested ones.
+     * Served from the in-memory replica when it is enabled and current enough, from MongoDB otherwise. With
+     * consistency=strong always from the primary.
+     */
+    /**
+     * The consistency a read with the parameter gets, the configured default when it is left out.
+     */
+    public ReadConsistency resolveConsistency(String consistency) {
+        return CustomerServiceSupport.resolveConsistency(consistency, defaultConsistency);
+    }
+
+    @Override
+    public CustomerPage getCustomers(Map<String, String> params, String operation, String match, String cursor, Integer size, String fields, String view, String consistency) {
+        log.debug("Fetching customers with operation: {}", operation);
+        Map<String, String> filters = CustomerServiceSupport.filtersOf(params);
+        MatchMode matchMode = CustomerServiceSupport.resolveMatchMode(match, defaultMatchMode);
+        CustomerProjection projection = CustomerServiceSupport.resolveProjection(fields, view);
+        ReadConsistency readConsistency = CustomerServiceSupport.resolveConsistency(consistency, defaultConsistency);
+        // Strong whether asked for or the default, the replica and the query cache can be behind the primary
+        boolean strong = readConsistency == ReadConsistency.STRONG;
+        // No filters is just a query without criteria, it goes through the same keyset pagination
+        log.debug("Fetching customers with filters: {}, matchMode: {}, projection: {}, consistency: {}", filters.keySet(), matchMode, projection, readConsistency);
+        int pageSize = CustomerServiceSupport.resolvePageSize(size, defaultPageSize, maxPageSize);
+        CustomerQueryOptions options = CustomerServiceSupport.pageOptions(cursor, pageSize, matchMode, projection, readConsistency);
+        if (strong) {
+            CustomerPage page = CustomerServiceSupport.toPage(customerRepository.findCustomersWithFilters(filters, operation, options), pageSize);
+            page.setMatchMode(matchMode);
+            return page;
+        }
+        CustomerQueryCache.QueryKey key = CustomerQueryCache.QueryKey.of(filters, operation, matchMode, options.getAfterCustomerId(), options.getLimit());
+        // The replica pages in id order, a name only search is ranked by match quality and so stays with the repository
+        if (!key.isRanked() && customerReplica.isServing()) {
+            CustomerPage page = CustomerServiceSupport.toPage(customerReplica.findCustomersWithFilters(filters, operation, options), pageSize);
+            page.setMatchMode(matchMode);
+            return page;
+        }
+        // Only the ids of the page are cached, on a hit the customers themselves are served by the near cache.
+        // The key leaves out the projection, the ids of a page are the same whichever fields are read.
+        List<Customer> loaded = new ArrayList<>();
+        List<String> ids = customerQueryCache.get(key, () -> {
+            loaded.addAll(customerRepository.findCustomersWithFilters(filters, operation, options));
+            return loaded.stream().map(Customer::getCustomerId).collect(Collectors.toList());
+        });
+        List<Customer> fetched = loaded.isEmpty() ? customersInOrder(ids, projection) : loaded;
+        CustomerPage page = CustomerServiceSupport.toPage(fetched, pageSize);
+        page.setMatchMode(matchMode);
+        return page;
+    }
+
+    /**
+     * Stream every customer matching the filters to the output stream as NDJSON, and return how many were written.
+     * Memory use doesn't depend on the result size: documents come from a Mongo cursor one batch at a time, and
+     * a slow client blocks the write, which in turn holds back reading the next batch from the cursor.
+     */
+    @Override
+    public long exportCustomers(Map<String, String> params, String operation, String match, String consistency, OutputStream outputStream) throws IOException {
+        Map<String, String> filters = CustomerServiceSupport.filtersOf(params);
+        MatchMode matchMode = CustomerServiceSupport.resolveMatchMode(match, defaultMatchMode);
+        ReadConsistency readConsistency = CustomerServiceSupport.resolveConsistency(consistency, defaultConsistency);
+        log.info("Exporting customers with filters: {}, operation: {}, matchMode: {}, consistency: {}", filters.keySet(), operation, matchMode, readConsistency);
+        // Flushing after every document (Jackson's default) would send a tiny chunk per customer, so it is left to us
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        long exported = 0;
+        try (CloseableIterator<Customer> customers = customerRepository.streamCustomersWithFilters(filters, operation, matchMode, readConsistency);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            // The container owns the response stream, and each line ends with a newline instead of Jackson's root separator
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            while (customers.hasNext()) {
+                writer.writeValue(generator, customers.next());
+                generator.writeRaw('\n');
+                if (++exported % exportFlushEvery == 0) {
+                    generator.flush();
+                }
+            }
+            generator.flush();
+        }
+        log.info("Exported {} customers", exported);
+        return exported;
+    }
+
+    /**
+     * Get the customers selected by a set expression over named id lists, e.g. "(A ∩ B) \ C", one keyset page at a time.
+     * The lists are parsed into sorted primitive UUID sets and combined by merging, then only the ids of the page are
+     * looked up, in the in-memory replica when it serves or in MongoDB. With the ID view the lookup only confirms the
+     * ids exist, which Mongo answers from the _id index alone.
+     */
+    @Override
+    public CustomerPage getCustomersBySetExpression(String expression, Map<String, List<String>> lists, String cursor, Integer size, String fields, String view, String consistency) {
+        return setQueryPage("set-query", expression, lists, cursor, size, fields, view, consistency);
+    }
+
+    private CustomerPage setQueryPage(String endpoint, String expression, Map<String, List<String>> lists, String cursor, Integer size, String fields, String view, String consistency) {
+        CustomerProjection projection = CustomerServiceSupport.resolveProjection(fields, view);
+        ReadConsistency readConsistency = CustomerServiceSupport.resolveConsistency(consistency, defaultConsistency);
+        // Strong whether asked for or the default, the replica and the query cache can be behind the primary
+        boolean strong = readConsistency == ReadConsistency.STRONG;
+        UuidSet result = CustomerServiceSupport.evaluateSetExpression(expression, lists);
+        CustomerServiceSupport.recordSetSizes(meterRegistry, endpoint, lists, result);
+        log.info("Evaluated set expression {} over lists {}: {} ids", expression, lists.keySet(), result.size());
+
+        int pageSize = CustomerServiceSupport.resolvePageSize(size, defaultPageSize, maxPageSize);
+        String afterCustomerId = PageCursor.decode(cursor);
+        int from = afterCustomerId == null ? 0 : result.indexAfter(afterCustomerId);
+        return CustomerServiceSupport.toPage(fetchInIdOrder(result, from, pageSize + 1, projection, readConsistency, strong), pageSize);
+    }
+
+    /**
+     * Look up to limit customers of the set, starting at the position. An id without a customer behind it is skipped,
+     * so fetching goes on with a growing window until the page is full or the set runs out.
+     */
+    private List<Customer> fetchInIdOrder(UuidSet ids, int from, int limit, CustomerProjection projection, ReadConsistency consistency, boolean strong) {
+        // Decided once, so a page doesn't mix the replica and MongoDB
+        Function<List<String>, List<Customer>> lookup = !strong && customerReplica.isServing()
+                ? windowIds -> customerReplica.findCustomersByIds(windowIds, projection)
+                : windowIds -> customerRepository.findCustomersByIds(windowIds, projection, consistency);
+        List<Customer> customers = new ArrayList<>(limit);
+        int position = from;
+        int window = limit;
+        while (customers.size() < limit && position < ids.size()) {
+            List<String> windowIds = ids.ids(position, window);
+            customers.addAll(lookup.apply(windowIds));
+            position += windowIds.size();
+            window = (int) Math.min(2L * window, ids.size());
+        }
+        return customers.size() > limit ? new ArrayList<>(customers.subList(0, limit)) : customers;
+    }
 
     /**
      * Get customers present in  list A and NOT list B.
      */
     @Override
-    public List<Customer> getCustomersOnlyInA(List<String> listA, List<String> listB) {
-        // This Get API is not paginated as of now, but it will return maximum 25 records.
-        // Pagination can be easily added going forward
-        log.info("Fetching customers present only in list A and not in list B");
-        return customerRepository.findCustomersOnlyInA(listA, listB);
+    public CustomerPage getCustomersOnlyInA(List<String> listA, List<String> listB, String cursor, Integer size, String fields, String view, String consistency) {
+        // Sizes and a sample only, the lists can have 100k ids
+        log.info("Fetching customers present only in list A and not in list B, list A: {}, list B: {}", LogSample.of(listA), LogSample.of(listB));
+        return setQueryPage("only-in-a", "A \\ B", Map.of("A", listA, "B", listB), cursor, size, fields, view, consistency);
     }
 
     /**
      * Get customers present in  list B and NOT list A.
      */
     @Override
-    public List<Customer> getCustomersOnlyInB(List<String> listA, List<String> listB) {
-        // This Get API is not paginated as of now, but it will return maximum 25 records.
-        // Pagination can be easily added going forward
-        log.info("Fetching customers present only in list B and not in list A");
-        return customerRepository.findCustomersOnlyInB(listA, listB);
+    public CustomerPage getCustomersOnlyInB(List<String> listA, List<String> listB, String cursor, Integer size, String fields, String view, String consistency) {
+        log.info("Fetching customers present only in list B and not in list A, list A: {}, list B: {}", LogSample.of(listA), LogSample.of(listB));
+        return setQueryPage("only-in-b", "B \\ A", Map.of("A", listA, "B", listB), cursor, size, fields, view, consistency);
     }
 
     /**
      * Get customers present in both list A and list B.
      */
     @Override
-    public List<Customer> getCustomersInBoth(List<String> listA, List<String> listB) {
-        // This Get API is not paginated as of now, but it will return maximum 25 records.
-        // Pagination can be easily added going forward
-        log.info("Fetching customers present in both list A and list B");
-        return customerRepository.findCustomersInBoth(listA, listB);
+    public CustomerPage getCustomersInBoth(List<String> listA, List<String> listB, String cursor, Integer size, String fields, String view, String consistency) {
+        log.info("Fetching customers present in both list A and list B, list A: {}, list B: {}", LogSample.of(listA), LogSample.of(listB));
+        return setQueryPage("in-both", "A ∩ B", Map.of("A", listA, "B", listB), cursor, size, fields, view, consistency);
+    }
+
+    private List<Customer> customersInOrder(List<String> ids, CustomerProjection projection) {
+        // The cached ids are all there is to an ids only page
+        if (projection.isIdOnly()) {
+            return ids.stream().map(id -> Customer.builder().customerId(id).build()).collect(Collectors.toList());
+        }
+        Map<String, Customer> customersById = customerNearCache.getAll(ids);
+        return ids.stream()
+                .map(customersById::get)
+                .filter(Objects::nonNull)
+                .map(projection::applyTo)
+                .collect(Collectors.toList());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,302 @@
+package com.customermanagement.service.impl;
+
+import com.customermanagement.dto.BulkCreateResponse;
+import com.customermanagement.dto.BulkRecordResult;
+import com.customermanagement.dto.BulkUpsertResponse;
+import com.customermanagement.dto.CustomerPage;
+import com.customermanagement.dto.CustomerPatch;
+import com.customermanagement.dto.MultiGetResponse;
+import com.customermanagement.enums.BulkRecordStatus;
+import com.customermanagement.enums.CustomerView;
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.enums.ReadConsistency;
+import com.customermanagement.exceptions.InvalidInputException;
+import com.customermanagement.model.Address;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerIds;
+import com.customermanagement.repository.CustomerProjection;
+import com.customermanagement.repository.CustomerQueryOptions;
+import com.customermanagement.service.pagination.PageCursor;
+import com.customermanagement.service.setalgebra.SetExpression;
+import com.customermanagement.service.setalgebra.UuidSet;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Request handling shared by the blocking and the reactive customer service, so both variants of the API
+ * take the same parameters and answer the same way. None of it does I/O.
+ */
+final class CustomerServiceSupport {
+
+    // Request parameters of the list endpoint that control the query itself and are not customer filters
+    private static final Set<String> NON_FILTER_PARAMS = Set.of("operation", "match", "cursor", "size", "fields", "view", "consistency");
+
+    private CustomerServiceSupport() {
+    }
+
+    static Customer buildNewCustomer(Customer customerInput) {
+        return Customer.builder()
+                .customerId(CustomerIds.newId())
+                .firstName(customerInput.getFirstName())
+                .lastName(customerInput.getLastName())
+                .age(customerInput.getAge())
+                .spendingLimit(customerInput.getSpendingLimit())
+                .mobileNumber(customerInput.getMobileNumber())
+                .addresses(customerInput.getAddresses())
+                .build();
+    }
+
+    /**
+     * Bind and validate a single bulk record. Returns the customer to insert, or null after reporting the failure.
+     */
+    static Customer readBulkRecord(ObjectMapper objectMapper, Validator validator, JsonNode node, int index, List<BulkRecordResult> results) {
+        Customer customerInput = readValidRecord(objectMapper, validator, node, index, results);
+        return customerInput == null ? null : buildNewCustomer(customerInput);
+    }
+
+    /**
+     * Like above for a bulk upsert, keeping the customerId and version of the record. A record without an id is a
+     * new customer.
+     */
+    static Customer readUpsertRecord(ObjectMapper objectMapper, Validator validator, JsonNode node, int index, List<BulkRecordResult> results) {
+        Customer record = readValidRecord(objectMapper, validator, node, index, results);
+        if (record == null) {
+            return null;
+        }
+        Customer customer = buildNewCustomer(record);
+        if (record.getCustomerId() != null) {
+            if (!isCustomerId(record.getCustomerId())) {
+                results.add(BulkRecordResult.failed(index, "customerId: must be a UUID"));
+                return null;
+            }
+            customer.setCustomerId(record.getCustomerId());
+            customer.setVersion(record.getVersion());
+        }
+        return customer;
+    }
+
+    private static Customer readValidRecord(ObjectMapper objectMapper, Validator validator, JsonNode node, int index, List<BulkRecordResult> results) {
+        Customer customerInput;
+        try {
+            customerInput = objectMapper.treeToValue(node, Customer.class);
+        } catch (JsonProcessingException e) {
+            results.add(BulkRecordResult.failed(index, "Invalid record: " + e.getOriginalMessage()));
+            return null;
+        }
+        Set<ConstraintViolation<Customer>> violations = validator.validate(customerInput);
+        if (!violations.isEmpty()) {
+            results.add(BulkRecordResult.failed(index, violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "))));
+            return null;
+        }
+        return customerInput;
+    }
+
+    // In the form the service hands out, a lowercase UUID
+    private static boolean isCustomerId(String customerId) {
+        try {
+            return UUID.fromString(customerId).toString().equals(customerId);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The customer as the patch leaves it, as a new object. Addresses of the removed types go first, then the added
+     * ones are appended.
+     */
+    static Customer applyPatch(Customer current, CustomerPatch patch) {
+        List<Address> addresses = new ArrayList<>(current.getAddresses() == null ? List.of() : current.getAddresses());
+        if (patch.getRemoveAddressTypes() != null) {
+            addresses.removeIf(address -> patch.getRemoveAddressTypes().stream().anyMatch(type -> type.equalsIgnoreCase(address.getType())));
+        }
+        if (patch.getAddAddresses() != null) {
+            addresses.addAll(patch.getAddAddresses());
+        }
+        if (addresses.isEmpty()) {
+            throw new InvalidInputException("At least one address is required");
+        }
+        return Customer.builder()
+                .customerId(current.getCustomerId())
+                .firstName(patch.getFirstName() != null ? patch.getFirstName() : current.getFirstName())
+                .lastName(patch.getLastName() != null ? patch.getLastName() : current.getLastName())
+                .age(patch.getAge() != null ? patch.getAge() : current.getAge())
+                .spendingLimit(patch.getSpendingLimit() != null ? patch.getSpendingLimit() : current.getSpendingLimit())
+                .mobileNumber(patch.getMobileNumber() != null ? patch.getMobileNumber() : current.getMobileNumber())
+                .addresses(addresses)
+                .build();
+    }
+
+    static BulkCreateResponse bulkResponse(int total, List<BulkRecordResult> results) {
+        results.sort(Comparator.comparingInt(BulkRecordResult::getIndex));
+        int created = (int) results.stream().filter(result -> result.getStatus() == BulkRecordStatus.CREATED).count();
+        return BulkCreateResponse.builder()
+                .total(total)
+                .created(created)
+                .failed(results.size() - created)
+                .results(results)
+                .build();
+    }
+
+    static BulkUpsertResponse upsertResponse(int total, List<BulkRecordResult> results) {
+        results.sort(Comparator.comparingInt(BulkRecordResult::getIndex));
+        Map<BulkRecordStatus, Long> counts = results.stream().collect(Collectors.groupingBy(BulkRecordResult::getStatus, Collectors.counting()));
+        return BulkUpsertResponse.builder()
+                .total(total)
+                .created(counts.getOrDefault(BulkRecordStatus.CREATED, 0L).intValue())
+                .updated(counts.getOrDefault(BulkRecordStatus.UPDATED, 0L).intValue())
+                .unchanged(counts.getOrDefault(BulkRecordStatus.UNCHANGED, 0L).intValue())
+                .conflicts(counts.getOrDefault(BulkRecordStatus.CONFLICT, 0L).intValue())
+                .failed(counts.getOrDefault(BulkRecordStatus.FAILED, 0L).intValue())
+                .results(results)
+                .build();
+    }
+
+    /**
+     * The found customers in the order of the requested ids, and the ids that weren't found.
+     */
+    static MultiGetResponse multiGetResponse(Collection<String> customerIds, Map<String, Customer> found) {
+        List<Customer> customers = new ArrayList<>(found.size());
+        List<String> notFound = new ArrayList<>();
+        for (String customerId : customerIds) {
+            Customer customer = found.get(customerId);
+            if (customer != null) {
+                customers.add(customer);
+            } else {
+                notFound.add(customerId);
+            }
+        }
+        return MultiGetResponse.builder().customers(customers).notFound(notFound).build();
+    }
+
+    /**
+     * Parse and evaluate a set expression over the named id lists of the request.
+     */
+    static UuidSet evaluateSetExpression(String expression, Map<String, List<String>> lists) {
+        SetExpression parsed = SetExpression.parse(expression);
+        Map<String, UuidSet> sets = new HashMap<>();
+        for (String name : parsed.listNames()) {
+            if (!lists.containsKey(name)) {
+                throw new InvalidInputException("The expression uses list " + name + ", which is not in the request");
+            }
+            sets.put(name, UuidSet.parse(lists.get(name)));
+        }
+        return parsed.evaluate(sets);
+    }
+
+    /**
+     * Sizes of the id lists of a set request and of the set it selects. Tagged with the endpoint only, the expression
+     * of a set query is free text and would make a series per request.
+     */
+    static void recordSetSizes(MeterRegistry meterRegistry, String endpoint, Map<String, List<String>> lists, UuidSet result) {
+        DistributionSummary inputSize = DistributionSummary.builder("customer.set.input.size")
+                .description("Ids per list of a set request")
+                .baseUnit("ids")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        lists.values().forEach(list -> inputSize.record(list.size()));
+        DistributionSummary.builder("customer.set.result.size")
+                .description("Ids selected by a set request, before paging")
+                .baseUnit("ids")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry)
+                .record(result.size());
+    }
+
+    static Map<String, String> filtersOf(Map<String, String> params) {
+        Map<String, String> filters = new HashMap<>(params);
+        filters.keySet().removeAll(NON_FILTER_PARAMS);
+        // An empty filter would match everything in PREFIX or CONTAINS mode, and nothing in EXACT mode
+        filters.values().removeIf(value -> value == null || value.isBlank());
+        return filters;
+    }
+
+    static MatchMode resolveMatchMode(String match, MatchMode defaultMatchMode) {
+        if (match == null || match.isBlank()) {
+            return defaultMatchMode;
+        }
+        try {
+            return MatchMode.valueOf(match.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException("Invalid match mode: " + match + ", expected one of " + Arrays.toString(MatchMode.values()));
+        }
+    }
+
+    static ReadConsistency resolveConsistency(String consistency, ReadConsistency defaultConsistency) {
+        if (consistency == null || consistency.isBlank()) {
+            return defaultConsistency;
+        }
+        try {
+            return ReadConsistency.valueOf(consistency.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException("Invalid consistency: " + consistency + ", expected one of " + Arrays.toString(ReadConsistency.values()));
+        }
+    }
+
+    static int resolvePageSize(Integer size, int defaultPageSize, int maxPageSize) {
+        if (size == null) {
+            return defaultPageSize;
+        }
+        if (size < 1) {
+            throw new InvalidInputException("Page size must be at least 1");
+        }
+        return Math.min(size, maxPageSize);
+    }
+
+    /**
+     * The fields a page of customers is made of, either a comma separated list like "firstName,addresses.city" or a
+     * named view. All of them when neither is given.
+     */
+    static CustomerProjection resolveProjection(String fields, String view) {
+        boolean hasFields = fields != null && !fields.isBlank();
+        boolean hasView = view != null && !view.isBlank();
+        if (hasFields && hasView) {
+            throw new InvalidInputException("Either fields or view can be given, not both");
+        }
+        if (hasView) {
+            CustomerView customerView;
+            try {
+                customerView = CustomerView.valueOf(view.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidInputException("Invalid view: " + view + ", expected one of " + Arrays.toString(CustomerView.values()));
+            }
+            return customerView.getFields() == null ? CustomerProjection.FULL : CustomerProjection.of(customerView.getFields());
+        }
+        if (hasFields) {
+            return CustomerProjection.of(Arrays.stream(fields.split(",")).filter(field -> !field.isBlank()).collect(Collectors.toList()));
+        }
+        return CustomerProjection.FULL;
+    }
+
+    static CustomerQueryOptions pageOptions(String cursor, int pageSize, MatchMode matchMode, CustomerProjection projection, ReadConsistency consistency) {
+        // One extra row tells us whether there is a next page without a separate count query
+        return CustomerQueryOptions.builder()
+                .afterCustomerId(PageCursor.decode(cursor))
+                .limit(pageSize + 1)
+                .matchMode(matchMode)
+                .projection(projection)
+                .consistency(consistency)
+                .build();
+    }
+
+    static CustomerPage toPage(List<Customer> fetched, int pageSize) {
+        if (fetched.size() <= pageSize) {
+            return CustomerPage.builder().customers(fetched).build();
+        }
+        List<Customer> customers = fetched.subList(0, pageSize);
+        return CustomerPage.builder()
+                .customers(customers)
+                .nextCursor(PageCursor.encode(customers.get(pageSize - 1).getCustomerId()))
+                .build();
+    }
+}
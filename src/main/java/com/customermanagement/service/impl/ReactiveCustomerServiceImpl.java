@@ -0,0 +1,326 @@
+package com.customermanagement.service.impl;
+
+import com.customermanagement.dto.BulkCreateResponse;
+import com.customermanagement.dto.BulkRecordResult;
+import com.customermanagement.dto.CustomerPage;
+import com.customermanagement.dto.MultiGetResponse;
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.enums.ReadConsistency;
+import com.customermanagement.exceptions.CustomerNotFoundException;
+import com.customermanagement.exceptions.DatabaseOperationException;
+import com.customermanagement.exceptions.InvalidInputException;
+import com.customermanagement.infra.cache.CustomerCollectionVersion;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerEvent;
+import com.customermanagement.model.OutboxEvent;
+import com.customermanagement.repository.CustomerProjection;
+import com.customermanagement.repository.CustomerQueryOptions;
+import com.customermanagement.repository.ReactiveCustomerRepository;
+import com.customermanagement.repository.ReactiveOutboxRepository;
+import com.customermanagement.repository.filter.NameSearchIndex;
+import com.customermanagement.service.ReactiveCustomerServiceStrategy;
+import com.customermanagement.service.pagination.PageCursor;
+import com.customermanagement.service.setalgebra.UuidSet;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.codec.CodecException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.ReactiveTransaction;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import javax.validation.Validator;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Non-blocking variant of CustomerServiceImpl, used by the reactive profile. Requests are answered the same way, but
+ * no thread waits on MongoDB: every call returns a Mono or Flux that completes when the data is there.
+ * Reads go straight to MongoDB, the near cache and the query cache are only used by the blocking variant.
+ */
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+@Slf4j
+public class ReactiveCustomerServiceImpl implements ReactiveCustomerServiceStrategy {
+
+    private final ReactiveCustomerRepository customerRepository;
+    private final ReactiveOutboxRepository outboxRepository;
+    private final NameSearchIndex nameSearchIndex;
+    private final CustomerCollectionVersion collectionVersion;
+    private final TransactionalOperator transactionalOperator;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${spring.kafka.producer.properties.customer.creation.topic}")
+    private String customerCreationBrokerTopic;
+
+    @Value("${customer.query.default-page-size:20}")
+    private int defaultPageSize;
+
+    @Value("${customer.query.max-page-size:500}")
+    private int maxPageSize;
+
+    @Value("${customer.query.default-match-mode:PREFIX}")
+    private MatchMode defaultMatchMode;
+
+    @Value("${customer.cache.mget-max-ids:1000}")
+    private int multiGetMaxIds;
+
+    @Value("${customer.read.default-consistency:STRONG}")
+    private ReadConsistency defaultConsistency;
+
+    @Value("${customer.bulk.chunk-size:500}")
+    private int bulkChunkSize;
+
+    @Value("${customer.outbox.transactional:true}")
+    private boolean outboxTransactional;
+
+    /**
+     * Create a new customer together with its customer-created event in the outbox, like the blocking variant.
+     */
+    @Override
+    public Mono<Customer> createCustomer(Customer customerInput) {
+        log.debug("Starting customer creation process for customer with firstName: {}, lastName: {}", customerInput.getFirstName(), customerInput.getLastName());
+        Customer customer = CustomerServiceSupport.buildNewCustomer(customerInput);
+        Mono<Customer> save = customerRepository.insert(customer)
+                .flatMap(saved -> outboxRepository.insert(customerCreatedEvent(saved)).thenReturn(saved));
+        return (outboxTransactional ? transactionalOperator.transactional(save) : save)
+                .doOnNext(saved -> {
+                    log.debug("Customer saved to MongoDB with ID: {}", saved.getCustomerId());
+                    // Only after the commit, a rolled back customer must not become searchable
+                    nameSearchIndex.add(saved);
+                    collectionVersion.changed();
+                });
+    }
+
+    /**
+     * Create customers in bulk from the decoded records of a JSON array or an NDJSON stream. Records are validated as
+     * they arrive and written in chunks, while the next ones are still being read from the request.
+     */
+    @Override
+    public Mono<BulkCreateResponse> createCustomersInBulk(Flux<JsonNode> records) {
+        // Filled from the decoding side and from the Mongo callbacks of the chunk writes
+        List<BulkRecordResult> results = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger total = new AtomicInteger();
+        return records
+                .<Tuple2<Integer, Customer>>handle((node, sink) -> {
+                    int index = total.getAndIncrement();
+                    Customer customer = CustomerServiceSupport.readBulkRecord(objectMapper, validator, node, index, results);
+                    if (customer != null) {
+                        sink.next(Tuples.of(index, customer));
+                    }
+                })
+                // WebFlux hands the decoding error over wrapped in a ServerWebInputException
+                .onErrorResume(e -> e instanceof CodecException || e.getCause() instanceof CodecException, e -> {
+                    // As in the blocking variant, what was read so far is kept and the rest is reported as one failure
+                    log.warn("BULK_CREATE_MALFORMED_PAYLOAD at record {}: {}", total.get(), e.getMessage());
+                    // Counted as one record, so created and failed still add up to the total
+                    results.add(BulkRecordResult.failed(total.getAndIncrement(), "Malformed payload, records from this index onwards were not processed: " + e.getMessage()));
+                    return Flux.empty();
+                })
+                .buffer(bulkChunkSize)
+                .concatMap(chunk -> flushBulkChunk(chunk, results))
+                .then(Mono.fromCallable(() -> {
+                    BulkCreateResponse response = CustomerServiceSupport.bulkResponse(total.get(), new ArrayList<>(results));
+                    log.info("Bulk customer creation finished. Records: {}, created: {}, failed: {}", total.get(), response.getCreated(), response.getFailed());
+                    return response;
+                }));
+    }
+
+    private Mono<Void> flushBulkChunk(List<Tuple2<Integer, Customer>> chunk, List<BulkRecordResult> results) {
+        List<Customer> customers = chunk.stream().map(Tuple2::getT2).collect(Collectors.toList());
+        List<Integer> positions = IntStream.range(0, customers.size()).boxed().collect(Collectors.toList());
+        return persistBulkChunk(customers, positions, new HashMap<>())
+                .onErrorResume(DatabaseOperationException.class, e -> {
+                    log.error("BULK_CREATE_CHUNK_FAILED size={}", chunk.size(), e);
+                    Map<Integer, String> failures = new HashMap<>();
+                    for (int i = 0; i < chunk.size(); i++) {
+                        failures.put(i, e.getMessage());
+                    }
+                    return Mono.just(failures);
+                })
+                .doOnNext(failures -> {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        String error = failures.get(i);
+                        Tuple2<Integer, Customer> record = chunk.get(i);
+                        if (error == null) {
+                            nameSearchIndex.add(record.getT2());
+                            results.add(BulkRecordResult.created(record.getT1(), record.getT2().getCustomerId()));
+                        } else {
+                            results.add(BulkRecordResult.failed(record.getT1(), error));
+                        }
+                    }
+                    collectionVersion.changed();
+                })
+                .then();
+    }
+
+    /**
+     * Insert the remaining positions of a chunk with their outbox events, dropping the failed ones and writing the
+     * rest again when a transaction was aborted, like CustomerServiceImpl. Completes with the failed positions.
+     */
+    private Mono<Map<Integer, String>> persistBulkChunk(List<Customer> chunk, List<Integer> remaining, Map<Integer, String> failures) {
+        if (remaining.isEmpty()) {
+            return Mono.just(failures);
+        }
+        List<Customer> customers = remaining.stream().map(chunk::get).collect(Collectors.toList());
+        Mono<Map<Integer, String>> round = outboxTransactional
+                ? transactionalOperator.execute(status -> insertChunkWithOutbox(customers, status)).singleOrEmpty()
+                : insertChunkWithOutbox(customers, null);
+        return round.defaultIfEmpty(Map.of()).flatMap(roundFailures -> {
+            if (roundFailures.isEmpty()) {
+                return Mono.just(failures);
+            }
+            List<Integer> retry = new ArrayList<>();
+            for (int i = 0; i < remaining.size(); i++) {
+                if (roundFailures.containsKey(i)) {
+                    failures.put(remaining.get(i), roundFailures.get(i));
+                } else {
+                    retry.add(remaining.get(i));
+                }
+            }
+            // Without a transaction the records that didn't fail are already stored with their events
+            return persistBulkChunk(chunk, outboxTransactional ? retry : List.of(), failures);
+        });
+    }
+
+    private Mono<Map<Integer, String>> insertChunkWithOutbox(List<Customer> customers, ReactiveTransaction status) {
+        return customerRepository.insertCustomersInBulk(customers).flatMap(failures -> {
+            if (!failures.isEmpty() && status != null) {
+                status.setRollbackOnly();
+                return Mono.just(failures);
+            }
+            List<OutboxEvent> events = new ArrayList<>(customers.size());
+            for (int i = 0; i < customers.size(); i++) {
+                if (!failures.containsKey(i)) {
+                    events.add(customerCreatedEvent(customers.get(i)));
+                }
+            }
+            return outboxRepository.insert(events).then(Mono.just(failures));
+        });
+    }
+
+    private OutboxEvent customerCreatedEvent(Customer customer) {
+        return OutboxEvent.pending(customerCreationBrokerTopic, customer.getCustomerId(), CustomerEvent.created(customer));
+    }
+
+    @Override
+    public Mono<Customer> getCustomerById(String customerId) {
+        return customerRepository.findById(customerId)
+                .switchIfEmpty(Mono.error(() -> new CustomerNotFoundException("Customer not found with id: " + customerId)));
+    }
+
+    @Override
+    public Mono<MultiGetResponse> getCustomersByIds(List<String> customerIds) {
+        Set<String> uniqueIds = new LinkedHashSet<>(customerIds);
+        if (uniqueIds.size() > multiGetMaxIds) {
+            return Mono.error(new InvalidInputException("At most " + multiGetMaxIds + " ids can be fetched at once, got " + uniqueIds.size()));
+        }
+        return customerRepository.findCustomersByIds(new ArrayList<>(uniqueIds))
+                .collectMap(Customer::getCustomerId, Function.identity())
+                .map(found -> CustomerServiceSupport.multiGetResponse(uniqueIds, found))
+                .doOnNext(response -> log.info("Multi get of {} ids, found: {}", uniqueIds.size(), response.getCustomers().size()));
+    }
+
+    @Override
+    public Mono<CustomerPage> getCustomers(Map<String, String> params, String operation, String match, String cursor, Integer size, String fields, String view, String consistency) {
+        // Deferred so invalid parameters come out as an error signal instead of being thrown at assembly
+        return Mono.defer(() -> {
+            Map<String, String> filters = CustomerServiceSupport.filtersOf(params);
+            MatchMode matchMode = CustomerServiceSupport.resolveMatchMode(match, defaultMatchMode);
+            CustomerProjection projection = CustomerServiceSupport.resolveProjection(fields, view);
+            ReadConsistency readConsistency = CustomerServiceSupport.resolveConsistency(consistency, defaultConsistency);
+            log.debug("Fetching customers with filters: {}, matchMode: {}, projection: {}, consistency: {}", filters.keySet(), matchMode, projection, readConsistency);
+            int pageSize = CustomerServiceSupport.resolvePageSize(size, defaultPageSize, maxPageSize);
+            CustomerQueryOptions options = CustomerServiceSupport.pageOptions(cursor, pageSize, matchMode, projection, readConsistency);
+            return customerRepository.findCustomersWithFilters(filters, operation, options)
+                    .collectList()
+                    .map(fetched -> {
+                        CustomerPage page = CustomerServiceSupport.toPage(fetched, pageSize);
+                        page.setMatchMode(matchMode);
+                        return page;
+                    });
+        });
+    }
+
+    /**
+     * Every customer matching the filters, as they come off the Mongo cursor. Demand from the client drives the cursor.
+     */
+    @Override
+    public Flux<Customer> exportCustomers(Map<String, String> params, String operation, String match, String consistency) {
+        return Flux.defer(() -> {
+            Map<String, String> filters = CustomerServiceSupport.filtersOf(params);
+            MatchMode matchMode = CustomerServiceSupport.resolveMatchMode(match, defaultMatchMode);
+            ReadConsistency readConsistency = CustomerServiceSupport.resolveConsistency(consistency, defaultConsistency);
+            log.info("Exporting customers with filters: {}, operation: {}, matchMode: {}, consistency: {}", filters.keySet(), operation, matchMode, readConsistency);
+            return customerRepository.streamCustomersWithFilters(filters, operation, matchMode, readConsistency);
+        });
+    }
+
+    @Override
+    public Mono<CustomerPage> getCustomersBySetExpression(String expression, Map<String, List<String>> lists, String cursor, Integer size, String fields, String view, String consistency) {
+        return setQueryPage("set-query", expression, lists, cursor, size, fields, view, consistency);
+    }
+
+    private Mono<CustomerPage> setQueryPage(String endpoint, String expression, Map<String, List<String>> lists, String cursor, Integer size, String fields, String view, String consistency) {
+        return Mono.defer(() -> {
+            CustomerProjection projection = CustomerServiceSupport.resolveProjection(fields, view);
+            ReadConsistency readConsistency = CustomerServiceSupport.resolveConsistency(consistency, defaultConsistency);
+            UuidSet result = CustomerServiceSupport.evaluateSetExpression(expression, lists);
+            CustomerServiceSupport.recordSetSizes(meterRegistry, endpoint, lists, result);
+            log.info("Evaluated set expression {} over lists {}: {} ids", expression, lists.keySet(), result.size());
+            int pageSize = CustomerServiceSupport.resolvePageSize(size, defaultPageSize, maxPageSize);
+            String afterCustomerId = PageCursor.decode(cursor);
+            int from = afterCustomerId == null ? 0 : result.indexAfter(afterCustomerId);
+            return fetchInIdOrder(result, from, pageSize + 1, pageSize + 1, projection, readConsistency, new ArrayList<>())
+                    .map(fetched -> CustomerServiceSupport.toPage(fetched, pageSize));
+        });
+    }
+
+    /**
+     * Same growing window as CustomerServiceImpl.fetchInIdOrder, one lookup after the other until the page is full.
+     */
+    private Mono<List<Customer>> fetchInIdOrder(UuidSet ids, int position, int window, int limit, CustomerProjection projection, ReadConsistency consistency, List<Customer> customers) {
+        if (customers.size() >= limit || position >= ids.size()) {
+            return Mono.just(customers.size() > limit ? new ArrayList<>(customers.subList(0, limit)) : customers);
+        }
+        List<String> windowIds = ids.ids(position, window);
+        return customerRepository.findCustomersByIds(windowIds, projection, consistency)
+                .collectList()
+                .flatMap(found -> {
+                    customers.addAll(found);
+                    return fetchInIdOrder(ids, position + windowIds.size(), (int) Math.min(2L * window, ids.size()), limit, projection, consistency, customers);
+                });
+    }
+
+    @Override
+    public Mono<CustomerPage> getCustomersOnlyInA(List<String> listA, List<String> listB, String cursor, Integer size, String fields, String view, String consistency) {
+        log.info("Fetching customers present only in list A and not in list B, sizes: {}, {}", listA.size(), listB.size());
+        return setQueryPage("only-in-a", "A \\ B", Map.of("A", listA, "B", listB), cursor, size, fields, view, consistency);
+    }
+
+    @Override
+    public Mono<CustomerPage> getCustomersOnlyInB(List<String> listA, List<String> listB, String cursor, Integer size, String fields, String view, String consistency) {
+        log.info("Fetching customers present only in list B and not in list A, sizes: {}, {}", listA.size(), listB.size());
+        return setQueryPage("only-in-b", "B \\ A", Map.of("A", listA, "B", listB), cursor, size, fields, view, consistency);
+    }
+
+    @Override
+    public Mono<CustomerPage> getCustomersInBoth(List<String> listA, List<String> listB, String cursor, Integer size, String fields, String view, String consistency) {
+        log.info("Fetching customers present in both list A and list B, sizes: {}, {}", listA.size(), listB.size());
+        return setQueryPage("in-both", "A ∩ B", Map.of("A", listA, "B", listB), cursor, size, fields, view, consistency);
+    }
+}
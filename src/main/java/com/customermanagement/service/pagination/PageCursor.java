@@ -0,0 +1,43 @@
+package com.customermanagement.service.pagination;
+
+import com.customermanagement.exceptions.InvalidInputException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque cursor for keyset pagination over customerId.
+ * The cursor only carries the last customerId of the previous page, so fetching any page costs the same index seek
+ * no matter how deep into the results it is. The version prefix lets us change the format without breaking old cursors.
+ */
+public final class PageCursor {
+
+    private static final String VERSION_PREFIX = "c1:";
+
+    private PageCursor() {
+    }
+
+    public static String encode(String lastCustomerId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((VERSION_PREFIX + lastCustomerId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the customerId to continue after, or null for a missing cursor (first page).
+     */
+    public static String decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException("Invalid cursor: " + cursor);
+        }
+        if (!decoded.startsWith(VERSION_PREFIX) || decoded.length() == VERSION_PREFIX.length()) {
+            throw new InvalidInputException("Invalid cursor: " + cursor);
+        }
+        return decoded.substring(VERSION_PREFIX.length());
+    }
+}
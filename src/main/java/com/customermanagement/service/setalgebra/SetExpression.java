@@ -0,0 +1,190 @@
+package com.customermanagement.service.setalgebra;
+
+import com.customermanagement.exceptions.InvalidInputException;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Set expression over named customer id lists, e.g. "(A ∩ B) \ C".
+ * Operators are intersection ("∩" or "&"), union ("∪" or "|") and difference ("\" or "-"). Intersection binds
+ * tighter than union and difference, which are evaluated left to right, and parentheses group as usual.
+ * List names are letters, digits and underscores.
+ */
+public abstract class SetExpression {
+
+    // Parsing and evaluating recurse once per parenthesis and operator, these keep them off the end of the stack.
+    // SetQueryRequest checks the length as well.
+    public static final int MAX_LENGTH = 1000;
+    static final int MAX_NESTING = 32;
+
+    /**
+     * Parse the expression, failing with an InvalidInputException that points at the offending position.
+     */
+    public static SetExpression parse(String expression) {
+        if (expression != null && expression.length() > MAX_LENGTH) {
+            throw new InvalidInputException("Invalid set expression: longer than " + MAX_LENGTH + " characters");
+        }
+        Parser parser = new Parser(expression);
+        SetExpression parsed = parser.parseUnionOrDifference();
+        parser.skipWhitespace();
+        if (!parser.atEnd()) {
+            throw parser.error("Unexpected '" + parser.peek() + "'");
+        }
+        return parsed;
+    }
+
+    public abstract UuidSet evaluate(Map<String, UuidSet> lists);
+
+    /**
+     * Names of all lists the expression uses.
+     */
+    public Set<String> listNames() {
+        Set<String> names = new TreeSet<>();
+        collectListNames(names);
+        return names;
+    }
+
+    protected abstract void collectListNames(Set<String> names);
+
+    private static final class ListRef extends SetExpression {
+        private final String name;
+
+        private ListRef(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public UuidSet evaluate(Map<String, UuidSet> lists) {
+            UuidSet list = lists.get(name);
+            if (list == null) {
+                throw new InvalidInputException("The expression uses list " + name + ", which is not in the request");
+            }
+            return list;
+        }
+
+        @Override
+        protected void collectListNames(Set<String> names) {
+            names.add(name);
+        }
+    }
+
+    private static final class Operation extends SetExpression {
+        private final char operator;
+        private final SetExpression left;
+        private final SetExpression right;
+
+        private Operation(char operator, SetExpression left, SetExpression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public UuidSet evaluate(Map<String, UuidSet> lists) {
+            UuidSet leftSet = left.evaluate(lists);
+            UuidSet rightSet = right.evaluate(lists);
+            switch (operator) {
+                case '&':
+                    return leftSet.intersect(rightSet);
+                case '|':
+                    return leftSet.union(rightSet);
+                default:
+                    return leftSet.difference(rightSet);
+            }
+        }
+
+        @Override
+        protected void collectListNames(Set<String> names) {
+            left.collectListNames(names);
+            right.collectListNames(names);
+        }
+    }
+
+    private static final class Parser {
+        private final String input;
+        private int position;
+        private int depth;
+
+        private Parser(String input) {
+            this.input = input == null ? "" : input;
+        }
+
+        private SetExpression parseUnionOrDifference() {
+            SetExpression result = parseIntersection();
+            while (true) {
+                skipWhitespace();
+                if (consume('|', '∪')) {
+                    result = new Operation('|', result, parseIntersection());
+                } else if (consume('-', '\\')) {
+                    result = new Operation('-', result, parseIntersection());
+                } else {
+                    return result;
+                }
+            }
+        }
+
+        private SetExpression parseIntersection() {
+            SetExpression result = parseOperand();
+            while (true) {
+                skipWhitespace();
+                if (consume('&', '∩')) {
+                    result = new Operation('&', result, parseOperand());
+                } else {
+                    return result;
+                }
+            }
+        }
+
+        private SetExpression parseOperand() {
+            skipWhitespace();
+            if (consume('(', '(')) {
+                if (++depth > MAX_NESTING) {
+                    throw error("Expression nested too deeply");
+                }
+                SetExpression inner = parseUnionOrDifference();
+                skipWhitespace();
+                if (!consume(')', ')')) {
+                    throw error("Missing ')'");
+                }
+                depth--;
+                return inner;
+            }
+            int start = position;
+            while (!atEnd() && (Character.isLetterOrDigit(peek()) || peek() == '_')) {
+                position++;
+            }
+            if (start == position) {
+                throw error(atEnd() ? "Expected a list name at the end" : "Expected a list name, found '" + peek() + "'");
+            }
+            return new ListRef(input.substring(start, position));
+        }
+
+        private boolean consume(char symbol, char alternative) {
+            if (!atEnd() && (peek() == symbol || peek() == alternative)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (!atEnd() && Character.isWhitespace(peek())) {
+                position++;
+            }
+        }
+
+        private boolean atEnd() {
+            return position >= input.length();
+        }
+
+        private char peek() {
+            return input.charAt(position);
+        }
+
+        private InvalidInputException error(String message) {
+            return new InvalidInputException("Invalid set expression at position " + position + ": " + message);
+        }
+    }
+}
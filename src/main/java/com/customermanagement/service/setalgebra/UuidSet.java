@@ -0,0 +1,251 @@
+package com.customermanagement.service.setalgebra;
+
+import com.customermanagement.exceptions.InvalidInputException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable, sorted set of UUIDs held as two parallel long arrays (most and least significant bits), so a set of
+ * 100k ids is 1.6 MB of primitives instead of 100k Strings. Set operations are linear merges of the sorted arrays.
+ * The order is unsigned 128 bit order, which is also the order of the lowercase canonical strings, i.e. of customerId in Mongo.
+ */
+public final class UuidSet {
+
+    private static final UuidSet EMPTY = new UuidSet(new long[0], new long[0], 0);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long[] msb;
+    private final long[] lsb;
+    private final int size;
+
+    private UuidSet(long[] msb, long[] lsb, int size) {
+        this.msb = msb;
+        this.lsb = lsb;
+        this.size = size;
+    }
+
+    /**
+     * Parse the ids into a set. Values that aren't UUIDs are skipped, as no customer can have them as id.
+     */
+    public static UuidSet parse(Collection<String> ids) {
+        long[] msb = new long[ids.size()];
+        long[] lsb = new long[ids.size()];
+        int count = 0;
+        for (String id : ids) {
+            if (id != null && isUuid(id)) {
+                msb[count] = parseHex(id, 0, 8) << 32 | parseHex(id, 9, 13) << 16 | parseHex(id, 14, 18);
+                lsb[count] = parseHex(id, 19, 23) << 48 | parseHex(id, 24, 36);
+                count++;
+            }
+        }
+        if (count == 0) {
+            return EMPTY;
+        }
+        heapSort(msb, lsb, count);
+        // Drop duplicates, which are next to each other now
+        int unique = 1;
+        for (int i = 1; i < count; i++) {
+            if (msb[i] != msb[unique - 1] || lsb[i] != lsb[unique - 1]) {
+                msb[unique] = msb[i];
+                lsb[unique] = lsb[i];
+                unique++;
+            }
+        }
+        return new UuidSet(msb, lsb, unique);
+    }
+
+    public static boolean isUuid(String id) {
+        if (id.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            boolean hex = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+            boolean valid = (i == 8 || i == 13 || i == 18 || i == 23) ? c == '-' : hex;
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public UuidSet union(UuidSet other) {
+        long[] resultMsb = new long[size + other.size];
+        long[] resultLsb = new long[size + other.size];
+        int i = 0, j = 0, n = 0;
+        while (i < size || j < other.size) {
+            int cmp = i == size ? 1 : j == other.size ? -1 : compare(msb[i], lsb[i], other.msb[j], other.lsb[j]);
+            if (cmp <= 0) {
+                resultMsb[n] = msb[i];
+                resultLsb[n++] = lsb[i++];
+                if (cmp == 0) {
+                    j++;
+                }
+            } else {
+                resultMsb[n] = other.msb[j];
+                resultLsb[n++] = other.lsb[j++];
+            }
+        }
+        return new UuidSet(resultMsb, resultLsb, n);
+    }
+
+    public UuidSet intersect(UuidSet other) {
+        int capacity = Math.min(size, other.size);
+        long[] resultMsb = new long[capacity];
+        long[] resultLsb = new long[capacity];
+        int i = 0, j = 0, n = 0;
+        while (i < size && j < other.size) {
+            int cmp = compare(msb[i], lsb[i], other.msb[j], other.lsb[j]);
+            if (cmp == 0) {
+                resultMsb[n] = msb[i];
+                resultLsb[n++] = lsb[i];
+                i++;
+                j++;
+            } else if (cmp < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return new UuidSet(resultMsb, resultLsb, n);
+    }
+
+    public UuidSet difference(UuidSet other) {
+        long[] resultMsb = new long[size];
+        long[] resultLsb = new long[size];
+        int i = 0, j = 0, n = 0;
+        while (i < size) {
+            int cmp = j == other.size ? -1 : compare(msb[i], lsb[i], other.msb[j], other.lsb[j]);
+            if (cmp < 0) {
+                resultMsb[n] = msb[i];
+                resultLsb[n++] = lsb[i++];
+            } else {
+                if (cmp == 0) {
+                    i++;
+                }
+                j++;
+            }
+        }
+        return new UuidSet(resultMsb, resultLsb, n);
+    }
+
+    /**
+     * Position of the first id greater than the given one, for resuming after a page cursor.
+     */
+    public int indexAfter(String id) {
+        if (!isUuid(id)) {
+            throw new InvalidInputException("Invalid cursor");
+        }
+        long keyMsb = parseHex(id, 0, 8) << 32 | parseHex(id, 9, 13) << 16 | parseHex(id, 14, 18);
+        long keyLsb = parseHex(id, 19, 23) << 48 | parseHex(id, 24, 36);
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(msb[mid], lsb[mid], keyMsb, keyLsb) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The id at the position, in the canonical lowercase form customer ids are stored in.
+     */
+    public String idAt(int index) {
+        char[] chars = new char[36];
+        writeHex(chars, 0, msb[index] >>> 32, 8);
+        chars[8] = '-';
+        writeHex(chars, 9, msb[index] >>> 16, 4);
+        chars[13] = '-';
+        writeHex(chars, 14, msb[index], 4);
+        chars[18] = '-';
+        writeHex(chars, 19, lsb[index] >>> 48, 4);
+        chars[23] = '-';
+        writeHex(chars, 24, lsb[index], 12);
+        return new String(chars);
+    }
+
+    /**
+     * Up to limit ids starting at the position.
+     */
+    public List<String> ids(int from, int limit) {
+        int to = (int) Math.min(size, (long) from + limit);
+        List<String> ids = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            ids.add(idAt(i));
+        }
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        return "UuidSet(size=" + size + ")";
+    }
+
+    private static int compare(long msbA, long lsbA, long msbB, long lsbB) {
+        int cmp = Long.compareUnsigned(msbA, msbB);
+        return cmp != 0 ? cmp : Long.compareUnsigned(lsbA, lsbB);
+    }
+
+    private static long parseHex(String value, int from, int to) {
+        long result = 0;
+        for (int i = from; i < to; i++) {
+            result = result << 4 | Character.digit(value.charAt(i), 16);
+        }
+        return result;
+    }
+
+    private static void writeHex(char[] chars, int offset, long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            chars[offset + i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+    /**
+     * In place heap sort of the parallel arrays, Arrays.sort can't sort pairs without boxing them.
+     */
+    private static void heapSort(long[] msb, long[] lsb, int count) {
+        for (int i = count / 2 - 1; i >= 0; i--) {
+            siftDown(msb, lsb, i, count);
+        }
+        for (int end = count - 1; end > 0; end--) {
+            swap(msb, lsb, 0, end);
+            siftDown(msb, lsb, 0, end);
+        }
+    }
+
+    private static void siftDown(long[] msb, long[] lsb, int root, int count) {
+        while (true) {
+            int child = 2 * root + 1;
+            if (child >= count) {
+                return;
+            }
+            if (child + 1 < count && compare(msb[child + 1], lsb[child + 1], msb[child], lsb[child]) > 0) {
+                child++;
+            }
+            if (compare(msb[root], lsb[root], msb[child], lsb[child]) >= 0) {
+                return;
+            }
+            swap(msb, lsb, root, child);
+            root = child;
+        }
+    }
+
+    private static void swap(long[] msb, long[] lsb, int a, int b) {
+        long tmp = msb[a];
+        msb[a] = msb[b];
+        msb[b] = tmp;
+        tmp = lsb[a];
+        lsb[a] = lsb[b];
+        lsb[b] = tmp;
+    }
+}
@@ -0,0 +1,93 @@
+package com.customermanagement.config;
+
+import com.customermanagement.model.Address;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerIds;
+import com.customermanagement.model.OutboxEvent;
+import org.bson.BsonBinarySubType;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomerIdMappingTest {
+
+    private MappingMongoConverter converter;
+    private QueryMapper queryMapper;
+
+    @BeforeEach
+    void setUp() {
+        MongoCustomConversions conversions = new MongoCustomConversions(CustomerIdConverters.all());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        queryMapper = new QueryMapper(converter);
+    }
+
+    @Test
+    void testNewIdsAreTimeOrderedVersion7Uuids() {
+        String first = CustomerIds.newId();
+        String second = CustomerIds.newId();
+
+        assertEquals('7', first.charAt(14));
+        assertTrue(first.compareTo(second) < 0);
+        assertEquals(first, CustomerIds.fromBinary(CustomerIds.toBinary(first)));
+        assertEquals("not-a-uuid", CustomerIds.fromBinary(CustomerIds.toBinary("not-a-uuid")));
+    }
+
+    @Test
+    void testIdIsStoredAsBinaryUuidAndReadBackAsString() {
+        String id = CustomerIds.newId();
+        Document document = new Document();
+        converter.write(Customer.builder().customerId(id).firstName("Ana").lastName("Smith")
+                .addresses(List.of(Address.builder().city("Anytown").build())).build(), document);
+
+        Binary stored = (Binary) document.get("_id");
+        assertEquals(BsonBinarySubType.UUID_STANDARD.getValue(), stored.getType());
+        // Other strings stay strings
+        assertEquals("Ana", document.get("firstName"));
+        assertEquals("Anytown", document.getList("addresses", Document.class).get(0).get("city"));
+
+        Customer read = converter.read(Customer.class, document);
+        assertEquals(id, read.getCustomerId());
+        assertEquals("Ana", read.getFirstName());
+    }
+
+    @Test
+    void testCriteriaOnTheIdAreInTheStoredForm() {
+        String id = CustomerIds.newId();
+        Binary binary = CustomerIds.toBinary(id);
+
+        assertEquals(binary, mapped(Criteria.where("customerId").is(id)).get("_id"));
+        assertEquals(List.of(binary), mapped(Criteria.where("customerId").in(List.of(id))).get("_id", Document.class).get("$in"));
+        // Given in the stored form by the keyset pages, it must come through as it is
+        assertEquals(binary, mapped(Criteria.where("customerId").gt(binary)).get("_id", Document.class).get("$gt"));
+    }
+
+    @Test
+    void testOtherDocumentsKeepTheirIds() {
+        Document document = new Document();
+        converter.write(OutboxEvent.builder().id("outbox-1").aggregateId("a").build(), document);
+
+        assertEquals("outbox-1", document.get("_id"));
+        assertEquals("outbox-1", converter.read(OutboxEvent.class, document).getId());
+    }
+
+    private Document mapped(Criteria criteria) {
+        return queryMapper.getMappedObject(new Query(criteria).getQueryObject(), converter.getMappingContext().getPersistentEntity(Customer.class));
+    }
+}
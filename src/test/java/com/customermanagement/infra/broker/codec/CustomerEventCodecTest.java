@@ -0,0 +1,140 @@
+package com.customermanagement.infra.broker.codec;
+
+import com.customermanagement.enums.CustomerEventType;
+import com.customermanagement.enums.EventFormat;
+import com.customermanagement.model.Address;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerEvent;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomerEventCodecTest {
+
+    private final Customer customer = Customer.builder()
+            .customerId("5f0c2a9e-8d1b-4c8e-9a51-0b6f7e2d9c13")
+            .firstName("Zoë")
+            .lastName("Doe")
+            .age(30)
+            .spendingLimit(1500.5)
+            .mobileNumber("+14155550100")
+            .addresses(List.of(Address.builder()
+                    .type("HOME")
+                    .street("1 Main Street")
+                    .city("Springfield")
+                    .state("IL")
+                    .zipCode("62701")
+                    .cityNormalized("springfield")
+                    .build()))
+            .build();
+
+    private final CustomerEvent event = CustomerEvent.builder()
+            .eventType(CustomerEventType.CREATED)
+            .customerId(customer.getCustomerId())
+            .occurredAt(Instant.ofEpochMilli(1_700_000_000_123L))
+            .firstName(customer.getFirstName())
+            .lastName(customer.getLastName())
+            .age(customer.getAge())
+            .spendingLimit(customer.getSpendingLimit())
+            .mobileNumber(customer.getMobileNumber())
+            .addresses(CustomerEvent.created(customer).getAddresses())
+            .build();
+
+    @Test
+    void testRoundTripInBothFormats() {
+        assertEquals(event, CustomerEventCodec.decode(CustomerEventCodec.encode(event, EventFormat.BINARY)));
+        assertEquals(event, CustomerEventCodec.decode(CustomerEventCodec.encode(event, EventFormat.JSON)));
+        assertNull(event.getAddresses().get(0).getCityNormalized());
+    }
+
+    @Test
+    void testUpdatedEventCarriesOnlyTheChangedFields() {
+        Customer changed = Customer.builder()
+                .customerId(customer.getCustomerId())
+                .mobileNumber("+14155550199")
+                .version(4L)
+                .build();
+        CustomerEvent updated = CustomerEvent.updated(changed, Set.of("mobileNumber"));
+        // The codec keeps milliseconds
+        updated.setOccurredAt(event.getOccurredAt());
+
+        CustomerEvent decoded = CustomerEventCodec.decode(CustomerEventCodec.encode(updated, EventFormat.BINARY));
+        assertEquals(updated, decoded);
+        assertEquals(CustomerEventType.UPDATED, decoded.getEventType());
+        assertEquals(4L, decoded.getVersion());
+        assertNull(decoded.getFirstName());
+        assertNull(decoded.getAddresses());
+        assertTrue(CustomerEventCodec.encode(updated, EventFormat.BINARY).length < CustomerEventCodec.encode(event, EventFormat.BINARY).length / 2);
+
+        CustomerEvent applied = decoded.appliedTo(event);
+        assertEquals("+14155550199", applied.getMobileNumber());
+        assertEquals("Zoë", applied.getFirstName());
+    }
+
+    @Test
+    void testUpdateClearingAFieldIsToldFromAnUnchangedOne() {
+        Customer changed = Customer.builder().customerId(customer.getCustomerId()).age(31).version(5L).build();
+        CustomerEvent updated = CustomerEvent.updated(changed, Set.of("age", "mobileNumber"));
+        updated.setOccurredAt(event.getOccurredAt());
+
+        for (EventFormat format : EventFormat.values()) {
+            CustomerEvent decoded = CustomerEventCodec.decode(CustomerEventCodec.encode(updated, format));
+            assertEquals(Set.of("age", "mobileNumber"), decoded.getChangedFields());
+
+            CustomerEvent applied = decoded.appliedTo(event);
+            assertEquals(31, applied.getAge());
+            assertNull(applied.getMobileNumber());
+            assertEquals("Zoë", applied.getFirstName());
+        }
+    }
+
+    @Test
+    void testBinaryIsSmallerThanTheCustomerString() {
+        int binary = CustomerEventCodec.encode(event, EventFormat.BINARY).length;
+        assertTrue(binary < CustomerEventCodec.encode(event, EventFormat.JSON).length);
+        assertTrue(binary * 2 < customer.toString().getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    void testIdsThatAreNotUuidsAreKeptAsText() {
+        CustomerEvent withTextId = CustomerEvent.builder().customerId("legacy-42").build();
+        CustomerEvent withUpperCaseUuid = CustomerEvent.builder().customerId(customer.getCustomerId().toUpperCase()).build();
+        assertEquals(withTextId, CustomerEventCodec.decode(CustomerEventCodec.encode(withTextId, EventFormat.BINARY)));
+        assertEquals(withUpperCaseUuid, CustomerEventCodec.decode(CustomerEventCodec.encode(withUpperCaseUuid, EventFormat.BINARY)));
+    }
+
+    @Test
+    void testUnknownFieldsAreSkipped() {
+        byte[] encoded = CustomerEventCodec.encode(event, EventFormat.BINARY);
+        // Field 15 of each wire type, as a newer producer could add them
+        byte[] newer = Arrays.copyOf(encoded, encoded.length + 15);
+        int i = encoded.length;
+        newer[i++] = (byte) (15 << 3);
+        newer[i++] = 0x7F;
+        newer[i++] = (byte) (15 << 3 | 2);
+        newer[i++] = 2;
+        newer[i++] = 'h';
+        newer[i++] = 'i';
+        newer[i++] = (byte) (15 << 3 | 1);
+        assertEquals(event, CustomerEventCodec.decode(newer));
+
+        String json = new String(CustomerEventCodec.encode(event, EventFormat.JSON), StandardCharsets.UTF_8);
+        assertEquals(event, CustomerEventCodec.decode(json.replace("{", "{\"loyaltyTier\":\"GOLD\",").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testNewerSchemaVersionsAndGarbageAreRejected() {
+        byte[] encoded = CustomerEventCodec.encode(event, EventFormat.BINARY);
+        encoded[1] = (byte) (CustomerEventCodec.SCHEMA_VERSION + 1);
+        assertThrows(IllegalArgumentException.class, () -> CustomerEventCodec.decode(encoded));
+        assertThrows(IllegalArgumentException.class, () -> CustomerEventCodec.decode("{\"schemaVersion\":2}".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalArgumentException.class, () -> CustomerEventCodec.decode(Arrays.copyOf(CustomerEventCodec.encode(event, EventFormat.BINARY), 20)));
+        assertThrows(IllegalArgumentException.class, () -> CustomerEventCodec.decode("Customer(customerId=1)".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,38 @@
+package com.customermanagement.infra.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomerCollectionVersionTest {
+
+    @Test
+    void testEtagChangesWithTheVersionAndTheQueryOnly() {
+        CustomerCollectionVersion version = new CustomerCollectionVersion();
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("city", "anytown");
+        params.put("size", "25");
+        Map<String, String> reordered = new LinkedHashMap<>();
+        reordered.put("size", "25");
+        reordered.put("city", "anytown");
+
+        String etag = version.etag(params, null);
+
+        assertTrue(etag.startsWith("\""));
+        assertEquals(etag, version.etag(reordered, null));
+        assertNotEquals(etag, version.etag(Map.of("city", "anytown", "size", "50"), null));
+        // Weak when the response may be compressed, so Tomcat still compresses it
+        assertEquals("W/" + etag, version.etag(params, "gzip, deflate"));
+
+        assertTrue(CustomerCollectionVersion.matches("\"other\", W/" + etag, etag));
+
+        version.changed();
+
+        assertNotEquals(etag, version.etag(params, null));
+        assertFalse(CustomerCollectionVersion.matches(etag, version.etag(params, null)));
+        assertFalse(CustomerCollectionVersion.matches(null, etag));
+    }
+}
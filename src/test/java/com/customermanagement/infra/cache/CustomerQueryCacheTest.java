@@ -0,0 +1,95 @@
+package com.customermanagement.infra.cache;
+
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.model.Address;
+import com.customermanagement.model.Customer;
+import com.customermanagement.repository.CustomerRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomerQueryCacheTest {
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    private CustomerQueryCache queryCache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        queryCache = new CustomerQueryCache(customerRepository, new CustomerCollectionVersion(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(queryCache, "enabled", true);
+        ReflectionTestUtils.setField(queryCache, "ttlMillis", 60000L);
+        ReflectionTestUtils.setField(queryCache, "maxWeight", 1000L);
+        ReflectionTestUtils.setField(queryCache, "maxInvalidationBatch", 2);
+        queryCache.init();
+    }
+
+    @Test
+    void testEquivalentQueriesShareAnEntry() {
+        CustomerQueryCache.QueryKey first = CustomerQueryCache.QueryKey.of(Map.of("city", "Anytown", "state", "CA"), "and", MatchMode.PREFIX, null, 26);
+        CustomerQueryCache.QueryKey second = CustomerQueryCache.QueryKey.of(Map.of("state", " ca", "city", "ANYTOWN"), "AND", MatchMode.PREFIX, null, 26);
+        CustomerQueryCache.QueryKey single = CustomerQueryCache.QueryKey.of(Map.of("city", "Anytown"), "OR", MatchMode.PREFIX, null, 26);
+
+        assertEquals(List.of("a"), queryCache.get(first, () -> load("a")));
+        assertEquals(List.of("a"), queryCache.get(second, () -> load("b")));
+        // A single filter is the same query with AND and OR
+        assertEquals(CustomerQueryCache.QueryKey.of(Map.of("city", "Anytown"), "AND", MatchMode.PREFIX, null, 26), single);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testNewCustomerEvictsOnlyTheEntriesItCouldChange() {
+        CustomerQueryCache.QueryKey anytown = CustomerQueryCache.QueryKey.of(Map.of("city", "Any"), "AND", MatchMode.PREFIX, null, 26);
+        CustomerQueryCache.QueryKey othertown = CustomerQueryCache.QueryKey.of(Map.of("city", "Other"), "AND", MatchMode.PREFIX, null, 26);
+        // A full page ending at "m", ids after it belong to later pages
+        CustomerQueryCache.QueryKey fullPage = CustomerQueryCache.QueryKey.of(Map.of("state", "CA"), "AND", MatchMode.PREFIX, null, 2);
+        queryCache.get(anytown, () -> load("c"));
+        queryCache.get(othertown, () -> load("d"));
+        queryCache.get(fullPage, () -> List.of("e", "m"));
+        loads.set(0);
+
+        queryCache.invalidateMatching(List.of(customer("x", "Anytown", "CA")));
+
+        queryCache.get(anytown, () -> load("c"));
+        queryCache.get(othertown, () -> load("d"));
+        queryCache.get(fullPage, () -> load("e"));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testLargeWriteClearsTheCache() {
+        CustomerQueryCache.QueryKey othertown = CustomerQueryCache.QueryKey.of(Map.of("city", "Other"), "AND", MatchMode.PREFIX, null, 26);
+        queryCache.get(othertown, () -> load("d"));
+
+        queryCache.invalidateMatching(List.of(customer("x", "Anytown", "CA"), customer("y", "Anytown", "CA"), customer("z", "Anytown", "CA")));
+
+        queryCache.get(othertown, () -> load("d"));
+        assertEquals(2, loads.get());
+    }
+
+    private List<String> load(String id) {
+        loads.incrementAndGet();
+        return List.of(id);
+    }
+
+    private Customer customer(String customerId, String city, String state) {
+        return Customer.builder()
+                .customerId(customerId)
+                .firstName("John")
+                .lastName("Doe")
+                .addresses(List.of(Address.builder().city(city).state(state).build()))
+                .build();
+    }
+}
@@ -0,0 +1,63 @@
+package com.customermanagement.infra.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotPathLogFilterTest {
+
+    private final LoggerContext context = new LoggerContext();
+    private HotPathLogFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new HotPathLogFilter();
+        filter.setLoggers("com.customermanagement.controller, com.customermanagement.service");
+        filter.setMaxPerSecond(3);
+        filter.setSampleEvery(5);
+        filter.start();
+        context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.INFO);
+    }
+
+    @Test
+    void testLinesBeyondTheLimitAreSampled() {
+        Logger controller = context.getLogger("com.customermanagement.controller.CustomerController");
+        long written = IntStream.range(0, 13).filter(i -> decide(controller, Level.INFO) == FilterReply.NEUTRAL).count();
+
+        // Three within the limit, then the 5th and the 10th line beyond it
+        assertEquals(5, written);
+        assertEquals(8, filter.getDropped());
+        // Each logger has its own budget
+        assertEquals(FilterReply.NEUTRAL, decide(context.getLogger("com.customermanagement.service.impl.CustomerServiceImpl"), Level.INFO));
+    }
+
+    @Test
+    void testWarningsDisabledLevelsAndOtherLoggersAreNotCounted() {
+        Logger controller = context.getLogger("com.customermanagement.controller.CustomerController");
+        Logger relay = context.getLogger("com.customermanagement.infra.outbox.OutboxRelay");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(FilterReply.NEUTRAL, decide(controller, Level.WARN));
+            assertEquals(FilterReply.NEUTRAL, decide(controller, Level.DEBUG));
+            assertEquals(FilterReply.NEUTRAL, decide(relay, Level.INFO));
+        }
+        assertEquals(0, filter.getDropped());
+    }
+
+    @Test
+    void testListsAreLoggedAsSizeAndSample() {
+        assertEquals("[a, b] (2 total)", LogSample.of(List.of("a", "b")).toString());
+        assertEquals("[0, 1, 2, 3, 4, ...] (100000 total)", LogSample.of(IntStream.range(0, 100_000).boxed().toList()).toString());
+    }
+
+    private FilterReply decide(Logger logger, Level level) {
+        return filter.decide(null, logger, level, "message {}", new Object[]{1}, null);
+    }
+}
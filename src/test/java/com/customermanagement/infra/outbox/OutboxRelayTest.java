@@ -0,0 +1,175 @@
+package com.customermanagement.infra.outbox;
+
+import com.customermanagement.enums.RejectionPolicy;
+import com.customermanagement.exceptions.PublishRejectedException;
+import com.customermanagement.infra.broker.BrokerFactory;
+import com.customermanagement.infra.broker.BrokerStrategy;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerEvent;
+import com.customermanagement.model.OutboxEvent;
+import com.customermanagement.repository.OutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OutboxRelayTest {
+
+    @Mock
+    private OutboxRepository outboxRepository;
+
+    @Mock
+    private BrokerFactory brokerFactory;
+
+    @Mock
+    private BrokerStrategy broker;
+
+    private OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        relay = new OutboxRelay(outboxRepository, brokerFactory, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(relay, "batchSize", 1);
+        ReflectionTestUtils.setField(relay, "leaseMillis", 30000L);
+        ReflectionTestUtils.setField(relay, "sendTimeoutMillis", 1000L);
+        ReflectionTestUtils.setField(relay, "maxAttempts", 10);
+        ReflectionTestUtils.setField(relay, "initialBackoffMillis", 1000L);
+        ReflectionTestUtils.setField(relay, "maxBackoffMillis", 60000L);
+        ReflectionTestUtils.setField(relay, "publishRejectionPolicy", RejectionPolicy.SPILL);
+        relay.init();
+        when(brokerFactory.getBroker()).thenReturn(broker);
+        when(broker.produce(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(outboxRepository.findOldestPendingCreatedAt()).thenReturn(Optional.empty());
+        // Always a full batch, so only the lease stops the draining
+        when(outboxRepository.findReadyToPublish(1)).thenAnswer(invocation -> List.of(OutboxEvent.pending("customers", "a",
+                CustomerEvent.created(Customer.builder().customerId("a").build()))));
+    }
+
+    @Test
+    void testStopsDrainingOnceTheLeaseIsLost() {
+        when(outboxRepository.tryAcquireRelayLease(anyString(), any(Duration.class))).thenReturn(true, true, false);
+
+        relay.relay();
+
+        verify(outboxRepository, times(2)).findReadyToPublish(1);
+        verify(broker, times(2)).produce(anyString(), anyString(), any());
+    }
+
+    @Test
+    void testSendsTheEventsOfACustomerInOrderAcrossWaves() {
+        OutboxEvent a1 = event("1", "a", 0);
+        OutboxEvent b1 = event("2", "b", 0);
+        OutboxEvent a2 = event("3", "a", 0);
+        relayBatch(a1, b1, a2);
+
+        InOrder inOrder = inOrder(broker, outboxRepository);
+        inOrder.verify(broker).produce("customers", "a", a1.getEvent());
+        inOrder.verify(broker).produce("customers", "b", b1.getEvent());
+        inOrder.verify(outboxRepository).removePublished(List.of("1", "2"));
+        inOrder.verify(broker).produce("customers", "a", a2.getEvent());
+        inOrder.verify(outboxRepository).removePublished(List.of("3"));
+    }
+
+    @Test
+    void testHoldsBackTheLaterEventsOfACustomerAfterAFailure() {
+        OutboxEvent a1 = event("1", "a", 0);
+        OutboxEvent a2 = event("2", "a", 0);
+        when(broker.produce(anyString(), eq("a"), any())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+        relayBatch(a1, a2);
+
+        verify(broker, never()).produce("customers", "a", a2.getEvent());
+        verify(outboxRepository).rescheduleAfterFailure(eq(a1), anyString(), any(Instant.class));
+        verify(outboxRepository, never()).rescheduleAfterFailure(eq(a2), anyString(), any(Instant.class));
+    }
+
+    @Test
+    void testBacksOffExponentiallyUpToTheMaximum() {
+        OutboxEvent second = event("1", "a", 1);
+        OutboxEvent ninth = event("2", "b", 8);
+        when(broker.produce(anyString(), anyString(), any())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+        Instant before = Instant.now();
+        relayBatch(second, ninth);
+
+        assertRetryIn(second, before, 2000);
+        // 1000 << 8 is above the 60 s maximum
+        assertRetryIn(ninth, before, 60000);
+    }
+
+    @Test
+    void testMarksAnEventDeadAtMaxAttempts() {
+        OutboxEvent last = event("1", "a", 9);
+        when(broker.produce(anyString(), anyString(), any())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+        relayBatch(last);
+
+        verify(outboxRepository).markDead(eq(last), anyString());
+        verify(outboxRepository, never()).rescheduleAfterFailure(any(), anyString(), any());
+    }
+
+    @Test
+    void testSpillLeavesRejectedEventsUntouched() {
+        OutboxEvent a1 = event("1", "a", 0);
+        OutboxEvent a2 = event("2", "a", 0);
+        when(broker.produce(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new PublishRejectedException("Publishing pool is full", null)));
+        relayBatch(a1, a2);
+
+        verify(broker, times(1)).produce(anyString(), anyString(), any());
+        verify(outboxRepository).removePublished(List.of());
+        verify(outboxRepository, never()).rescheduleAfterFailure(any(), anyString(), any());
+        verify(outboxRepository, never()).markDead(any(), anyString());
+    }
+
+    @Test
+    void testLeavesTheWaveAsItIsWhenTheLeaseWasLostWhileSending() {
+        OutboxEvent a1 = event("1", "a", 0);
+        OutboxEvent b1 = event("2", "b", 0);
+        when(broker.produce(anyString(), eq("b"), any())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+        when(outboxRepository.findReadyToPublish(10)).thenReturn(List.of(a1, b1));
+        ReflectionTestUtils.setField(relay, "batchSize", 10);
+        when(outboxRepository.tryAcquireRelayLease(anyString(), any(Duration.class))).thenReturn(true, false);
+
+        relay.relay();
+
+        verify(outboxRepository, never()).removePublished(any());
+        verify(outboxRepository, never()).rescheduleAfterFailure(any(), anyString(), any());
+        verify(outboxRepository, never()).markDead(any(), anyString());
+    }
+
+    // One batch smaller than the batch size, relayed while holding the lease
+    private void relayBatch(OutboxEvent... events) {
+        ReflectionTestUtils.setField(relay, "batchSize", 10);
+        when(outboxRepository.findReadyToPublish(10)).thenReturn(List.of(events));
+        when(outboxRepository.tryAcquireRelayLease(anyString(), any(Duration.class))).thenReturn(true);
+        relay.relay();
+    }
+
+    private void assertRetryIn(OutboxEvent event, Instant before, long backoffMillis) {
+        ArgumentCaptor<Instant> nextAttemptAt = ArgumentCaptor.forClass(Instant.class);
+        verify(outboxRepository).rescheduleAfterFailure(eq(event), anyString(), nextAttemptAt.capture());
+        assertTrue(!nextAttemptAt.getValue().isBefore(before.plusMillis(backoffMillis)));
+        assertTrue(!nextAttemptAt.getValue().isAfter(Instant.now().plusMillis(backoffMillis)));
+    }
+
+    private static OutboxEvent event(String id, String customerId, int attempts) {
+        OutboxEvent event = OutboxEvent.pending("customers", customerId,
+                CustomerEvent.created(Customer.builder().customerId(customerId).firstName("Customer " + id).build()));
+        event.setId(id);
+        event.setAttempts(attempts);
+        return event;
+    }
+}
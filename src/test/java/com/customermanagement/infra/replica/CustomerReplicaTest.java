@@ -0,0 +1,164 @@
+package com.customermanagement.infra.replica;
+
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.infra.outbox.OutboxRelay;
+import com.customermanagement.model.Address;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerEvent;
+import com.customermanagement.repository.CustomerQueryOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+class CustomerReplicaTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private OutboxRelay outboxRelay;
+
+    private CustomerReplica replica;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        replica = new CustomerReplica(mongoTemplate, outboxRelay, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(replica, "enabled", true);
+        ReflectionTestUtils.setField(replica, "maxLagMillis", 5000L);
+        ReflectionTestUtils.setField(replica, "loaded", true);
+        replica.add(customer("a", "Ana", "Smith", "Anytown", "CA"));
+        replica.add(customer("b", "Bob", "Jones", "Othertown", "CA"));
+        replica.add(customer("c", "José", "Anderson", "Anytown", "NY"));
+        replica.add(customer("d", "Dana", "Lee", "Anywhere", "TX"));
+    }
+
+    @Test
+    void testFiltersAreAnsweredFromTheIndexesInIdOrder() {
+        assertEquals(List.of("a", "c", "d"), ids(Map.of("city", "any"), "AND", MatchMode.PREFIX, null, 10));
+        assertEquals(List.of("a", "c"), ids(Map.of("city", "ANYTOWN"), "AND", MatchMode.EXACT, null, 10));
+        assertEquals(List.of("a"), ids(Map.of("city", "any", "state", "ca"), "AND", MatchMode.PREFIX, null, 10));
+        assertEquals(List.of("a", "b", "c", "d"), ids(Map.of("city", "anytown", "state", "ca", "name", "dan"), "OR", MatchMode.PREFIX, null, 10));
+        // First or last name, without the accents
+        assertEquals(List.of("a", "c"), ids(Map.of("name", "an"), "AND", MatchMode.PREFIX, null, 10));
+        assertEquals(List.of("c"), ids(Map.of("name", "jose"), "AND", MatchMode.EXACT, null, 10));
+        assertEquals(List.of("b", "c"), ids(Map.of("name", "on"), "AND", MatchMode.CONTAINS, null, 10));
+        // Not a filter field
+        assertEquals(List.of("a", "b", "c", "d"), ids(Map.of("age", "30"), "AND", MatchMode.PREFIX, null, 10));
+    }
+
+    @Test
+    void testPagesStartAfterTheCursor() {
+        assertEquals(List.of("a", "b"), ids(Map.of(), "AND", MatchMode.PREFIX, null, 2));
+        assertEquals(List.of("c", "d"), ids(Map.of(), "AND", MatchMode.PREFIX, "b", 2));
+        assertEquals(List.of("d"), ids(Map.of("city", "any"), "OR", MatchMode.PREFIX, "c", 2));
+        assertEquals(List.of("c", "a"), replica.findCustomersByIds(List.of("c", "x", "a")).stream().map(Customer::getCustomerId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testReplacedCustomerIsReindexed() {
+        Customer newer = customer("a", "Ana", "Smith", "Othertown", "WA");
+        newer.setVersion(1L);
+        replica.handle(List.of(CustomerEvent.created(newer)));
+
+        assertEquals(List.of("c"), ids(Map.of("city", "anytown"), "AND", MatchMode.EXACT, null, 10));
+        assertEquals(List.of("a", "b"), ids(Map.of("city", "othertown"), "AND", MatchMode.EXACT, null, 10));
+        assertEquals("WA", replica.findCustomersByIds(List.of("a")).get(0).getAddresses().get(0).getState());
+    }
+
+    @Test
+    void testUpdatesApplyOnTopOfTheVersionHeld() {
+        Customer renamed = customer("b", "Bobby", "Jones", "Othertown", "CA");
+        renamed.setVersion(1L);
+        replica.handle(List.of(CustomerEvent.updated(renamed, Set.of("firstName"))));
+
+        Customer updated = replica.findCustomersByIds(List.of("b")).get(0);
+        assertEquals("Bobby", updated.getFirstName());
+        assertEquals("Othertown", updated.getAddresses().get(0).getCity());
+        assertEquals(1L, updated.getVersion());
+        assertEquals(List.of("b"), ids(Map.of("name", "bobby"), "AND", MatchMode.EXACT, null, 10));
+
+        // An update after a missed one, and an older version, leave the customer for the resync
+        Customer skipped = customer("b", "Rob", "Jones", "Othertown", "CA");
+        skipped.setVersion(3L);
+        replica.handle(List.of(CustomerEvent.updated(skipped, Set.of("firstName")), CustomerEvent.created(customer("b", "Bob", "Jones", "Othertown", "CA"))));
+        assertEquals("Bobby", replica.findCustomersByIds(List.of("b")).get(0).getFirstName());
+    }
+
+    @Test
+    void testUpdateCanClearAField() {
+        Customer cleared = customer("b", "Bob", "Jones", "Othertown", "CA");
+        cleared.setAge(null);
+        cleared.setVersion(1L);
+        replica.handle(List.of(CustomerEvent.updated(cleared, Set.of("age"))));
+
+        Customer updated = replica.findCustomersByIds(List.of("b")).get(0);
+        assertNull(updated.getAge());
+        assertEquals("Bob", updated.getFirstName());
+        assertEquals(1L, updated.getVersion());
+    }
+
+    @Test
+    void testUnreadableEventIsSkipped() {
+        replica.handle(List.of(CustomerEvent.builder().customerId("a").build()));
+
+        assertEquals("Ana", replica.findCustomersByIds(List.of("a")).get(0).getFirstName());
+    }
+
+    @Test
+    void testServesOnlyWithinTheLagBound() {
+        assertTrue(replica.isServing());
+
+        when(outboxRelay.getLagMillis()).thenReturn(6000L);
+        assertFalse(replica.isServing());
+
+        when(outboxRelay.getLagMillis()).thenReturn(0L);
+        assertTrue(replica.isServing());
+    }
+
+    @Test
+    void testStalledConsumerStopsServing() {
+        CustomerEvent published = CustomerEvent.created(customer("e", "Eve", "Stone", "Anytown", "CA"));
+        published.setOccurredAt(Instant.now().minusSeconds(10));
+        when(outboxRelay.getPublishedUpTo()).thenReturn(published.getOccurredAt());
+        assertTrue(replica.lagMillis() >= 10000);
+        assertFalse(replica.isServing());
+
+        // Newer events being published don't hide that the consumer hasn't got this far
+        when(outboxRelay.getPublishedUpTo()).thenReturn(Instant.now());
+        assertFalse(replica.isServing());
+
+        CustomerEvent newest = CustomerEvent.created(customer("f", "Fay", "Stone", "Anytown", "CA"));
+        newest.setOccurredAt(Instant.now());
+        replica.handle(List.of(published, newest));
+        assertTrue(replica.isServing());
+    }
+
+    private List<String> ids(Map<String, String> filters, String operation, MatchMode matchMode, String after, int limit) {
+        CustomerQueryOptions options = CustomerQueryOptions.builder().afterCustomerId(after).limit(limit).matchMode(matchMode).build();
+        return replica.findCustomersWithFilters(filters, operation, options).stream().map(Customer::getCustomerId).collect(Collectors.toList());
+    }
+
+    private static Customer customer(String id, String firstName, String lastName, String city, String state) {
+        return Customer.builder()
+                .customerId(id)
+                .firstName(firstName)
+                .lastName(lastName)
+                .age(30)
+                .addresses(List.of(Address.builder().type("home").street("1 Main St").city(city).state(state).zipCode("12345").build()))
+                .build();
+    }
+}
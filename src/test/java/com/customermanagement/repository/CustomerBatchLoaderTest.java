@@ -0,0 +1,107 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.model.Customer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CustomerBatchLoaderTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private CustomerBatchLoader loader;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        loader = new CustomerBatchLoader(mongoTemplate, meterRegistry);
+        ReflectionTestUtils.setField(loader, "maxBatchSize", 100);
+        when(mongoTemplate.find(any(Query.class), eq(Customer.class))).thenReturn(List.of(
+                Customer.builder().customerId("a").build(),
+                Customer.builder().customerId("b").build()));
+    }
+
+    @Test
+    void testConcurrentLookupsShareOneDeduplicatedQuery() throws Exception {
+        ReflectionTestUtils.setField(loader, "windowMillis", 500L);
+        List<String> ids = List.of("a", "b", "a", "c", "b", "a");
+
+        List<Optional<Customer>> results = loadConcurrently(ids);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(1)).find(query.capture(), eq(Customer.class));
+        List<?> queried = (List<?>) query.getValue().getQueryObject().get("customerId", Document.class).get("$in");
+        assertEquals(3, queried.size());
+        assertEquals("a", results.get(2).orElseThrow().getCustomerId());
+        assertEquals("b", results.get(4).orElseThrow().getCustomerId());
+        assertTrue(results.get(3).isEmpty());
+        assertEquals(1, meterRegistry.get("customer.batch.loader.size").summary().count());
+        assertEquals(3.0, meterRegistry.get("customer.batch.loader.size").summary().totalAmount());
+        assertEquals(6, meterRegistry.get("customer.batch.loader.wait").timer().count());
+    }
+
+    @Test
+    void testFullBatchIsSentWithoutWaitingForTheWindow() throws Exception {
+        ReflectionTestUtils.setField(loader, "windowMillis", 60_000L);
+        ReflectionTestUtils.setField(loader, "maxBatchSize", 2);
+
+        List<Optional<Customer>> results = loadConcurrently(List.of("a", "b"));
+
+        assertTrue(results.get(0).isPresent());
+        assertTrue(results.get(1).isPresent());
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(Customer.class));
+    }
+
+    @Test
+    void testWindowOfZeroLooksUpEachIdOnItsOwn() {
+        ReflectionTestUtils.setField(loader, "windowMillis", 0L);
+        when(mongoTemplate.findOne(any(Query.class), eq(Customer.class))).thenReturn(Customer.builder().customerId("a").build());
+
+        assertEquals("a", loader.load("a").orElseThrow().getCustomerId());
+        verify(mongoTemplate, times(0)).find(any(Query.class), eq(Customer.class));
+    }
+
+    private List<Optional<Customer>> loadConcurrently(List<String> ids) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(ids.size());
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Optional<Customer>>> futures = new ArrayList<>();
+            for (String id : ids) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return loader.load(id);
+                }));
+            }
+            start.countDown();
+            List<Optional<Customer>> results = new ArrayList<>();
+            for (Future<Optional<Customer>> future : futures) {
+                results.add(future.get(10, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.model.Address;
+import com.customermanagement.model.Customer;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomerChangeTest {
+
+    private static final Address HOME = Address.builder().type("Home").street("1 Main St").city("Anytown").state("CA").zipCode("12345").build();
+    private static final Address WORK = Address.builder().type("Work").street("2 Side St").city("Anytown").state("CA").zipCode("12345").build();
+
+    @Test
+    void testAddedAddressIsPushedButUpsertedWhole() {
+        Customer current = customer(List.of(HOME));
+        CustomerChange change = CustomerChange.of(current, customer(List.of(HOME, WORK)));
+
+        Document update = change.toUpdate().getUpdateObject();
+        assertTrue(update.containsKey("$push"));
+        assertEquals(2L, update.get("$set", Document.class).get("version"));
+
+        // If the customer is gone the upsert inserts, which must not store the added address alone
+        Document upsert = change.toUpsert().getUpdateObject();
+        assertFalse(upsert.containsKey("$push"));
+        assertEquals(List.of(HOME, WORK), upsert.get("$set", Document.class).get("addresses"));
+        assertEquals("John", upsert.get("$setOnInsert", Document.class).get("firstName"));
+    }
+
+    private static Customer customer(List<Address> addresses) {
+        return Customer.builder().customerId("a").firstName("John").lastName("Doe").age(30).version(1L).addresses(addresses).build();
+    }
+}
@@ -0,0 +1,27 @@
+package com.customermanagement.repository;
+
+import com.customermanagement.exceptions.InvalidInputException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomerCriteriaTest {
+
+    private final List<String> ranked = List.of("c", "a", "d", "b");
+
+    @Test
+    void testRankedPageContinuesAfterTheCursor() {
+        assertEquals(List.of("c", "a"), CustomerCriteria.rankedPageIds(ranked, CustomerQueryOptions.builder().limit(2).build()));
+        assertEquals(List.of("d", "b"), CustomerCriteria.rankedPageIds(ranked, CustomerQueryOptions.builder().afterCustomerId("a").limit(2).build()));
+        assertEquals(List.of(), CustomerCriteria.rankedPageIds(ranked, CustomerQueryOptions.builder().afterCustomerId("b").limit(2).build()));
+    }
+
+    @Test
+    void testCursorMissingFromTheRankingIsRejected() {
+        // Renamed since the previous page, starting over would serve the first page again
+        CustomerQueryOptions options = CustomerQueryOptions.builder().afterCustomerId("e").limit(2).build();
+        assertThrows(InvalidInputException.class, () -> CustomerCriteria.rankedPageIds(ranked, options));
+    }
+}
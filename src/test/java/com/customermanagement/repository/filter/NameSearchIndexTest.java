@@ -0,0 +1,49 @@
+package com.customermanagement.repository.filter;
+
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NameSearchIndexTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private NameSearchIndex nameSearchIndex;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        nameSearchIndex = new NameSearchIndex(mongoTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(nameSearchIndex, "enabled", true);
+        ReflectionTestUtils.setField(nameSearchIndex, "ready", true);
+    }
+
+    @Test
+    void testCustomersWrittenElsewhereAreIndexedFromTheirEvents() {
+        nameSearchIndex.handle(List.of(CustomerEvent.created(customer("a", "John", "Doe", 0L))));
+        assertEquals(Optional.of(List.of("a")), nameSearchIndex.search("ohn"));
+
+        // Only the last name changed, the first name stays searchable
+        nameSearchIndex.handle(List.of(CustomerEvent.updated(customer("a", null, "Walker", 1L), Set.of("lastName"))));
+        assertEquals(Optional.of(List.of("a")), nameSearchIndex.search("ohn"));
+        assertEquals(Optional.of(List.of("a")), nameSearchIndex.search("walk"));
+        assertEquals(Optional.of(List.of()), nameSearchIndex.search("doe"));
+    }
+
+    private static Customer customer(String id, String firstName, String lastName, long version) {
+        return Customer.builder().customerId(id).firstName(firstName).lastName(lastName).version(version).build();
+    }
+}
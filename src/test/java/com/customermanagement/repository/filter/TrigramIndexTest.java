@@ -0,0 +1,62 @@
+package com.customermanagement.repository.filter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrigramIndexTest {
+
+    private TrigramIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new TrigramIndex();
+        index.add("1", "Johnny", "Walker");
+        index.add("2", "John", "Doe");
+        index.add("3", "Mary", "Johnson");
+        index.add("4", "Jane", "Hohn");
+        index.add("5", "Anne", "Van Johns");
+    }
+
+    @Test
+    void testSearchRanksWholeNameThenPrefixThenWordThenAnywhere() {
+        assertEquals(Optional.of(List.of("2", "1", "3", "5")), index.search("john"));
+        // All match inside the name here, so the shorter names come first
+        assertEquals(Optional.of(List.of("2", "4", "1", "3", "5")), index.search("ohn"));
+    }
+
+    @Test
+    void testRenamedCustomerIsFoundByTheNewNameOnly() {
+        index.rename("1", "Zachary", "Walker");
+
+        assertEquals(Optional.of(List.of("1")), index.search("zach"));
+        assertEquals(Optional.of(List.of("2", "3", "5")), index.search("john"));
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    void testSearchChecksCandidatesAgainstTheName() {
+        // Has both trigrams of "abcd" without containing it
+        index.add("6", "Abcxbcd", "Smith");
+        assertEquals(Optional.of(List.of()), index.search("abcd"));
+        assertEquals(Optional.of(List.of("6")), index.search("xbcd"));
+    }
+
+    @Test
+    void testSearchIgnoresCaseAndAccentsAndShortTerms() {
+        index.add("7", "José", "Núñez");
+        assertEquals(Optional.of(List.of("7")), index.search("NUNE"));
+        assertEquals(Optional.empty(), index.search("jo"));
+    }
+
+    @Test
+    void testAddingTheSameCustomerTwiceIndexesItOnce() {
+        index.add("2", "John", "Doe");
+        assertEquals(5, index.size());
+        assertEquals(Optional.of(List.of("2")), index.search("doe"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.customermanagement.service.analytics;
+
+import com.customermanagement.dto.SummaryBucket;
+import com.customermanagement.enums.SummaryDimension;
+import com.customermanagement.exceptions.InvalidInputException;
+import com.customermanagement.model.Address;
+import com.customermanagement.model.Customer;
+import com.customermanagement.model.CustomerSummary;
+import com.customermanagement.repository.CustomerSummaryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CustomerAnalyticsServiceTest {
+
+    @Mock
+    private CustomerSummaryRepository customerSummaryRepository;
+
+    private CustomerAnalyticsService analyticsService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        analyticsService = new CustomerAnalyticsService(customerSummaryRepository);
+        ReflectionTestUtils.setField(analyticsService, "defaultTop", 20);
+        ReflectionTestUtils.setField(analyticsService, "maxTop", 100);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCreatedCustomersAreCountedOncePerBucket() {
+        Customer twoAddressesInCa = customer(30, 5000.0, address("Anytown", "CA"), address("Othertown", " ca"));
+        Customer inNy = customer(65, null, address("Anytown", "NY"));
+
+        analyticsService.recordCreated(List.of(twoAddressesInCa, inNy));
+
+        ArgumentCaptor<Collection<CustomerSummary>> increments = ArgumentCaptor.forClass(Collection.class);
+        verify(customerSummaryRepository).increment(increments.capture());
+        Map<String, Long> counts = increments.getValue().stream().collect(Collectors.toMap(CustomerSummary::getId, CustomerSummary::getCount));
+        assertEquals(Map.of(
+                "TOTAL:all", 2L,
+                "STATE:ca", 1L,
+                "STATE:ny", 1L,
+                "CITY:anytown, ca", 1L,
+                "CITY:othertown, ca", 1L,
+                "CITY:anytown, ny", 1L,
+                "AGE_BAND:25-34", 1L,
+                "AGE_BAND:65+", 1L,
+                "SPENDING_LIMIT:5000-10000", 1L,
+                "SPENDING_LIMIT:unknown", 1L), counts);
+    }
+
+    @Test
+    void testFailedIncrementDoesNotFailTheCreate() {
+        doThrow(new DataAccessResourceFailureException("down")).when(customerSummaryRepository).increment(any());
+
+        assertDoesNotThrow(() -> analyticsService.recordCreated(List.of(customer(30, 10.0, address("Anytown", "CA")))));
+    }
+
+    @Test
+    void testBandsAreListedInOrder() {
+        when(customerSummaryRepository.findByDimension(eq(SummaryDimension.AGE_BAND), any())).thenReturn(List.of(
+                CustomerSummary.of(SummaryDimension.AGE_BAND, "unknown", 3),
+                CustomerSummary.of(SummaryDimension.AGE_BAND, "65+", 1),
+                CustomerSummary.of(SummaryDimension.AGE_BAND, "18-24", 7)));
+
+        List<SummaryBucket> bands = analyticsService.getBreakdown("age-band", null);
+
+        assertEquals(List.of("18-24", "65+", "unknown"), bands.stream().map(SummaryBucket::getKey).collect(Collectors.toList()));
+        assertThrows(InvalidInputException.class, () -> analyticsService.getBreakdown("zip", null));
+        assertThrows(InvalidInputException.class, () -> analyticsService.getBreakdown("state", 0));
+    }
+
+    private static Customer customer(Integer age, Double spendingLimit, Address... addresses) {
+        return Customer.builder().firstName("Ana").lastName("Smith").age(age).spendingLimit(spendingLimit).addresses(List.of(addresses)).build();
+    }
+
+    private static Address address(String city, String state) {
+        return Address.builder().type("home").street("1 Main St").city(city).state(state).zipCode("12345").build();
+    }
+}
@@ -1,16 +1,47 @@
 package com.customermanagement.service.impl;
 
-import com.customermanagement.infra.broker.BrokerFactory;
-import com.customermanagement.infra.broker.BrokerStrategy;
+import com.customermanagement.dto.BulkCreateResponse;
+import com.customermanagement.dto.CustomerPage;
+import com.customermanagement.dto.CustomerPatch;
+import com.customermanagement.dto.MultiGetResponse;
+import com.customermanagement.enums.BulkRecordStatus;
+import com.customermanagement.enums.MatchMode;
+import com.customermanagement.enums.ReadConsistency;
+import com.customermanagement.exceptions.CustomerVersionConflictException;
+import com.customermanagement.exceptions.InvalidInputException;
+import com.customermanagement.infra.cache.CustomerCollectionVersion;
+import com.customermanagement.infra.cache.CustomerNearCache;
+import com.customermanagement.infra.cache.CustomerQueryCache;
+import com.customermanagement.infra.replica.CustomerReplica;
+import com.customermanagement.model.Address;
 import com.customermanagement.model.Customer;
+import com.customermanagement.model.OutboxEvent;
+import com.customermanagement.repository.CustomerProjection;
+import com.customermanagement.repository.CustomerQueryOptions;
 import com.customermanagement.repository.CustomerRepository;
+import com.customermanagement.repository.OutboxRepository;
+import com.customermanagement.repository.filter.NameSearchIndex;
+import com.customermanagement.service.analytics.CustomerAnalyticsService;
+import com.customermanagement.service.pagination.PageCursor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -18,22 +49,71 @@ import static org.mockito.Mockito.*;
 
 class CustomerServiceImplTest {
 
+    private static final String ID_1 = "1c2f3a4b-0000-4000-8000-000000000001";
+    private static final String ID_2 = "2c2f3a4b-0000-4000-8000-000000000002";
+    private static final String ID_3 = "3c2f3a4b-0000-4000-8000-000000000003";
+
+    @Mock
+    private CustomerRepository customerRepository;
+
     @Mock
-    private BrokerFactory brokerFactory;
+    private OutboxRepository outboxRepository;
 
     @Mock
-    private BrokerStrategy brokerStrategy;
+    private NameSearchIndex nameSearchIndex;
 
     @Mock
-    private CustomerRepository customerRepository;
+    private CustomerNearCache customerNearCache;
+
+    @Mock
+    private CustomerQueryCache customerQueryCache;
+
+    @Mock
+    private CustomerCollectionVersion collectionVersion;
+
+    @Mock
+    private CustomerReplica customerReplica;
+
+    @Mock
+    private CustomerAnalyticsService customerAnalyticsService;
 
     @InjectMocks
     private CustomerServiceImpl customerService;
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this); // Initialize mocks
-        when(brokerFactory.getBroker()).thenReturn(brokerStrategy); // Mock broker behavior
+        // Real Jackson and Bean Validation, so bulk records are bound and validated like they are in the application
+        ReflectionTestUtils.setField(customerService, "objectMapper", new ObjectMapper().registerModule(new ParameterNamesModule()));
+        ReflectionTestUtils.setField(customerService, "validator", Validation.buildDefaultValidatorFactory().getValidator());
+        ReflectionTestUtils.setField(customerService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(customerService, "bulkChunkSize", 2);
+        ReflectionTestUtils.setField(customerService, "defaultPageSize", 25);
+        ReflectionTestUtils.setField(customerService, "maxPageSize", 500);
+        ReflectionTestUtils.setField(customerService, "defaultMatchMode", MatchMode.PREFIX);
+        ReflectionTestUtils.setField(customerService, "exportFlushEvery", 1);
+        ReflectionTestUtils.setField(customerService, "multiGetMaxIds", 3);
+        ReflectionTestUtils.setField(customerService, "defaultConsistency", ReadConsistency.STRONG);
+        // Every list query misses the query cache
+        when(customerQueryCache.get(any(), any())).thenAnswer(invocation -> invocation.<Supplier<List<String>>>getArgument(1).get());
+    }
+
+    @Test
+    void testCreateCustomerWritesOutboxEvent() {
+        Customer input = Customer.builder().firstName("John").lastName("Doe").age(30)
+                .addresses(List.of(Address.builder().type("Home").street("1 Main St").city("Anytown").state("CA").zipCode("12345").build()))
+                .build();
+
+        // Mock repository save, returning what it was given
+        when(customerRepository.save(any(Customer.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Customer result = customerService.createCustomer(input);
+
+        assertNotNull(result.getCustomerId());
+        // The event goes to the outbox for the relay, keyed by the new customer's id
+        verify(outboxRepository, times(1)).save(argThat((OutboxEvent event) -> result.getCustomerId().equals(event.getAggregateId())));
     }
 
     @Test
@@ -47,10 +127,10 @@ class CustomerServiceImplTest {
         );
 
         // Mock repository findCustomersWithFilters method
-        when(customerRepository.findCustomersWithFilters(anyMap(), anyString())).thenReturn(filteredCustomers);
+        when(customerRepository.findCustomersWithFilters(anyMap(), anyString(), any(CustomerQueryOptions.class))).thenReturn(filteredCustomers);
 
         // Call the getCustomers method with filters
-        List<Customer> result = customerService.getCustomers(filters, "operation");
+        List<Customer> result = customerService.getCustomers(filters, "operation", null, null, null, null, null, null).getCustomers();
 
         // Assert that the result is as expected
         assertNotNull(result);
@@ -58,73 +138,321 @@ class CustomerServiceImplTest {
         assertEquals("John", result.get(0).getFirstName());
 
         // Verify that the repository findCustomersWithFilters method was called
-        verify(customerRepository, times(1)).findCustomersWithFilters(anyMap(), anyString());
+        verify(customerRepository, times(1)).findCustomersWithFilters(anyMap(), anyString(), any(CustomerQueryOptions.class));
     }
 
     @Test
     void testGetCustomersOnlyInA() {
-        List<String> listA = Arrays.asList("1", "2", "3");
-        List<String> listB = Arrays.asList("2");
+        List<String> listA = Arrays.asList(ID_1, ID_2, ID_3);
+        List<String> listB = Arrays.asList(ID_2);
 
         List<Customer> customersOnlyInA = Arrays.asList(
-                Customer.builder().customerId("1").firstName("John").lastName("Doe").build(),
-                Customer.builder().customerId("3").firstName("Jane").lastName("Doe").build()
+                Customer.builder().customerId(ID_1).firstName("John").lastName("Doe").build(),
+                Customer.builder().customerId(ID_3).firstName("Jane").lastName("Doe").build()
         );
 
-        // Mock repository findCustomersOnlyInA method
-        when(customerRepository.findCustomersOnlyInA(anyList(), anyList())).thenReturn(customersOnlyInA);
+        // Mock repository findCustomersByIds method
+        when(customerRepository.findCustomersByIds(anyList(), eq(CustomerProjection.FULL), eq(ReadConsistency.STRONG))).thenReturn(customersOnlyInA);
 
         // Call the getCustomersOnlyInA method
-        List<Customer> result = customerService.getCustomersOnlyInA(listA, listB);
+        List<Customer> result = customerService.getCustomersOnlyInA(listA, listB, null, null, null, null, null).getCustomers();
 
         // Assert that the result is as expected
         assertNotNull(result);
         assertEquals(2, result.size());
         assertEquals("John", result.get(0).getFirstName());
 
-        // Verify that the repository findCustomersOnlyInA method was called
-        verify(customerRepository, times(1)).findCustomersOnlyInA(anyList(), anyList());
+        // Verify that only the ids of the difference were looked up
+        verify(customerRepository, times(1)).findCustomersByIds(List.of(ID_1, ID_3), CustomerProjection.FULL, ReadConsistency.STRONG);
+
+        // Both input lists and the size of the difference are recorded under the endpoint
+        assertEquals(4, meterRegistry.get("customer.set.input.size").tag("endpoint", "only-in-a").summary().totalAmount());
+        assertEquals(2, meterRegistry.get("customer.set.result.size").tag("endpoint", "only-in-a").summary().totalAmount());
     }
 
     @Test
     void testGetCustomersOnlyInB() {
-        List<String> listA = Arrays.asList("1", "2");
-        List<String> listB = Arrays.asList("3");
+        List<String> listA = Arrays.asList(ID_1, ID_2);
+        List<String> listB = Arrays.asList(ID_3);
 
         List<Customer> customersOnlyInB = Arrays.asList(
-                Customer.builder().customerId("3").firstName("John").lastName("Smith").build()
+                Customer.builder().customerId(ID_3).firstName("John").lastName("Smith").build()
         );
 
-        // Mock repository findCustomersOnlyInB method
-        when(customerRepository.findCustomersOnlyInB(anyList(), anyList())).thenReturn(customersOnlyInB);
+        // Mock repository findCustomersByIds method
+        when(customerRepository.findCustomersByIds(anyList(), eq(CustomerProjection.FULL), eq(ReadConsistency.STRONG))).thenReturn(customersOnlyInB);
 
         // Call the getCustomersOnlyInB method
-        List<Customer> result = customerService.getCustomersOnlyInB(listA, listB);
+        List<Customer> result = customerService.getCustomersOnlyInB(listA, listB, null, null, null, null, null).getCustomers();
 
         // Assert that the result is as expected
         assertNotNull(result);
         assertEquals(1, result.size());
         assertEquals("John", result.get(0).getFirstName());
 
-        // Verify that the repository findCustomersOnlyInB method was called
-        verify(customerRepository, times(1)).findCustomersOnlyInB(anyList(), anyList());
+        // Verify that only the ids of the difference were looked up
+        verify(customerRepository, times(1)).findCustomersByIds(List.of(ID_3), CustomerProjection.FULL, ReadConsistency.STRONG);
     }
 
     @Test
     void testGetCustomersInBoth() {
-        List<String> listA = Arrays.asList("1", "2");
-        List<String> listB = Arrays.asList("2", "3");
+        List<String> listA = Arrays.asList(ID_1, ID_2);
+        List<String> listB = Arrays.asList(ID_2, ID_3);
 
         List<Customer> customersInBoth = Arrays.asList(
-                Customer.builder().customerId("2").firstName("John").lastName("Doe").build()
+                Customer.builder().customerId(ID_2).firstName("John").lastName("Doe").build()
         );
 
-        // Mock repository findCustomersInBoth method
-        when(customerRepository.findCustomersInBoth(anyList(), anyList())).thenReturn(customersInBoth);
+        // Mock repository findCustomersByIds method
+        when(customerRepository.findCustomersByIds(anyList(), eq(CustomerProjection.FULL), eq(ReadConsistency.STRONG))).thenReturn(customersInBoth);
 
         // Call the getCustomersInBoth method
-        List<Customer> result = customerService.getCustomersInBoth(listA, listB);
+        List<Customer> result = customerService.getCustomersInBoth(listA, listB, null, null, null, null, null).getCustomers();
+
+        assertEquals(1, result.size());
+        verify(customerRepository, times(1)).findCustomersByIds(List.of(ID_2), CustomerProjection.FULL, ReadConsistency.STRONG);
     }
-}
 
+    @Test
+    void testSetExpressionPagesThroughIdsWithoutCustomers() {
+        Map<String, List<String>> lists = Map.of("A", List.of(ID_1, ID_2, ID_3), "B", List.of(ID_2, ID_1), "C", List.of(ID_3));
+
+        // ID_1 has no customer behind it, so the first window comes back short and the next one is fetched
+        when(customerRepository.findCustomersByIds(List.of(ID_1, ID_2), CustomerProjection.FULL, ReadConsistency.STRONG)).thenReturn(new ArrayList<>(List.of(
+                Customer.builder().customerId(ID_2).firstName("Jane").lastName("Doe").build())));
+        when(customerRepository.findCustomersByIds(List.of(ID_3), CustomerProjection.FULL, ReadConsistency.STRONG)).thenReturn(new ArrayList<>(List.of(
+                Customer.builder().customerId(ID_3).firstName("Jim").lastName("Doe").build())));
+
+        CustomerPage page = customerService.getCustomersBySetExpression("(A ∩ B) | C", lists, null, 1, null, null, null);
+
+        assertEquals(1, page.getCustomers().size());
+        assertEquals(ID_2, page.getCustomers().get(0).getCustomerId());
+        assertEquals(ID_2, PageCursor.decode(page.getNextCursor()));
+        assertThrows(InvalidInputException.class, () -> customerService.getCustomersBySetExpression("A & D", lists, null, 1, null, null, null));
+    }
+
+    @Test
+    void testGetCustomersReturnsCursorForNextPage() {
+        List<Customer> fetched = Arrays.asList(
+                Customer.builder().customerId("1").firstName("John").lastName("Doe").build(),
+                Customer.builder().customerId("2").firstName("Jane").lastName("Doe").build(),
+                Customer.builder().customerId("3").firstName("Jim").lastName("Doe").build()
+        );
+
+        // The repository is asked for one row more than the page size, and has it
+        when(customerRepository.findCustomersWithFilters(anyMap(), anyString(), any(CustomerQueryOptions.class))).thenReturn(fetched);
+
+        CustomerPage page = customerService.getCustomers(new HashMap<>(), "AND", null, PageCursor.encode("0"), 2, null, null, null);
+
+        assertEquals(2, page.getCustomers().size());
+        assertEquals("2", PageCursor.decode(page.getNextCursor()));
+        verify(customerRepository, times(1)).findCustomersWithFilters(anyMap(), anyString(),
+                argThat(options -> options.getLimit() == 3 && "0".equals(options.getAfterCustomerId())));
+    }
+
+    @Test
+    void testGetCustomersUsesRequestedMatchModeAndReportsIt() {
+        when(customerRepository.findCustomersWithFilters(anyMap(), anyString(), any(CustomerQueryOptions.class))).thenReturn(new ArrayList<>());
+
+        CustomerPage page = customerService.getCustomers(Map.of("name", "jo", "match", "exact"), "AND", "exact", null, null, null, null, null);
+
+        assertEquals(MatchMode.EXACT, page.getMatchMode());
+        verify(customerRepository, times(1)).findCustomersWithFilters(eq(Map.of("name", "jo")), eq("AND"),
+                argThat(options -> options.getMatchMode() == MatchMode.EXACT));
+        assertThrows(InvalidInputException.class,
+                () -> customerService.getCustomers(Map.of("name", "jo"), "AND", "fuzzy", null, null, null, null, null));
+    }
+
+    @Test
+    void testStrongReadsGoToTheRepositoryAndEventualOnesPreferSecondaries() {
+        when(customerRepository.findCustomersWithFilters(anyMap(), anyString(), any(CustomerQueryOptions.class))).thenReturn(new ArrayList<>());
+        when(customerReplica.isServing()).thenReturn(true);
+
+        customerService.getCustomers(Map.of("city", "any"), "AND", null, null, null, null, null, "strong");
+        // Left out, the STRONG default is just as strong
+        customerService.getCustomers(Map.of("city", "any"), "AND", null, null, null, null, null, null);
+
+        // Neither the replica nor the query cache, both may be behind the primary
+        verify(customerRepository, times(2)).findCustomersWithFilters(anyMap(), anyString(), argThat(options -> options.getConsistency() == ReadConsistency.STRONG));
+        verify(customerReplica, never()).findCustomersWithFilters(anyMap(), anyString(), any(CustomerQueryOptions.class));
+        verifyNoInteractions(customerQueryCache);
+
+        when(customerReplica.isServing()).thenReturn(false);
+        customerService.getCustomers(Map.of("city", "any"), "AND", null, null, null, null, null, "EVENTUAL");
+
+        verify(customerRepository, times(1)).findCustomersWithFilters(anyMap(), anyString(), argThat(options -> options.getConsistency() == ReadConsistency.EVENTUAL));
+        assertThrows(InvalidInputException.class, () -> customerService.getCustomers(Map.of(), "AND", null, null, null, null, null, "sometimes"));
+    }
+
+    @Test
+    void testRankedNameSearchesBypassTheReplica() {
+        when(customerRepository.findCustomersWithFilters(anyMap(), anyString(), any(CustomerQueryOptions.class))).thenReturn(new ArrayList<>());
+        when(customerReplica.findCustomersWithFilters(anyMap(), anyString(), any(CustomerQueryOptions.class))).thenReturn(new ArrayList<>());
+        when(customerReplica.isServing()).thenReturn(true);
+
+        customerService.getCustomers(Map.of("name", "jo"), "AND", "contains", null, null, null, null, "eventual");
+        verify(customerRepository, times(1)).findCustomersWithFilters(eq(Map.of("name", "jo")), eq("AND"), any(CustomerQueryOptions.class));
+        verify(customerReplica, never()).findCustomersWithFilters(anyMap(), anyString(), any(CustomerQueryOptions.class));
+
+        // Not ranked once another filter narrows it down, the replica pages it in id order like MongoDB
+        customerService.getCustomers(Map.of("name", "jo", "city", "any"), "AND", "contains", null, null, null, null, "eventual");
+        verify(customerReplica, times(1)).findCustomersWithFilters(anyMap(), anyString(), any(CustomerQueryOptions.class));
+    }
+
+    @Test
+    void testFieldsAndViewsBecomeTheProjectionOfTheQuery() {
+        when(customerRepository.findCustomersWithFilters(anyMap(), anyString(), any(CustomerQueryOptions.class))).thenReturn(new ArrayList<>());
+
+        customerService.getCustomers(Map.of("city", "any", "fields", "firstName, addresses.city"), "AND", null, null, null, "firstName, addresses.city", null, null);
+
+        verify(customerRepository, times(1)).findCustomersWithFilters(eq(Map.of("city", "any")), eq("AND"),
+                argThat(options -> options.getProjection().equals(CustomerProjection.of(List.of("firstName", "addresses.city")))));
+        assertThrows(InvalidInputException.class, () -> customerService.getCustomers(Map.of(), "AND", null, null, null, "password", null, null));
+        assertThrows(InvalidInputException.class, () -> customerService.getCustomers(Map.of(), "AND", null, null, null, "firstName", "SUMMARY", null));
+        assertThrows(InvalidInputException.class, () -> customerService.getCustomers(Map.of(), "AND", null, null, null, null, "tiny", null));
+
+        // The ID view of a set query only asks for the ids, which the _id index covers
+        CustomerProjection idOnly = CustomerProjection.of(List.of());
+        when(customerRepository.findCustomersByIds(List.of(ID_2), idOnly, ReadConsistency.STRONG)).thenReturn(new ArrayList<>(List.of(Customer.builder().customerId(ID_2).build())));
+
+        CustomerPage page = customerService.getCustomersInBoth(List.of(ID_1, ID_2), List.of(ID_2), null, null, null, "id", null);
+
+        assertEquals(ID_2, page.getCustomers().get(0).getCustomerId());
+        assertTrue(idOnly.isIdOnly());
+    }
+
+    @Test
+    void testProjectionKeepsOnlyTheRequestedFieldsInMemory() {
+        Customer customer = Customer.builder().customerId(ID_1).firstName("John").lastName("Doe").age(30)
+                .addresses(List.of(Address.builder().type("Home").street("1 Main St").city("Anytown").state("CA").zipCode("12345").build()))
+                .build();
+
+        Customer projected = CustomerProjection.of(List.of("lastName", "addresses.city")).applyTo(customer);
+
+        assertEquals(ID_1, projected.getCustomerId());
+        assertEquals("Doe", projected.getLastName());
+        assertNull(projected.getFirstName());
+        assertNull(projected.getAge());
+        assertEquals("Anytown", projected.getAddresses().get(0).getCity());
+        assertNull(projected.getAddresses().get(0).getStreet());
+        assertSame(customer, CustomerProjection.FULL.applyTo(customer));
+    }
 
+    @Test
+    void testGetCustomersByIdsKeepsRequestOrderAndReportsMissingIds() {
+        when(customerNearCache.getAll(anyCollection())).thenReturn(Map.of(
+                ID_1, Customer.builder().customerId(ID_1).firstName("John").lastName("Doe").build(),
+                ID_3, Customer.builder().customerId(ID_3).firstName("Jim").lastName("Doe").build()));
+
+        MultiGetResponse response = customerService.getCustomersByIds(List.of(ID_3, ID_2, ID_1, ID_3));
+
+        assertEquals(List.of(ID_3, ID_1), response.getCustomers().stream().map(Customer::getCustomerId).collect(Collectors.toList()));
+        assertEquals(List.of(ID_2), response.getNotFound());
+        assertThrows(InvalidInputException.class, () -> customerService.getCustomersByIds(List.of(ID_1, ID_2, ID_3, "4")));
+    }
+
+    @Test
+    void testExportCustomersWritesOneJsonDocumentPerLine() throws IOException {
+        Iterator<Customer> customers = Arrays.asList(
+                Customer.builder().customerId("1").firstName("John").lastName("Doe").build(),
+                Customer.builder().customerId("2").firstName("Jane").lastName("Doe").build()
+        ).iterator();
+        CloseableIterator<Customer> cursor = new CloseableIterator<>() {
+            @Override
+            public boolean hasNext() {
+                return customers.hasNext();
+            }
+
+            @Override
+            public Customer next() {
+                return customers.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        // Mock repository stream, standing in for the Mongo cursor
+        when(customerRepository.streamCustomersWithFilters(anyMap(), anyString(), any(MatchMode.class), any(ReadConsistency.class))).thenReturn(cursor);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long exported = customerService.exportCustomers(Map.of("city", "Anytown", "operation", "AND"), "AND", null, null, output);
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, exported);
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"customerId\":\"1\""));
+        assertTrue(lines[1].startsWith("{\"customerId\":\"2\""));
+        // Only the real filters reach the repository
+        verify(customerRepository, times(1)).streamCustomersWithFilters(eq(Map.of("city", "Anytown")), eq("AND"), eq(MatchMode.PREFIX), eq(ReadConsistency.STRONG));
+    }
+
+    @Test
+    void testCreateCustomersInBulkReportsInvalidRecordsWithoutFailingTheBatch() {
+        String address = "[{\"type\": \"Home\", \"street\": \"1 Main St\", \"city\": \"Anytown\", \"state\": \"CA\", \"zipCode\": \"12345\"}]";
+        String ndjson = "{\"firstName\": \"John\", \"lastName\": \"Doe\", \"age\": 30, \"addresses\": " + address + "}\n" +
+                "{\"firstName\": \"Young\", \"lastName\": \"Doe\", \"age\": 17, \"addresses\": " + address + "}\n" +
+                "{\"firstName\": \"Jane\", \"lastName\": \"Doe\", \"age\": 40, \"addresses\": " + address + "}\n";
+
+        // Mock repository bulk insert, every record of the chunk succeeds
+        when(customerRepository.insertCustomersInBulk(anyList())).thenReturn(Map.of());
+
+        BulkCreateResponse result = customerService.createCustomersInBulk(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(3, result.getTotal());
+        assertEquals(2, result.getCreated());
+        assertEquals(1, result.getFailed());
+        assertEquals(BulkRecordStatus.FAILED, result.getResults().get(1).getStatus());
+        assertTrue(result.getResults().get(1).getError().contains("age"));
+        assertNotNull(result.getResults().get(2).getCustomerId());
+
+        // Both valid records fit in one chunk, so they are written together with their outbox events
+        verify(customerRepository, times(1)).insertCustomersInBulk(argThat(customers -> customers.size() == 2));
+        verify(outboxRepository, times(1)).insert(argThat((List<OutboxEvent> events) -> events.size() == 2));
+    }
+
+    @Test
+    void testMalformedRestOfTheBulkPayloadCountsAsOneRecord() {
+        String ndjson = "{\"firstName\": \"John\", \"lastName\": \"Doe\", \"age\": 30, \"addresses\": " +
+                "[{\"type\": \"Home\", \"street\": \"1 Main St\", \"city\": \"Anytown\", \"state\": \"CA\", \"zipCode\": \"12345\"}]}\n" +
+                "{\"firstName\": \"Jane\",,}\n";
+        when(customerRepository.insertCustomersInBulk(anyList())).thenReturn(Map.of());
+
+        BulkCreateResponse result = customerService.createCustomersInBulk(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, result.getTotal());
+        assertEquals(result.getTotal(), result.getCreated() + result.getFailed());
+        assertEquals(1, result.getResults().get(1).getIndex());
+        assertTrue(result.getResults().get(1).getError().startsWith("Malformed payload"));
+    }
+
+    @Test
+    void testUpdateCustomerWritesOnlyTheChangedFieldsAtTheVersionRead() {
+        Customer stored = Customer.builder().customerId(ID_1).firstName("John").lastName("Doe").age(30).mobileNumber("+14155550100").version(2L)
+                .addresses(List.of(Address.builder().type("Home").street("1 Main St").city("Anytown").state("CA").zipCode("12345").build()))
+                .build();
+        when(customerRepository.findById(ID_1)).thenReturn(Optional.of(stored));
+        when(customerRepository.updateCustomer(any())).thenReturn(true);
+
+        Customer result = customerService.updateCustomer(ID_1, CustomerPatch.builder().version(2L).mobileNumber("+14155550199").build());
+
+        assertEquals(3L, result.getVersion());
+        assertEquals("+14155550199", result.getMobileNumber());
+        verify(customerRepository).updateCustomer(argThat(change -> change.getExpectedVersion() == 2L
+                && change.getChangedFields().equals(Set.of("mobileNumber"))));
+        verify(outboxRepository, times(1)).save(argThat((OutboxEvent event) -> ID_1.equals(event.getAggregateId())));
+        verify(customerNearCache).invalidate(ID_1);
+    }
+
+    @Test
+    void testUpdateCustomerAtAnotherVersionIsAConflict() {
+        Customer stored = Customer.builder().customerId(ID_1).firstName("John").lastName("Doe").version(3L).build();
+        when(customerRepository.findById(ID_1)).thenReturn(Optional.of(stored));
+
+        CustomerPatch patch = CustomerPatch.builder().version(2L).firstName("Johnny").build();
+        assertThrows(CustomerVersionConflictException.class, () -> customerService.updateCustomer(ID_1, patch));
+        verify(customerRepository, never()).updateCustomer(any());
+        verify(outboxRepository, never()).save(any());
+    }
+}
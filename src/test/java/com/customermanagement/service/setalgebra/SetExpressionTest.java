@@ -0,0 +1,74 @@
+package com.customermanagement.service.setalgebra;
+
+import com.customermanagement.exceptions.InvalidInputException;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SetExpressionTest {
+
+    private static final String ID_1 = "00000000-0000-4000-8000-000000000001";
+    private static final String ID_2 = "7fffffff-0000-4000-8000-000000000002";
+    // Negative as a signed long, so it only sorts last with an unsigned compare
+    private static final String ID_3 = "f0000000-0000-4000-8000-000000000003";
+    private static final String ID_4 = "f0000000-0000-4000-c000-000000000004";
+
+    private final Map<String, UuidSet> lists = Map.of(
+            "A", UuidSet.parse(List.of(ID_3, ID_1, ID_2, ID_1)),
+            "B", UuidSet.parse(List.of(ID_2, ID_3, ID_4)),
+            "C", UuidSet.parse(List.of(ID_3.toUpperCase(), "not-a-uuid"))
+    );
+
+    @Test
+    void testParseSortsAndDeduplicatesInCustomerIdOrder() {
+        UuidSet set = lists.get("A");
+        assertEquals(List.of(ID_1, ID_2, ID_3), set.ids(0, 10));
+        assertEquals(List.of(ID_3), lists.get("C").ids(0, 10));
+        assertEquals(2, set.indexAfter(ID_2));
+    }
+
+    @Test
+    void testOperators() {
+        assertEquals(List.of(ID_2, ID_3), evaluate("A ∩ B"));
+        assertEquals(List.of(ID_2, ID_3), evaluate("A&B"));
+        assertEquals(List.of(ID_1, ID_2, ID_3, ID_4), evaluate("A ∪ B"));
+        assertEquals(List.of(ID_1), evaluate("A \\ B"));
+        assertEquals(List.of(ID_4), evaluate("B - A"));
+    }
+
+    @Test
+    void testIntersectionBindsTighterThanUnionAndDifference() {
+        assertEquals(List.of(ID_1, ID_2, ID_3), evaluate("A | B & C"));
+        assertEquals(List.of(ID_2, ID_3, ID_4), evaluate("(A | B) \\ A | B"));
+        assertEquals(List.of(ID_2), evaluate("(A ∩ B) \\ C"));
+    }
+
+    @Test
+    void testInvalidExpressions() {
+        assertThrows(InvalidInputException.class, () -> SetExpression.parse("A ∩"));
+        assertThrows(InvalidInputException.class, () -> SetExpression.parse("(A ∪ B"));
+        assertThrows(InvalidInputException.class, () -> SetExpression.parse("A B"));
+        assertEquals(Set.of("A", "B", "C"), SetExpression.parse("(A ∩ B) \\ C").listNames());
+    }
+
+    @Test
+    void testDeepOrLongExpressionsAreRejectedBeforeTheStackRunsOut() {
+        String nested = "(".repeat(SetExpression.MAX_NESTING) + "A" + ")".repeat(SetExpression.MAX_NESTING);
+        assertEquals(Set.of("A"), SetExpression.parse(nested).listNames());
+        InvalidInputException tooDeep = assertThrows(InvalidInputException.class, () -> SetExpression.parse("(" + nested + ")"));
+        assertTrue(tooDeep.getMessage().contains("nested too deeply"));
+
+        assertThrows(InvalidInputException.class, () -> SetExpression.parse("(".repeat(5000) + "A"));
+        // As long as allowed, the left-deep chain still evaluates
+        String chain = "A" + "|A".repeat((SetExpression.MAX_LENGTH - 1) / 2);
+        assertEquals(3, SetExpression.parse(chain).evaluate(lists).size());
+        assertThrows(InvalidInputException.class, () -> SetExpression.parse(chain + "|A"));
+    }
+
+    private List<String> evaluate(String expression) {
+        UuidSet result = SetExpression.parse(expression).evaluate(lists);
+        return result.ids(0, result.size());
+    }
+}